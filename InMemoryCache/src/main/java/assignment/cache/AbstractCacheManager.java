@@ -1,8 +1,18 @@
 package assignment.cache;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * <p>This class provides a skeletal implementation of the {@code CacheManager} interface to minimize the
@@ -11,6 +21,16 @@ import java.util.concurrent.TimeUnit;
  * <p>To implement {@code CacheManager} interface, extend this class and implement {@link #get(Object)} method
  * If required, default implementations can also be overridden
  *
+ * <p>Expired values are never returned. Reads check the expiry inline and conditionally remove the stale entry,
+ * so the periodic purge is only responsible for reclaiming memory of entries which are not read again.
+ *
+ * <p>If a {@link CacheLoader} is configured, missing values are loaded by {@link #get(Object)}. Loads in flight are
+ * tracked in a separate map, so the cache itself is never locked while loading and the concurrent readers of a
+ * key simply wait for the load started by the first one. A loader reading the key it is loading would wait for
+ * itself, so such a read fails with {@link IllegalStateException} instead. With refresh after write, a timed value
+ * older than the refresh duration is reloaded asynchronously while the readers keep getting the old value; at most
+ * one refresh per key is in flight.
+ *
  * @param <K> Key type to be stored in cache
  * @param <V> Value type to be stored in cache
  *
@@ -21,14 +41,28 @@ public abstract class AbstractCacheManager<K, V> implements CacheManager<K,V> {
 
     protected Cache mCache;
     protected CacheBuilder<K, V> mCacheBuilder;
-    // ScheduledExecutorService used for periodically purging the cache
-    protected final ScheduledExecutorService mScheduler = Executors.newScheduledThreadPool(1);
+    // Time source of the expiry checks
+    protected final Ticker mTicker;
+    // Statistics of the cache, null if not recorded
+    protected final StatsRecorder mStats;
+    // Registration with the MaintenanceScheduler used for periodically purging the cache
+    protected final MaintenanceScheduler.Registration mMaintenance;
+    // Loads in flight per key, so that a missing value is loaded only once
+    private final ConcurrentMap<K, LoadTask<V>> mLoadsInFlight = new ConcurrentHashMap<K, LoadTask<V>>();
+    // Cache objects being refreshed per key, so that at most one refresh per key is in flight
+    private final ConcurrentMap<K, CacheObject<V>> mRefreshesInFlight = new ConcurrentHashMap<K, CacheObject<V>>();
 
     public AbstractCacheManager(CacheBuilder<K, V> cacheBuilder, Cache cacheImpl) {
 
         mCacheBuilder = cacheBuilder;
         mCache = cacheImpl;
-        startPurging();
+        mTicker = cacheBuilder.getTicker();
+        mStats = cacheBuilder.isRecordingStats() ? new StatsRecorder() : null;
+        if (mStats != null && cacheImpl instanceof StatsAware) {
+
+            ((StatsAware) cacheImpl).setStatsRecorder(mStats);
+        }
+        mMaintenance = startPurging();
     }
 
     @Override
@@ -40,18 +74,108 @@ public abstract class AbstractCacheManager<K, V> implements CacheManager<K,V> {
     @Override
     public boolean containsKey(Object key) {
 
-        return mCache.containsKey(key);
+        return getCacheObject(key) != null;
     }
 
+    /**
+     * Returns the value of the key. If the key is missing and a {@link CacheLoader} is configured,
+     * value is loaded and cached
+     *
+     * @throws CacheLoaderException If the loader fails
+     */
     @Override
     public V get(Object key) {
 
-        CacheObject<V> co = (CacheObject<V>) mCache.get(key);
-        if (co == null) {
+        CacheObject<V> co = getCacheObject(key);
+        if (mStats != null) {
+
+            if (co != null) {
+
+                mStats.recordHits(1);
+            } else {
+
+                mStats.recordMisses(1);
+            }
+        }
+        if (co != null) {
+
+            if (needsRefresh(co)) {
+
+                refresh((K) key, co);
+            }
+            return co.getCache();
+        }
+        if (mCacheBuilder.getCacheLoader() == null) {
 
             return null;
         }
-        return co.getCache();
+        return load((K) key);
+    }
+
+    /**
+     * Bulk version of {@link #get(Object)}, looks up the cache once for all the keys and loads the missing ones,
+     * if a {@link CacheLoader} is configured, in one go. Keys are copied once, as the given iterable might be
+     * traversable only once
+     *
+     * @throws CacheLoaderException If the loader fails
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys) {
+
+        mMaintenance.runIfDue();
+
+        List<K> keyList = new ArrayList<K>();
+        for (K key : keys) {
+
+            keyList.add(key);
+        }
+
+        Map<K, CacheObject<V>> cacheObjects = (Map<K, CacheObject<V>>) mCache.getAll(keyList);
+        Map<K, V> values = new HashMap<K, V>();
+        List<K> missingKeys = new ArrayList<K>();
+
+        for (K key : keyList) {
+
+            CacheObject<V> co = cacheObjects.get(key);
+            if (co != null && mTicker.isExpired(co)) {
+
+                mCache.remove(key, co);
+                co = null;
+            }
+
+            if (co == null) {
+
+                missingKeys.add(key);
+            } else {
+
+                if (needsRefresh(co)) {
+
+                    refresh(key, co);
+                }
+                values.put(key, co.getCache());
+            }
+        }
+        if (mStats != null) {
+
+            mStats.recordHits(values.size());
+            mStats.recordMisses(missingKeys.size());
+        }
+
+        if (!missingKeys.isEmpty() && mCacheBuilder.getCacheLoader() != null) {
+
+            values.putAll(loadAll(missingKeys));
+        }
+
+        Map<K, V> result = new LinkedHashMap<K, V>();
+        for (K key : keyList) {
+
+            V value = values.get(key);
+            if (value != null) {
+
+                result.put(key, value);
+            }
+        }
+        return result;
     }
 
     @Override
@@ -63,44 +187,416 @@ public abstract class AbstractCacheManager<K, V> implements CacheManager<K,V> {
     @Override
     public V remove(Object key) {
 
+        mMaintenance.runIfDue();
+
         CacheObject<V> co = (CacheObject<V>) mCache.remove(key);
-        if (co == null) {
+        if (co == null || mTicker.isExpired(co)) {
 
             return null;
         }
         return co.getCache();
     }
 
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        mMaintenance.runIfDue();
+
+        mCache.removeAll(keys);
+    }
+
     @Override
     public int cacheSize() {
 
         return mCache.size();
     }
 
+    @Override
+    public CacheStats stats() {
+
+        return (mStats != null) ? mStats.snapshot() : CacheStats.EMPTY;
+    }
+
+    /**
+     * Deregisters the cache from its MaintenanceScheduler, waiting for a purge in flight, and closes the cache if it
+     * holds resources such as files. The scheduler itself is not shut down as it might be shared with other caches
+     */
     @Override
     public void shutdown() {
 
-        mScheduler.shutdown();
+        mMaintenance.cancel();
+        if (mCache instanceof Closeable) {
+
+            try {
+                ((Closeable) mCache).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Looks up the cache object of a key, removing it if it has already expired
+     *
+     * @param key Key to look up
+     * @return Live cache object or {@code null} if not present or expired
+     */
+    protected CacheObject<V> getCacheObject(Object key) {
+
+        mMaintenance.runIfDue();
+
+        CacheObject<V> co = (CacheObject<V>) mCache.get(key);
+        if (co == null) {
+
+            return null;
+        }
+        if (mTicker.isExpired(co)) {
+
+            // Only removes if the entry was not replaced in the meantime
+            mCache.remove(key, co);
+            return null;
+        }
+        return co;
+    }
+
+    /**
+     * Loads the value of a missing key, unless a load of the same key is already in flight in which case
+     * its result is awaited
+     *
+     * @param key Key missing in the cache
+     * @return Loaded value
+     * @throws CacheLoaderException If the loader fails or the calling thread is interrupted while waiting
+     * @throws IllegalStateException If the key is being loaded by the calling thread, i.e. the loader reads the key
+     */
+    protected V load(final K key) {
+
+        LoadTask<V> task = new LoadTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+
+                // A load which finished just before this one was registered might have cached the value already
+                CacheObject<V> co = getCacheObject(key);
+                if (co != null) {
+
+                    return co.getCache();
+                }
+
+                V value = loadValue(key);
+                if (value != null) {
+
+                    putLoaded(key, value);
+                }
+                return value;
+            }
+        });
+
+        LoadTask<V> inFlight = mLoadsInFlight.putIfAbsent(key, task);
+        if (inFlight == null) {
+
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                // Value is cached by now, so the later readers find it without loading again
+                mLoadsInFlight.remove(key, task);
+            }
+        }
+
+        return await(key, inFlight);
+    }
+
+    /**
+     * Bulk version of {@link #load(Object)}. Keys whose load is already in flight are awaited; the rest are
+     * registered as in flight and loaded by a single {@link CacheLoader#loadAll(Iterable)} call
+     *
+     * @param keys Keys missing in the cache
+     * @return Map of the keys having a value to their loaded values
+     * @throws CacheLoaderException If the loader fails or the calling thread is interrupted while waiting
+     * @throws IllegalStateException If a key is being loaded by the calling thread, i.e. the loader reads the key
+     */
+    protected Map<K, V> loadAll(List<K> keys) {
+
+        final Map<K, V> loaded = new HashMap<K, V>();
+        final Exception[] failure = new Exception[1];
+        Map<K, LoadTask<V>> ownedLoads = new LinkedHashMap<K, LoadTask<V>>();
+        Map<K, LoadTask<V>> loads = new LinkedHashMap<K, LoadTask<V>>();
+
+        for (final K key : keys) {
+
+            // Completes with the outcome of the batch load once run
+            LoadTask<V> task = new LoadTask<V>(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+
+                    if (failure[0] != null) {
+
+                        throw failure[0];
+                    }
+                    return loaded.get(key);
+                }
+            });
+
+            LoadTask<V> inFlight = mLoadsInFlight.putIfAbsent(key, task);
+            if (inFlight == null) {
+
+                ownedLoads.put(key, task);
+                inFlight = task;
+            }
+            loads.put(key, inFlight);
+        }
+
         try {
-            if (!mScheduler.awaitTermination(60, TimeUnit.SECONDS)) {
-                mScheduler.shutdownNow();
+            if (!ownedLoads.isEmpty()) {
+
+                List<K> keysToLoad = new ArrayList<K>(ownedLoads.size());
+                for (K key : ownedLoads.keySet()) {
+
+                    // A load which finished just before this one was registered might have cached the value already
+                    CacheObject<V> co = getCacheObject(key);
+                    if (co != null) {
+
+                        loaded.put(key, co.getCache());
+                    } else {
+
+                        keysToLoad.add(key);
+                    }
+                }
+
+                try {
+                    if (!keysToLoad.isEmpty()) {
+
+                        Map<K, V> values = loadValues(keysToLoad);
+                        Map<K, V> newValues = new HashMap<K, V>();
+                        for (K key : keysToLoad) {
+
+                            V value = values.get(key);
+                            if (value != null) {
+
+                                newValues.put(key, value);
+                            }
+                        }
+                        putAllLoaded(newValues);
+                        loaded.putAll(newValues);
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+
+                for (LoadTask<V> task : ownedLoads.values()) {
+
+                    task.run();
+                }
             }
+        } finally {
+            // Values are cached by now, so the later readers find them without loading again
+            for (Map.Entry<K, LoadTask<V>> entry : ownedLoads.entrySet()) {
+
+                mLoadsInFlight.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Map<K, V> result = new HashMap<K, V>();
+        for (Map.Entry<K, LoadTask<V>> entry : loads.entrySet()) {
+
+            V value = await(entry.getKey(), entry.getValue());
+            if (value != null) {
+
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for the result of a load. A load started by the calling thread which is not done yet is one the calling
+     * thread is running further up its stack, waiting for it would never return
+     *
+     * @param key Key being loaded
+     * @param task Load of the key
+     * @return Loaded value
+     * @throws IllegalStateException If the load is in flight on the calling thread
+     */
+    private V await(K key, LoadTask<V> task) {
+
+        if (task.mOwner == Thread.currentThread() && !task.isDone()) {
+
+            throw new IllegalStateException("Recursive load of key: " + key + "!");
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw new CacheLoaderException("Failed to load value for key: " + key, e.getCause());
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            throw new CacheLoaderException("Interrupted while loading value for key: " + key, e);
+        }
+    }
+
+    /**
+     * Caches a value computed by the {@link CacheLoader}. By default the value is put like any other; override if
+     * values coming from the store are to be cached without the side effects of a put
+     */
+    protected void putLoaded(K key, V value) {
+
+        put(key, value);
+    }
+
+    /**
+     * Bulk version of {@link #putLoaded(Object, Object)}
+     */
+    protected void putAllLoaded(Map<K, V> entries) {
+
+        putAll(entries);
+    }
+
+    /**
+     * Calls {@link CacheLoader#load(Object)}, timing it if statistics are recorded
+     */
+    private V loadValue(K key) throws Exception {
+
+        if (mStats == null) {
+
+            return mCacheBuilder.getCacheLoader().load(key);
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            V value = mCacheBuilder.getCacheLoader().load(key);
+            mStats.recordLoadSuccess(System.nanoTime() - startTime);
+            return value;
+        } catch (Exception e) {
+            mStats.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Calls {@link CacheLoader#loadAll(Iterable)}, timing it if statistics are recorded
+     */
+    private Map<K, V> loadValues(List<K> keys) throws Exception {
+
+        if (mStats == null) {
+
+            return mCacheBuilder.getCacheLoader().loadAll(keys);
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            Map<K, V> values = mCacheBuilder.getCacheLoader().loadAll(keys);
+            mStats.recordLoadSuccess(System.nanoTime() - startTime);
+            return values;
+        } catch (Exception e) {
+            mStats.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Calls {@link CacheLoader#reload(Object, Object)}, timing it if statistics are recorded
+     */
+    private V reloadValue(K key, V oldValue) throws Exception {
+
+        if (mStats == null) {
+
+            return mCacheBuilder.getCacheLoader().reload(key, oldValue);
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            V value = mCacheBuilder.getCacheLoader().reload(key, oldValue);
+            mStats.recordLoadSuccess(System.nanoTime() - startTime);
+            return value;
+        } catch (Exception e) {
+            mStats.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * @return {@code true} if the cache object is a timed one older than the refresh duration, else {@code false}
+     */
+    private boolean needsRefresh(CacheObject<V> co) {
+
+        long refreshAfterWrite = mCacheBuilder.getRefreshAfterWriteInMilliSec();
+        return (co instanceof Timestamped) && ((Timestamped) co).getTimeOfExpiry() != Long.MAX_VALUE
+                && (mTicker.read() - ((Timestamped) co).getTimeOfCreation() >= refreshAfterWrite);
+    }
+
+    /**
+     * Reloads the value of a key on the refresh executor, unless a refresh of the key is already in flight.
+     * Reloaded value only replaces the refreshed cache object, so a value written in the meantime is kept.
+     *
+     * @param key Key to be refreshed
+     * @param co Cache object currently associated with the key
+     */
+    private void refresh(final K key, final CacheObject<V> co) {
+
+        if (mRefreshesInFlight.putIfAbsent(key, co) != null) {
+
+            return;
+        }
+
+        try {
+            mCacheBuilder.getRefreshExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    try {
+                        V value = reloadValue(key, co.getCache());
+                        if (value != null) {
+
+                            long now = mTicker.read();
+                            mCache.replace(key, co, mCacheBuilder.buildCacheObject(value, now,
+                                    mCacheBuilder.expirationTime(key, value, now)));
+                        }
+                    } catch (Exception e) {
+                        // Old value is served till it expires
+                        e.printStackTrace();
+                    } finally {
+                        mRefreshesInFlight.remove(key, co);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mRefreshesInFlight.remove(key, co);
         }
     }
 
     /**
      * Cache clean up logic
+     *
+     * @return Registration of the purge task with the configured MaintenanceScheduler
      */
-    private void startPurging() {
+    private MaintenanceScheduler.Registration startPurging() {
 
-        mScheduler.scheduleAtFixedRate(new Runnable() {
+        return mCacheBuilder.getMaintenanceScheduler().register(new Runnable() {
             @Override
             public void run() {
 
+                if (mStats == null) {
+
+                    mCache.purge();
+                    return;
+                }
+
+                long startTime = System.nanoTime();
                 mCache.purge();
+                mStats.recordPurge(System.nanoTime() - startTime);
             }
-        }, 0, mCacheBuilder.getPurgeFrequencyInMilliSec(), TimeUnit.MILLISECONDS);
+        }, mCacheBuilder.getPurgeFrequencyInMilliSec());
+    }
+
+    /**
+     * Load in flight, run by the thread which registered it
+     */
+    private static final class LoadTask<V> extends FutureTask<V> {
+
+        final Thread mOwner = Thread.currentThread();
+
+        LoadTask(Callable<V> callable) {
+
+            super(callable);
+        }
     }
 }
@@ -0,0 +1,102 @@
+package assignment.cache;
+
+/**
+ * <p>Doubly linked list of {@link CacheNode}s ordered from the least to the most recently accessed.
+ * Uses the access links of the nodes themselves, so linking, reordering and unlinking allocate nothing.
+ *
+ * NOTE: A node can be part of at most one deque at a time. This class is not thread-safe, callers are
+ * required to hold the maintenance lock of the cache
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class AccessOrderDeque<K, V> {
+
+    private final CacheNode<K, V> mSentinel = new CacheNode<K, V>();
+    // Total weight of the linked nodes
+    private long mWeight;
+
+    /**
+     * Links the node as the most recently accessed one
+     *
+     * @param node Node which is not part of any deque
+     */
+    void addLast(CacheNode<K, V> node) {
+
+        node.mPrevInAccess = mSentinel.mPrevInAccess;
+        node.mNextInAccess = mSentinel;
+        mSentinel.mPrevInAccess.mNextInAccess = node;
+        mSentinel.mPrevInAccess = node;
+        mWeight += node.mWeight;
+    }
+
+    /**
+     * Moves the node to the most recently accessed position
+     *
+     * @param node Node which is part of this deque
+     */
+    void moveToLast(CacheNode<K, V> node) {
+
+        if (mSentinel.mPrevInAccess != node) {
+
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    /**
+     * Unlinks the node from this deque
+     *
+     * @param node Node which is part of this deque
+     */
+    void remove(CacheNode<K, V> node) {
+
+        node.mNextInAccess.mPrevInAccess = node.mPrevInAccess;
+        node.mPrevInAccess.mNextInAccess = node.mNextInAccess;
+        node.mPrevInAccess = null;
+        node.mNextInAccess = null;
+        mWeight -= node.mWeight;
+    }
+
+    /**
+     * @return Least recently accessed node or {@code null} if empty
+     */
+    CacheNode<K, V> peekFirst() {
+
+        return (mSentinel.mNextInAccess == mSentinel) ? null : mSentinel.mNextInAccess;
+    }
+
+    /**
+     * @return Most recently accessed node or {@code null} if empty
+     */
+    CacheNode<K, V> peekLast() {
+
+        return (mSentinel.mPrevInAccess == mSentinel) ? null : mSentinel.mPrevInAccess;
+    }
+
+    /**
+     * @return Total weight of the nodes, their number unless the cache is weighed
+     */
+    long weight() {
+
+        return mWeight;
+    }
+
+    /**
+     * Unlinks all the nodes
+     */
+    void clear() {
+
+        CacheNode<K, V> node = mSentinel.mNextInAccess;
+        while (node != mSentinel) {
+
+            CacheNode<K, V> next = node.mNextInAccess;
+            node.mPrevInAccess = null;
+            node.mNextInAccess = null;
+            node = next;
+        }
+        mSentinel.mPrevInAccess = mSentinel;
+        mSentinel.mNextInAccess = mSentinel;
+        mWeight = 0;
+    }
+}
@@ -1,5 +1,7 @@
 package assignment.cache;
 
+import java.util.Map;
+
 /**
  * <p>Interface for the cache to store the elements.
  * NOTE: Implementations of this interface are required to be thread-safe.
@@ -18,12 +20,62 @@ public interface Cache<K, V> {
 
     V get(Object key);
 
+    /**
+     * Bulk version of {@link #get(Object)}
+     *
+     * @param keys Keys to look up
+     * @return Map of the keys present in the cache to their values
+     */
+    Map<K, V> getAll(Iterable<?> keys);
+
     boolean isEmpty();
 
     V put(K key, V value);
 
+    /**
+     * Bulk version of {@link #put(Object, Object)}
+     *
+     * @param entries Entries to be stored
+     */
+    void putAll(Map<? extends K, ? extends V> entries);
+
+    /**
+     * Stores the value only if the key is not present
+     *
+     * @param key Key to be stored
+     * @param value Value to be stored
+     * @return Value associated with the key, even if expired, or {@code null} if the given value was stored
+     */
+    V putIfAbsent(K key, V value);
+
     V remove(Object key);
 
+    /**
+     * Removes the entry for a key only if it is currently mapped to the given value
+     *
+     * @param key Key to be removed
+     * @param value Value expected to be associated with the key
+     * @return {@code true} if the entry was removed, else {@code false}
+     */
+    boolean remove(Object key, Object value);
+
+    /**
+     * Bulk version of {@link #remove(Object)}
+     *
+     * @param keys Keys to be removed
+     */
+    void removeAll(Iterable<?> keys);
+
+    /**
+     * Replaces the entry for a key only if it is currently mapped to the given value
+     *
+     * @param key Key to be replaced
+     * @param oldValue Value expected to be associated with the key
+     * @param newValue Value to be associated with the key
+     * @return {@code true} if the value was replaced, else {@code false}
+     */
+    boolean replace(K key, V oldValue, V newValue);
+
     int size();
 
     void purge();
@@ -1,6 +1,12 @@
 package assignment.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -11,8 +17,31 @@ import java.util.concurrent.TimeUnit;
  *     <li>Cache Algorithm : Algorithm used for caching values @see CacheBuilder.CacheAlgorithm
  *     <li>Cache Type: Type of cache to use. Like in memory cache etc. @see CacheBuilder.CacheType
  *     <li>Initial capacity : Initial capacity of cache
- *     <li>Time to live : Time to live for each cache element
+ *     <li>Segments : Number of independently maintained segments of the in memory cache @see SegmentedCache
+ *     <li>Segments per purge : Number of segments purged, in parallel, by each purge
+ *     <li>Maximum size : Maximum number of elements in cache, elements are evicted beyond it as per the cache
+ *     algorithm; least recently used ones unless TinyLFU algorithm is used
+ *     <li>Maximum weight and weigher : Maximum total weight of the elements in cache, as computed by the weigher,
+ *     used instead of the maximum size @see Weigher
+ *     <li>Time to live : Time to live for each cache element, counted from its last read if it expires after access
+ *     <li>Expiry : Computes the time to live of each cache element from its key and value instead @see Expiry
  *     <li>Purge frequency : Frequency of cleaning up the cache
+ *     <li>Maintenance scheduler : Scheduler running the cache clean up @see MaintenanceScheduler
+ *     <li>Cache loader : Loader populating the missing values on get @see CacheLoader
+ *     <li>Refresh after write : Age after which a timed cache element is reloaded asynchronously on read
+ *     <li>Refresh executor : Executor running the asynchronous reloads
+ *     <li>Cache writer : Writer storing the put values in a backing store @see CacheWriter
+ *     <li>Write behind : Flush delay, batch size and buffer size of the writes queued for the cache writer
+ *     <li>Off heap capacity : Bytes of direct memory used by the off heap cache type
+ *     <li>Key and value serializers : Serializers used by the off heap and mapped file cache types @see Serializer
+ *     <li>File directory : Directory of the segment files of the mapped file cache type
+ *     <li>Segment file size : Size of each segment file of the mapped file cache type
+ *     <li>Second tier : Cache type holding the entries evicted from the in memory cache
+ *     <li>Ticker : Source of the time used for expiry checks @see Ticker
+ *     <li>Statistics : Hit, miss, load, eviction and purge statistics of the cache @see CacheStats
+ *     <li>Removal listener : Listener notified of the removed elements and the causes of removal @see RemovalListener
+ *     <li>Removal executor : Executor delivering the removal notifications in batches
+ *     <li>Snapshot file : File the live elements are written to on shutdown and loaded from on build
  * </ul>
  *
  * <p>These features are optional; CacheManager can be created with default parameters as seen in the
@@ -29,8 +58,30 @@ import java.util.concurrent.TimeUnit;
  *     <li>Cache Algorithm : Timed cache
  *     <li>Cache Type : In memory cache
  *     <li>Initial capacity : 100
+ *     <li>Segments : 1
+ *     <li>Segments per purge : All
+ *     <li>Maximum size : Unbounded
+ *     <li>Maximum weight and weigher : None
  *     <li>Time to live : 10 seconds
+ *     <li>Expiry : None
  *     <li>Purge frequency : 5 seconds
+ *     <li>Maintenance scheduler : Process wide shared scheduler
+ *     <li>Cache loader : None
+ *     <li>Refresh after write : Never
+ *     <li>Refresh executor : Shared pool of daemon threads
+ *     <li>Cache writer : None
+ *     <li>Write behind : Disabled, values are written through. Once enabled, batches of 256 and a buffer of 16384
+ *     keys
+ *     <li>Off heap capacity : 64 MB
+ *     <li>Key and value serializers : Java serialization
+ *     <li>File directory : New temporary directory
+ *     <li>Segment file size : 64 MB
+ *     <li>Second tier : None
+ *     <li>Ticker : System clock
+ *     <li>Statistics : Not recorded
+ *     <li>Removal listener : None
+ *     <li>Removal executor : Shared pool of daemon threads
+ *     <li>Snapshot file : None
  * </ul>
  *
  * <p>Usage example 2 : <pre> {@code
@@ -43,6 +94,43 @@ import java.util.concurrent.TimeUnit;
  *         .timeToLive(11, TimeUnit.SECONDS);
  * }</pre>
  *
+ * <p>Usage example 3 : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+ *         .maximumSize(10000)
+ *         .build();
+ * }</pre>
+ *
+ * <p>Usage example 4 : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .cacheType(CacheBuilder.CacheType.OFF_HEAP)
+ *         .offHeapCapacity(256 * 1024 * 1024)
+ *         .build();
+ * }</pre>
+ *
+ * <p>Usage example 5 : <pre> {@code
+ *
+ * CacheManager<Long,byte[]> cm = CacheBuilder.newBuilder()
+ *         .cacheAlgorithm(CacheBuilder.CacheAlgorithm.TINY_LFU)
+ *         .maximumWeight(64 * 1024 * 1024)
+ *         .weigher(new Weigher<Long, byte[]>() {
+ *             public int weigh(Long key, byte[] value) {
+ *                 return value.length;
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ *
+ * <p>Usage example 6 : <pre> {@code
+ *
+ * TieredCacheManager<Long,String> cm = (TieredCacheManager<Long,String>) CacheBuilder.newBuilder()
+ *         .maximumSize(10000)
+ *         .secondTier(CacheBuilder.CacheType.MAPPED_FILE)
+ *         .build();
+ * }</pre>
+ *
  * @param <K> Key type for all the CacheManagers created by this builder
  * @param <V> Value type for all the CacheManagers created by this builder
  *
@@ -58,6 +146,8 @@ public class CacheBuilder<K, V> {
     public enum CacheType {
 
         IN_MEMORY_CACHE, // Cache stored in memory
+        OFF_HEAP, // Cache serialized into direct memory outside the java heap, evicted slab by slab once full
+        MAPPED_FILE, // Cache serialized into memory mapped files, for data sets larger than the memory
     }
 
     /**
@@ -66,27 +156,92 @@ public class CacheBuilder<K, V> {
     public enum CacheAlgorithm {
 
         TIMED_CACHE, // Timed cache elements, removed when expired
+        LRU, // Least recently used elements evicted when maximum size is reached, requires maximum size or weight
+        TINY_LFU, // Less frequently used elements evicted when maximum size is reached, requires maximum size or weight
+        EXPIRE_AFTER_ACCESS, // Elements removed once not read for their time to live, requires in memory cache type
     }
 
     private static final int DEFAULT_INITIAL_CAPACITY = 100;
     private static final long DEFAULT_TIME_TO_LIVE = 10000;
     private static final long DEFAULT_PURGE_FREQUENCY = 5000;
+    private static final long DEFAULT_OFF_HEAP_CAPACITY = 64 * 1024 * 1024;
+    private static final int DEFAULT_SEGMENT_FILE_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 256;
+    private static final int DEFAULT_WRITE_BEHIND_BUFFER_SIZE = 16384;
+    private static final long DEFAULT_INVALIDATION_DELAY = 50;
+    private static final int DEFAULT_INVALIDATION_BATCH_SIZE = 1024;
+    private static final int MAXIMUM_SEGMENTS = 1 << 16;
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long MINIMUM_WEIGHED_SKETCH_SIZE = 1 << 16;
 
     private int mInitialCapacity;
+    private int mSegmentCount;
+    private int mSegmentsPerPurge;
+    private long mMaximumSize;
+    private long mMaximumWeight;
+    private Weigher<? super K, ? super V> mWeigher;
 
     private long mMilliSecondsToLive;
+    private Expiry<? super K, ? super V> mExpiry;
     private long mPurgeFrequency;
     private CacheType mCacheType;
     private CacheAlgorithm mCacheAlgo;
+    private MaintenanceScheduler mMaintenanceScheduler;
+    private CacheLoader<K, V> mCacheLoader;
+    private long mRefreshAfterWrite;
+    private Executor mRefreshExecutor;
+    private CacheWriter<K, V> mCacheWriter;
+    private long mWriteBehindDelay;
+    private int mWriteBehindBatchSize;
+    private int mWriteBehindBufferSize;
+    private InvalidationBus<K> mInvalidationBus;
+    private long mInvalidationDelay;
+    private int mInvalidationBatchSize;
+    private long mOffHeapCapacity;
+    private Serializer<K> mKeySerializer;
+    private Serializer<V> mValueSerializer;
+    private File mFileDirectory;
+    private int mSegmentFileSize;
+    private CacheType mSecondTierType;
+    private Ticker mTicker;
+    private boolean mRecordStats;
+    private RemovalListener<K, V> mRemovalListener;
+    private Executor mRemovalExecutor;
+    private File mSnapshotFile;
 
     public int getInitialCapacity() {
         return mInitialCapacity;
     }
 
+    public int getSegmentCount() {
+        return mSegmentCount;
+    }
+
+    public int getSegmentsPerPurge() {
+        return mSegmentsPerPurge;
+    }
+
+    public long getMaximumSize() {
+        return mMaximumSize;
+    }
+
+    public long getMaximumWeight() {
+        return mMaximumWeight;
+    }
+
+    public Weigher<? super K, ? super V> getWeigher() {
+        return mWeigher;
+    }
+
     public long getMilliSecondsToLive() {
         return mMilliSecondsToLive;
     }
 
+    public Expiry<? super K, ? super V> getExpiry() {
+        return mExpiry;
+    }
+
     public long getPurgeFrequencyInMilliSec() {
         return mPurgeFrequency;
     }
@@ -99,6 +254,98 @@ public class CacheBuilder<K, V> {
         return mCacheAlgo;
     }
 
+    public MaintenanceScheduler getMaintenanceScheduler() {
+        return mMaintenanceScheduler;
+    }
+
+    public CacheLoader<K, V> getCacheLoader() {
+        return mCacheLoader;
+    }
+
+    public long getRefreshAfterWriteInMilliSec() {
+        return mRefreshAfterWrite;
+    }
+
+    public Executor getRefreshExecutor() {
+        return (mRefreshExecutor != null) ? mRefreshExecutor : DefaultRefreshExecutor.INSTANCE;
+    }
+
+    public CacheWriter<K, V> getCacheWriter() {
+        return mCacheWriter;
+    }
+
+    public boolean isWriteBehind() {
+        return mWriteBehindDelay != NEVER;
+    }
+
+    public long getWriteBehindDelayInMilliSec() {
+        return mWriteBehindDelay;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return mWriteBehindBatchSize;
+    }
+
+    public int getWriteBehindBufferSize() {
+        return mWriteBehindBufferSize;
+    }
+
+    public InvalidationBus<K> getInvalidationBus() {
+        return mInvalidationBus;
+    }
+
+    public long getInvalidationDelayInMilliSec() {
+        return mInvalidationDelay;
+    }
+
+    public int getInvalidationBatchSize() {
+        return mInvalidationBatchSize;
+    }
+
+    public long getOffHeapCapacity() {
+        return mOffHeapCapacity;
+    }
+
+    public Serializer<K> getKeySerializer() {
+        return mKeySerializer;
+    }
+
+    public Serializer<V> getValueSerializer() {
+        return mValueSerializer;
+    }
+
+    public File getFileDirectory() {
+        return mFileDirectory;
+    }
+
+    public int getSegmentFileSize() {
+        return mSegmentFileSize;
+    }
+
+    public CacheType getSecondTierType() {
+        return mSecondTierType;
+    }
+
+    public Ticker getTicker() {
+        return mTicker;
+    }
+
+    public boolean isRecordingStats() {
+        return mRecordStats;
+    }
+
+    public RemovalListener<K, V> getRemovalListener() {
+        return mRemovalListener;
+    }
+
+    public Executor getRemovalExecutor() {
+        return (mRemovalExecutor != null) ? mRemovalExecutor : DefaultRemovalExecutor.INSTANCE;
+    }
+
+    public File getSnapshotFile() {
+        return mSnapshotFile;
+    }
+
     /**
      * Static method to create an instance of CacheBuilder
      *
@@ -125,6 +372,22 @@ public class CacheBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Builder method to compute the time to live of each cache element from its key and value, instead of
+     * applying the same time to live to all of them. Applies to every cache algorithm
+     *
+     * @param expiry @see Expiry
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> expiry(Expiry<? super K, ? super V> expiry) {
+
+        if (expiry != null) {
+
+            mExpiry = expiry;
+        }
+        return this;
+    }
+
     /**
      * Builder method to set cache cleanup frequency
      *
@@ -142,111 +405,914 @@ public class CacheBuilder<K, V> {
     }
 
     /**
-     * Builder method to set cache type
+     * Builder method to set the scheduler running the cache clean up
      *
-     * @param cType @see CacheBuilder.CacheType
+     * @param scheduler @see MaintenanceScheduler
      * @return CacheBuilder<K,V> instance
      */
-    public CacheBuilder<K, V> cacheType(CacheType cType) {
+    public CacheBuilder<K, V> maintenanceScheduler(MaintenanceScheduler scheduler) {
 
-        mCacheType = cType;
+        if (scheduler != null) {
+
+            mMaintenanceScheduler = scheduler;
+        }
         return this;
     }
 
     /**
-     * Builder method to set cache algorithm
+     * Builder method to set the loader populating the values missing in the cache
      *
-     * @param cAlgo @see CacheBuilder.CacheAlgorithm
+     * @param loader @see CacheLoader
      * @return CacheBuilder<K,V> instance
      */
-    public CacheBuilder<K, V> cacheAlgorithm(CacheAlgorithm cAlgo) {
+    public CacheBuilder<K, V> cacheLoader(CacheLoader<K, V> loader) {
 
-        mCacheAlgo = cAlgo;
-        return  this;
+        mCacheLoader = loader;
+        return this;
     }
 
     /**
-     * Builder method to set the initial capacity of the cache
+     * Builder method to refresh the timed cache elements ahead of their expiry. Once an element is older than the
+     * given duration, first read returns the current value and reloads it asynchronously using the cache loader
      *
-     * @param initialCapacity Initial capacity
+     * @param duration Age after which elements are refreshed, should be shorter than time to live
+     * @param unit Time unit
      * @return CacheBuilder<K,V> instance
      */
-    public CacheBuilder<K, V> initialCapacity(int initialCapacity) {
+    public CacheBuilder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
 
-        if (initialCapacity > 0) {
+        if (duration > 0) {
 
-            mInitialCapacity = initialCapacity;
+            mRefreshAfterWrite = unit.toMillis(duration);
         }
         return this;
     }
 
     /**
-     * Final build method to create CacheManager
+     * Builder method to set the executor running the asynchronous reloads
      *
-     * @return Specific CacheManager<K,V> implementation instance
-     * @throws IllegalStateException If unsupported cache type is provided
+     * @param executor Refresh executor
+     * @return CacheBuilder<K,V> instance
      */
-    public CacheManager<K, V> build() {
+    public CacheBuilder<K, V> refreshExecutor(Executor executor) {
 
-        CacheManager<K, V> cacheManagerImpl;
+        mRefreshExecutor = executor;
+        return this;
+    }
 
-        switch (mCacheType) {
+    /**
+     * Builder method to set the writer storing the put values in a backing store. Values are written through,
+     * unless write behind is enabled
+     *
+     * @param writer @see CacheWriter
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> cacheWriter(CacheWriter<K, V> writer) {
 
-            case IN_MEMORY_CACHE: {
+        mCacheWriter = writer;
+        return this;
+    }
 
-                cacheManagerImpl = new InMemoryCacheManager<K, V>(this,
-                        new InMemoryCache<K, CacheObject<V>>(mInitialCapacity));
-                break;
-            }
-            // TODO: Add other cache implementations here
-            default: {
+    /**
+     * Builder method to write the put values to the cache writer in the background. Writes are queued and repeated
+     * writes of a key are coalesced; a batch is flushed once full or once its oldest write has waited for the given
+     * delay @see WriteBehindQueue
+     *
+     * @param delay Time a queued write waits at most for its batch to fill up
+     * @param unit Time unit
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> writeBehind(long delay, TimeUnit unit) {
 
-                throw new IllegalStateException("Unsupported cache type!");
-            }
+        if (delay > 0) {
 
+            mWriteBehindDelay = unit.toMillis(delay);
         }
+        return this;
+    }
 
-        return cacheManagerImpl;
+    /**
+     * Builder method to set the maximum number of keys flushed to the cache writer in one batch with write behind
+     *
+     * @param batchSize Write behind batch size
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> writeBehindBatchSize(int batchSize) {
+
+        if (batchSize > 0) {
+
+            mWriteBehindBatchSize = batchSize;
+        }
+        return this;
     }
 
     /**
-     * Factory method to construct CacheObject
+     * Builder method to set the maximum number of keys queued with write behind. Once full, puts of new keys block
+     * until the queued writes are flushed
      *
-     * @param value Value to be stored in cache
-     * @return Specific CacheObject<V> implementation instance
-     * @throws IllegalStateException If unsupported algorithm type is provided
+     * @param bufferSize Write behind buffer size
+     * @return CacheBuilder<K,V> instance
      */
-    public CacheObject<V> buildCacheObject(V value) {
+    public CacheBuilder<K, V> writeBehindBufferSize(int bufferSize) {
 
-        CacheObject<V> cacheObj;
+        if (bufferSize > 0) {
 
-        switch (mCacheAlgo) {
+            mWriteBehindBufferSize = bufferSize;
+        }
+        return this;
+    }
 
-            case TIMED_CACHE: {
+    /**
+     * Builder method to set the bus broadcasting the puts, removals and clears of the cache to its peers, which
+     * remove the invalidated keys; the invalidations of the peers are applied likewise @see InvalidationBus
+     *
+     * @param bus Invalidation bus
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> invalidationBus(InvalidationBus<K> bus) {
 
-                cacheObj = new TimedCacheObject<V>(value, mMilliSecondsToLive);
-                break;
-            }
-            // TODO: Add other algorithm implementations here
-            default: {
+        mInvalidationBus = bus;
+        return this;
+    }
 
-                throw new IllegalStateException("Unsupported algorithm type!");
-            }
+    /**
+     * Builder method to set the time the invalidations are coalesced for before being published, which caps the
+     * rate of the batches sent to the peers @see Invalidator
+     *
+     * @param delay Invalidation delay
+     * @param unit Time unit
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> invalidationDelay(long delay, TimeUnit unit) {
+
+        if (delay > 0) {
+
+            mInvalidationDelay = unit.toMillis(delay);
         }
+        return this;
+    }
 
-        return cacheObj;
+    /**
+     * Builder method to set the maximum number of keys published in one invalidation batch
+     *
+     * @param batchSize Invalidation batch size
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> invalidationBatchSize(int batchSize) {
+
+        if (batchSize > 0) {
+
+            mInvalidationBatchSize = batchSize;
+        }
+        return this;
     }
 
     /**
-     * Private constructor
+     * Builder method to set the bytes of direct memory used by the off heap cache type. Once full, entries are
+     * evicted regardless of the cache algorithm
+     *
+     * @param bytes Off heap capacity in bytes
+     * @return CacheBuilder<K,V> instance
      */
-    private CacheBuilder() {
+    public CacheBuilder<K, V> offHeapCapacity(long bytes) {
 
-        mInitialCapacity = DEFAULT_INITIAL_CAPACITY;
-        mMilliSecondsToLive = DEFAULT_TIME_TO_LIVE;
-        mPurgeFrequency = DEFAULT_PURGE_FREQUENCY;
-        mCacheType = CacheType.IN_MEMORY_CACHE;
-        mCacheAlgo = CacheAlgorithm.TIMED_CACHE;
+        if (bytes > 0) {
+
+            mOffHeapCapacity = bytes;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to set the serializer of the keys stored off heap
+     *
+     * @param serializer @see Serializer
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> keySerializer(Serializer<K> serializer) {
+
+        if (serializer != null) {
+
+            mKeySerializer = serializer;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to set the serializer of the values stored off heap
+     *
+     * @param serializer @see Serializer
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> valueSerializer(Serializer<V> serializer) {
+
+        if (serializer != null) {
+
+            mValueSerializer = serializer;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to set the directory of the segment files of the mapped file cache type
+     *
+     * @param directory Directory, created if missing
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> fileDirectory(File directory) {
+
+        mFileDirectory = directory;
+        return this;
+    }
+
+    /**
+     * Builder method to set the size of each segment file of the mapped file cache type
+     *
+     * @param bytes Segment file size in bytes
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> segmentFileSize(int bytes) {
+
+        if (bytes > 0) {
+
+            mSegmentFileSize = bytes;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to put a second tier behind the in memory cache, which then holds the hot entries only.
+     * Entries evicted from the in memory cache are demoted to the second tier and promoted back when read.
+     * Requires a maximum size, which bounds the in memory tier; the created CacheManager is a
+     * {@link TieredCacheManager}
+     *
+     * @param cType Type of the second tier, off heap or mapped file @see CacheBuilder.CacheType
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> secondTier(CacheType cType) {
+
+        mSecondTierType = cType;
+        return this;
+    }
+
+    /**
+     * Builder method to set the source of the time used for creation times, expiry checks and purging
+     *
+     * @param ticker @see Ticker
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> ticker(Ticker ticker) {
+
+        if (ticker != null) {
+
+            mTicker = ticker;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to enable recording the statistics returned by {@link CacheManager#stats()}. Without it
+     * nothing is counted or timed
+     *
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> recordStats() {
+
+        mRecordStats = true;
+        return this;
+    }
+
+    /**
+     * Builder method to set the listener notified of every removed element along with the cause of its removal.
+     * Notifications are delivered asynchronously in batches on the removal executor. Supported by the in memory
+     * cache type without a second tier
+     *
+     * @param listener @see RemovalListener
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> removalListener(RemovalListener<K, V> listener) {
+
+        if (listener != null) {
+
+            mRemovalListener = listener;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to set the snapshot file. If it exists, build loads its live elements into the new cache
+     * through a parallel loader, skipping the ones which have expired since. Shutdown of the CacheManager writes
+     * the live elements and their remaining time to live back to it. Keys and values are converted by the
+     * serializers. Supported by the in memory cache type without a second tier
+     *
+     * @param file Snapshot file
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> snapshotFile(File file) {
+
+        mSnapshotFile = file;
+        return this;
+    }
+
+    /**
+     * Builder method to set the executor delivering the removal notifications
+     *
+     * @param executor Removal executor
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> removalExecutor(Executor executor) {
+
+        mRemovalExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Builder method to set cache type
+     *
+     * @param cType @see CacheBuilder.CacheType
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> cacheType(CacheType cType) {
+
+        mCacheType = cType;
+        return this;
+    }
+
+    /**
+     * Builder method to set cache algorithm
+     *
+     * @param cAlgo @see CacheBuilder.CacheAlgorithm
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> cacheAlgorithm(CacheAlgorithm cAlgo) {
+
+        mCacheAlgo = cAlgo;
+        return  this;
+    }
+
+    /**
+     * Builder method to set the initial capacity of the cache
+     *
+     * @param initialCapacity Initial capacity
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> initialCapacity(int initialCapacity) {
+
+        if (initialCapacity > 0) {
+
+            mInitialCapacity = initialCapacity;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to split the in memory cache into segments, each with its own expiration index, eviction
+     * policy and maintenance lock, so that writers contend less and the segments are purged in parallel. Maximum
+     * size or weight and initial capacity are split evenly across the segments
+     *
+     * @param segmentCount Number of segments, rounded up to a power of two
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> segments(int segmentCount) {
+
+        if (segmentCount > 0) {
+
+            mSegmentCount = (segmentCount == 1) ? 1
+                    : Math.min(Integer.highestOneBit(segmentCount - 1) << 1, MAXIMUM_SEGMENTS);
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to purge only a few segments at a time, moving on to the next ones in round robin order with
+     * every purge. Bounds the pause of a single purge at the cost of reclaiming the expired entries later
+     *
+     * @param segmentsPerPurge Number of segments purged by each purge
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> segmentsPerPurge(int segmentsPerPurge) {
+
+        if (segmentsPerPurge > 0) {
+
+            mSegmentsPerPurge = segmentsPerPurge;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to bound the number of elements in the cache. Once reached, elements are evicted
+     * as per the cache algorithm; least recently used ones unless specified otherwise
+     *
+     * @param maximumSize Maximum number of elements
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> maximumSize(long maximumSize) {
+
+        if (maximumSize > 0) {
+
+            mMaximumSize = maximumSize;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to bound the total weight of the elements in the cache, as computed by the weigher. Once
+     * reached, elements are evicted as per the cache algorithm. Cannot be combined with the maximum size
+     *
+     * @param maximumWeight Maximum total weight of elements
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> maximumWeight(long maximumWeight) {
+
+        if (maximumWeight > 0) {
+
+            mMaximumWeight = maximumWeight;
+        }
+        return this;
+    }
+
+    /**
+     * Builder method to set the weigher of the elements, required by the maximum weight
+     *
+     * @param weigher @see Weigher
+     * @return CacheBuilder<K,V> instance
+     */
+    public CacheBuilder<K, V> weigher(Weigher<? super K, ? super V> weigher) {
+
+        if (weigher != null) {
+
+            mWeigher = weigher;
+        }
+        return this;
+    }
+
+    /**
+     * Final build method to create CacheManager
+     *
+     * @return Specific CacheManager<K,V> implementation instance
+     * @throws IllegalStateException If unsupported cache type is provided, the cache algorithm requires
+     * maximum size or weight which is not provided, maximum size and weight are combined, maximum weight and
+     * weigher are not provided together, refreshing is enabled without a cache loader, write behind is enabled
+     * without a cache writer, a second tier is provided without a size bounded in memory cache, or expire after
+     * access, a removal listener, a snapshot file or segments are used with another cache type or a second tier
+     */
+    public CacheManager<K, V> build() {
+
+        if (mMaximumSize != UNBOUNDED && mMaximumWeight != UNBOUNDED) {
+
+            throw new IllegalStateException("Maximum size and maximum weight cannot be combined!");
+        }
+        if ((mMaximumWeight != UNBOUNDED) != (mWeigher != null)) {
+
+            throw new IllegalStateException("Maximum weight and weigher must be provided together!");
+        }
+        if ((mCacheAlgo == CacheAlgorithm.LRU || mCacheAlgo == CacheAlgorithm.TINY_LFU) && !isBounded()) {
+
+            throw new IllegalStateException("Maximum size or weight is required for " + mCacheAlgo + " algorithm!");
+        }
+        if (mRefreshAfterWrite != NEVER && mCacheLoader == null) {
+
+            throw new IllegalStateException("Cache loader is required for refreshing!");
+        }
+        if (mWriteBehindDelay != NEVER && mCacheWriter == null) {
+
+            throw new IllegalStateException("Cache writer is required for write behind!");
+        }
+        if (mSecondTierType != null && (mCacheType != CacheType.IN_MEMORY_CACHE || !isBounded())) {
+
+            throw new IllegalStateException("Size bounded in memory cache is required as the first tier!");
+        }
+        if (mCacheAlgo == CacheAlgorithm.EXPIRE_AFTER_ACCESS
+                && (mCacheType != CacheType.IN_MEMORY_CACHE || mSecondTierType != null)) {
+
+            throw new IllegalStateException("Expire after access requires in memory cache without second tier!");
+        }
+        if (mRemovalListener != null && (mCacheType != CacheType.IN_MEMORY_CACHE || mSecondTierType != null)) {
+
+            throw new IllegalStateException("Removal listener requires in memory cache without second tier!");
+        }
+        if (mSnapshotFile != null && (mCacheType != CacheType.IN_MEMORY_CACHE || mSecondTierType != null)) {
+
+            throw new IllegalStateException("Snapshot requires in memory cache without second tier!");
+        }
+        if (mSegmentCount > 1 && (mCacheType != CacheType.IN_MEMORY_CACHE || mSecondTierType != null)) {
+
+            throw new IllegalStateException("Segments require in memory cache without second tier!");
+        }
+
+        CacheManager<K, V> cacheManagerImpl;
+
+        switch (mCacheType) {
+
+            case IN_MEMORY_CACHE: {
+
+                if (mSecondTierType != null) {
+
+                    cacheManagerImpl = new TieredCacheManager<K, V>(this,
+                            new TieredCache<K, V>(buildInMemoryCache(), buildSerializedCache(mSecondTierType), mTicker));
+                } else {
+
+                    FlatCache<K, V> cache = (mSegmentCount > 1) ? buildSegmentedCache() : buildInMemoryCache();
+                    if (mSnapshotFile != null && mSnapshotFile.exists()) {
+
+                        loadSnapshot(cache);
+                    }
+                    cacheManagerImpl = new InMemoryCacheManager<K, V>(this, cache);
+                }
+                break;
+            }
+            case OFF_HEAP:
+            case MAPPED_FILE: {
+
+                cacheManagerImpl = new InMemoryCacheManager<K, V>(this, buildSerializedCache(mCacheType));
+                break;
+            }
+            // TODO: Add other cache implementations here
+            default: {
+
+                throw new IllegalStateException("Unsupported cache type!");
+            }
+
+        }
+
+        return cacheManagerImpl;
+    }
+
+    /**
+     * Build method to create a CacheManager specialized for {@code long} keys, avoiding the boxing of keys and the
+     * wrapping of values on the hot path. Only the timed cache algorithm and the in memory cache type are supported
+     *
+     * @return LongKeyCacheManager<V> instance
+     * @throws IllegalStateException If another cache algorithm, cache type, a second tier, a removal listener, a
+     * snapshot file, a cache writer, segments or an invalidation bus are provided, or refreshing is enabled without
+     * a cache loader
+     */
+    public LongKeyCacheManager<V> buildLongKeyCacheManager() {
+
+        if (mCacheAlgo != CacheAlgorithm.TIMED_CACHE || mCacheType != CacheType.IN_MEMORY_CACHE
+                || mSecondTierType != null) {
+
+            throw new IllegalStateException("Long key cache supports timed in memory cache only!");
+        }
+        if (mRemovalListener != null) {
+
+            throw new IllegalStateException("Removal listener is not supported by long key cache!");
+        }
+        if (mSnapshotFile != null) {
+
+            throw new IllegalStateException("Snapshot is not supported by long key cache!");
+        }
+        if (mCacheWriter != null) {
+
+            throw new IllegalStateException("Cache writer is not supported by long key cache!");
+        }
+        if (mSegmentCount > 1) {
+
+            throw new IllegalStateException("Segments are not supported by long key cache!");
+        }
+        if (mInvalidationBus != null) {
+
+            throw new IllegalStateException("Invalidation bus is not supported by long key cache!");
+        }
+        if (mRefreshAfterWrite != NEVER && mCacheLoader == null) {
+
+            throw new IllegalStateException("Cache loader is required for refreshing!");
+        }
+
+        // Keys of a long key cache are long whatever the key type of the builder
+        @SuppressWarnings("unchecked")
+        CacheBuilder<Long, V> builder = (CacheBuilder<Long, V>) this;
+        return new LongKeyCacheManager<V>(builder, new LongKeyCache<V>(mInitialCapacity, mTicker));
+    }
+
+    /**
+     * Factory method to construct CacheObject
+     *
+     * @param value Value to be stored in cache
+     * @return Specific CacheObject<V> implementation instance
+     * @throws IllegalStateException If unsupported algorithm type is provided
+     */
+    public CacheObject<V> buildCacheObject(V value) {
+
+        CacheObject<V> cacheObj;
+
+        switch (mCacheAlgo) {
+
+            case TIMED_CACHE:
+            case EXPIRE_AFTER_ACCESS: {
+
+                cacheObj = new TimedCacheObject<V>(value, mTicker.read(), mMilliSecondsToLive);
+                break;
+            }
+            case LRU:
+            case TINY_LFU: {
+
+                cacheObj = new LruCacheObject<V>(value);
+                break;
+            }
+            // TODO: Add other algorithm implementations here
+            default: {
+
+                throw new IllegalStateException("Unsupported algorithm type!");
+            }
+        }
+
+        return cacheObj;
+    }
+
+    /**
+     * Factory method to construct the CacheObject of a value expiring at the given time
+     *
+     * @param value Value to be stored in cache
+     * @param creationTime Creation time in milli seconds
+     * @param expirationTime Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     * @return Timed cache object, or one which never expires
+     */
+    CacheObject<V> buildCacheObject(V value, long creationTime, long expirationTime) {
+
+        if (expirationTime == Long.MAX_VALUE) {
+
+            return new LruCacheObject<V>(value);
+        }
+        return new TimedCacheObject<V>(value, creationTime, expirationTime - creationTime);
+    }
+
+    /**
+     * Computes the expiration time of an element written now, as per the expiry if provided, else as per the
+     * cache algorithm
+     *
+     * @param key Key of the element
+     * @param value Value of the element
+     * @param creationTime Creation time of the value in milli seconds
+     * @return Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     * @throws IllegalArgumentException If the expiry returns a time to live which is not positive
+     */
+    long expirationTime(K key, V value, long creationTime) {
+
+        if (mExpiry == null) {
+
+            return expirationTime(creationTime);
+        }
+        long milliSecondsToLive = mExpiry.timeToLive(key, value);
+        if (milliSecondsToLive <= 0) {
+
+            throw new IllegalArgumentException("Time to live must be positive!");
+        }
+        return expirationTime(creationTime, milliSecondsToLive);
+    }
+
+    /**
+     * @param creationTime Creation time in milli seconds
+     * @param milliSecondsToLive Time to live, positive
+     * @return Expiration time in milli seconds, saturated at {@code Long.MAX_VALUE} which means never
+     */
+    static long expirationTime(long creationTime, long milliSecondsToLive) {
+
+        long expirationTime = creationTime + milliSecondsToLive;
+        return (expirationTime < creationTime) ? Long.MAX_VALUE : expirationTime;
+    }
+
+    /**
+     * Computes the expiration time of a value as per the cache algorithm, matching {@link #buildCacheObject(Object)}
+     *
+     * @param creationTime Creation time of the value in milli seconds
+     * @return Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     * @throws IllegalStateException If unsupported algorithm type is provided
+     */
+    long expirationTime(long creationTime) {
+
+        switch (mCacheAlgo) {
+
+            case TIMED_CACHE:
+            case EXPIRE_AFTER_ACCESS: {
+
+                return creationTime + mMilliSecondsToLive;
+            }
+            case LRU:
+            case TINY_LFU: {
+
+                return Long.MAX_VALUE;
+            }
+            default: {
+
+                throw new IllegalStateException("Unsupported algorithm type!");
+            }
+        }
+    }
+
+    /**
+     * @return Whether the number or the total weight of the elements is bounded
+     */
+    private boolean isBounded() {
+
+        return mMaximumSize != UNBOUNDED || mMaximumWeight != UNBOUNDED;
+    }
+
+    /**
+     * Creates the in memory cache, bounded by the eviction policy of the cache algorithm if maximum size or
+     * weight is provided
+     */
+    private InMemoryCache<K, V> buildInMemoryCache() {
+
+        InMemoryCache<K, V> cache = buildSegment(1);
+        if (mRemovalListener != null) {
+
+            cache.setRemovalNotifier(new RemovalNotifier<K, V>(mRemovalListener, getRemovalExecutor()));
+        }
+        return cache;
+    }
+
+    /**
+     * Creates the segmented in memory cache. Segments share one removal notifier, so the listener is still never
+     * called concurrently
+     */
+    private SegmentedCache<K, V> buildSegmentedCache() {
+
+        RemovalNotifier<K, V> notifier = null;
+        if (mRemovalListener != null) {
+
+            notifier = new RemovalNotifier<K, V>(mRemovalListener, getRemovalExecutor());
+        }
+        InMemoryCache<K, V>[] segments = newSegments(mSegmentCount);
+        for (int i = 0; i < segments.length; ++i) {
+
+            segments[i] = buildSegment(mSegmentCount);
+            if (notifier != null) {
+
+                segments[i].setRemovalNotifier(notifier);
+            }
+        }
+        return new SegmentedCache<K, V>(segments, mSegmentsPerPurge);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> InMemoryCache<K, V>[] newSegments(int segmentCount) {
+
+        return new InMemoryCache[segmentCount];
+    }
+
+    /**
+     * Creates an in memory cache holding its share of the capacity and maximum size of the given number of segments
+     */
+    private InMemoryCache<K, V> buildSegment(int segmentCount) {
+
+        int initialCapacity = (int) share(mInitialCapacity, segmentCount);
+        if (!isBounded()) {
+
+            return new InMemoryCache<K, V>(initialCapacity, UNBOUNDED, null, null,
+                    mCacheAlgo == CacheAlgorithm.EXPIRE_AFTER_ACCESS, mTicker);
+        }
+
+        long maximum = share((mWeigher != null) ? mMaximumWeight : mMaximumSize, segmentCount);
+        EvictionPolicy<K, V> policy;
+        if (mCacheAlgo == CacheAlgorithm.TINY_LFU) {
+
+            // Weight says little of the number of entries, so the frequency sketch is sized for the expected ones
+            long expectedEntries = mMaximumSize;
+            if (mWeigher != null) {
+
+                expectedEntries = Math.min(mMaximumWeight, Math.max(mInitialCapacity, MINIMUM_WEIGHED_SKETCH_SIZE));
+            }
+            policy = new WTinyLfuPolicy<K, V>(maximum, share(expectedEntries, segmentCount));
+        } else {
+
+            policy = new LruPolicy<K, V>();
+        }
+        return new InMemoryCache<K, V>(initialCapacity, maximum, policy, mWeigher,
+                mCacheAlgo == CacheAlgorithm.EXPIRE_AFTER_ACCESS, mTicker);
+    }
+
+    /**
+     * @return Share of a total per segment, rounded up
+     */
+    private static long share(long total, int segmentCount) {
+
+        return total / segmentCount + ((total % segmentCount == 0) ? 0 : 1);
+    }
+
+    /**
+     * Warms up the cache from the snapshot file. Warm start is best effort, so a snapshot which can not be read
+     * leaves the cache with the entries loaded until then
+     */
+    private void loadSnapshot(FlatCache<K, V> cache) {
+
+        try {
+            new CacheSnapshot<K, V>(mKeySerializer, mValueSerializer, mTicker).load(cache, mSnapshotFile,
+                    Runtime.getRuntime().availableProcessors());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates a cache storing serialized entries outside the java heap
+     *
+     * @throws IllegalStateException If the cache type does not store serialized entries
+     */
+    private Cache<K, CacheObject<V>> buildSerializedCache(CacheType cacheType) {
+
+        switch (cacheType) {
+
+            case OFF_HEAP: {
+
+                return new OffHeapCache<K, V>(mOffHeapCapacity, mInitialCapacity, mKeySerializer, mValueSerializer,
+                        mTicker);
+            }
+            case MAPPED_FILE: {
+
+                File directory = (mFileDirectory != null) ? mFileDirectory : createTempDirectory();
+                return new MappedFileCache<K, V>(directory, mSegmentFileSize, mInitialCapacity,
+                        mKeySerializer, mValueSerializer, mTicker);
+            }
+            default: {
+
+                throw new IllegalStateException("Unsupported second tier type!");
+            }
+        }
+    }
+
+    /**
+     * Creates a new temporary directory, deleted on exit
+     *
+     * @throws IllegalStateException If the directory could not be created
+     */
+    private static File createTempDirectory() {
+
+        try {
+            File directory = File.createTempFile("cache", "");
+            if (directory.delete() && directory.mkdir()) {
+
+                directory.deleteOnExit();
+                return directory;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create cache directory!", e);
+        }
+        throw new IllegalStateException("Unable to create cache directory!");
+    }
+
+    /**
+     * Private constructor
+     */
+    private CacheBuilder() {
+
+        mInitialCapacity = DEFAULT_INITIAL_CAPACITY;
+        mSegmentCount = 1;
+        mSegmentsPerPurge = Integer.MAX_VALUE;
+        mMaximumSize = UNBOUNDED;
+        mMaximumWeight = UNBOUNDED;
+        mMilliSecondsToLive = DEFAULT_TIME_TO_LIVE;
+        mPurgeFrequency = DEFAULT_PURGE_FREQUENCY;
+        mCacheType = CacheType.IN_MEMORY_CACHE;
+        mCacheAlgo = CacheAlgorithm.TIMED_CACHE;
+        mMaintenanceScheduler = MaintenanceScheduler.sharedScheduler();
+        mRefreshAfterWrite = NEVER;
+        mWriteBehindDelay = NEVER;
+        mWriteBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+        mWriteBehindBufferSize = DEFAULT_WRITE_BEHIND_BUFFER_SIZE;
+        mInvalidationDelay = DEFAULT_INVALIDATION_DELAY;
+        mInvalidationBatchSize = DEFAULT_INVALIDATION_BATCH_SIZE;
+        mOffHeapCapacity = DEFAULT_OFF_HEAP_CAPACITY;
+        mKeySerializer = new JavaSerializer<K>();
+        mValueSerializer = new JavaSerializer<V>();
+        mSegmentFileSize = DEFAULT_SEGMENT_FILE_SIZE;
+        mTicker = Ticker.systemTicker();
+    }
+
+    /**
+     * Holder of the removal executor used when none is provided, so that its threads are only created on first use
+     */
+    private static final class DefaultRemovalExecutor {
+
+        private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread t = new Thread(r, "cache-removal-" + sThreadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Holder of the refresh executor used when none is provided, so that its threads are only created on first use
+     */
+    private static final class DefaultRefreshExecutor {
+
+        private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread t = new Thread(r, "cache-refresh-" + sThreadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
 }
@@ -0,0 +1,67 @@
+package assignment.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Computes the values of the keys missing in the cache. When configured through
+ * {@link CacheBuilder#cacheLoader(CacheLoader)}, {@link CacheManager#get(Object)} populates the cache by itself;
+ * a missing value is loaded exactly once per key while the concurrent readers of the same key wait for the result.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .cacheLoader(new CacheLoader<Long, String>() {
+ *             public String load(Long key) throws Exception {
+ *                 return backend.fetch(key);
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public abstract class CacheLoader<K, V> {
+
+    /**
+     * Computes the value of a key
+     *
+     * @param key Key missing in the cache
+     * @return Value to be cached, {@code null} if there is no value in which case nothing is cached
+     * @throws Exception If the value could not be loaded, rethrown to the readers as {@link CacheLoaderException}
+     */
+    public abstract V load(K key) throws Exception;
+
+    /**
+     * Computes the values of multiple keys, used by {@link CacheManager#getAll(Iterable)} for the keys missing in
+     * the cache. By default loads the keys one by one; override to fetch all of them in one backend round trip
+     *
+     * @param keys Keys missing in the cache
+     * @return Map of the keys to their values, keys without a value may be left out
+     * @throws Exception If the values could not be loaded, rethrown to the readers as {@link CacheLoaderException}
+     */
+    public Map<K, V> loadAll(Iterable<? extends K> keys) throws Exception {
+
+        Map<K, V> values = new HashMap<K, V>();
+        for (K key : keys) {
+
+            values.put(key, load(key));
+        }
+        return values;
+    }
+
+    /**
+     * Computes a new value of a key which is being refreshed, see {@link CacheBuilder#refreshAfterWrite}.
+     * Called on the refresh executor; by default delegates to {@link #load(Object)}
+     *
+     * @param key Key being refreshed
+     * @param oldValue Value currently cached
+     * @return New value to be cached, {@code null} to keep the old value till it expires
+     * @throws Exception If the value could not be reloaded, old value is kept till it expires
+     */
+    public V reload(K key, V oldValue) throws Exception {
+
+        return load(key);
+    }
+}
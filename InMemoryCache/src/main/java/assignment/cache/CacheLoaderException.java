@@ -0,0 +1,14 @@
+package assignment.cache;
+
+/**
+ * <p>Thrown to the readers of a key when its {@link CacheLoader} fails, the cause is the failure of the loader
+ */
+public class CacheLoaderException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CacheLoaderException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+}
@@ -1,5 +1,8 @@
 package assignment.cache;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * <p>Interface for the Cache Manager, which is responsible for maintaining the cache
  * Implementations of this interface are responsible for encapsulating the value to be stored into a cache object
@@ -17,18 +20,76 @@ public interface CacheManager<K, V> {
 
     V put(K key, V value);
 
+    /**
+     * Stores the value with its own time to live, overriding the time to live and the {@link Expiry} of the builder
+     *
+     * @param key Key to be stored
+     * @param value Value to be stored
+     * @param timeToLive Time to live of the value
+     * @param unit Time unit
+     * @return Value previously associated with the key or {@code null}
+     * @throws IllegalArgumentException If the time to live is not positive
+     */
+    V put(K key, V value, long timeToLive, TimeUnit unit);
+
+    /**
+     * Stores all the entries, cheaper than storing them one by one
+     *
+     * @param entries Entries to be stored
+     */
+    void putAll(Map<? extends K, ? extends V> entries);
+
     void clearCache();
 
     boolean containsKey(Object key);
 
+    /**
+     * Returns the value of the key, loading it first if it is missing and a {@link CacheLoader} is configured
+     *
+     * @param key Key to look up
+     * @return Value or {@code null} if not present
+     */
     V get(Object key);
 
+    /**
+     * Returns the values of the keys, cheaper than looking them up one by one. If a {@link CacheLoader} is
+     * configured, all the missing keys are loaded by a single {@link CacheLoader#loadAll(Iterable)} call
+     *
+     * @param keys Keys to look up
+     * @return Map of the keys having a value to their values, in the iteration order of keys
+     */
+    Map<K, V> getAll(Iterable<? extends K> keys);
+
     boolean isCacheEmpty();
 
     V remove(Object key);
 
+    /**
+     * Removes all the keys, cheaper than removing them one by one
+     *
+     * @param keys Keys to be removed
+     */
+    void removeAll(Iterable<?> keys);
+
     int cacheSize();
 
+    /**
+     * Returns a snapshot of the statistics, all zero unless {@link CacheBuilder#recordStats()} is enabled
+     *
+     * @return @see CacheStats
+     */
+    CacheStats stats();
+
+    /**
+     * Writes the live entries with their remaining time to live to the snapshot file of the builder, which is
+     * loaded by the next build with the same snapshot file @see CacheBuilder#snapshotFile(java.io.File)
+     *
+     * @return Number of entries written
+     * @throws IllegalStateException If no snapshot file is provided, the cache is not an in memory one or the file
+     * could not be written
+     */
+    int writeSnapshot();
+
     /**
      * Method must be called in order to stop all the
      * activities of CacheManager at the end
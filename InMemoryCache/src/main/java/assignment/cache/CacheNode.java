@@ -0,0 +1,107 @@
+package assignment.cache;
+
+/**
+ * <p>Entry stored in {@link InMemoryCache}. Along with the key, the value and its creation and expiration time, node
+ * carries the links used by the expiration index ({@link TimerWheel}) and by the eviction policy
+ * ({@link AccessOrderDeque}) so that it can be reordered or unlinked in constant time.
+ *
+ * <p>Node is the cache object of its value itself, so storing a value allocates no wrapper besides the node.
+ *
+ * NOTE: Links are only read or modified while holding the maintenance lock of the owning cache
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class CacheNode<K, V> implements CacheObject<V>, Timestamped {
+
+    final K mKey;
+    final V mValue;
+    // Time in milli seconds at which the value was created
+    final long mCreationTime;
+    // Time in milli seconds at which the value expires, Long.MAX_VALUE if it never does. Moved forward on access
+    // if the cache expires after access, only while holding the maintenance lock
+    volatile long mExpirationTime;
+    // Time to live of the value, by which an access moves the expiration time forward
+    final long mTimeToLive;
+    // Time in milli seconds of the last read if the cache expires after access, written by the readers
+    volatile long mReadTime;
+    // Weight of the entry, 1 unless the cache is weighed
+    final int mWeight;
+
+    // Set once the node has been removed from the map
+    volatile boolean mRetired;
+
+    CacheNode<K, V> mPrevInTime;
+    CacheNode<K, V> mNextInTime;
+
+    CacheNode<K, V> mPrevInAccess;
+    CacheNode<K, V> mNextInAccess;
+    // Region of the eviction policy the node belongs to, if the policy has more than one
+    byte mQueueType;
+
+    CacheNode(K key, V value, long creationTime, long expirationTime, int weight) {
+
+        mKey = key;
+        mValue = value;
+        mCreationTime = creationTime;
+        mExpirationTime = expirationTime;
+        mTimeToLive = (expirationTime == Long.MAX_VALUE) ? Long.MAX_VALUE : expirationTime - creationTime;
+        mReadTime = creationTime;
+        mWeight = weight;
+    }
+
+    /**
+     * Constructor for the sentinel of a timer wheel bucket or an access order deque
+     */
+    CacheNode() {
+
+        this(null, null, 0, Long.MAX_VALUE, 0);
+        mPrevInTime = this;
+        mNextInTime = this;
+        mPrevInAccess = this;
+        mNextInAccess = this;
+    }
+
+    @Override
+    public V getCache() {
+
+        return mValue;
+    }
+
+    @Override
+    public boolean isExpired() {
+
+        return System.currentTimeMillis() > getTimeOfExpiry();
+    }
+
+    @Override
+    public long getTimeOfCreation() {
+
+        return mCreationTime;
+    }
+
+    /**
+     * @return Expiration time, moved forward by a read the maintenance has not replayed yet
+     */
+    @Override
+    public long getTimeOfExpiry() {
+
+        long expirationTime = mExpirationTime;
+        long readTime = mReadTime;
+        if (readTime != mCreationTime && expirationTime != Long.MAX_VALUE) {
+
+            return Math.max(expirationTime, CacheBuilder.expirationTime(readTime, mTimeToLive));
+        }
+        return expirationTime;
+    }
+
+    boolean isScheduled() {
+
+        return mNextInTime != null;
+    }
+
+    boolean isInAccessOrder() {
+
+        return mNextInAccess != null;
+    }
+}
@@ -0,0 +1,280 @@
+package assignment.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Binary snapshot of the live entries of an {@link InMemoryCache} or a {@link SegmentedCache}, written to a local
+ * file so that a restarted process can start warm instead of sending every first read to the backend.
+ *
+ * <p>Snapshot starts with a header (magic number, version and the time it was written) followed by one record per
+ * entry: its remaining time to live, its time to live, the key and value lengths, then the key and value serialized by the
+ * {@link Serializer}s of the builder. A zero byte ends the snapshot, so a truncated file is detected. A snapshot is
+ * written to a temporary file first and renamed, so a crash while writing leaves the previous snapshot intact.
+ * A loaded entry expires after its remaining time to live and keeps its time to live, which an entry expiring after
+ * access slides on every read. Snapshots of version 1 did not hold the time to live, their entries get the
+ * remaining one.
+ *
+ * <p>Loading streams the file once. The reading thread only looks at the remaining time to live of a record and
+ * skips the bytes of the ones which have expired since the snapshot was written, so they are never deserialized.
+ * Live records are handed over in batches to a pool of loader threads which deserialize and store them in parallel;
+ * the pool's queue is bounded, so a reader running ahead of the loaders stores the batch itself.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class CacheSnapshot<K, V> {
+
+    private static final int MAGIC = 0x43414348;
+    private static final int VERSION = 2;
+    // Version without the time to live of the records
+    private static final int VERSION_1 = 1;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+    // Remaining time to live of an entry which never expires
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final int BATCH_SIZE = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final Serializer<K> mKeySerializer;
+    private final Serializer<V> mValueSerializer;
+    private final Ticker mTicker;
+
+    CacheSnapshot(Serializer<K> keySerializer, Serializer<V> valueSerializer, Ticker ticker) {
+
+        mKeySerializer = keySerializer;
+        mValueSerializer = valueSerializer;
+        mTicker = ticker;
+    }
+
+    /**
+     * Writes the live entries of the cache, entries written concurrently may or may not be included
+     *
+     * @param nodes Nodes of the cache to be written
+     * @param file Snapshot file, replaced once the snapshot is complete
+     * @return Number of entries written
+     * @throws IOException If the snapshot could not be written
+     */
+    int write(Iterable<CacheNode<K, V>> nodes, File file) throws IOException {
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        long now = mTicker.read();
+        int count = 0;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile),
+                BUFFER_SIZE));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+
+            for (CacheNode<K, V> node : nodes) {
+
+                long expirationTime = node.getTimeOfExpiry();
+                if (expirationTime < now) {
+
+                    continue;
+                }
+                byte[] keyBytes = mKeySerializer.serialize(node.mKey);
+                byte[] valueBytes = mValueSerializer.serialize(node.mValue);
+
+                out.writeByte(RECORD);
+                out.writeLong((expirationTime == Long.MAX_VALUE) ? NEVER : expirationTime - now);
+                out.writeLong(node.mTimeToLive);
+                out.writeInt(keyBytes.length);
+                out.writeInt(valueBytes.length);
+                out.write(keyBytes);
+                out.write(valueBytes);
+                ++count;
+            }
+            out.writeByte(END);
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+
+            throw new IOException("Unable to replace snapshot file: " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Loads the live entries of a snapshot into the cache, skipping the ones which have expired since
+     *
+     * @param cache Cache to be loaded
+     * @param file Snapshot file
+     * @param threadCount Number of loader threads
+     * @return Number of entries loaded
+     * @throws IOException If the snapshot is not readable, corrupt or truncated; entries read until then are loaded
+     */
+    int load(final FlatCache<K, V> cache, File file, int threadCount) throws IOException {
+
+        final long now = mTicker.read();
+        final AtomicInteger loaded = new AtomicInteger();
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        // Bounded queue and caller runs policy keep at most a few batches in memory
+        ThreadPoolExecutor loaders = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(2 * threadCount), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+
+                        Thread t = new Thread(r, "cache-snapshot-loader-" + sThreadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            int version = (in.readInt() == MAGIC) ? in.readInt() : -1;
+            if (version != VERSION && version != VERSION_1) {
+
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            long elapsed = Math.max(0, now - in.readLong());
+
+            List<byte[]> batch = new ArrayList<byte[]>(2 * BATCH_SIZE);
+            List<Long> times = new ArrayList<Long>(2 * BATCH_SIZE);
+            byte marker;
+            while ((marker = in.readByte()) == RECORD) {
+
+                long remaining = in.readLong();
+                long timeToLive = (version == VERSION_1) ? remaining : in.readLong();
+                int keyLength = in.readInt();
+                int valueLength = in.readInt();
+                if (remaining != NEVER && remaining < elapsed) {
+
+                    skipFully(in, keyLength + valueLength);
+                    continue;
+                }
+
+                byte[] keyBytes = new byte[keyLength];
+                byte[] valueBytes = new byte[valueLength];
+                in.readFully(keyBytes);
+                in.readFully(valueBytes);
+                batch.add(keyBytes);
+                batch.add(valueBytes);
+                if (remaining == NEVER) {
+
+                    times.add(now);
+                    times.add(Long.MAX_VALUE);
+                } else {
+
+                    // Created as long ago as its time to live has been used up, so the time to live is kept
+                    long expirationTime = CacheBuilder.expirationTime(now, remaining - elapsed);
+                    times.add(expirationTime - Math.max(timeToLive, remaining - elapsed));
+                    times.add(expirationTime);
+                }
+
+                if (times.size() == 2 * BATCH_SIZE) {
+
+                    loaders.execute(new LoadTask(cache, batch, times, loaded, failure));
+                    batch = new ArrayList<byte[]>(2 * BATCH_SIZE);
+                    times = new ArrayList<Long>(2 * BATCH_SIZE);
+                }
+            }
+            if (!times.isEmpty()) {
+
+                loaders.execute(new LoadTask(cache, batch, times, loaded, failure));
+            }
+            if (marker != END) {
+
+                throw new IOException("Corrupt cache snapshot: " + file);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated cache snapshot: " + file, e);
+        } finally {
+            in.close();
+            loaders.shutdown();
+            awaitTermination(loaders);
+        }
+
+        if (failure.get() != null) {
+
+            throw new IOException("Unable to load cache snapshot: " + file, failure.get());
+        }
+        return loaded.get();
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+
+        int remaining = length;
+        while (remaining > 0) {
+
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor loaders) {
+
+        try {
+            loaders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deserializes and stores a batch of records, given the key and value bytes and the creation and expiration time
+     * of each record
+     */
+    private final class LoadTask implements Runnable {
+
+        private final FlatCache<K, V> mCache;
+        private final List<byte[]> mBatch;
+        private final List<Long> mTimes;
+        private final AtomicInteger mLoaded;
+        private final AtomicReference<RuntimeException> mFailure;
+
+        LoadTask(FlatCache<K, V> cache, List<byte[]> batch, List<Long> times, AtomicInteger loaded,
+                 AtomicReference<RuntimeException> failure) {
+
+            mCache = cache;
+            mBatch = batch;
+            mTimes = times;
+            mLoaded = loaded;
+            mFailure = failure;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+                for (int i = 0; i < mBatch.size(); i += 2) {
+
+                    K key = mKeySerializer.deserialize(ByteBuffer.wrap(mBatch.get(i)));
+                    V value = mValueSerializer.deserialize(ByteBuffer.wrap(mBatch.get(i + 1)));
+                    mCache.putValue(key, value, mTimes.get(i), mTimes.get(i + 1));
+                    mLoaded.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                mFailure.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package assignment.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Snapshot of the statistics of a {@link CacheManager}, see {@link CacheBuilder#recordStats()}.
+ *
+ * <p>Counts are cumulative since the cache manager was created. A lookup is a read of a single key by
+ * {@code get} or {@code getAll}; a load is a call of the {@link CacheLoader}, including the refreshes. Evictions
+ * are the entries removed by the cache itself, either expired or for its maximum size or capacity. Latency
+ * percentiles are precise within a factor of two.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .recordStats()
+ *         .build();
+ * ...
+ * CacheStats stats = cm.stats();
+ * double hitRate = stats.getHitRate();
+ * }</pre>
+ */
+public final class CacheStats {
+
+    static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0,
+            new long[LatencyHistogram.BUCKET_COUNT], new long[LatencyHistogram.BUCKET_COUNT]);
+
+    private final long mHitCount;
+    private final long mMissCount;
+    private final long mLoadSuccessCount;
+    private final long mLoadFailureCount;
+    private final long mTotalLoadTime;
+    private final long mEvictionCount;
+    private final long mPurgeCount;
+    private final long mTotalPurgeTime;
+    private final long[] mLoadLatencies;
+    private final long[] mPurgeLatencies;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+               long evictionCount, long purgeCount, long totalPurgeTime, long[] loadLatencies, long[] purgeLatencies) {
+
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mLoadSuccessCount = loadSuccessCount;
+        mLoadFailureCount = loadFailureCount;
+        mTotalLoadTime = totalLoadTime;
+        mEvictionCount = evictionCount;
+        mPurgeCount = purgeCount;
+        mTotalPurgeTime = totalPurgeTime;
+        mLoadLatencies = loadLatencies;
+        mPurgeLatencies = purgeLatencies;
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getRequestCount() {
+        return mHitCount + mMissCount;
+    }
+
+    /**
+     * @return Share of the lookups which found a value, 1 if there was no lookup
+     */
+    public double getHitRate() {
+
+        long requestCount = getRequestCount();
+        return (requestCount == 0) ? 1.0 : (double) mHitCount / requestCount;
+    }
+
+    /**
+     * @return Share of the lookups which did not find a value, 0 if there was no lookup
+     */
+    public double getMissRate() {
+
+        long requestCount = getRequestCount();
+        return (requestCount == 0) ? 0.0 : (double) mMissCount / requestCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return mLoadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return mLoadFailureCount;
+    }
+
+    /**
+     * @return Time spent loading in nano seconds
+     */
+    public long getTotalLoadTime() {
+        return mTotalLoadTime;
+    }
+
+    /**
+     * @return Average time of a load in nano seconds, 0 if there was no load
+     */
+    public double getAverageLoadPenalty() {
+
+        long loadCount = mLoadSuccessCount + mLoadFailureCount;
+        return (loadCount == 0) ? 0.0 : (double) mTotalLoadTime / loadCount;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Load latency in nano seconds below which the given percentage of the loads completed
+     */
+    public long getLoadLatencyPercentile(double percentile) {
+
+        return LatencyHistogram.percentile(mLoadLatencies, percentile);
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public long getPurgeCount() {
+        return mPurgeCount;
+    }
+
+    /**
+     * @return Time spent purging in nano seconds
+     */
+    public long getTotalPurgeTime() {
+        return mTotalPurgeTime;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Purge duration in nano seconds below which the given percentage of the purges completed
+     */
+    public long getPurgeLatencyPercentile(double percentile) {
+
+        return LatencyHistogram.percentile(mPurgeLatencies, percentile);
+    }
+
+    @Override
+    public String toString() {
+
+        return "CacheStats{hitCount=" + mHitCount + ", missCount=" + mMissCount
+                + ", hitRate=" + getHitRate()
+                + ", loadSuccessCount=" + mLoadSuccessCount + ", loadFailureCount=" + mLoadFailureCount
+                + ", averageLoadPenalty=" + TimeUnit.NANOSECONDS.toMicros((long) getAverageLoadPenalty()) + "us"
+                + ", loadLatencyP99=" + TimeUnit.NANOSECONDS.toMicros(getLoadLatencyPercentile(99)) + "us"
+                + ", evictionCount=" + mEvictionCount + ", purgeCount=" + mPurgeCount
+                + ", purgeLatencyP99=" + TimeUnit.NANOSECONDS.toMicros(getPurgeLatencyPercentile(99)) + "us}";
+    }
+}
@@ -0,0 +1,58 @@
+package assignment.cache;
+
+import java.util.Map;
+
+/**
+ * <p>Writes the values put into the cache to a backing store. When configured through
+ * {@link CacheBuilder#cacheWriter(CacheWriter)}, {@link CacheManager#put(Object, Object)} and
+ * {@link CacheManager#putAll(java.util.Map)} write the values through to the store before caching them, so a failed
+ * store write is never cached. With {@link CacheBuilder#writeBehind(long, java.util.concurrent.TimeUnit)}, values are
+ * cached right away and written to the store later in batches, see {@link WriteBehindQueue}.
+ *
+ * <p>Values computed by the {@link CacheLoader} come from the store and are not written back. Removals are not
+ * propagated to the store.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .cacheWriter(new CacheWriter<Long, String>() {
+ *             public void write(Long key, String value) throws Exception {
+ *                 backend.store(key, value);
+ *             }
+ *         })
+ *         .writeBehind(100, TimeUnit.MILLISECONDS)
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public abstract class CacheWriter<K, V> {
+
+    /**
+     * Writes the value of a key to the store
+     *
+     * @param key Key being written
+     * @param value Value being written
+     * @throws Exception If the value could not be written, rethrown to the writer of the cache as
+     * {@link CacheWriterException} with write through
+     */
+    public abstract void write(K key, V value) throws Exception;
+
+    /**
+     * Writes the values of multiple keys, used by {@link CacheManager#putAll(java.util.Map)} with write through and
+     * by every flush with write behind. By default writes the keys one by one; override to store all of them in one
+     * backend round trip
+     *
+     * @param entries Map of the keys to their values
+     * @throws Exception If the values could not be written; with write behind, the ones not overwritten since are
+     * retried by a later flush
+     */
+    public void writeAll(Map<K, V> entries) throws Exception {
+
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+}
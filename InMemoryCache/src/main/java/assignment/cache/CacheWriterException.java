@@ -0,0 +1,15 @@
+package assignment.cache;
+
+/**
+ * <p>Thrown to the writers of a key when its {@link CacheWriter} fails to write it through, the cause is the failure
+ * of the writer
+ */
+public class CacheWriterException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CacheWriterException(String message, Throwable cause) {
+
+        super(message, cause);
+    }
+}
@@ -0,0 +1,20 @@
+package assignment.cache;
+
+/**
+ * <p>Listener notified of the entries an {@link InMemoryCache} removes on its own, by eviction or expiry.
+ *
+ * NOTE: Called holding the maintenance lock of the cache, so implementations must not call back into the
+ * cache methods which block on that lock, such as clearing or purging
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+interface EvictionListener<K, V> {
+
+    /**
+     * @param key Key of the removed entry
+     * @param value Value of the removed entry
+     * @param expired {@code true} if removed since expired, {@code false} if evicted for the maximum size
+     */
+    void onEviction(K key, V value, boolean expired);
+}
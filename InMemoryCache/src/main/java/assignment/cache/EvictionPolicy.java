@@ -0,0 +1,46 @@
+package assignment.cache;
+
+/**
+ * <p>Policy deciding which entry of a size bounded {@link InMemoryCache} is evicted once the maximum size is reached.
+ * Size is the total weight of the entries, which is their number unless the cache is weighed.
+ *
+ * <p>The cache replays the buffered reads and writes into the policy in batches, so implementations never
+ * have to deal with concurrency; all the methods are called holding the maintenance lock of the cache.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+interface EvictionPolicy<K, V> {
+
+    /**
+     * Records a node which is newly added to the cache
+     */
+    void onAdd(CacheNode<K, V> node);
+
+    /**
+     * Records a read of a node. Node might have been evicted already, such reads must be ignored
+     */
+    void onAccess(CacheNode<K, V> node);
+
+    /**
+     * Forgets a node removed from the cache. Node might have been evicted already, such calls must be ignored
+     */
+    void onRemove(CacheNode<K, V> node);
+
+    /**
+     * Selects the node to be evicted next, the node stays tracked until {@link #onRemove(CacheNode)} is called
+     *
+     * @return Victim node or {@code null} if the policy tracks no nodes
+     */
+    CacheNode<K, V> victim();
+
+    /**
+     * @return Total weight of the nodes tracked by the policy
+     */
+    long weightedSize();
+
+    /**
+     * Forgets all the nodes
+     */
+    void clear();
+}
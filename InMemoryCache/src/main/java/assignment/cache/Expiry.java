@@ -0,0 +1,36 @@
+package assignment.cache;
+
+/**
+ * <p>Computes the time to live of each cache entry from its key and value, so that a single CacheManager can hold
+ * entries of different lifetimes; see {@link CacheBuilder#expiry(Expiry)}. It replaces the time to live of the
+ * builder for the values written by {@link CacheManager#put(Object, Object)},
+ * {@link CacheManager#putAll(java.util.Map)} and the loader, while
+ * {@link CacheManager#put(Object, Object, long, java.util.concurrent.TimeUnit)} takes the time to live of the call.
+ *
+ * <p>Time to live is computed once when the entry is written, by the writing thread, so implementations must be
+ * cheap and thread-safe.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<String,Session> cm = CacheBuilder.newBuilder()
+ *         .expiry(new Expiry<String, Session>() {
+ *             public long timeToLive(String key, Session value) {
+ *                 return value.isGuest() ? TimeUnit.MINUTES.toMillis(5) : TimeUnit.HOURS.toMillis(8);
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public interface Expiry<K, V> {
+
+    /**
+     * @param key Key of the entry
+     * @param value Value of the entry
+     * @return Time to live in milli seconds counted from the write, {@code Long.MAX_VALUE} if the entry never
+     * expires. Must be positive
+     */
+    long timeToLive(K key, V value);
+}
@@ -0,0 +1,37 @@
+package assignment.cache;
+
+import java.util.Map;
+
+/**
+ * <p>Cache storing the values in its own entries along with their creation and expiration time, so that a value
+ * can be written without wrapping it into a {@link CacheObject} first. Cache objects returned by such a cache are
+ * its entries themselves.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+interface FlatCache<K, V> extends Cache<K, CacheObject<V>> {
+
+    /**
+     * Stores a value without a cache object
+     *
+     * @param key Key to be stored
+     * @param value Value to be stored
+     * @param creationTime Creation time in milli seconds
+     * @param expirationTime Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     * @return Entry previously associated with the key or {@code null}
+     */
+    CacheObject<V> putValue(K key, V value, long creationTime, long expirationTime);
+
+    /**
+     * Version of {@link #putIfAbsent(Object, Object)} storing a value without a cache object
+     *
+     * @return Entry associated with the key, even if expired, or {@code null} if the given value was stored
+     */
+    CacheObject<V> putValueIfAbsent(K key, V value, long creationTime, long expirationTime);
+
+    /**
+     * Bulk version of {@link #putValue(Object, Object, long, long)}, all the values share the same times
+     */
+    void putAllValues(Map<? extends K, ? extends V> entries, long creationTime, long expirationTime);
+}
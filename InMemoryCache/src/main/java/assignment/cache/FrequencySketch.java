@@ -0,0 +1,133 @@
+package assignment.cache;
+
+/**
+ * <p>Count-min sketch estimating the access frequency of keys, used by {@link WTinyLfuPolicy} to decide whether a
+ * new entry is worth admitting at the cost of evicting an existing one.
+ *
+ * <p>Counters are 4 bits wide and packed sixteen to a {@code long}; each key maps to four counters selected by
+ * independent hash functions, and the estimate is the minimum of those. Once the number of recorded
+ * accesses reaches the sample size, all the counters are halved so that the sketch forgets old history.
+ *
+ * NOTE: This class is not thread-safe, callers are required to hold the maintenance lock of the cache
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L,
+            0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L
+    };
+
+    // Clears the bit which would overflow into the neighbouring counter after halving
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_COUNT = 15;
+
+    private final long[] mTable;
+    private final int mTableMask;
+    private final int mSampleSize;
+    private int mSize;
+
+    /**
+     * @param maximumSize Maximum size of the cache, used for sizing the sketch
+     */
+    FrequencySketch(long maximumSize) {
+
+        int maximum = (int) Math.min(Math.max(maximumSize, 1L), 1 << 30);
+        int tableSize = Math.max(Integer.highestOneBit(maximum - 1) << 1, 8);
+        mTable = new long[tableSize];
+        mTableMask = tableSize - 1;
+        mSampleSize = (maximum <= Integer.MAX_VALUE / 10) ? 10 * maximum : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param key Key to be estimated
+     * @return Estimated number of accesses of the key, at most 15
+     */
+    int frequency(Object key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAXIMUM_COUNT;
+        for (int i = 0; i < 4; ++i) {
+
+            int index = indexOf(hash, i);
+            int count = (int) ((mTable[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the key, ages the sketch once the sample size is reached
+     *
+     * @param key Key which was accessed
+     */
+    void increment(Object key) {
+
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; ++i) {
+
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && (++mSize == mSampleSize)) {
+
+            reset();
+        }
+    }
+
+    /**
+     * Increments the counter unless it is already saturated
+     *
+     * @param i Index of the long in the table
+     * @param j Index of the counter within the long
+     * @return {@code true} if incremented, else {@code false}
+     */
+    private boolean incrementAt(int i, int j) {
+
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((mTable[i] & mask) != mask) {
+
+            mTable[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves all the counters, the odd counters lose their remainder which is corrected in the size
+     */
+    private void reset() {
+
+        int oddCounters = 0;
+        for (int i = 0; i < mTable.length; ++i) {
+
+            oddCounters += Long.bitCount(mTable[i] & ONE_MASK);
+            mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+        }
+        mSize = (mSize >>> 1) - (oddCounters >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & mTableMask;
+    }
+
+    /**
+     * Applies a supplemental hash function to defend against poor quality hash codes
+     */
+    private static int spread(int x) {
+
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
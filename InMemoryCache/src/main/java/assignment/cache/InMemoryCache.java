@@ -1,31 +1,189 @@
 package assignment.cache;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>In memory cache implementation
  * Internally uses ConcurrentHashMap to store the cache
  *
+ * <p>Values are stored in {@link CacheNode}s carrying their expiration time, which are the cache objects returned
+ * by this cache, so writing a value through {@link #putValue(Object, Object, long, long)} allocates no wrapper.
+ *
+ * <p>Timed cache values are indexed by their expiration time in a {@link TimerWheel}, so purging only visits
+ * the expired entries instead of scanning the whole map. Writers don't touch the index directly; added and
+ * removed nodes are recorded in a write buffer which is replayed into the index under the maintenance lock,
+ * either while purging or opportunistically by a writer.
+ *
+ * <p>When created with a maximum size, the cache is bounded by an {@link EvictionPolicy}. Reads are recorded in a
+ * lossy {@link ReadBuffer} and replayed into the policy in batches along with the write buffer, so neither reads
+ * nor writes take a global lock. Writers drain the buffers and evict the excess entries if the lock is free.
+ * Bulk operations do so only once per batch.
+ *
+ * <p>When created to expire after access, a read writes its time to the node, at most once per milli second, and
+ * is recorded in the same buffer. The expiration time of a node read since it was set is its read time plus its
+ * time to live, so the expiry checks of the reads never depend on the buffer being drained. Replayed reads move the
+ * node in the timer wheel; a node whose read was dropped by the lossy buffer is moved once the wheel reaches it.
+ *
+ * <p>With a {@link RemovalNotifier}, every removal is reported along with its cause; removing threads and the
+ * purge only queue the notification, which is delivered to the listener on its executor.
+ *
+ * <p>When created with a {@link Weigher}, the maximum size bounds the total weight of the entries instead of their
+ * number. Weight of a node is computed by its writer and fixed for its lifetime, and the policy accounts for it as
+ * the node is linked into or unlinked from the access order, which only happens while replaying the write buffer.
+ * So overwrites racing on a key never count a weight twice or leak one; the total catches up with the map once the
+ * buffer is drained.
+ *
  * @param <K> Key type to be stored in cache
  * @param <V> Value type to be stored in cache
  *
  * @author Deepak Telkar
  * Created by dtelkar on 7/25/14.
  */
-class InMemoryCache<K, V> implements Cache<K,V> {
+class InMemoryCache<K, V> implements FlatCache<K, V>, StatsAware {
+
+    // On an average one in these many writes tries to drain the write buffer
+    private static final int DRAIN_WRITE_BUFFER_MASK = 63;
 
-    private ConcurrentMap<K, V> mInMemoryCache;
+    private ConcurrentMap<K, CacheNode<K, V>> mInMemoryCache;
+
+    // Expiration index, guarded by mMaintenanceLock
+    private final TimerWheel<K, V> mTimerWheel;
+    // Nodes added to or removed from the map which are not yet reflected in the expiration index and policy
+    private final Queue<CacheNode<K, V>> mWriteBuffer = new ConcurrentLinkedQueue<CacheNode<K, V>>();
+    private final Lock mMaintenanceLock = new ReentrantLock();
+
+    // Maximum number of entries, or their total weight if weighed
+    private final long mMaximumSize;
+    // Weighs the entries, null if each one weighs 1
+    private final Weigher<? super K, ? super V> mWeigher;
+    // Eviction policy, null for an unbounded cache. Policy is guarded by mMaintenanceLock
+    private final EvictionPolicy<K, V> mEvictionPolicy;
+    // Reads to be replayed, null unless the cache is bounded or expires after access
+    private final ReadBuffer<K, V> mReadBuffer;
+    // Whether the reads move the expiration time forward
+    private final boolean mExpireAfterAccess;
+    // Notified of the evicted and expired entries, may be null
+    private EvictionListener<K, CacheObject<V>> mEvictionListener;
+    // Delivers the notifications of all the removals to the user's listener, may be null
+    private RemovalNotifier<K, V> mRemovalNotifier;
+    // Time source of the purge
+    private final Ticker mTicker;
+    // Counts the evicted and expired entries, null if statistics are not recorded
+    private StatsRecorder mStats;
 
     public InMemoryCache(int initialCapacity) {
 
-        mInMemoryCache = new ConcurrentHashMap<K, V>(initialCapacity);
+        this(initialCapacity, Long.MAX_VALUE, null);
+    }
+
+    public InMemoryCache(int initialCapacity, long maximumSize, EvictionPolicy<K, V> evictionPolicy) {
+
+        this(initialCapacity, maximumSize, evictionPolicy, Ticker.systemTicker());
+    }
+
+    /**
+     * @param initialCapacity Initial capacity
+     * @param maximumSize Maximum number of entries, {@code Long.MAX_VALUE} if unbounded
+     * @param evictionPolicy Policy choosing the evicted entries, {@code null} if unbounded
+     * @param ticker Time source of the purge @see Ticker
+     */
+    public InMemoryCache(int initialCapacity, long maximumSize, EvictionPolicy<K, V> evictionPolicy, Ticker ticker) {
+
+        this(initialCapacity, maximumSize, evictionPolicy, null, ticker);
+    }
+
+    /**
+     * @param initialCapacity Initial capacity
+     * @param maximumSize Maximum total weight of the entries, {@code Long.MAX_VALUE} if unbounded
+     * @param evictionPolicy Policy choosing the evicted entries, {@code null} if unbounded
+     * @param weigher Weighs the entries, {@code null} if each one weighs 1 @see Weigher
+     * @param ticker Time source of the purge @see Ticker
+     */
+    public InMemoryCache(int initialCapacity, long maximumSize, EvictionPolicy<K, V> evictionPolicy,
+                         Weigher<? super K, ? super V> weigher, Ticker ticker) {
+
+        this(initialCapacity, maximumSize, evictionPolicy, weigher, false, ticker);
+    }
+
+    /**
+     * @param initialCapacity Initial capacity
+     * @param maximumSize Maximum total weight of the entries, {@code Long.MAX_VALUE} if unbounded
+     * @param evictionPolicy Policy choosing the evicted entries, {@code null} if unbounded
+     * @param weigher Weighs the entries, {@code null} if each one weighs 1 @see Weigher
+     * @param expireAfterAccess Whether an entry lives for its time to live after its last read instead of its write
+     * @param ticker Time source of the purge @see Ticker
+     */
+    public InMemoryCache(int initialCapacity, long maximumSize, EvictionPolicy<K, V> evictionPolicy,
+                         Weigher<? super K, ? super V> weigher, boolean expireAfterAccess, Ticker ticker) {
+
+        mInMemoryCache = new ConcurrentHashMap<K, CacheNode<K, V>>(initialCapacity);
+        mTicker = ticker;
+        mTimerWheel = new TimerWheel<K, V>(this, ticker.read());
+        mMaximumSize = maximumSize;
+        mWeigher = weigher;
+        mEvictionPolicy = evictionPolicy;
+        mExpireAfterAccess = expireAfterAccess;
+        mReadBuffer = (evictionPolicy == null && !expireAfterAccess) ? null : new ReadBuffer<K, V>();
+    }
+
+    /**
+     * Sets the listener notified of the evicted and expired entries, must be set before the cache is used
+     *
+     * @param listener @see EvictionListener
+     */
+    void setEvictionListener(EvictionListener<K, CacheObject<V>> listener) {
+
+        mEvictionListener = listener;
+    }
+
+    /**
+     * Sets the notifier of all the removals, must be set before the cache is used
+     *
+     * @param notifier @see RemovalNotifier
+     */
+    void setRemovalNotifier(RemovalNotifier<K, V> notifier) {
+
+        mRemovalNotifier = notifier;
+    }
+
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        mStats = recorder;
     }
 
     @Override
     public void clear() {
 
-        mInMemoryCache.clear();
+        mMaintenanceLock.lock();
+        try {
+            for (CacheNode<K, V> node : mInMemoryCache.values()) {
+
+                if (mInMemoryCache.remove(node.mKey, node)) {
+
+                    node.mRetired = true;
+                    if (mRemovalNotifier != null) {
+
+                        mRemovalNotifier.offer(node.mKey, node.mValue, RemovalCause.CLEARED);
+                    }
+                }
+            }
+            mTimerWheel.clear();
+            if (mEvictionPolicy != null) {
+
+                mEvictionPolicy.clear();
+            }
+        } finally {
+            mMaintenanceLock.unlock();
+        }
     }
 
     @Override
@@ -35,9 +193,50 @@ class InMemoryCache<K, V> implements Cache<K,V> {
     }
 
     @Override
-    public V get(Object key) {
+    public CacheObject<V> get(Object key) {
+
+        CacheNode<K, V> node = mInMemoryCache.get(key);
+        if (node == null) {
+
+            return null;
+        }
+        if (mExpireAfterAccess) {
+
+            recordRead(node);
+        }
+        if (mReadBuffer != null && mReadBuffer.offer(node)) {
+
+            tryMaintenance();
+        }
+        return node;
+    }
+
+    @Override
+    public Map<K, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<K, CacheObject<V>> result = new LinkedHashMap<K, CacheObject<V>>();
+        boolean drainReads = false;
+        for (Object key : keys) {
+
+            CacheNode<K, V> node = mInMemoryCache.get(key);
+            if (node != null) {
+
+                result.put(node.mKey, node);
+                if (mExpireAfterAccess) {
+
+                    recordRead(node);
+                }
+                if (mReadBuffer != null) {
+
+                    drainReads |= mReadBuffer.offer(node);
+                }
+            }
+        }
+        if (drainReads) {
 
-        return mInMemoryCache.get(key);
+            tryMaintenance();
+        }
+        return result;
     }
 
     @Override
@@ -47,15 +246,134 @@ class InMemoryCache<K, V> implements Cache<K,V> {
     }
 
     @Override
-    public V put(K key, V value) {
+    public CacheObject<V> put(K key, CacheObject<V> value) {
+
+        return putValue(key, value.getCache(), timeOfCreation(value), timeOfExpiry(value));
+    }
+
+    @Override
+    public CacheObject<V> putValue(K key, V value, long creationTime, long expirationTime) {
+
+        CacheNode<K, V> node = newNode(key, value, creationTime, expirationTime);
+        CacheNode<K, V> oldNode = mInMemoryCache.put(key, node);
+        mWriteBuffer.offer(node);
+
+        if (oldNode == null) {
+
+            afterWrite();
+            return null;
+        }
+        retire(oldNode, RemovalCause.REPLACED);
+        afterWrite();
+        return oldNode;
+    }
+
+    @Override
+    public CacheObject<V> putIfAbsent(K key, CacheObject<V> value) {
+
+        return putValueIfAbsent(key, value.getCache(), timeOfCreation(value), timeOfExpiry(value));
+    }
+
+    @Override
+    public CacheObject<V> putValueIfAbsent(K key, V value, long creationTime, long expirationTime) {
+
+        CacheNode<K, V> node = newNode(key, value, creationTime, expirationTime);
+        CacheNode<K, V> oldNode = mInMemoryCache.putIfAbsent(key, node);
+        if (oldNode != null) {
+
+            return oldNode;
+        }
+        mWriteBuffer.offer(node);
+        afterWrite();
+        return null;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends CacheObject<V>> entries) {
+
+        for (Map.Entry<? extends K, ? extends CacheObject<V>> entry : entries.entrySet()) {
 
-        return mInMemoryCache.put(key, value);
+            CacheObject<V> value = entry.getValue();
+            add(newNode(entry.getKey(), value.getCache(), timeOfCreation(value), timeOfExpiry(value)));
+        }
+        afterWrite();
     }
 
     @Override
-    public V remove(Object key) {
+    public void putAllValues(Map<? extends K, ? extends V> entries, long creationTime, long expirationTime) {
+
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+
+            add(newNode(entry.getKey(), entry.getValue(), creationTime, expirationTime));
+        }
+        afterWrite();
+    }
 
-        return mInMemoryCache.remove(key);
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        CacheNode<K, V> node = mInMemoryCache.remove(key);
+        if (node == null) {
+
+            return null;
+        }
+        retire(node, RemovalCause.EXPLICIT);
+        afterWrite();
+        return node;
+    }
+
+    /**
+     * Removes the key only if it is still mapped to the given cache object, as returned by this cache
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+
+        CacheNode<K, V> node = mInMemoryCache.get(key);
+        if (node == null || node != value || !mInMemoryCache.remove(key, node)) {
+
+            return false;
+        }
+        retire(node, RemovalCause.EXPLICIT);
+        afterWrite();
+        return true;
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        for (Object key : keys) {
+
+            CacheNode<K, V> node = mInMemoryCache.remove(key);
+            if (node != null) {
+
+                retire(node, RemovalCause.EXPLICIT);
+            }
+        }
+        afterWrite();
+    }
+
+    /**
+     * Replaces the value only if the key is still mapped to the old cache object, as returned by this cache
+     */
+    @Override
+    public boolean replace(K key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        CacheNode<K, V> node = mInMemoryCache.get(key);
+        if (node == null || node != oldValue) {
+
+            return false;
+        }
+
+        CacheNode<K, V> newNode = newNode(key, newValue.getCache(), timeOfCreation(newValue),
+                timeOfExpiry(newValue));
+        if (!mInMemoryCache.replace(key, node, newNode)) {
+
+            return false;
+        }
+        mWriteBuffer.offer(newNode);
+        retire(node, RemovalCause.REPLACED);
+        afterWrite();
+        return true;
     }
 
     @Override
@@ -64,16 +382,299 @@ class InMemoryCache<K, V> implements Cache<K,V> {
         return mInMemoryCache.size();
     }
 
+    /**
+     * @return Live view of the nodes in the map, weakly consistent while the cache is written
+     */
+    Iterable<CacheNode<K, V>> nodes() {
+
+        return mInMemoryCache.values();
+    }
+
+    /**
+     * Drains the buffered writes and returns the total weight accounted by the eviction policy
+     *
+     * @return Total weight of the entries, 0 if the cache is unbounded
+     */
+    long weightedSize() {
+
+        if (mEvictionPolicy == null) {
+
+            return 0;
+        }
+        mMaintenanceLock.lock();
+        try {
+            maintenance();
+            return mEvictionPolicy.weightedSize();
+        } finally {
+            mMaintenanceLock.unlock();
+        }
+    }
+
     @Override
     public void purge() {
 
-        for (ConcurrentMap.Entry<K, V> entry : mInMemoryCache.entrySet()) {
+        mMaintenanceLock.lock();
+        try {
+            maintenance();
+            mTimerWheel.advance(mTicker.read());
+        } finally {
+            mMaintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Callback from {@link TimerWheel} for a node whose expiration time has elapsed.
+     * Node is removed only if it is still mapped, a replaced or removed node is simply dropped from the index.
+     *
+     * @param node Expired node
+     */
+    void evictExpired(CacheNode<K, V> node) {
+
+        // Read which is not replayed yet keeps the node alive
+        if (mExpireAfterAccess && !node.mRetired && slide(node)) {
+
+            mTimerWheel.schedule(node);
+            return;
+        }
+        if (mEvictionPolicy != null) {
+
+            mEvictionPolicy.onRemove(node);
+        }
+        if (mInMemoryCache.remove(node.mKey, node)) {
+
+            node.mRetired = true;
+            if (mStats != null) {
+
+                mStats.recordEvictions(1);
+            }
+            if (mEvictionListener != null) {
+
+                mEvictionListener.onEviction(node.mKey, node, true);
+            }
+            if (mRemovalNotifier != null) {
+
+                mRemovalNotifier.offer(node.mKey, node.mValue, RemovalCause.EXPIRED);
+            }
+        }
+    }
+
+    /**
+     * Creates the node of a written value, weighing it on the writer thread
+     */
+    private CacheNode<K, V> newNode(K key, V value, long creationTime, long expirationTime) {
+
+        int weight = 1;
+        if (mWeigher != null) {
+
+            weight = mWeigher.weigh(key, value);
+            if (weight < 0) {
+
+                throw new IllegalArgumentException("Weight must not be negative!");
+            }
+        }
+        return new CacheNode<K, V>(key, value, creationTime, expirationTime, weight);
+    }
+
+    private void add(CacheNode<K, V> node) {
+
+        CacheNode<K, V> oldNode = mInMemoryCache.put(node.mKey, node);
+        mWriteBuffer.offer(node);
+        if (oldNode != null) {
+
+            retire(oldNode, RemovalCause.REPLACED);
+        }
+    }
+
+    /**
+     * Marks a node removed from the map by the user and records it for the maintenance
+     *
+     * @param cause Cause of the removal, reported as expired if the node had already expired
+     */
+    private void retire(CacheNode<K, V> node, RemovalCause cause) {
+
+        node.mRetired = true;
+        mWriteBuffer.offer(node);
+        if (mRemovalNotifier != null) {
+
+            mRemovalNotifier.offer(node.mKey, node.mValue, mTicker.isExpired(node) ? RemovalCause.EXPIRED : cause);
+        }
+    }
+
+    /**
+     * Keeps the write buffer short without making every writer contend on the maintenance lock.
+     * A bounded cache has to evict promptly, so every write tries to run the maintenance.
+     */
+    private void afterWrite() {
+
+        if (mEvictionPolicy != null || (ThreadLocalRandom.current().nextInt() & DRAIN_WRITE_BUFFER_MASK) == 0) {
+
+            tryMaintenance();
+        }
+    }
+
+    /**
+     * Runs the maintenance on the calling thread unless another thread is already running it
+     */
+    private void tryMaintenance() {
+
+        if (mMaintenanceLock.tryLock()) {
+
+            try {
+                maintenance();
+            } finally {
+                mMaintenanceLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays the buffered writes and reads, then evicts the entries beyond the maximum size.
+     * Must be called holding mMaintenanceLock
+     */
+    private void maintenance() {
 
-            if (((CacheObject)entry.getValue()).isExpired()) {
+        drainWriteBuffer();
+        if (mReadBuffer != null) {
 
-                // Cache entry has expired, remove it
-                mInMemoryCache.remove(entry.getKey());
+            mReadBuffer.drainTo(this);
+        }
+        if (mEvictionPolicy != null) {
+
+            evictExcess();
+        }
+    }
+
+    /**
+     * Callback from {@link ReadBuffer} for a replayed read. Must be called holding mMaintenanceLock
+     *
+     * @param node Node which was read, possibly removed since
+     */
+    void onAccess(CacheNode<K, V> node) {
+
+        if (mEvictionPolicy != null) {
+
+            mEvictionPolicy.onAccess(node);
+        }
+        // Many reads of a node in one drain move its expiration time once
+        if (mExpireAfterAccess && !node.mRetired && slide(node)) {
+
+            // Node whose write is still buffered gets scheduled by its replay
+            if (node.isScheduled()) {
+
+                mTimerWheel.deschedule(node);
+                mTimerWheel.schedule(node);
             }
         }
     }
+
+    /**
+     * Records the time of a read of a live node, skipping the write if the node was already read at this time.
+     * Expired node is left to be removed by the reader
+     */
+    private void recordRead(CacheNode<K, V> node) {
+
+        long now = mTicker.read();
+        if (now > node.mReadTime && now <= node.getTimeOfExpiry()) {
+
+            node.mReadTime = now;
+        }
+    }
+
+    /**
+     * Moves the expiration time of a node to its last read time plus its time to live.
+     * Must be called holding mMaintenanceLock
+     *
+     * @return {@code true} if the expiration time moved forward, else {@code false}
+     */
+    private boolean slide(CacheNode<K, V> node) {
+
+        if (node.mExpirationTime == Long.MAX_VALUE) {
+
+            return false;
+        }
+        long expirationTime = CacheBuilder.expirationTime(node.mReadTime, node.mTimeToLive);
+        if (expirationTime <= node.mExpirationTime) {
+
+            return false;
+        }
+        node.mExpirationTime = expirationTime;
+        return true;
+    }
+
+    /**
+     * Replays the buffered writes into the expiration index and eviction policy
+     */
+    private void drainWriteBuffer() {
+
+        CacheNode<K, V> node;
+        while ((node = mWriteBuffer.poll()) != null) {
+
+            if (node.mRetired) {
+
+                mTimerWheel.deschedule(node);
+                if (mEvictionPolicy != null) {
+
+                    mEvictionPolicy.onRemove(node);
+                }
+            } else {
+
+                if (mEvictionPolicy != null && !node.isInAccessOrder()) {
+
+                    mEvictionPolicy.onAdd(node);
+                }
+                if (!node.isScheduled() && node.mExpirationTime != Long.MAX_VALUE) {
+
+                    mTimerWheel.schedule(node);
+                }
+            }
+        }
+    }
+
+    private void evictExcess() {
+
+        while (mEvictionPolicy.weightedSize() > mMaximumSize) {
+
+            CacheNode<K, V> node = mEvictionPolicy.victim();
+            if (node == null) {
+
+                return;
+            }
+            mEvictionPolicy.onRemove(node);
+            mTimerWheel.deschedule(node);
+            if (mInMemoryCache.remove(node.mKey, node)) {
+
+                node.mRetired = true;
+                if (mStats != null) {
+
+                    mStats.recordEvictions(1);
+                }
+                if (mEvictionListener != null) {
+
+                    mEvictionListener.onEviction(node.mKey, node, false);
+                }
+                if (mRemovalNotifier != null) {
+
+                    mRemovalNotifier.offer(node.mKey, node.mValue, RemovalCause.SIZE);
+                }
+            }
+        }
+    }
+
+    private long timeOfCreation(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfCreation();
+        }
+        return mTicker.read();
+    }
+
+    private static long timeOfExpiry(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfExpiry();
+        }
+        return Long.MAX_VALUE;
+    }
 }
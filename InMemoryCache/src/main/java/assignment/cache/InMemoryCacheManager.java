@@ -1,7 +1,28 @@
 package assignment.cache;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * <p>In memory cache manager implementation.
+ * Values written to a {@link FlatCache} are stored without wrapping them into a cache object.
+ *
+ * <p>Every value carries its own expiration time, so values of different lifetimes share the same cache. An
+ * {@link InMemoryCache} indexes them in its timer wheel, which purges mixed lifetimes without scanning.
+ *
+ * <p>If a {@link CacheWriter} is provided, puts write the values through to it before caching them, or with write
+ * behind queue them to a {@link WriteBehindQueue} after caching them. Values computed by the {@link CacheLoader}
+ * come from the store, so they are not written.
+ *
+ * <p>If a snapshot file is provided, shutdown writes the live entries to it, see {@link CacheSnapshot}.
+ *
+ * <p>If an {@link InvalidationBus} is provided, the keys put or removed and the clears are published to the peer
+ * caches by an {@link Invalidator}. Loaded values are not published either.
  *
  * @param <K> Key type to be stored in cache
  * @param <V> Value type to be stored in cache
@@ -11,21 +32,305 @@ package assignment.cache;
  */
 public class InMemoryCacheManager<K, V> extends AbstractCacheManager<K, V> {
 
+    // Set if the cache stores the values in its own entries, null otherwise
+    private final FlatCache<K, V> mFlatCache;
+    // Writer the values are written through to, null if not provided or writing behind
+    private final CacheWriter<K, V> mWriter;
+    // Queue of the values written behind, null if not writing behind
+    private final WriteBehindQueue<K, V> mWriteBehind;
+    // Publisher of the invalidations to the peers, null if no invalidation bus is provided
+    private final Invalidator<K> mInvalidator;
+
     public InMemoryCacheManager(CacheBuilder<K, V> cacheBuilder, Cache cacheImpl) {
 
         super(cacheBuilder, cacheImpl);
+        mFlatCache = (cacheImpl instanceof FlatCache) ? (FlatCache<K, V>) cacheImpl : null;
+
+        CacheWriter<K, V> writer = cacheBuilder.getCacheWriter();
+        if (writer != null && cacheBuilder.isWriteBehind()) {
+
+            mWriter = null;
+            mWriteBehind = new WriteBehindQueue<K, V>(writer, cacheBuilder.getWriteBehindDelayInMilliSec(),
+                    cacheBuilder.getWriteBehindBatchSize(), cacheBuilder.getWriteBehindBufferSize());
+        } else {
+
+            mWriter = writer;
+            mWriteBehind = null;
+        }
+
+        InvalidationBus<K> bus = cacheBuilder.getInvalidationBus();
+        mInvalidator = (bus != null) ? new Invalidator<K>(bus, cacheImpl,
+                cacheBuilder.getInvalidationDelayInMilliSec(), cacheBuilder.getInvalidationBatchSize()) : null;
     }
 
+    /**
+     * @throws CacheWriterException If the value could not be written through, in which case it is not cached
+     */
     @Override
     public V put(K key, V value) {
 
-        CacheObject<V> co = (CacheObject<V>) mCache.put(key, mCacheBuilder.buildCacheObject(value));
+        mMaintenance.runIfDue();
+
+        long now = mTicker.read();
+        return put(key, value, now, mCacheBuilder.expirationTime(key, value, now));
+    }
+
+    /**
+     * @throws CacheWriterException If the value could not be written through, in which case it is not cached
+     */
+    @Override
+    public V put(K key, V value, long timeToLive, TimeUnit unit) {
+
+        if (timeToLive <= 0) {
+
+            throw new IllegalArgumentException("Time to live must be positive!");
+        }
+        mMaintenance.runIfDue();
+
+        long now = mTicker.read();
+        return put(key, value, now, CacheBuilder.expirationTime(now, unit.toMillis(timeToLive)));
+    }
+
+    /**
+     * Stores the value expiring at the given time
+     *
+     * @return Live value previously associated with the key or {@code null}
+     */
+    private V put(K key, V value, long creationTime, long expirationTime) {
+
+        if (mWriter != null) {
+
+            try {
+                mWriter.write(key, value);
+            } catch (Exception e) {
+                throw new CacheWriterException("Failed to write value for key: " + key, e);
+            }
+        }
+
+        CacheObject<V> co = store(key, value, creationTime, expirationTime);
+        if (mWriteBehind != null) {
+
+            mWriteBehind.offer(key, value);
+        }
+        if (mInvalidator != null) {
+
+            mInvalidator.invalidate(key);
+        }
 
-        if (co == null) {
+        if (co == null || mTicker.isExpired(co)) {
 
             return null;
         }
         return co.getCache();
     }
 
+    /**
+     * Stores the value in the cache only
+     *
+     * @return Cache object previously associated with the key or {@code null}
+     */
+    private CacheObject<V> store(K key, V value, long creationTime, long expirationTime) {
+
+        if (mFlatCache != null) {
+
+            return mFlatCache.putValue(key, value, creationTime, expirationTime);
+        }
+        return (CacheObject<V>) mCache.put(key, mCacheBuilder.buildCacheObject(value, creationTime, expirationTime));
+    }
+
+    /**
+     * @throws CacheWriterException If the values could not be written through, in which case none of them is cached
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries) {
+
+        mMaintenance.runIfDue();
+
+        if (mWriter != null) {
+
+            try {
+                mWriter.writeAll(new HashMap<K, V>(entries));
+            } catch (Exception e) {
+                throw new CacheWriterException("Failed to write values for keys: " + entries.keySet(), e);
+            }
+        }
+        putAllValues(entries);
+        if (mWriteBehind != null) {
+
+            for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+
+                mWriteBehind.offer(entry.getKey(), entry.getValue());
+            }
+        }
+        if (mInvalidator != null) {
+
+            mInvalidator.invalidateAll(entries.keySet());
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+
+        V value = super.remove(key);
+        if (mInvalidator != null) {
+
+            mInvalidator.invalidate((K) key);
+        }
+        return value;
+    }
+
+    /**
+     * Keys are copied once if they are published, as the given iterable might be traversable only once
+     */
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        if (mInvalidator == null) {
+
+            super.removeAll(keys);
+            return;
+        }
+
+        List<K> keyList = new ArrayList<K>();
+        for (Object key : keys) {
+
+            keyList.add((K) key);
+        }
+        super.removeAll(keyList);
+        mInvalidator.invalidateAll(keyList);
+    }
+
+    @Override
+    public void clearCache() {
+
+        super.clearCache();
+        if (mInvalidator != null) {
+
+            mInvalidator.invalidateAll();
+        }
+    }
+
+    /**
+     * Caches a loaded value without writing or publishing it, unless the key was written while loading
+     */
+    @Override
+    protected void putLoaded(K key, V value) {
+
+        long now = mTicker.read();
+        storeIfAbsent(key, value, now, mCacheBuilder.expirationTime(key, value, now));
+    }
+
+    /**
+     * Caches loaded values without writing or publishing them, except for the keys written while loading
+     */
+    @Override
+    protected void putAllLoaded(Map<K, V> entries) {
+
+        long now = mTicker.read();
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+
+            K key = entry.getKey();
+            V value = entry.getValue();
+            storeIfAbsent(key, value, now, mCacheBuilder.expirationTime(key, value, now));
+        }
+    }
+
+    /**
+     * Stores the value in the cache only if the key is absent. An expired entry of the key is removed first, unless
+     * it is replaced meanwhile
+     */
+    private void storeIfAbsent(K key, V value, long creationTime, long expirationTime) {
+
+        for (int attempt = 0; attempt < 2; ++attempt) {
+
+            CacheObject<V> co;
+            if (mFlatCache != null) {
+
+                co = mFlatCache.putValueIfAbsent(key, value, creationTime, expirationTime);
+            } else {
+
+                co = (CacheObject<V>) mCache.putIfAbsent(key,
+                        mCacheBuilder.buildCacheObject(value, creationTime, expirationTime));
+            }
+            if (co == null || !mTicker.isExpired(co) || !mCache.remove(key, co)) {
+
+                return;
+            }
+        }
+    }
+
+    private void putAllValues(Map<? extends K, ? extends V> entries) {
+
+        long now = mTicker.read();
+        if (mFlatCache != null && mCacheBuilder.getExpiry() == null) {
+
+            mFlatCache.putAllValues(entries, now, mCacheBuilder.expirationTime(now));
+            return;
+        }
+
+        // Values expiring at different times are wrapped one by one
+        Map<K, CacheObject<V>> cacheObjects = new HashMap<K, CacheObject<V>>(entries.size() * 4 / 3 + 1);
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+
+            K key = entry.getKey();
+            V value = entry.getValue();
+            cacheObjects.put(key, mCacheBuilder.buildCacheObject(value, now,
+                    mCacheBuilder.expirationTime(key, value, now)));
+        }
+        mCache.putAll(cacheObjects);
+    }
+
+    @Override
+    public int writeSnapshot() {
+
+        File file = mCacheBuilder.getSnapshotFile();
+        if (file == null) {
+
+            throw new IllegalStateException("Snapshot file is required for writing snapshot!");
+        }
+        Iterable<CacheNode<K, V>> nodes;
+        if (mCache instanceof InMemoryCache) {
+
+            nodes = ((InMemoryCache<K, V>) mCache).nodes();
+        } else if (mCache instanceof SegmentedCache) {
+
+            nodes = ((SegmentedCache<K, V>) mCache).nodes();
+        } else {
+
+            throw new IllegalStateException("Snapshot requires an in memory cache!");
+        }
+        try {
+            return new CacheSnapshot<K, V>(mCacheBuilder.getKeySerializer(), mCacheBuilder.getValueSerializer(),
+                    mTicker).write(nodes, file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write snapshot!", e);
+        }
+    }
+
+    /**
+     * Flushes the writes queued for the cache writer, if writing behind, publishes the pending invalidations and
+     * leaves the invalidation bus, and writes the snapshot if a snapshot file is provided, after deregistering the
+     * cache from its scheduler
+     */
+    @Override
+    public void shutdown() {
+
+        super.shutdown();
+        if (mWriteBehind != null) {
+
+            mWriteBehind.close();
+        }
+        if (mInvalidator != null) {
+
+            mInvalidator.close();
+        }
+        if (mCacheBuilder.getSnapshotFile() != null) {
+
+            try {
+                writeSnapshot();
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package assignment.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Batch of invalidations published by one cache to its peers over an {@link InvalidationBus}. A peer receiving
+ * it clears its cache first, if the publisher was cleared, and then removes the keys.
+ *
+ * @param <K> Key type to be stored in cache
+ */
+public final class InvalidationBatch<K> {
+
+    private final boolean mClear;
+    private final List<K> mKeys;
+
+    /**
+     * @param clear {@code true} if all the entries are invalidated before the keys
+     * @param keys Invalidated keys, may be empty
+     */
+    public InvalidationBatch(boolean clear, List<K> keys) {
+
+        mClear = clear;
+        mKeys = Collections.unmodifiableList(keys);
+    }
+
+    public boolean isClear() {
+        return mClear;
+    }
+
+    public List<K> getKeys() {
+        return mKeys;
+    }
+
+    @Override
+    public String toString() {
+
+        return "InvalidationBatch{clear=" + mClear + ", keys=" + mKeys + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package assignment.cache;
+
+/**
+ * <p>Broadcasts the invalidations of a cache to the peer caches holding the same entries, typically the same cache
+ * running in other JVMs, so that an update in one of them does not leave the others serving the old value until it
+ * expires. When configured through {@link CacheBuilder#invalidationBus(InvalidationBus)}, puts, removals and clears
+ * of the cache are coalesced for the invalidation delay and published in batches, see {@link Invalidator}; the
+ * batches received from the peers are removed from the cache without being published again.
+ *
+ * <p>Delivery is best effort. An invalidation lost by the transport leaves the peer stale until the entry expires,
+ * so the time to live still bounds the staleness.
+ *
+ * <p>{@link LocalInvalidationBus} connects caches of the same JVM, {@link SocketInvalidationBus} connects JVMs over
+ * TCP.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * // Listens on the interface of the private network of the peers only
+ * SocketInvalidationBus<Long> bus = new SocketInvalidationBus<Long>(new InetSocketAddress("10.0.0.1", 7700),
+ *         longSerializer);
+ * bus.addPeer(new InetSocketAddress("10.0.0.2", 7700));
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .invalidationBus(bus)
+ *         .invalidationDelay(20, TimeUnit.MILLISECONDS)
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ */
+public interface InvalidationBus<K> {
+
+    /**
+     * Registers a member receiving the invalidations published by the other members
+     */
+    void subscribe(InvalidationListener<K> listener);
+
+    /**
+     * Deregisters a member
+     */
+    void unsubscribe(InvalidationListener<K> listener);
+
+    /**
+     * Delivers a batch to every member except its publisher
+     *
+     * @param publisher Member publishing the batch
+     * @param batch Invalidations of the publisher
+     */
+    void publish(InvalidationListener<K> publisher, InvalidationBatch<K> batch);
+}
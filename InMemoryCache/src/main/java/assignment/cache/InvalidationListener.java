@@ -0,0 +1,16 @@
+package assignment.cache;
+
+/**
+ * <p>Member of an {@link InvalidationBus}, receiving the invalidations published by the other members.
+ *
+ * @param <K> Key type to be stored in cache
+ */
+public interface InvalidationListener<K> {
+
+    /**
+     * Called on a thread of the bus, one batch at a time per publisher
+     *
+     * @param batch Invalidations published by another member
+     */
+    void onInvalidation(InvalidationBatch<K> batch);
+}
@@ -0,0 +1,251 @@
+package assignment.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Member of an {@link InvalidationBus} on behalf of a cache, publishing its invalidations to the peers and
+ * applying theirs.
+ *
+ * <p>Invalidations are coalesced for the invalidation delay: the first one opens a window, the ones which follow
+ * are added to the pending keys, a key invalidated again costs nothing, and a clear drops the keys pending before
+ * it. Once the window has elapsed a publisher thread publishes the pending invalidations in batches of up to the
+ * batch size, so the peers receive at most one round of batches per delay however often the keys are written.
+ *
+ * <p>Invalidations received from the peers are removed from the cache directly, not through the CacheManager, so
+ * they are neither written to the cache writer nor published again.
+ *
+ * @param <K> Key type to be stored in cache
+ */
+final class Invalidator<K> implements InvalidationListener<K>, Runnable {
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final InvalidationBus<K> mBus;
+    private final Cache<?, ?> mCache;
+    private final long mDelay;
+    private final int mBatchSize;
+    private final ReentrantLock mLock = new ReentrantLock();
+    // Signalled once a window is opened or the invalidator is closed
+    private final Condition mPublishDue = mLock.newCondition();
+    // Keys invalidated in the current window, in the order they were first invalidated
+    private LinkedHashSet<K> mPending = new LinkedHashSet<K>();
+    // Set if the cache was cleared in the current window
+    private boolean mClearPending;
+    // Time the current window was opened
+    private long mWindowStart;
+    private final Thread mPublisher;
+    private boolean mClosed;
+
+    /**
+     * @param bus Bus the invalidations are published to and received from
+     * @param cache Cache the received invalidations are applied to
+     * @param delay Time in milli seconds the invalidations are coalesced for before being published
+     * @param batchSize Maximum number of keys published in one batch
+     */
+    Invalidator(InvalidationBus<K> bus, Cache<?, ?> cache, long delay, int batchSize) {
+
+        mBus = bus;
+        mCache = cache;
+        mDelay = TimeUnit.MILLISECONDS.toNanos(delay);
+        mBatchSize = batchSize;
+        mPublisher = new Thread(this, "cache-invalidator-" + sThreadCount.incrementAndGet());
+        mPublisher.setDaemon(true);
+        mPublisher.start();
+        mBus.subscribe(this);
+    }
+
+    /**
+     * Queues the invalidation of a key
+     */
+    void invalidate(K key) {
+
+        mLock.lock();
+        try {
+            boolean idle = isIdle();
+            if (mPending.add(key) && idle) {
+
+                openWindow();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Queues the invalidation of the keys
+     */
+    void invalidateAll(Iterable<? extends K> keys) {
+
+        mLock.lock();
+        try {
+            boolean idle = isIdle();
+            for (K key : keys) {
+
+                mPending.add(key);
+            }
+            if (idle && !isIdle()) {
+
+                openWindow();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Queues the invalidation of all the entries, replacing the keys pending so far
+     */
+    void invalidateAll() {
+
+        mLock.lock();
+        try {
+            boolean idle = isIdle();
+            mPending.clear();
+            mClearPending = true;
+            if (idle) {
+
+                openWindow();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if no invalidation is pending, in which case no window is open
+     */
+    private boolean isIdle() {
+
+        return mPending.isEmpty() && !mClearPending;
+    }
+
+    /**
+     * Opens a window for the first pending invalidation
+     */
+    private void openWindow() {
+
+        mWindowStart = System.nanoTime();
+        mPublishDue.signal();
+    }
+
+    /**
+     * Applies the invalidations of a peer to the cache
+     */
+    @Override
+    public void onInvalidation(InvalidationBatch<K> batch) {
+
+        if (batch.isClear()) {
+
+            mCache.clear();
+        }
+        if (!batch.getKeys().isEmpty()) {
+
+            mCache.removeAll(batch.getKeys());
+        }
+    }
+
+    /**
+     * Leaves the bus after publishing the pending invalidations and stops the publisher
+     */
+    void close() {
+
+        mBus.unsubscribe(this);
+        mLock.lock();
+        try {
+            mClosed = true;
+            mPublishDue.signal();
+        } finally {
+            mLock.unlock();
+        }
+
+        try {
+            mPublisher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes the pending invalidations window by window until closed
+     */
+    @Override
+    public void run() {
+
+        List<InvalidationBatch<K>> batches;
+        while ((batches = awaitWindow()) != null) {
+
+            for (InvalidationBatch<K> batch : batches) {
+
+                try {
+                    mBus.publish(this, batch);
+                } catch (RuntimeException e) {
+                    // Peers not reached keep their entries till they expire
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the current window has elapsed or the invalidator is closed
+     *
+     * @return Batches of the pending invalidations, {@code null} once closed and published
+     */
+    private List<InvalidationBatch<K>> awaitWindow() {
+
+        mLock.lock();
+        try {
+            while (true) {
+
+                if (isIdle()) {
+
+                    if (mClosed) {
+
+                        return null;
+                    }
+                    mPublishDue.awaitUninterruptibly();
+                    continue;
+                }
+
+                long delay = mWindowStart + mDelay - System.nanoTime();
+                if (mClosed || delay <= 0) {
+
+                    return pollBatches();
+                }
+                try {
+                    mPublishDue.awaitNanos(delay);
+                } catch (InterruptedException ignored) {}
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private List<InvalidationBatch<K>> pollBatches() {
+
+        List<InvalidationBatch<K>> batches = new ArrayList<InvalidationBatch<K>>();
+        boolean clear = mClearPending;
+        Iterator<K> it = mPending.iterator();
+        do {
+
+            List<K> keys = new ArrayList<K>(Math.min(mPending.size(), mBatchSize));
+            while (keys.size() < mBatchSize && it.hasNext()) {
+
+                keys.add(it.next());
+            }
+            batches.add(new InvalidationBatch<K>(clear, keys));
+            clear = false;
+        } while (it.hasNext());
+
+        mPending = new LinkedHashSet<K>();
+        mClearPending = false;
+        return batches;
+    }
+}
@@ -0,0 +1,53 @@
+package assignment.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Serializer based on java serialization, works for any {@link java.io.Serializable} type.
+ * This is the default serializer; a specialized one is both faster and more compact
+ *
+ * @param <T> Type to be serialized
+ */
+public class JavaSerializer<T> implements Serializer<T> {
+
+    /**
+     * @throws IllegalArgumentException If value is not serializable
+     */
+    @Override
+    public byte[] serialize(T value) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + value, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalStateException If bytes could not be deserialized
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(ByteBuffer buffer) {
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        try {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            return (T) in.readObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to deserialize value", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Unable to deserialize value", e);
+        }
+    }
+}
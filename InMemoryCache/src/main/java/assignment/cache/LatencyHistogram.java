@@ -0,0 +1,68 @@
+package assignment.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Histogram of latencies with power of two buckets; bucket {@code i} counts the latencies of at least
+ * {@code 2^(i-1)} and less than {@code 2^i} nano seconds. Percentiles are therefore reported as the upper bound
+ * of their bucket, precise within a factor of two, which is enough for telling the slow loads and purges apart.
+ */
+final class LatencyHistogram {
+
+    static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * @param nanos Latency in nano seconds
+     */
+    void record(long nanos) {
+
+        mBuckets.incrementAndGet((nanos <= 0) ? 0 : BUCKET_COUNT - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * @return Counts of the buckets
+     */
+    long[] snapshot() {
+
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+
+            counts[i] = mBuckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Computes a percentile from the bucket counts
+     *
+     * @param counts Counts of the buckets, as returned by {@link #snapshot()}
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound in nano seconds of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    static long percentile(long[] counts, double percentile) {
+
+        long total = 0;
+        for (long count : counts) {
+
+            total += count;
+        }
+        if (total == 0) {
+
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+
+            seen += counts[i];
+            if (seen >= rank) {
+
+                return (i == BUCKET_COUNT - 1) ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
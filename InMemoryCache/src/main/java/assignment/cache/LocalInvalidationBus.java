@@ -0,0 +1,43 @@
+package assignment.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>In process {@link InvalidationBus}, connecting caches of the same JVM. Batches are delivered synchronously on
+ * the publishing thread; exceptions thrown by a member are logged and do not prevent the delivery to the others.
+ *
+ * @param <K> Key type to be stored in cache
+ */
+public final class LocalInvalidationBus<K> implements InvalidationBus<K> {
+
+    private final List<InvalidationListener<K>> mListeners = new CopyOnWriteArrayList<InvalidationListener<K>>();
+
+    @Override
+    public void subscribe(InvalidationListener<K> listener) {
+
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(InvalidationListener<K> listener) {
+
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void publish(InvalidationListener<K> publisher, InvalidationBatch<K> batch) {
+
+        for (InvalidationListener<K> listener : mListeners) {
+
+            if (listener != publisher) {
+
+                try {
+                    listener.onInvalidation(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
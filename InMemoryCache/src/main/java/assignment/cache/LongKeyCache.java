@@ -0,0 +1,593 @@
+package assignment.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Cache implementation specialized for {@code long} keys, used by {@link LongKeyCacheManager}.
+ *
+ * <p>Entries are stored in open addressed hash tables made of parallel arrays of keys, values, creation and
+ * expiration times, so an entry costs no node, no boxed key and no cache object. Cache is divided into segments, each
+ * guarded by a lock for the writers and a sequence number for the readers: writers make the sequence number odd
+ * while modifying the table, and a reader retries if the number changed during its lookup. Lookups by a primitive
+ * key therefore neither lock nor allocate.
+ *
+ * <p>Removed entries leave a tombstone behind, which is dropped once the table is rebuilt on growing or purging.
+ * The {@link Cache} methods taking boxed keys and cache objects are provided for {@link AbstractCacheManager},
+ * they allocate as usual.
+ *
+ * @param <V> Value type to be stored in cache
+ */
+class LongKeyCache<V> implements Cache<Long, CacheObject<V>>, StatsAware {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 64 - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+    private static final Object TOMBSTONE = new Object();
+
+    private final Segment[] mSegments = new Segment[SEGMENT_COUNT];
+    // Time source of the boxed methods and the purge
+    private final Ticker mTicker;
+    // Counts the expired entries, null if statistics are not recorded
+    private StatsRecorder mStats;
+
+    /**
+     * @param initialCapacity Initial number of entries
+     * @param ticker Time source of the boxed methods and the purge @see Ticker
+     */
+    public LongKeyCache(int initialCapacity, Ticker ticker) {
+
+        mTicker = ticker;
+        int segmentCapacity = Math.max(initialCapacity / SEGMENT_COUNT, 1);
+        for (int i = 0; i < SEGMENT_COUNT; ++i) {
+
+            mSegments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Looks up a live value without locking or allocating
+     *
+     * @param key Key to look up
+     * @param now Current time in milli seconds
+     * @return Value or {@code null} if not present or expired
+     */
+    V getValue(long key, long now) {
+
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        while (true) {
+
+            int stamp = segment.mStamp;
+            if ((stamp & 1) == 0) {
+
+                Table table = segment.mTable;
+                int slot = table.find(key, hash);
+                Object value = (slot < 0) ? null : table.mValues.get(slot);
+                long expirationTime = (slot < 0) ? 0 : table.mExpirationTimes.get(slot);
+                if (segment.mStamp == stamp) {
+
+                    return (value == null || value == TOMBSTONE || expirationTime < now) ? null : typed(value);
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Stores a value
+     *
+     * @param key Key to be stored
+     * @param value Value to be stored
+     * @param expirationTime Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     * @param now Current time in milli seconds
+     * @return Previous live value or {@code null} if not present or expired
+     */
+    V putValue(long key, V value, long expirationTime, long now) {
+
+        long hash = hash(key);
+        return typed(segmentFor(hash).put(key, hash, value, now, expirationTime, now, false));
+    }
+
+    /**
+     * @return Removed live value or {@code null} if not present or expired
+     */
+    V removeValue(long key, long now) {
+
+        long hash = hash(key);
+        return typed(segmentFor(hash).remove(key, hash, null, 0, now));
+    }
+
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        mStats = recorder;
+    }
+
+    @Override
+    public void clear() {
+
+        for (Segment segment : mSegments) {
+
+            segment.clear();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return get(key) != null;
+    }
+
+    @Override
+    public CacheObject<V> get(Object key) {
+
+        long k = (Long) key;
+        long hash = hash(k);
+        Segment segment = segmentFor(hash);
+        while (true) {
+
+            int stamp = segment.mStamp;
+            if ((stamp & 1) == 0) {
+
+                Table table = segment.mTable;
+                int slot = table.find(k, hash);
+                Object value = (slot < 0) ? null : table.mValues.get(slot);
+                long creationTime = (slot < 0) ? 0 : table.mCreationTimes.get(slot);
+                long expirationTime = (slot < 0) ? 0 : table.mExpirationTimes.get(slot);
+                if (segment.mStamp == stamp) {
+
+                    return (value == null || value == TOMBSTONE) ? null
+                            : toCacheObject(typed(value), creationTime, expirationTime);
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public Map<Long, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<Long, CacheObject<V>> result = new LinkedHashMap<Long, CacheObject<V>>();
+        for (Object key : keys) {
+
+            CacheObject<V> co = get(key);
+            if (co != null) {
+
+                result.put((Long) key, co);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @return Previous live cache object or {@code null} if not present or expired
+     */
+    @Override
+    public CacheObject<V> put(Long key, CacheObject<V> value) {
+
+        long now = mTicker.read();
+        long hash = hash(key);
+        V oldValue = typed(segmentFor(hash).put(key, hash, value.getCache(), timeOfCreation(value, now),
+                expirationTime(value), now, false));
+        return (oldValue == null) ? null : new LruCacheObject<V>(oldValue);
+    }
+
+    /**
+     * An expired entry is replaced as if absent
+     *
+     * @return Live cache object associated with the key or {@code null} if the given value was stored
+     */
+    @Override
+    public CacheObject<V> putIfAbsent(Long key, CacheObject<V> value) {
+
+        long now = mTicker.read();
+        long hash = hash(key);
+        Object oldValue = segmentFor(hash).put(key, hash, value.getCache(), timeOfCreation(value, now),
+                expirationTime(value), now, true);
+        return (oldValue == null) ? null : new LruCacheObject<V>(typed(oldValue));
+    }
+
+    @Override
+    public void putAll(Map<? extends Long, ? extends CacheObject<V>> entries) {
+
+        for (Map.Entry<? extends Long, ? extends CacheObject<V>> entry : entries.entrySet()) {
+
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return Removed live cache object or {@code null} if not present or expired
+     */
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        V oldValue = removeValue((Long) key, mTicker.read());
+        return (oldValue == null) ? null : new LruCacheObject<V>(oldValue);
+    }
+
+    /**
+     * Removes the key if it still holds the value and expiration time of the given cache object
+     */
+    @Override
+    public boolean remove(Object key, Object value) {
+
+        CacheObject<?> co = (CacheObject<?>) value;
+        long k = (Long) key;
+        long hash = hash(k);
+        return segmentFor(hash).remove(k, hash, co.getCache(), expirationTime(co), Long.MIN_VALUE) != null;
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        long now = mTicker.read();
+        for (Object key : keys) {
+
+            removeValue((Long) key, now);
+        }
+    }
+
+    /**
+     * Replaces the value if the key still holds the value and expiration time of the old cache object
+     */
+    @Override
+    public boolean replace(Long key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        long hash = hash(key);
+        return segmentFor(hash).replace(key, hash, oldValue.getCache(), expirationTime(oldValue),
+                newValue.getCache(), timeOfCreation(newValue, mTicker.read()), expirationTime(newValue));
+    }
+
+    @Override
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : mSegments) {
+
+            size += segment.mSize;
+        }
+        return size;
+    }
+
+    @Override
+    public void purge() {
+
+        long now = mTicker.read();
+        int expired = 0;
+        for (Segment segment : mSegments) {
+
+            expired += segment.purge(now);
+        }
+        if (mStats != null) {
+
+            mStats.recordEvictions(expired);
+        }
+    }
+
+    private static <V> CacheObject<V> toCacheObject(V value, long creationTime, long expirationTime) {
+
+        if (expirationTime == Long.MAX_VALUE) {
+
+            return new LruCacheObject<V>(value);
+        }
+        return new TimedCacheObject<V>(value, creationTime, expirationTime - creationTime);
+    }
+
+    /**
+     * Values are stored untyped, next to the tombstones
+     */
+    @SuppressWarnings("unchecked")
+    private V typed(Object value) {
+
+        return (V) value;
+    }
+
+    private Segment segmentFor(long hash) {
+
+        return mSegments[(int) (hash >>> SEGMENT_SHIFT)];
+    }
+
+    private static long timeOfCreation(CacheObject<?> co, long now) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfCreation();
+        }
+        return now;
+    }
+
+    private static long expirationTime(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfExpiry();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Mixes the bits of the key, so that sequential keys spread over the segments and slots
+     */
+    private static long hash(long key) {
+
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Open addressed table with linear probing. A slot is empty while its value is {@code null}
+     */
+    private static final class Table {
+
+        final AtomicLongArray mKeys;
+        final AtomicReferenceArray<Object> mValues;
+        final AtomicLongArray mCreationTimes;
+        final AtomicLongArray mExpirationTimes;
+        final int mMask;
+
+        Table(int capacity) {
+
+            mKeys = new AtomicLongArray(capacity);
+            mValues = new AtomicReferenceArray<Object>(capacity);
+            mCreationTimes = new AtomicLongArray(capacity);
+            mExpirationTimes = new AtomicLongArray(capacity);
+            mMask = capacity - 1;
+        }
+
+        /**
+         * @return Slot holding the key or -1 if not present
+         */
+        int find(long key, long hash) {
+
+            int slot = (int) hash & mMask;
+            for (int i = 0; i <= mMask; ++i) {
+
+                Object value = mValues.get(slot);
+                if (value == null) {
+
+                    return -1;
+                }
+                if (value != TOMBSTONE && mKeys.get(slot) == key) {
+
+                    return slot;
+                }
+                slot = (slot + 1) & mMask;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Segment of the cache. Writers hold the lock and keep the stamp odd while modifying the table
+     */
+    private static final class Segment extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        volatile int mStamp;
+        volatile Table mTable;
+        volatile int mSize;
+        // Guarded by the lock
+        int mTombstones;
+
+        Segment(int initialCapacity) {
+
+            mTable = new Table(Math.max(Integer.highestOneBit(initialCapacity * 2 - 1) << 1, 8));
+        }
+
+        /**
+         * @param onlyIfAbsent Whether a live value of the key is kept
+         * @return Previous live value or {@code null} if not present or expired
+         */
+        Object put(long key, long hash, Object value, long creationTime, long expirationTime, long now,
+                   boolean onlyIfAbsent) {
+
+            lock();
+            try {
+                Table table = mTable;
+                if (onlyIfAbsent) {
+
+                    int slot = table.find(key, hash);
+                    if (slot >= 0 && table.mExpirationTimes.get(slot) >= now) {
+
+                        return table.mValues.get(slot);
+                    }
+                }
+                if ((mSize + mTombstones + 1) * 4 > (table.mMask + 1) * 3) {
+
+                    // Grows only if the live entries need it, else drops the tombstones
+                    table = rebuild((mSize + 1) * 2 > table.mMask + 1 ? (table.mMask + 1) * 2 : table.mMask + 1, now);
+                }
+
+                ++mStamp;
+                try {
+                    int slot = table.find(key, hash);
+                    if (slot >= 0) {
+
+                        Object oldValue = table.mValues.get(slot);
+                        long oldExpirationTime = table.mExpirationTimes.get(slot);
+                        table.mCreationTimes.set(slot, creationTime);
+                        table.mExpirationTimes.set(slot, expirationTime);
+                        table.mValues.set(slot, value);
+                        return (oldExpirationTime < now) ? null : oldValue;
+                    }
+
+                    slot = (int) hash & table.mMask;
+                    while (table.mValues.get(slot) != null && table.mValues.get(slot) != TOMBSTONE) {
+
+                        slot = (slot + 1) & table.mMask;
+                    }
+                    if (table.mValues.get(slot) == TOMBSTONE) {
+
+                        --mTombstones;
+                    }
+                    table.mKeys.set(slot, key);
+                    table.mCreationTimes.set(slot, creationTime);
+                    table.mExpirationTimes.set(slot, expirationTime);
+                    table.mValues.set(slot, value);
+                    ++mSize;
+                    return null;
+                } finally {
+                    ++mStamp;
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Removes the key, only if it holds the expected value and expiration time when a value is given
+         *
+         * @return Removed value, or {@code null} if not present or expired as of now
+         */
+        Object remove(long key, long hash, Object expectedValue, long expectedExpirationTime, long now) {
+
+            lock();
+            try {
+                Table table = mTable;
+                int slot = table.find(key, hash);
+                if (slot < 0 || (expectedValue != null && (table.mValues.get(slot) != expectedValue
+                        || table.mExpirationTimes.get(slot) != expectedExpirationTime))) {
+
+                    return null;
+                }
+
+                Object oldValue = table.mValues.get(slot);
+                long oldExpirationTime = table.mExpirationTimes.get(slot);
+                ++mStamp;
+                table.mValues.set(slot, TOMBSTONE);
+                ++mStamp;
+                ++mTombstones;
+                --mSize;
+                return (oldExpirationTime < now) ? null : oldValue;
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean replace(long key, long hash, Object oldValue, long oldExpirationTime,
+                        Object newValue, long newCreationTime, long newExpirationTime) {
+
+            lock();
+            try {
+                Table table = mTable;
+                int slot = table.find(key, hash);
+                if (slot < 0 || table.mValues.get(slot) != oldValue
+                        || table.mExpirationTimes.get(slot) != oldExpirationTime) {
+
+                    return false;
+                }
+
+                ++mStamp;
+                table.mCreationTimes.set(slot, newCreationTime);
+                table.mExpirationTimes.set(slot, newExpirationTime);
+                table.mValues.set(slot, newValue);
+                ++mStamp;
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * @return Number of the expired entries removed
+         */
+        int purge(long now) {
+
+            lock();
+            try {
+                Table table = mTable;
+                int expired = 0;
+                ++mStamp;
+                try {
+                    for (int slot = 0; slot <= table.mMask; ++slot) {
+
+                        Object value = table.mValues.get(slot);
+                        if (value != null && value != TOMBSTONE && table.mExpirationTimes.get(slot) < now) {
+
+                            table.mValues.set(slot, TOMBSTONE);
+                            ++mTombstones;
+                            --mSize;
+                            ++expired;
+                        }
+                    }
+                } finally {
+                    ++mStamp;
+                }
+                if (mTombstones * 4 > table.mMask + 1) {
+
+                    rebuild(table.mMask + 1, now);
+                }
+                return expired;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+
+            lock();
+            try {
+                ++mStamp;
+                mTable = new Table(mTable.mMask + 1);
+                mSize = 0;
+                mTombstones = 0;
+                ++mStamp;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Copies the live entries to a new table, dropping the tombstones and the expired entries
+         *
+         * @return New table
+         */
+        private Table rebuild(int capacity, long now) {
+
+            Table oldTable = mTable;
+            Table table = new Table(capacity);
+            int size = 0;
+            for (int slot = 0; slot <= oldTable.mMask; ++slot) {
+
+                Object value = oldTable.mValues.get(slot);
+                long expirationTime = oldTable.mExpirationTimes.get(slot);
+                if (value == null || value == TOMBSTONE || expirationTime < now) {
+
+                    continue;
+                }
+
+                long key = oldTable.mKeys.get(slot);
+                int newSlot = (int) hash(key) & table.mMask;
+                while (table.mValues.get(newSlot) != null) {
+
+                    newSlot = (newSlot + 1) & table.mMask;
+                }
+                table.mKeys.set(newSlot, key);
+                table.mCreationTimes.set(newSlot, oldTable.mCreationTimes.get(slot));
+                table.mExpirationTimes.set(newSlot, expirationTime);
+                table.mValues.set(newSlot, value);
+                ++size;
+            }
+
+            // Readers of the old table are not affected, those starting after the swap see the new one
+            ++mStamp;
+            mTable = table;
+            mSize = size;
+            mTombstones = 0;
+            ++mStamp;
+            return table;
+        }
+    }
+}
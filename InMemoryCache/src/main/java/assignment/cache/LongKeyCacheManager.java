@@ -0,0 +1,101 @@
+package assignment.cache;
+
+/**
+ * <p>Cache manager implementation specialized for {@code long} keys, see {@link LongKeyCache}.
+ *
+ * <p>Methods taking a primitive key neither box the key nor wrap the value into a cache object, so a lookup of a
+ * present key allocates nothing. Methods inherited from {@link CacheManager} keep working with boxed keys.
+ * Loading a missing key, refreshing and writing with an {@link Expiry} go through the boxed path.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheBuilder<Long,String> builder = CacheBuilder.newBuilder();
+ * LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+ * cm.put(42L, "value");
+ * }</pre>
+ *
+ * @param <V> Value type to be stored in cache
+ */
+public class LongKeyCacheManager<V> extends InMemoryCacheManager<Long, V> {
+
+    private final LongKeyCache<V> mLongKeyCache;
+    private final boolean mRefreshing;
+    // Expiry computing the time to live of each value, which needs the boxed key, null if not provided
+    private final Expiry<? super Long, ? super V> mExpiry;
+
+    LongKeyCacheManager(CacheBuilder<Long, V> cacheBuilder, LongKeyCache<V> cacheImpl) {
+
+        super(cacheBuilder, cacheImpl);
+        mLongKeyCache = cacheImpl;
+        mRefreshing = cacheBuilder.getRefreshAfterWriteInMilliSec() != Long.MAX_VALUE;
+        mExpiry = cacheBuilder.getExpiry();
+    }
+
+    /**
+     * Primitive version of {@link #get(Object)}
+     *
+     * @throws CacheLoaderException If the loader fails
+     */
+    public V get(long key) {
+
+        if (mRefreshing) {
+
+            return get(Long.valueOf(key));
+        }
+
+        mMaintenance.runIfDue();
+
+        V value = mLongKeyCache.getValue(key, mTicker.read());
+        if (mStats != null) {
+
+            if (value != null) {
+
+                mStats.recordHits(1);
+            } else {
+
+                mStats.recordMisses(1);
+            }
+        }
+        if (value != null || mCacheBuilder.getCacheLoader() == null) {
+
+            return value;
+        }
+        return load(key);
+    }
+
+    /**
+     * Primitive version of {@link #put(Object, Object)}
+     */
+    public V put(long key, V value) {
+
+        if (mExpiry != null) {
+
+            return put(Long.valueOf(key), value);
+        }
+
+        mMaintenance.runIfDue();
+
+        long now = mTicker.read();
+        return mLongKeyCache.putValue(key, value, now + mCacheBuilder.getMilliSecondsToLive(), now);
+    }
+
+    /**
+     * Primitive version of {@link #remove(Object)}
+     */
+    public V remove(long key) {
+
+        mMaintenance.runIfDue();
+
+        return mLongKeyCache.removeValue(key, mTicker.read());
+    }
+
+    /**
+     * Primitive version of {@link #containsKey(Object)}
+     */
+    public boolean containsKey(long key) {
+
+        mMaintenance.runIfDue();
+
+        return mLongKeyCache.getValue(key, mTicker.read()) != null;
+    }
+}
@@ -0,0 +1,34 @@
+package assignment.cache;
+
+/**
+ * <p>LRU cache implementation where cache value never expires. Instead, the least recently used values are
+ * evicted by the cache once its maximum size is reached. Also used by the other size bounded algorithms like TinyLFU
+ *
+ * @param <V> Value type to be stored in cache
+ */
+public class LruCacheObject<V> implements CacheObject<V> {
+
+    private V mValue;
+
+    public LruCacheObject(V value) {
+
+        mValue = value;
+    }
+
+    @Override
+    public V getCache() {
+
+        return mValue;
+    }
+
+    /**
+     * LRU cache values are only evicted, they never expire
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean isExpired() {
+
+        return false;
+    }
+}
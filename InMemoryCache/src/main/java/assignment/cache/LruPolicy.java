@@ -0,0 +1,54 @@
+package assignment.cache;
+
+/**
+ * <p>Least recently used eviction policy, evicts the node which was not read or written for the longest time
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class LruPolicy<K, V> implements EvictionPolicy<K, V> {
+
+    private final AccessOrderDeque<K, V> mAccessOrder = new AccessOrderDeque<K, V>();
+
+    @Override
+    public void onAdd(CacheNode<K, V> node) {
+
+        mAccessOrder.addLast(node);
+    }
+
+    @Override
+    public void onAccess(CacheNode<K, V> node) {
+
+        if (node.isInAccessOrder()) {
+
+            mAccessOrder.moveToLast(node);
+        }
+    }
+
+    @Override
+    public void onRemove(CacheNode<K, V> node) {
+
+        if (node.isInAccessOrder()) {
+
+            mAccessOrder.remove(node);
+        }
+    }
+
+    @Override
+    public CacheNode<K, V> victim() {
+
+        return mAccessOrder.peekFirst();
+    }
+
+    @Override
+    public long weightedSize() {
+
+        return mAccessOrder.weight();
+    }
+
+    @Override
+    public void clear() {
+
+        mAccessOrder.clear();
+    }
+}
@@ -0,0 +1,255 @@
+package assignment.cache;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Scheduler responsible for running the periodic maintenance (purging) of CacheManagers.
+ *
+ * <p>A single scheduler multiplexes the maintenance work of any number of CacheManagers, so creating many caches
+ * does not create many mostly idle threads. Following schedulers are available:
+ *
+ * <ul>
+ *     <li>{@link #sharedScheduler()} : Process wide scheduler backed by a single daemon thread. This is the default
+ *     <li>{@link #newScheduler(int)} : Dedicated thread pool, must be shut down by the caller when no longer used
+ *     <li>{@link #callerThread()} : No threads at all, maintenance is piggybacked on cache operations once due
+ * </ul>
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .maintenanceScheduler(MaintenanceScheduler.callerThread())
+ *         .build();
+ * }</pre>
+ */
+public abstract class MaintenanceScheduler {
+
+    /**
+     * Handle of a maintenance task registered with the scheduler
+     */
+    public interface Registration {
+
+        /**
+         * Runs the task on the calling thread if it is due. No-op for schedulers owning threads
+         */
+        void runIfDue();
+
+        /**
+         * Deregisters the task, it will not be run anymore. Waits for a run already in progress to finish
+         */
+        void cancel();
+    }
+
+    private static final MaintenanceScheduler SHARED_SCHEDULER = new PooledScheduler(1, false);
+
+    /**
+     * @return Process wide scheduler shared by all the CacheManagers which are not configured otherwise
+     */
+    public static MaintenanceScheduler sharedScheduler() {
+
+        return SHARED_SCHEDULER;
+    }
+
+    /**
+     * Creates a dedicated scheduler, {@link #shutdown()} must be called once all its caches are shut down
+     *
+     * @param threadCount Number of maintenance threads
+     * @return New MaintenanceScheduler instance
+     * @throws IllegalArgumentException If thread count is not positive
+     */
+    public static MaintenanceScheduler newScheduler(int threadCount) {
+
+        if (threadCount <= 0) {
+
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        return new PooledScheduler(threadCount, true);
+    }
+
+    /**
+     * @return Scheduler which runs the due maintenance on the threads accessing the cache
+     */
+    public static MaintenanceScheduler callerThread() {
+
+        return new CallerThreadScheduler();
+    }
+
+    /**
+     * Registers a task to be run periodically
+     *
+     * @param task Maintenance task
+     * @param periodInMilliSec Delay between the consecutive runs
+     * @return Registration handle used for running or cancelling the task
+     */
+    abstract Registration register(Runnable task, long periodInMilliSec);
+
+    /**
+     * Stops the scheduler threads, if any
+     *
+     * @throws IllegalStateException If called for the shared scheduler
+     */
+    public abstract void shutdown();
+
+    /**
+     * Runs the task guarding the scheduler against its failures
+     */
+    private static void runTask(Runnable task) {
+
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Scheduler multiplexing all the tasks on a pool of daemon threads
+     */
+    private static final class PooledScheduler extends MaintenanceScheduler {
+
+        private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        private final ScheduledThreadPoolExecutor mExecutor;
+        private final boolean mCanShutdown;
+
+        PooledScheduler(int threadCount, boolean canShutdown) {
+
+            mCanShutdown = canShutdown;
+            mExecutor = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+
+                    Thread t = new Thread(r, "cache-maintenance-" + sThreadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // Cancelled tasks of shut down caches should not linger in the queue
+            mExecutor.setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        Registration register(Runnable task, long periodInMilliSec) {
+
+            PooledRegistration registration = new PooledRegistration(task);
+            registration.mFuture = mExecutor.scheduleWithFixedDelay(registration, periodInMilliSec, periodInMilliSec,
+                    TimeUnit.MILLISECONDS);
+            return registration;
+        }
+
+        @Override
+        public void shutdown() {
+
+            if (!mCanShutdown) {
+
+                throw new IllegalStateException("Shared scheduler can not be shut down!");
+            }
+            mExecutor.shutdown();
+            try {
+                if (!mExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    mExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Task run by the pool. Runs hold the lock of the registration, so cancelling can wait for the run in flight
+         * and the cache can be closed right after
+         */
+        private static final class PooledRegistration implements Registration, Runnable {
+
+            private final Runnable mTask;
+            private final ReentrantLock mLock = new ReentrantLock();
+            private volatile boolean mCancelled;
+            // Set by register before the registration is handed out
+            private ScheduledFuture<?> mFuture;
+
+            PooledRegistration(Runnable task) {
+
+                mTask = task;
+            }
+
+            @Override
+            public void run() {
+
+                mLock.lock();
+                try {
+                    if (!mCancelled) {
+
+                        runTask(mTask);
+                    }
+                } finally {
+                    mLock.unlock();
+                }
+            }
+
+            @Override
+            public void runIfDue() {
+            }
+
+            @Override
+            public void cancel() {
+
+                mCancelled = true;
+                mFuture.cancel(false);
+                mLock.lock();
+                mLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Scheduler running the tasks on the threads accessing the cache, at most one thread runs a task at a time
+     */
+    private static final class CallerThreadScheduler extends MaintenanceScheduler {
+
+        @Override
+        Registration register(final Runnable task, final long periodInMilliSec) {
+
+            return new Registration() {
+
+                private final ReentrantLock mLock = new ReentrantLock();
+                private volatile long mNextRunTime = System.currentTimeMillis() + periodInMilliSec;
+                private volatile boolean mCancelled;
+
+                @Override
+                public void runIfDue() {
+
+                    if (mCancelled || System.currentTimeMillis() < mNextRunTime || !mLock.tryLock()) {
+
+                        return;
+                    }
+                    try {
+                        // Another thread might have run the task or cancelled it between the check and the locking
+                        if (!mCancelled && System.currentTimeMillis() >= mNextRunTime) {
+
+                            runTask(task);
+                            mNextRunTime = System.currentTimeMillis() + periodInMilliSec;
+                        }
+                    } finally {
+                        mLock.unlock();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+
+                    // Waits for the run of another thread in flight
+                    mCancelled = true;
+                    mLock.lock();
+                    mLock.unlock();
+                }
+            };
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package assignment.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Memory mapped file cache implementation, for data sets larger than the memory.
+ * Values are serialized and appended to segment files mapped into memory, so that the operating system pages them
+ * in and out on demand; only the keys and the location of their records are kept on the java heap.
+ *
+ * <p>Files form an append only log. A record holds a header (key and value lengths, creation and expiration time)
+ * followed by the serialized key and value. Once the active segment is full, a new one is created. Overwritten,
+ * removed and expired records are left in place and accounted as garbage of their segment; purging drops the
+ * expired keys and compacts the segments which are mostly garbage by copying their live records to the active
+ * segment and deleting the file.
+ *
+ * <p>Writes are serialized by a lock, reads take no lock. A read deserializes the value straight out of the mapped
+ * file, so a {@link Serializer} reading from the buffer avoids copying the bytes. If the segment was compacted away
+ * in between, the read retries with the new location of the key.
+ *
+ * NOTE: Segment files are deleted on clearing, compaction or closing, which the cache manager does on shutdown. A file
+ * which could not be deleted then is deleted on exit. Files are not meant to be reused after a restart
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+class MappedFileCache<K, V> implements Cache<K, CacheObject<V>>, StatsAware, Closeable {
+
+    // Record header layout
+    private static final int KEY_LENGTH_OFFSET = 0;
+    private static final int VALUE_LENGTH_OFFSET = 4;
+    private static final int CREATION_OFFSET = 8;
+    private static final int EXPIRATION_OFFSET = 16;
+    private static final int HEADER_SIZE = 24;
+
+    // Segments with at least this share of garbage are compacted
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private final File mDirectory;
+    private final int mSegmentSize;
+    private final Serializer<K> mKeySerializer;
+    private final Serializer<V> mValueSerializer;
+    private final Ticker mTicker;
+    // Counts the expired entries, null if statistics are not recorded
+    private StatsRecorder mStats;
+
+    private final ConcurrentMap<K, Location> mIndex;
+    private final ConcurrentMap<Integer, LogSegment> mSegments = new ConcurrentHashMap<Integer, LogSegment>();
+
+    // Guards the appends, the garbage accounting and the segment list
+    private final ReentrantLock mWriteLock = new ReentrantLock();
+    private LogSegment mActiveSegment;
+    private int mNextSegmentId;
+
+    /**
+     * @param directory Directory where segment files are created
+     * @param segmentSize Size of a segment file in bytes
+     * @param initialCapacity Initial number of entries
+     * @param keySerializer Key serializer
+     * @param valueSerializer Value serializer
+     * @param ticker Time source of the purge @see Ticker
+     * @throws IllegalStateException If the directory is not usable
+     */
+    public MappedFileCache(File directory, int segmentSize, int initialCapacity,
+                           Serializer<K> keySerializer, Serializer<V> valueSerializer, Ticker ticker) {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+
+            throw new IllegalStateException("Unable to create cache directory " + directory + "!");
+        }
+        mDirectory = directory;
+        mSegmentSize = segmentSize;
+        mKeySerializer = keySerializer;
+        mValueSerializer = valueSerializer;
+        mTicker = ticker;
+        mIndex = new ConcurrentHashMap<K, Location>(initialCapacity);
+
+        mWriteLock.lock();
+        try {
+            mActiveSegment = newSegment(mSegmentSize);
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        mStats = recorder;
+    }
+
+    @Override
+    public void clear() {
+
+        mWriteLock.lock();
+        try {
+            mIndex.clear();
+            for (LogSegment segment : mSegments.values()) {
+
+                deleteSegment(segment);
+            }
+            mActiveSegment = newSegment(mSegmentSize);
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Drops all the entries and deletes the segment files, the cache is not usable afterwards
+     */
+    @Override
+    public void close() {
+
+        mWriteLock.lock();
+        try {
+            mIndex.clear();
+            for (LogSegment segment : mSegments.values()) {
+
+                deleteSegment(segment);
+            }
+            mActiveSegment = null;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    public CacheObject<V> get(Object key) {
+
+        while (true) {
+
+            Location location = mIndex.get(key);
+            if (location == null) {
+
+                return null;
+            }
+            LogSegment segment = mSegments.get(location.mSegmentId);
+            if (segment != null) {
+
+                return read(segment, location);
+            }
+            // Segment was compacted after the lookup, key has been moved
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<K, CacheObject<V>> result = new LinkedHashMap<K, CacheObject<V>>();
+        for (Object key : keys) {
+
+            CacheObject<V> co = get(key);
+            if (co != null) {
+
+                result.put((K) key, co);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return mIndex.isEmpty();
+    }
+
+    @Override
+    public CacheObject<V> put(K key, CacheObject<V> value) {
+
+        byte[] keyBytes = mKeySerializer.serialize(key);
+        byte[] valueBytes = mValueSerializer.serialize(value.getCache());
+
+        mWriteLock.lock();
+        try {
+            Location location = append(keyBytes, valueBytes, timeOfCreation(value), timeOfExpiry(value));
+            Location oldLocation = mIndex.put(key, location);
+            if (oldLocation == null) {
+
+                return null;
+            }
+            CacheObject<V> oldValue = read(mSegments.get(oldLocation.mSegmentId), oldLocation);
+            retire(oldLocation);
+            return oldValue;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public CacheObject<V> putIfAbsent(K key, CacheObject<V> value) {
+
+        mWriteLock.lock();
+        try {
+            CacheObject<V> oldValue = get(key);
+            return (oldValue != null) ? oldValue : put(key, value);
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends CacheObject<V>> entries) {
+
+        for (Map.Entry<? extends K, ? extends CacheObject<V>> entry : entries.entrySet()) {
+
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        mWriteLock.lock();
+        try {
+            Location location = mIndex.remove(key);
+            if (location == null) {
+
+                return null;
+            }
+            CacheObject<V> oldValue = read(mSegments.get(location.mSegmentId), location);
+            retire(location);
+            return oldValue;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the key if its record has the same times and value bytes as the given cache object
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+
+        CacheObject<V> co = (CacheObject<V>) value;
+        byte[] valueBytes = mValueSerializer.serialize(co.getCache());
+
+        mWriteLock.lock();
+        try {
+            Location location = mIndex.get(key);
+            if (location == null || !matches(location, co, valueBytes)) {
+
+                return false;
+            }
+            mIndex.remove(key);
+            retire(location);
+            return true;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        for (Object key : keys) {
+
+            remove(key);
+        }
+    }
+
+    /**
+     * Replaces the record of the key if it has the same times and value bytes as the old cache object
+     */
+    @Override
+    public boolean replace(K key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        byte[] oldValueBytes = mValueSerializer.serialize(oldValue.getCache());
+        byte[] keyBytes = mKeySerializer.serialize(key);
+        byte[] valueBytes = mValueSerializer.serialize(newValue.getCache());
+
+        mWriteLock.lock();
+        try {
+            Location location = mIndex.get(key);
+            if (location == null || !matches(location, oldValue, oldValueBytes)) {
+
+                return false;
+            }
+            mIndex.put(key, append(keyBytes, valueBytes, timeOfCreation(newValue), timeOfExpiry(newValue)));
+            retire(location);
+            return true;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+
+        return mIndex.size();
+    }
+
+    /**
+     * Removes the expired keys, then compacts the segments which are mostly garbage
+     */
+    @Override
+    public void purge() {
+
+        // Only segments which are already full can be compacted, no record is appended to them anymore
+        Map<Integer, List<K>> liveKeys = new HashMap<Integer, List<K>>();
+        mWriteLock.lock();
+        try {
+            for (LogSegment segment : mSegments.values()) {
+
+                if (segment != mActiveSegment) {
+
+                    liveKeys.put(segment.mId, new ArrayList<K>());
+                }
+            }
+        } finally {
+            mWriteLock.unlock();
+        }
+
+        long now = mTicker.read();
+        int expired = 0;
+        for (Map.Entry<K, Location> entry : mIndex.entrySet()) {
+
+            Location location = entry.getValue();
+            if (location.mExpirationTime < now) {
+
+                mWriteLock.lock();
+                try {
+                    if (mIndex.remove(entry.getKey(), location)) {
+
+                        retire(location);
+                        ++expired;
+                    }
+                } finally {
+                    mWriteLock.unlock();
+                }
+            } else if (liveKeys.containsKey(location.mSegmentId)) {
+
+                liveKeys.get(location.mSegmentId).add(entry.getKey());
+            }
+        }
+        if (mStats != null) {
+
+            mStats.recordEvictions(expired);
+        }
+
+        for (Map.Entry<Integer, List<K>> entry : liveKeys.entrySet()) {
+
+            LogSegment segment = mSegments.get(entry.getKey());
+            if (segment != null && isMostlyGarbage(segment)) {
+
+                compact(segment, entry.getValue());
+            }
+        }
+    }
+
+    private boolean isMostlyGarbage(LogSegment segment) {
+
+        mWriteLock.lock();
+        try {
+            return segment.mGarbage >= segment.mWritePosition * COMPACTION_THRESHOLD;
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the live records of the segment to the active segment and deletes the segment once no live record is
+     * left. Lock is taken per record, so that writers are not blocked for the whole compaction
+     *
+     * @param segment Segment to be compacted
+     * @param keys Keys found in the segment while scanning the index
+     */
+    private void compact(LogSegment segment, List<K> keys) {
+
+        for (K key : keys) {
+
+            mWriteLock.lock();
+            try {
+                Location location = mIndex.get(key);
+                if (location != null && location.mSegmentId == segment.mId) {
+
+                    mIndex.put(key, copy(segment, location));
+                }
+            } finally {
+                mWriteLock.unlock();
+            }
+        }
+
+        mWriteLock.lock();
+        try {
+            // A key missed by the index scan keeps the segment until the next purge
+            if (segment.mLiveRecords == 0 && mSegments.containsKey(segment.mId)) {
+
+                deleteSegment(segment);
+            }
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, rolling to a new segment if full. Caller must hold the write lock
+     *
+     * @return Location of the record
+     */
+    private Location append(byte[] keyBytes, byte[] valueBytes, long creation, long expiration) {
+
+        int recordSize = HEADER_SIZE + keyBytes.length + valueBytes.length;
+        LogSegment segment = segmentFor(recordSize);
+
+        ByteBuffer buffer = segment.mBuffer.duplicate();
+        int offset = segment.mWritePosition;
+        buffer.position(offset);
+        buffer.putInt(keyBytes.length);
+        buffer.putInt(valueBytes.length);
+        buffer.putLong(creation);
+        buffer.putLong(expiration);
+        buffer.put(keyBytes);
+        buffer.put(valueBytes);
+        segment.mWritePosition += recordSize;
+        ++segment.mLiveRecords;
+
+        return new Location(segment.mId, offset, recordSize, creation, expiration);
+    }
+
+    /**
+     * Copies a record as is to the active segment and retires the original. Caller must hold the write lock
+     *
+     * @return Location of the copy
+     */
+    private Location copy(LogSegment from, Location location) {
+
+        LogSegment segment = segmentFor(location.mRecordSize);
+
+        ByteBuffer source = from.mBuffer.duplicate();
+        source.limit(location.mOffset + location.mRecordSize);
+        source.position(location.mOffset);
+        ByteBuffer target = segment.mBuffer.duplicate();
+        int offset = segment.mWritePosition;
+        target.position(offset);
+        target.put(source);
+        segment.mWritePosition += location.mRecordSize;
+        ++segment.mLiveRecords;
+
+        retire(location);
+        return new Location(segment.mId, offset, location.mRecordSize, location.mCreationTime,
+                location.mExpirationTime);
+    }
+
+    /**
+     * @return Active segment with room for the record, a new one if the current is full
+     */
+    private LogSegment segmentFor(int recordSize) {
+
+        if (mActiveSegment.mWritePosition + recordSize > mActiveSegment.mBuffer.capacity()) {
+
+            // Records larger than the segment size get a segment of their own
+            mActiveSegment = newSegment(Math.max(mSegmentSize, recordSize));
+        }
+        return mActiveSegment;
+    }
+
+    /**
+     * Accounts the record as garbage of its segment. Caller must hold the write lock
+     */
+    private void retire(Location location) {
+
+        LogSegment segment = mSegments.get(location.mSegmentId);
+        if (segment != null) {
+
+            segment.mGarbage += location.mRecordSize;
+            --segment.mLiveRecords;
+        }
+    }
+
+    /**
+     * Reads the record without any lock; the mapped buffer itself is never modified, only its duplicates
+     */
+    private CacheObject<V> read(LogSegment segment, Location location) {
+
+        ByteBuffer buffer = segment.mBuffer.duplicate();
+        int valueOffset = location.mOffset + HEADER_SIZE + buffer.getInt(location.mOffset + KEY_LENGTH_OFFSET);
+        buffer.limit(valueOffset + buffer.getInt(location.mOffset + VALUE_LENGTH_OFFSET));
+        buffer.position(valueOffset);
+        V value = mValueSerializer.deserialize(buffer);
+
+        if (location.mExpirationTime == Long.MAX_VALUE) {
+
+            return new LruCacheObject<V>(value);
+        }
+        return new TimedCacheObject<V>(value, location.mCreationTime,
+                location.mExpirationTime - location.mCreationTime);
+    }
+
+    /**
+     * @return {@code true} if the record has the times and value bytes of the cache object, else {@code false}
+     */
+    private boolean matches(Location location, CacheObject<V> co, byte[] valueBytes) {
+
+        if (location.mExpirationTime != timeOfExpiry(co)
+                || (co instanceof Timestamped && location.mCreationTime != timeOfCreation(co))) {
+
+            return false;
+        }
+
+        ByteBuffer buffer = mSegments.get(location.mSegmentId).mBuffer;
+        if (buffer.getInt(location.mOffset + VALUE_LENGTH_OFFSET) != valueBytes.length) {
+
+            return false;
+        }
+        int valueOffset = location.mOffset + HEADER_SIZE + buffer.getInt(location.mOffset + KEY_LENGTH_OFFSET);
+        for (int i = 0; i < valueBytes.length; ++i) {
+
+            if (buffer.get(valueOffset + i) != valueBytes[i]) {
+
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates and maps a new segment file. Caller must hold the write lock
+     *
+     * @throws IllegalStateException If the file could not be created or mapped
+     */
+    private LogSegment newSegment(int size) {
+
+        int id = mNextSegmentId++;
+        File file = new File(mDirectory, "segment-" + id + ".log");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(size);
+                // Mapping stays valid after the channel is closed
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+                LogSegment segment = new LogSegment(id, file, buffer);
+                mSegments.put(id, segment);
+                return segment;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to map segment file " + file + "!", e);
+        }
+    }
+
+    /**
+     * Drops the segment and deletes its file, or deletes it on exit if the file can not be deleted while mapped.
+     * Readers still holding the mapping can finish reading, since the mapping is only released once it is garbage
+     * collected. Caller must hold the write lock
+     */
+    private void deleteSegment(LogSegment segment) {
+
+        mSegments.remove(segment.mId);
+        if (!segment.mFile.delete()) {
+
+            segment.mFile.deleteOnExit();
+        }
+    }
+
+    private long timeOfCreation(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfCreation();
+        }
+        return mTicker.read();
+    }
+
+    private static long timeOfExpiry(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfExpiry();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Segment file of the log
+     */
+    private static final class LogSegment {
+
+        final int mId;
+        final File mFile;
+        final MappedByteBuffer mBuffer;
+        // Guarded by the write lock
+        int mWritePosition;
+        long mGarbage;
+        int mLiveRecords;
+
+        LogSegment(int id, File file, MappedByteBuffer buffer) {
+
+            mId = id;
+            mFile = file;
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * Immutable location of a record, replaced in the index whenever the record moves
+     */
+    private static final class Location {
+
+        final int mSegmentId;
+        final int mOffset;
+        final int mRecordSize;
+        final long mCreationTime;
+        final long mExpirationTime;
+
+        Location(int segmentId, int offset, int recordSize, long creationTime, long expirationTime) {
+
+            mSegmentId = segmentId;
+            mOffset = offset;
+            mRecordSize = recordSize;
+            mCreationTime = creationTime;
+            mExpirationTime = expirationTime;
+        }
+    }
+}
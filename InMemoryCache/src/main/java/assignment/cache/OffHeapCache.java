@@ -0,0 +1,690 @@
+package assignment.cache;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Off heap cache implementation
+ * Keys and values are serialized and stored in direct memory, so that the heap usage stays constant regardless of the
+ * number of entries and the garbage collector never has to trace them.
+ *
+ * <p>Cache is divided into segments, each guarded by a read write lock and owning:
+ *
+ * <ul>
+ *     <li>Index : Open addressed hash table in direct memory mapping the hash of the serialized key to its record
+ *     <li>Slab allocator : Slabs of direct memory holding the records, see {@link SlabAllocator}
+ * </ul>
+ *
+ * <p>A record holds a header (state, key hash, key and value lengths, creation and expiration time) followed by the
+ * serialized key and value. Once the memory of a segment is exhausted, a whole slab is reclaimed in round robin order
+ * by evicting all the records in it. Purging scans the index of each segment and frees the expired records.
+ *
+ * NOTE: A record larger than a slab can not be stored, such puts and replaces throw IllegalArgumentException and
+ * leave the cache unchanged
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+class OffHeapCache<K, V> implements Cache<K, CacheObject<V>>, StatsAware {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 32 - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+
+    private static final int MINIMUM_SLAB_SIZE = 4 * 1024;
+    private static final int MAXIMUM_SLAB_SIZE = 1024 * 1024;
+
+    // Record header layout
+    private static final int HASH_OFFSET = 4;
+    private static final int KEY_LENGTH_OFFSET = 8;
+    private static final int VALUE_LENGTH_OFFSET = 12;
+    private static final int CREATION_OFFSET = 16;
+    private static final int EXPIRATION_OFFSET = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private final Serializer<K> mKeySerializer;
+    private final Serializer<V> mValueSerializer;
+    private final Segment[] mSegments;
+    private final Ticker mTicker;
+    // Counts the expired and reclaimed records, null if statistics are not recorded
+    private StatsRecorder mStats;
+
+    /**
+     * @param capacity Bytes of direct memory to be used for storing records
+     * @param initialCapacity Initial number of entries
+     * @param keySerializer Key serializer
+     * @param valueSerializer Value serializer
+     * @param ticker Time source of the purge @see Ticker
+     */
+    public OffHeapCache(long capacity, int initialCapacity, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                        Ticker ticker) {
+
+        mKeySerializer = keySerializer;
+        mValueSerializer = valueSerializer;
+        mTicker = ticker;
+
+        long segmentCapacity = Math.max(capacity / SEGMENT_COUNT, MINIMUM_SLAB_SIZE);
+        int slabSize = Integer.highestOneBit((int) Math.min(segmentCapacity / 64, MAXIMUM_SLAB_SIZE));
+        slabSize = Math.max(slabSize, MINIMUM_SLAB_SIZE);
+
+        mSegments = newSegments(SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; ++i) {
+
+            mSegments[i] = new Segment(new SlabAllocator(segmentCapacity, slabSize),
+                    Math.max(initialCapacity / SEGMENT_COUNT, 1));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment[] newSegments(int length) {
+
+        return new OffHeapCache.Segment[length];
+    }
+
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        mStats = recorder;
+    }
+
+    @Override
+    public void clear() {
+
+        for (Segment segment : mSegments) {
+
+            segment.clear();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        byte[] keyBytes = serializeKey(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).containsKey(keyBytes, hash);
+    }
+
+    @Override
+    public CacheObject<V> get(Object key) {
+
+        byte[] keyBytes = serializeKey(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).get(keyBytes, hash);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<K, CacheObject<V>> result = new LinkedHashMap<K, CacheObject<V>>();
+        for (Object key : keys) {
+
+            CacheObject<V> co = get(key);
+            if (co != null) {
+
+                result.put((K) key, co);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return size() == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the record is larger than a slab, in which case the cache is unchanged
+     */
+    @Override
+    public CacheObject<V> put(K key, CacheObject<V> value) {
+
+        byte[] keyBytes = mKeySerializer.serialize(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).put(keyBytes, hash, mValueSerializer.serialize(value.getCache()),
+                timeOfCreation(value), timeOfExpiry(value));
+    }
+
+    @Override
+    public CacheObject<V> putIfAbsent(K key, CacheObject<V> value) {
+
+        byte[] keyBytes = mKeySerializer.serialize(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).putIfAbsent(keyBytes, hash, mValueSerializer.serialize(value.getCache()),
+                timeOfCreation(value), timeOfExpiry(value));
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends CacheObject<V>> entries) {
+
+        for (Map.Entry<? extends K, ? extends CacheObject<V>> entry : entries.entrySet()) {
+
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        byte[] keyBytes = serializeKey(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).remove(keyBytes, hash, null);
+    }
+
+    /**
+     * Removes the key if its record has the same times and value bytes as the given cache object
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+
+        CacheObject<V> co = (CacheObject<V>) value;
+        byte[] keyBytes = serializeKey(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).remove(keyBytes, hash, co) != null;
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        for (Object key : keys) {
+
+            remove(key);
+        }
+    }
+
+    /**
+     * Replaces the record of the key if it has the same times and value bytes as the old cache object
+     */
+    @Override
+    public boolean replace(K key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        byte[] keyBytes = mKeySerializer.serialize(key);
+        int hash = hash(keyBytes);
+        return segmentFor(hash).replace(keyBytes, hash, oldValue,
+                mValueSerializer.serialize(newValue.getCache()), timeOfCreation(newValue), timeOfExpiry(newValue));
+    }
+
+    @Override
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : mSegments) {
+
+            size += segment.mSize;
+        }
+        return size;
+    }
+
+    @Override
+    public void purge() {
+
+        long now = mTicker.read();
+        for (Segment segment : mSegments) {
+
+            segment.purge(now);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeKey(Object key) {
+
+        return mKeySerializer.serialize((K) key);
+    }
+
+    private Segment segmentFor(int hash) {
+
+        return mSegments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private long timeOfCreation(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfCreation();
+        }
+        return mTicker.read();
+    }
+
+    private static long timeOfExpiry(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return ((Timestamped) co).getTimeOfExpiry();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static int hash(byte[] bytes) {
+
+        int h = 1;
+        for (byte b : bytes) {
+
+            h = 31 * h + b;
+        }
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Segment of the cache, index and records are only accessed holding its lock
+     */
+    private final class Segment {
+
+        // Index slot layout: state, key hash and record address
+        private static final int SLOT_SIZE = 16;
+        private static final int EMPTY = 0;
+        private static final int OCCUPIED = 1;
+        private static final int DELETED = 2;
+
+        private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+        private final SlabAllocator mAllocator;
+
+        private ByteBuffer mIndex;
+        private int mSlotMask;
+        private int mDeleted;
+        private volatile int mSize;
+
+        Segment(SlabAllocator allocator, int initialCapacity) {
+
+            mAllocator = allocator;
+            allocateIndex(Math.max(16, Integer.highestOneBit(initialCapacity * 2 - 1) << 1));
+        }
+
+        boolean containsKey(byte[] keyBytes, int hash) {
+
+            mLock.readLock().lock();
+            try {
+                return findSlot(keyBytes, hash) >= 0;
+            } finally {
+                mLock.readLock().unlock();
+            }
+        }
+
+        CacheObject<V> get(byte[] keyBytes, int hash) {
+
+            mLock.readLock().lock();
+            try {
+                int slot = findSlot(keyBytes, hash);
+                return (slot < 0) ? null : readRecord(addressAt(slot));
+            } finally {
+                mLock.readLock().unlock();
+            }
+        }
+
+        CacheObject<V> put(byte[] keyBytes, int hash, byte[] valueBytes, long creation, long expiration) {
+
+            mLock.writeLock().lock();
+            try {
+                long address = allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+
+                int slot = findSlot(keyBytes, hash);
+                CacheObject<V> oldValue = null;
+                if (slot >= 0) {
+
+                    oldValue = readRecord(addressAt(slot));
+                    mAllocator.free(addressAt(slot));
+                    mIndex.putLong(slot * SLOT_SIZE + 8, address);
+                } else {
+
+                    insert(hash, address);
+                }
+
+                writeRecord(address, hash, keyBytes, valueBytes, creation, expiration);
+                return oldValue;
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return Record of the key, even if expired, or {@code null} if the given value was stored
+         */
+        CacheObject<V> putIfAbsent(byte[] keyBytes, int hash, byte[] valueBytes, long creation, long expiration) {
+
+            mLock.writeLock().lock();
+            try {
+                int slot = findSlot(keyBytes, hash);
+                if (slot >= 0) {
+
+                    return readRecord(addressAt(slot));
+                }
+                return put(keyBytes, hash, valueBytes, creation, expiration);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        CacheObject<V> remove(byte[] keyBytes, int hash, CacheObject<V> expected) {
+
+            byte[] expectedBytes = (expected == null) ? null : mValueSerializer.serialize(expected.getCache());
+
+            mLock.writeLock().lock();
+            try {
+                int slot = findSlot(keyBytes, hash);
+                if (slot < 0 || (expected != null && !matches(addressAt(slot), expected, expectedBytes))) {
+
+                    return null;
+                }
+                CacheObject<V> oldValue = readRecord(addressAt(slot));
+                removeAt(slot);
+                return oldValue;
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        boolean replace(byte[] keyBytes, int hash, CacheObject<V> expected, byte[] valueBytes,
+                        long creation, long expiration) {
+
+            byte[] expectedBytes = mValueSerializer.serialize(expected.getCache());
+
+            mLock.writeLock().lock();
+            try {
+                int slot = findSlot(keyBytes, hash);
+                if (slot < 0 || !matches(addressAt(slot), expected, expectedBytes)) {
+
+                    return false;
+                }
+
+                long address = allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+                // Allocation might have evicted the record being replaced
+                slot = findSlot(keyBytes, hash);
+                if (slot < 0) {
+
+                    mAllocator.free(address);
+                    return false;
+                }
+                mAllocator.free(addressAt(slot));
+                mIndex.putLong(slot * SLOT_SIZE + 8, address);
+                writeRecord(address, hash, keyBytes, valueBytes, creation, expiration);
+                return true;
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        void purge(long now) {
+
+            mLock.writeLock().lock();
+            try {
+                int slotCount = mSlotMask + 1;
+                int expired = 0;
+                for (int slot = 0; slot < slotCount; ++slot) {
+
+                    if (stateAt(slot) == OCCUPIED) {
+
+                        long address = addressAt(slot);
+                        if (mAllocator.slab(address).getLong(SlabAllocator.offset(address) + EXPIRATION_OFFSET) < now) {
+
+                            removeAt(slot);
+                            ++expired;
+                        }
+                    }
+                }
+                if (mStats != null) {
+
+                    mStats.recordEvictions(expired);
+                }
+                if (mDeleted > slotCount / 4) {
+
+                    rehash(slotCount);
+                }
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        void clear() {
+
+            mLock.writeLock().lock();
+            try {
+                mAllocator.clear();
+                allocateIndex(mSlotMask + 1);
+                mSize = 0;
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Allocates a chunk for a record, reclaiming slabs if the segment memory is exhausted
+         *
+         * @return Address of the chunk
+         * @throws IllegalArgumentException If the record is larger than a slab
+         */
+        private long allocate(int recordSize) {
+
+            int sizeClass = mAllocator.sizeClass(recordSize);
+            if (sizeClass < 0) {
+
+                throw new IllegalArgumentException("Record of " + recordSize + " bytes is larger than a slab!");
+            }
+
+            long address = mAllocator.allocate(sizeClass);
+            if (address == SlabAllocator.NO_CHUNK) {
+
+                int victim = mAllocator.nextVictimSlab();
+                evictSlab(victim);
+                mAllocator.reassign(victim, sizeClass);
+                address = mAllocator.allocate(sizeClass);
+            }
+            return address;
+        }
+
+        /**
+         * Removes all the records stored in the slab from the index
+         */
+        private void evictSlab(int slab) {
+
+            int chunkCount = mAllocator.chunkCount(slab);
+            int evicted = 0;
+            for (int i = 0; i < chunkCount; ++i) {
+
+                long address = mAllocator.chunkAddress(slab, i);
+                ByteBuffer buffer = mAllocator.slab(address);
+                int offset = SlabAllocator.offset(address);
+                if (buffer.getInt(offset) != SlabAllocator.USED) {
+
+                    continue;
+                }
+
+                // Finds the slot pointing to the record by probing from its hash
+                int hash = buffer.getInt(offset + HASH_OFFSET);
+                for (int slot = hash & mSlotMask; stateAt(slot) != EMPTY; slot = (slot + 1) & mSlotMask) {
+
+                    if (stateAt(slot) == OCCUPIED && addressAt(slot) == address) {
+
+                        mIndex.putInt(slot * SLOT_SIZE, DELETED);
+                        ++mDeleted;
+                        --mSize;
+                        ++evicted;
+                        break;
+                    }
+                }
+                buffer.putInt(offset, SlabAllocator.FREE);
+            }
+            if (mStats != null) {
+
+                mStats.recordEvictions(evicted);
+            }
+        }
+
+        private int findSlot(byte[] keyBytes, int hash) {
+
+            for (int slot = hash & mSlotMask; ; slot = (slot + 1) & mSlotMask) {
+
+                int state = stateAt(slot);
+                if (state == EMPTY) {
+
+                    return -1;
+                }
+                if (state == OCCUPIED && mIndex.getInt(slot * SLOT_SIZE + 4) == hash
+                        && keyEquals(addressAt(slot), keyBytes)) {
+
+                    return slot;
+                }
+            }
+        }
+
+        private void insert(int hash, long address) {
+
+            if (mSize + mDeleted + 1 > (mSlotMask + 1) * 3 / 4) {
+
+                rehash(Math.max(mSlotMask + 1, Integer.highestOneBit((mSize + 1) * 4 - 1)));
+            }
+
+            int slot = hash & mSlotMask;
+            while (stateAt(slot) == OCCUPIED) {
+
+                slot = (slot + 1) & mSlotMask;
+            }
+            if (stateAt(slot) == DELETED) {
+
+                --mDeleted;
+            }
+            putSlot(mIndex, slot, hash, address);
+            ++mSize;
+        }
+
+        private void removeAt(int slot) {
+
+            mAllocator.free(addressAt(slot));
+            mIndex.putInt(slot * SLOT_SIZE, DELETED);
+            ++mDeleted;
+            --mSize;
+        }
+
+        /**
+         * Rebuilds the index without the deleted slots
+         */
+        private void rehash(int slotCount) {
+
+            ByteBuffer oldIndex = mIndex;
+            int oldSlotCount = mSlotMask + 1;
+            allocateIndex(slotCount);
+
+            for (int slot = 0; slot < oldSlotCount; ++slot) {
+
+                if (oldIndex.getInt(slot * SLOT_SIZE) == OCCUPIED) {
+
+                    int hash = oldIndex.getInt(slot * SLOT_SIZE + 4);
+                    int newSlot = hash & mSlotMask;
+                    while (stateAt(newSlot) != EMPTY) {
+
+                        newSlot = (newSlot + 1) & mSlotMask;
+                    }
+                    putSlot(mIndex, newSlot, hash, oldIndex.getLong(slot * SLOT_SIZE + 8));
+                }
+            }
+        }
+
+        private void allocateIndex(int slotCount) {
+
+            mIndex = ByteBuffer.allocateDirect(slotCount * SLOT_SIZE);
+            mSlotMask = slotCount - 1;
+            mDeleted = 0;
+        }
+
+        private int stateAt(int slot) {
+
+            return mIndex.getInt(slot * SLOT_SIZE);
+        }
+
+        private long addressAt(int slot) {
+
+            return mIndex.getLong(slot * SLOT_SIZE + 8);
+        }
+
+        private void putSlot(ByteBuffer index, int slot, int hash, long address) {
+
+            index.putInt(slot * SLOT_SIZE, OCCUPIED);
+            index.putInt(slot * SLOT_SIZE + 4, hash);
+            index.putLong(slot * SLOT_SIZE + 8, address);
+        }
+
+        private void writeRecord(long address, int hash, byte[] keyBytes, byte[] valueBytes,
+                                 long creation, long expiration) {
+
+            ByteBuffer buffer = mAllocator.slab(address).duplicate();
+            int offset = SlabAllocator.offset(address);
+            buffer.putInt(offset, SlabAllocator.USED);
+            buffer.putInt(offset + HASH_OFFSET, hash);
+            buffer.putInt(offset + KEY_LENGTH_OFFSET, keyBytes.length);
+            buffer.putInt(offset + VALUE_LENGTH_OFFSET, valueBytes.length);
+            buffer.putLong(offset + CREATION_OFFSET, creation);
+            buffer.putLong(offset + EXPIRATION_OFFSET, expiration);
+            buffer.position(offset + HEADER_SIZE);
+            buffer.put(keyBytes);
+            buffer.put(valueBytes);
+        }
+
+        private boolean keyEquals(long address, byte[] keyBytes) {
+
+            ByteBuffer buffer = mAllocator.slab(address);
+            int offset = SlabAllocator.offset(address);
+            if (buffer.getInt(offset + KEY_LENGTH_OFFSET) != keyBytes.length) {
+
+                return false;
+            }
+            int keyOffset = offset + HEADER_SIZE;
+            for (int i = 0; i < keyBytes.length; ++i) {
+
+                if (buffer.get(keyOffset + i) != keyBytes[i]) {
+
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return {@code true} if the record has the times and value bytes of the cache object, else {@code false}
+         */
+        private boolean matches(long address, CacheObject<V> co, byte[] valueBytes) {
+
+            ByteBuffer buffer = mAllocator.slab(address);
+            int offset = SlabAllocator.offset(address);
+            if (buffer.getLong(offset + EXPIRATION_OFFSET) != timeOfExpiry(co)
+                    || (co instanceof Timestamped
+                        && buffer.getLong(offset + CREATION_OFFSET) != timeOfCreation(co))
+                    || buffer.getInt(offset + VALUE_LENGTH_OFFSET) != valueBytes.length) {
+
+                return false;
+            }
+            int valueOffset = offset + HEADER_SIZE + buffer.getInt(offset + KEY_LENGTH_OFFSET);
+            for (int i = 0; i < valueBytes.length; ++i) {
+
+                if (buffer.get(valueOffset + i) != valueBytes[i]) {
+
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private CacheObject<V> readRecord(long address) {
+
+            ByteBuffer buffer = mAllocator.slab(address).duplicate();
+            int offset = SlabAllocator.offset(address);
+            long creation = buffer.getLong(offset + CREATION_OFFSET);
+            long expiration = buffer.getLong(offset + EXPIRATION_OFFSET);
+            int valueOffset = offset + HEADER_SIZE + buffer.getInt(offset + KEY_LENGTH_OFFSET);
+
+            buffer.limit(valueOffset + buffer.getInt(offset + VALUE_LENGTH_OFFSET));
+            buffer.position(valueOffset);
+            V value = mValueSerializer.deserialize(buffer);
+
+            if (expiration == Long.MAX_VALUE) {
+
+                return new LruCacheObject<V>(value);
+            }
+            return new TimedCacheObject<V>(value, creation, expiration - creation);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package assignment.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Lossy buffer recording the reads of a size bounded or expire after access {@link InMemoryCache} so that the
+ * eviction policy and the expiration times can be updated in batches under the maintenance lock, instead of taking
+ * a lock or writing to the node on every read.
+ *
+ * <p>Buffer is striped by thread to spread the contention; each stripe is a small ring buffer. A read is
+ * simply dropped when its stripe is full or contended, which only makes the eviction order slightly less precise;
+ * a hot entry is read again soon and a full stripe gets drained promptly.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class ReadBuffer<K, V> {
+
+    // Capacity of each stripe, must be a power of two
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    private static final int MAXIMUM_STRIPES = 64;
+
+    private final Stripe<K, V>[] mStripes;
+    private final int mStripeMask;
+
+    ReadBuffer() {
+
+        int stripeCount = Integer.highestOneBit(Math.min(MAXIMUM_STRIPES, 4 * Runtime.getRuntime().availableProcessors()));
+        mStripes = newStripes(stripeCount);
+        for (int i = 0; i < stripeCount; ++i) {
+
+            mStripes[i] = new Stripe<K, V>();
+        }
+        mStripeMask = stripeCount - 1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Stripe<K, V>[] newStripes(int length) {
+
+        return new Stripe[length];
+    }
+
+    /**
+     * Records a read of the node
+     *
+     * @param node Node which was read
+     * @return {@code true} if the stripe is full and the buffer should be drained, else {@code false}
+     */
+    boolean offer(CacheNode<K, V> node) {
+
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return mStripes[(hash ^ (hash >>> 16)) & mStripeMask].offer(node);
+    }
+
+    /**
+     * Replays the recorded reads into the cache, must be called holding the maintenance lock of the cache
+     *
+     * @param cache Cache owning the buffer
+     */
+    void drainTo(InMemoryCache<K, V> cache) {
+
+        for (Stripe<K, V> stripe : mStripes) {
+
+            stripe.drainTo(cache);
+        }
+    }
+
+    /**
+     * Single producer slot claiming ring buffer with a single consumer
+     */
+    private static final class Stripe<K, V> {
+
+        private final AtomicReferenceArray<CacheNode<K, V>> mBuffer =
+                new AtomicReferenceArray<CacheNode<K, V>>(STRIPE_SIZE);
+        private final AtomicLong mWriteCounter = new AtomicLong();
+        private volatile long mReadCounter;
+
+        boolean offer(CacheNode<K, V> node) {
+
+            long head = mReadCounter;
+            long tail = mWriteCounter.get();
+            long size = tail - head;
+            if (size >= STRIPE_SIZE) {
+
+                return true;
+            }
+            if (mWriteCounter.compareAndSet(tail, tail + 1)) {
+
+                mBuffer.lazySet((int) (tail & STRIPE_MASK), node);
+                return size + 1 == STRIPE_SIZE;
+            }
+            return false;
+        }
+
+        void drainTo(InMemoryCache<K, V> cache) {
+
+            long head = mReadCounter;
+            long tail = mWriteCounter.get();
+            for (; head != tail; ++head) {
+
+                int index = (int) (head & STRIPE_MASK);
+                CacheNode<K, V> node = mBuffer.get(index);
+                if (node == null) {
+
+                    // Slot is claimed but the node is not yet published
+                    break;
+                }
+                mBuffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            mReadCounter = head;
+        }
+    }
+}
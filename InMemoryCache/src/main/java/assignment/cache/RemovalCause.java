@@ -0,0 +1,21 @@
+package assignment.cache;
+
+/**
+ * <p>Cause of the removal of a cache entry, reported to the {@link RemovalListener}.
+ */
+public enum RemovalCause {
+
+    EXPLICIT, // Removed by the user
+    REPLACED, // Value overwritten by the user
+    EXPIRED, // Time to live elapsed, removed by the purge, a read or an overwrite
+    SIZE, // Evicted as per the cache algorithm once the maximum size or weight was reached
+    CLEARED; // Removed by clearing the cache
+
+    /**
+     * @return {@code true} if the cache removed the entry on its own, {@code false} if the user did
+     */
+    public boolean wasEvicted() {
+
+        return this == EXPIRED || this == SIZE;
+    }
+}
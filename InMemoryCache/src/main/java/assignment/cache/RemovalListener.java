@@ -0,0 +1,36 @@
+package assignment.cache;
+
+import java.util.List;
+
+/**
+ * <p>Listener notified of the entries removed from the cache, whether removed by the user or by the cache itself;
+ * see {@link CacheBuilder#removalListener(RemovalListener)}.
+ *
+ * <p>Notifications are delivered asynchronously in batches on the removal executor, never on the thread which
+ * removed the entries, so a slow listener delays neither the callers nor the purge. Batches of a cache are
+ * delivered one at a time, in the order of the removals. Exceptions thrown by the listener are logged and
+ * swallowed.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,Buffer> cm = CacheBuilder.newBuilder()
+ *         .removalListener(new RemovalListener<Long, Buffer>() {
+ *             public void onRemoval(List<RemovalNotification<Long, Buffer>> notifications) {
+ *                 for (RemovalNotification<Long, Buffer> notification : notifications) {
+ *                     notification.getValue().release();
+ *                 }
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public interface RemovalListener<K, V> {
+
+    /**
+     * @param notifications Removed entries with the causes of their removal, never empty
+     */
+    void onRemoval(List<RemovalNotification<K, V>> notifications);
+}
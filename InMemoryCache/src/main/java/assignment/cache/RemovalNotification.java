@@ -0,0 +1,39 @@
+package assignment.cache;
+
+/**
+ * <p>Removed cache entry along with the cause of its removal, delivered to the {@link RemovalListener}.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public final class RemovalNotification<K, V> {
+
+    private final K mKey;
+    private final V mValue;
+    private final RemovalCause mCause;
+
+    RemovalNotification(K key, V value, RemovalCause cause) {
+
+        mKey = key;
+        mValue = value;
+        mCause = cause;
+    }
+
+    public K getKey() {
+        return mKey;
+    }
+
+    public V getValue() {
+        return mValue;
+    }
+
+    public RemovalCause getCause() {
+        return mCause;
+    }
+
+    @Override
+    public String toString() {
+
+        return mKey + "=" + mValue + " (" + mCause + ")";
+    }
+}
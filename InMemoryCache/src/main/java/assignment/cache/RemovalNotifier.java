@@ -0,0 +1,97 @@
+package assignment.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Delivers the removal notifications of a cache to its {@link RemovalListener} in batches on an executor.
+ *
+ * <p>Removing threads only queue the notification and, if no delivery is pending, submit one. A single delivery
+ * task drains the queue in batches of up to {@link #MAXIMUM_BATCH_SIZE}, so a burst of removals such as a purge
+ * costs one task rather than one per entry, and the listener is never called concurrently.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class RemovalNotifier<K, V> implements Runnable {
+
+    static final int MAXIMUM_BATCH_SIZE = 1024;
+
+    private final RemovalListener<K, V> mListener;
+    private final Executor mExecutor;
+    private final Queue<RemovalNotification<K, V>> mPending = new ConcurrentLinkedQueue<RemovalNotification<K, V>>();
+    // Set while a delivery task is submitted or running
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    RemovalNotifier(RemovalListener<K, V> listener, Executor executor) {
+
+        mListener = listener;
+        mExecutor = executor;
+    }
+
+    /**
+     * Queues the notification of a removed entry, delivered later on the executor
+     */
+    void offer(K key, V value, RemovalCause cause) {
+
+        mPending.offer(new RemovalNotification<K, V>(key, value, cause));
+        schedule();
+    }
+
+    private void schedule() {
+
+        if (!mScheduled.get() && mScheduled.compareAndSet(false, true)) {
+
+            try {
+                mExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Queued notifications are delivered by the next accepted task
+                mScheduled.set(false);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Delivers the queued notifications batch by batch
+     */
+    @Override
+    public void run() {
+
+        try {
+            List<RemovalNotification<K, V>> batch;
+            while (!(batch = pollBatch()).isEmpty()) {
+
+                try {
+                    mListener.onRemoval(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            mScheduled.set(false);
+        }
+
+        // A notification queued after the last poll but before the flag was cleared would be left behind otherwise
+        if (!mPending.isEmpty()) {
+
+            schedule();
+        }
+    }
+
+    private List<RemovalNotification<K, V>> pollBatch() {
+
+        List<RemovalNotification<K, V>> batch = new ArrayList<RemovalNotification<K, V>>();
+        RemovalNotification<K, V> notification;
+        while (batch.size() < MAXIMUM_BATCH_SIZE && (notification = mPending.poll()) != null) {
+
+            batch.add(notification);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,382 @@
+package assignment.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>In memory cache split into segments, each of them an {@link InMemoryCache} with its own map, timer wheel,
+ * buffers, eviction policy and maintenance lock. Keys are spread over the segments by their hash, so writers and the
+ * purge contend only within a segment rather than across the whole cache.
+ *
+ * <p>Purge runs the segments in parallel as fork join tasks on a shared pool, so its duration is that of the largest
+ * segment rather than of the whole cache. When created to purge only a few segments at a time, each purge moves on
+ * to the next segments in round robin order, bounding the pause of a single purge; expired entries of the other
+ * segments are still never returned, only reclaimed later.
+ *
+ * <p>Maximum size, or weight, is split evenly across the segments and enforced per segment, so the cache may evict
+ * before it is full overall if the keys are unevenly spread.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class SegmentedCache<K, V> implements FlatCache<K, V>, StatsAware {
+
+    private final InMemoryCache<K, V>[] mSegments;
+    // Number of high bits of the spread hash selecting the segment
+    private final int mSegmentShift;
+    private final int mSegmentsPerPurge;
+    // Index of the segment purged next when purging incrementally
+    private final AtomicInteger mNextPurge = new AtomicInteger();
+
+    /**
+     * @param segments Segments of the cache, a power of two and at least two of them
+     * @param segmentsPerPurge Number of segments purged by each purge
+     */
+    SegmentedCache(InMemoryCache<K, V>[] segments, int segmentsPerPurge) {
+
+        if (segments.length < 2 || Integer.bitCount(segments.length) != 1) {
+
+            throw new IllegalArgumentException("Segment count must be a power of two greater than one!");
+        }
+        mSegments = segments;
+        mSegmentShift = 32 - Integer.numberOfTrailingZeros(segments.length);
+        mSegmentsPerPurge = Math.min(Math.max(segmentsPerPurge, 1), segments.length);
+    }
+
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        for (InMemoryCache<K, V> segment : mSegments) {
+
+            segment.setStatsRecorder(recorder);
+        }
+    }
+
+    /**
+     * Selects the segment by the high bits of the spread hash, the map of the segment indexes by the low ones
+     */
+    private InMemoryCache<K, V> segmentFor(Object key) {
+
+        return mSegments[indexFor(key)];
+    }
+
+    @Override
+    public void clear() {
+
+        for (InMemoryCache<K, V> segment : mSegments) {
+
+            segment.clear();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return segmentFor(key).containsKey(key);
+    }
+
+    @Override
+    public CacheObject<V> get(Object key) {
+
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Keys found in the segments are of the key type, so they are cast unchecked
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<K, CacheObject<V>> result = new LinkedHashMap<K, CacheObject<V>>();
+        for (Object key : keys) {
+
+            CacheObject<V> node = segmentFor(key).get(key);
+            if (node != null) {
+
+                result.put((K) key, node);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        for (InMemoryCache<K, V> segment : mSegments) {
+
+            if (!segment.isEmpty()) {
+
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public CacheObject<V> put(K key, CacheObject<V> value) {
+
+        return segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public CacheObject<V> putValue(K key, V value, long creationTime, long expirationTime) {
+
+        return segmentFor(key).putValue(key, value, creationTime, expirationTime);
+    }
+
+    @Override
+    public CacheObject<V> putIfAbsent(K key, CacheObject<V> value) {
+
+        return segmentFor(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public CacheObject<V> putValueIfAbsent(K key, V value, long creationTime, long expirationTime) {
+
+        return segmentFor(key).putValueIfAbsent(key, value, creationTime, expirationTime);
+    }
+
+    /**
+     * Splits the entries by segment, so each segment runs its maintenance once for its share
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends CacheObject<V>> entries) {
+
+        Map<K, CacheObject<V>>[] split = newMaps(mSegments.length);
+        for (Map.Entry<? extends K, ? extends CacheObject<V>> entry : entries.entrySet()) {
+
+            int index = indexFor(entry.getKey());
+            if (split[index] == null) {
+
+                split[index] = new LinkedHashMap<K, CacheObject<V>>();
+            }
+            split[index].put(entry.getKey(), entry.getValue());
+        }
+        for (int i = 0; i < split.length; ++i) {
+
+            if (split[i] != null) {
+
+                mSegments[i].putAll(split[i]);
+            }
+        }
+    }
+
+    @Override
+    public void putAllValues(Map<? extends K, ? extends V> entries, long creationTime, long expirationTime) {
+
+        Map<K, V>[] split = newMaps(mSegments.length);
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+
+            int index = indexFor(entry.getKey());
+            if (split[index] == null) {
+
+                split[index] = new LinkedHashMap<K, V>();
+            }
+            split[index].put(entry.getKey(), entry.getValue());
+        }
+        for (int i = 0; i < split.length; ++i) {
+
+            if (split[i] != null) {
+
+                mSegments[i].putAllValues(split[i], creationTime, expirationTime);
+            }
+        }
+    }
+
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+
+        return segmentFor(key).remove(key, value);
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        List<Object>[] split = newLists(mSegments.length);
+        for (Object key : keys) {
+
+            int index = indexFor(key);
+            if (split[index] == null) {
+
+                split[index] = new ArrayList<Object>();
+            }
+            split[index].add(key);
+        }
+        for (int i = 0; i < split.length; ++i) {
+
+            if (split[i] != null) {
+
+                mSegments[i].removeAll(split[i]);
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        return segmentFor(key).replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public int size() {
+
+        int size = 0;
+        for (InMemoryCache<K, V> segment : mSegments) {
+
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of segments
+     */
+    int segmentCount() {
+
+        return mSegments.length;
+    }
+
+    /**
+     * @return Live view of the nodes of all the segments, weakly consistent while the cache is written
+     */
+    Iterable<CacheNode<K, V>> nodes() {
+
+        return new Iterable<CacheNode<K, V>>() {
+            @Override
+            public Iterator<CacheNode<K, V>> iterator() {
+
+                return new NodeIterator();
+            }
+        };
+    }
+
+    /**
+     * Drains the buffered writes of every segment and returns the total weight accounted by their eviction policies
+     *
+     * @return Total weight of the entries, 0 if the cache is unbounded
+     */
+    long weightedSize() {
+
+        long weightedSize = 0;
+        for (InMemoryCache<K, V> segment : mSegments) {
+
+            weightedSize += segment.weightedSize();
+        }
+        return weightedSize;
+    }
+
+    /**
+     * Purges all the segments, or the next few of them if purging incrementally, in parallel
+     */
+    @Override
+    public void purge() {
+
+        int first = (mSegmentsPerPurge == mSegments.length) ? 0 : mNextPurge.getAndAdd(mSegmentsPerPurge);
+        PurgePool.INSTANCE.invoke(new PurgeTask(first, mSegmentsPerPurge));
+    }
+
+    private int indexFor(Object key) {
+
+        return (key.hashCode() * 0x9E3779B9) >>> mSegmentShift;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Map<K, V>[] newMaps(int length) {
+
+        return new Map[length];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> List<E>[] newLists(int length) {
+
+        return new List[length];
+    }
+
+    /**
+     * Purges a range of segments, wrapping around the last one, by splitting it in halves down to single segments
+     */
+    private final class PurgeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int mFirst;
+        private final int mCount;
+
+        PurgeTask(int first, int count) {
+
+            mFirst = first;
+            mCount = count;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (mCount == 1) {
+
+                mSegments[mFirst & (mSegments.length - 1)].purge();
+                return;
+            }
+            int half = mCount >>> 1;
+            invokeAll(new PurgeTask(mFirst, half), new PurgeTask(mFirst + half, mCount - half));
+        }
+    }
+
+    /**
+     * Iterates the nodes of the segments one segment after another
+     */
+    private final class NodeIterator implements Iterator<CacheNode<K, V>> {
+
+        private int mNextSegment;
+        private Iterator<CacheNode<K, V>> mCurrent = Collections.<CacheNode<K, V>>emptyList().iterator();
+
+        @Override
+        public boolean hasNext() {
+
+            while (!mCurrent.hasNext() && mNextSegment < mSegments.length) {
+
+                mCurrent = mSegments[mNextSegment++].nodes().iterator();
+            }
+            return mCurrent.hasNext();
+        }
+
+        @Override
+        public CacheNode<K, V> next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+            return mCurrent.next();
+        }
+
+        @Override
+        public void remove() {
+
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Holder of the fork join pool purging the segments of all the segmented caches, so that its threads are only
+     * created on first use
+     */
+    private static final class PurgePool {
+
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+}
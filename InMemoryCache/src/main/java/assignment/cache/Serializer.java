@@ -0,0 +1,27 @@
+package assignment.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Converts keys or values to bytes and back, required by the cache types storing entries outside the java heap
+ *
+ * @param <T> Type to be serialized
+ */
+public interface Serializer<T> {
+
+    /**
+     * @param value Value to be serialized
+     * @return Serialized bytes of the value
+     */
+    byte[] serialize(T value);
+
+    /**
+     * Reads a value from the bytes between the position and the limit of the buffer.
+     * NOTE: Buffer may refer to memory which is reused once this method returns, so the returned value must not
+     * keep any reference to it
+     *
+     * @param buffer Buffer holding the serialized bytes
+     * @return Deserialized value
+     */
+    T deserialize(ByteBuffer buffer);
+}
@@ -0,0 +1,240 @@
+package assignment.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Allocator of chunks of direct memory used by {@link OffHeapCache}.
+ *
+ * <p>Memory is allocated in fixed size slabs of direct memory, up to the given capacity. Each slab is assigned to a
+ * size class and carved into equal chunks of a power of two size; a request is served with a chunk of the smallest
+ * class fitting it. Freed chunks are kept in an intrusive free list per class and reused. Once all the slabs are
+ * assigned, a slab can be reclaimed as a whole and reassigned to another class, see {@link #reassign(int, int)}.
+ *
+ * <p>Chunk address is the slab index in the upper and the offset within the slab in the lower 32 bits.
+ * First int of every chunk holds its state; the rest of a free chunk holds the address of the next free chunk.
+ *
+ * NOTE: This class is not thread-safe, callers are required to hold the lock of the owning segment
+ */
+final class SlabAllocator {
+
+    static final int FREE = 0;
+    static final int USED = 1;
+    static final long NO_CHUNK = -1L;
+
+    private static final int MINIMUM_CHUNK_SHIFT = 6;
+
+    private final int mSlabSize;
+    private final ByteBuffer[] mSlabs;
+    // Size class of each slab
+    private final int[] mSlabClass;
+    private int mSlabCount;
+
+    // Head of the free list of each size class
+    private final long[] mFreeLists;
+    // Slab being carved and the offset carved up to, for each size class
+    private final int[] mCurrentSlab;
+    private final int[] mCurrentOffset;
+
+    private int mNextVictim;
+
+    /**
+     * @param capacity Total bytes of direct memory which may be allocated
+     * @param slabSize Size of a slab, must be a power of two
+     */
+    SlabAllocator(long capacity, int slabSize) {
+
+        mSlabSize = slabSize;
+        int maximumSlabs = (int) Math.max(1L, capacity / slabSize);
+        mSlabs = new ByteBuffer[maximumSlabs];
+        mSlabClass = new int[maximumSlabs];
+
+        int classCount = Integer.numberOfTrailingZeros(slabSize) - MINIMUM_CHUNK_SHIFT + 1;
+        mFreeLists = new long[classCount];
+        mCurrentSlab = new int[classCount];
+        mCurrentOffset = new int[classCount];
+        Arrays.fill(mFreeLists, NO_CHUNK);
+        Arrays.fill(mCurrentSlab, -1);
+    }
+
+    /**
+     * @param size Number of bytes required
+     * @return Size class fitting the bytes, -1 if larger than a slab
+     */
+    int sizeClass(int size) {
+
+        if (size > mSlabSize) {
+
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1 << MINIMUM_CHUNK_SHIFT) - 1);
+        return shift - MINIMUM_CHUNK_SHIFT;
+    }
+
+    /**
+     * Allocates a chunk without evicting anything
+     *
+     * @param sizeClass Size class of the chunk, see {@link #sizeClass(int)}
+     * @return Address of the chunk or {@link #NO_CHUNK} if all the memory is in use
+     */
+    long allocate(int sizeClass) {
+
+        long address = mFreeLists[sizeClass];
+        if (address != NO_CHUNK) {
+
+            mFreeLists[sizeClass] = slab(address).getLong(offset(address) + 8);
+            return address;
+        }
+
+        int chunkSize = chunkSize(sizeClass);
+        int slab = mCurrentSlab[sizeClass];
+        if (slab == -1 || mCurrentOffset[sizeClass] + chunkSize > mSlabSize) {
+
+            if (mSlabCount == mSlabs.length) {
+
+                return NO_CHUNK;
+            }
+            slab = mSlabCount++;
+            if (mSlabs[slab] == null) {
+
+                mSlabs[slab] = ByteBuffer.allocateDirect(mSlabSize);
+            }
+            mSlabClass[slab] = sizeClass;
+            mCurrentSlab[sizeClass] = slab;
+            mCurrentOffset[sizeClass] = 0;
+        }
+
+        address = address(slab, mCurrentOffset[sizeClass]);
+        mCurrentOffset[sizeClass] += chunkSize;
+        return address;
+    }
+
+    /**
+     * Returns the chunk to the free list of its class
+     *
+     * @param address Address of a used chunk
+     */
+    void free(long address) {
+
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        int sizeClass = mSlabClass[slabIndex(address)];
+        slab.putInt(offset, FREE);
+        slab.putLong(offset + 8, mFreeLists[sizeClass]);
+        mFreeLists[sizeClass] = address;
+    }
+
+    /**
+     * @return Index of the next slab to be reclaimed, slabs are reclaimed in round robin (allocation) order
+     * or -1 if no slab is allocated
+     */
+    int nextVictimSlab() {
+
+        if (mSlabCount == 0) {
+
+            return -1;
+        }
+        int victim = mNextVictim;
+        mNextVictim = (mNextVictim + 1) % mSlabCount;
+        return victim;
+    }
+
+    /**
+     * @return Number of chunks carved out of the slab so far, used or free
+     */
+    int chunkCount(int slab) {
+
+        int sizeClass = mSlabClass[slab];
+        int carved = (mCurrentSlab[sizeClass] == slab) ? mCurrentOffset[sizeClass] : mSlabSize;
+        return carved / chunkSize(sizeClass);
+    }
+
+    /**
+     * @return Address of the i-th chunk of the slab
+     */
+    long chunkAddress(int slab, int i) {
+
+        return address(slab, i * chunkSize(mSlabClass[slab]));
+    }
+
+    /**
+     * Assigns a slab to another size class, all its chunks must have been freed by the caller
+     *
+     * @param slab Index of the slab
+     * @param sizeClass New size class
+     */
+    void reassign(int slab, int sizeClass) {
+
+        int oldClass = mSlabClass[slab];
+
+        // Unlinks the chunks of the slab from the free list of the old class
+        long previous = NO_CHUNK;
+        long address = mFreeLists[oldClass];
+        while (address != NO_CHUNK) {
+
+            long next = slab(address).getLong(offset(address) + 8);
+            if (slabIndex(address) == slab) {
+
+                if (previous == NO_CHUNK) {
+
+                    mFreeLists[oldClass] = next;
+                } else {
+
+                    slab(previous).putLong(offset(previous) + 8, next);
+                }
+            } else {
+
+                previous = address;
+            }
+            address = next;
+        }
+        if (mCurrentSlab[oldClass] == slab) {
+
+            mCurrentSlab[oldClass] = -1;
+        }
+
+        // Whole slab becomes free chunks of the new class
+        mSlabClass[slab] = sizeClass;
+        int chunkSize = chunkSize(sizeClass);
+        for (int offset = mSlabSize - chunkSize; offset >= 0; offset -= chunkSize) {
+
+            free(address(slab, offset));
+        }
+    }
+
+    /**
+     * Forgets all the chunks, allocated slabs are kept for reuse
+     */
+    void clear() {
+
+        Arrays.fill(mFreeLists, NO_CHUNK);
+        Arrays.fill(mCurrentSlab, -1);
+        mSlabCount = 0;
+        mNextVictim = 0;
+    }
+
+    ByteBuffer slab(long address) {
+
+        return mSlabs[slabIndex(address)];
+    }
+
+    static int offset(long address) {
+
+        return (int) address;
+    }
+
+    private int chunkSize(int sizeClass) {
+
+        return 1 << (sizeClass + MINIMUM_CHUNK_SHIFT);
+    }
+
+    private static int slabIndex(long address) {
+
+        return (int) (address >>> 32);
+    }
+
+    private static long address(int slab, int offset) {
+
+        return ((long) slab << 32) | offset;
+    }
+}
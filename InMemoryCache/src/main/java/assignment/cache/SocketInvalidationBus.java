@@ -0,0 +1,387 @@
+package assignment.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>{@link InvalidationBus} connecting JVMs over TCP. Every JVM runs one bus listening on its own address and adds
+ * the addresses of the other JVMs as peers; the members of the bus are the caches of its JVM.
+ *
+ * <p>A published batch is delivered to the other local members right away, and sent to every peer as frames
+ * holding the clear flag and the keys converted by the key serializer. Connections to the peers are opened on first
+ * use and opened again by the next batch once broken, so a peer which is down or restarting misses the batches
+ * sent in the meantime and serves its entries till they expire. Each accepted connection is read by its own thread,
+ * which delivers the received batches to all the local members.
+ *
+ * <p>NOTE: Connections are neither authenticated nor encrypted, so the bus is to be bound to an interface reachable
+ * by the peers only. The received keys are read by the key serializer, which therefore must not be a
+ * {@link JavaSerializer}: deserializing java objects sent by anyone able to connect can run arbitrary code. Frames
+ * larger than {@link #MAX_FRAME_SIZE} or holding a key larger than {@link #MAX_KEY_SIZE} are rejected, and the
+ * connection they came from is closed. Published keys larger than {@link #MAX_KEY_SIZE} are therefore not sent, the
+ * peers serve their entries till they expire.
+ *
+ * @param <K> Key type to be stored in cache
+ */
+public final class SocketInvalidationBus<K> implements InvalidationBus<K>, Closeable, Runnable {
+
+    /**
+     * Maximum size of a serialized key in bytes
+     */
+    public static final int MAX_KEY_SIZE = 64 * 1024;
+    /**
+     * Maximum size of the keys of a frame in bytes, counting the length of every key
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final Serializer<K> mKeySerializer;
+    private final ServerSocket mServerSocket;
+    private final List<InvalidationListener<K>> mListeners = new CopyOnWriteArrayList<InvalidationListener<K>>();
+    private final List<Peer> mPeers = new CopyOnWriteArrayList<Peer>();
+    // Accepted connections, closed along with the bus
+    private final Set<Socket> mConnections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final String mThreadName;
+    private final Thread mAcceptor;
+    private volatile boolean mClosed;
+
+    /**
+     * Binds the bus to its address and starts accepting the connections of the peers
+     *
+     * @param address Address to listen on, port 0 picks a free port @see #getPort()
+     * @param keySerializer Serializer of the keys sent to the peers, not a {@link JavaSerializer}
+     * @throws IOException If the address can not be bound
+     * @throws IllegalArgumentException If the key serializer is a {@link JavaSerializer}
+     */
+    public SocketInvalidationBus(InetSocketAddress address, Serializer<K> keySerializer) throws IOException {
+
+        if (keySerializer instanceof JavaSerializer) {
+
+            throw new IllegalArgumentException("Java serialization must not be used for the keys of the peers!");
+        }
+        mKeySerializer = keySerializer;
+        mServerSocket = new ServerSocket();
+        mServerSocket.setReuseAddress(true);
+        mServerSocket.bind(address);
+        mThreadName = "cache-invalidation-bus-" + sThreadCount.incrementAndGet();
+        mAcceptor = new Thread(this, mThreadName);
+        mAcceptor.setDaemon(true);
+        mAcceptor.start();
+    }
+
+    /**
+     * @return Port the bus listens on
+     */
+    public int getPort() {
+
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Adds a peer the published batches are sent to. The connection is opened by the first batch
+     *
+     * @param address Address the bus of the peer listens on
+     */
+    public void addPeer(InetSocketAddress address) {
+
+        mPeers.add(new Peer(address));
+    }
+
+    @Override
+    public void subscribe(InvalidationListener<K> listener) {
+
+        mListeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(InvalidationListener<K> listener) {
+
+        mListeners.remove(listener);
+    }
+
+    @Override
+    public void publish(InvalidationListener<K> publisher, InvalidationBatch<K> batch) {
+
+        deliver(publisher, batch);
+        if (mPeers.isEmpty()) {
+
+            return;
+        }
+
+        List<byte[]> frames = encode(batch);
+        for (Peer peer : mPeers) {
+
+            try {
+                for (byte[] frame : frames) {
+
+                    peer.send(frame);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Delivers a batch to the local members except its publisher
+     */
+    private void deliver(InvalidationListener<K> publisher, InvalidationBatch<K> batch) {
+
+        for (InvalidationListener<K> listener : mListeners) {
+
+            if (listener != publisher) {
+
+                try {
+                    listener.onInvalidation(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the connections to and from the peers
+     */
+    @Override
+    public void close() {
+
+        mClosed = true;
+        closeQuietly(mServerSocket);
+        for (Socket socket : mConnections) {
+
+            closeQuietly(socket);
+        }
+        for (Peer peer : mPeers) {
+
+            peer.close();
+        }
+        try {
+            mAcceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts the connections of the peers until closed
+     */
+    @Override
+    public void run() {
+
+        while (!mClosed) {
+
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnections.add(socket);
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        read(socket);
+                    }
+                }, mThreadName + "-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!mClosed) {
+
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the batches received on a connection until it is closed
+     */
+    private void read(Socket socket) {
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+
+                InvalidationBatch<K> batch;
+                try {
+                    batch = decode(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                deliver(null, batch);
+            }
+        } catch (SocketException e) {
+            // Closed along with the bus or reset by the peer
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            mConnections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Splits a batch into frames within {@link #MAX_FRAME_SIZE}, only the first one carries the clear flag. Keys
+     * larger than {@link #MAX_KEY_SIZE} are left out, so that they do not hold back the other keys of the batch
+     *
+     * @return Frames to be sent, none if the batch is left without anything to send
+     */
+    private List<byte[]> encode(InvalidationBatch<K> batch) {
+
+        List<byte[]> frames = new ArrayList<byte[]>();
+        List<byte[]> keys = new ArrayList<byte[]>();
+        boolean clear = batch.isClear();
+        long frameSize = 0;
+        for (K key : batch.getKeys()) {
+
+            byte[] serialized = mKeySerializer.serialize(key);
+            if (serialized.length > MAX_KEY_SIZE) {
+
+                continue;
+            }
+            if (frameSize + 4 + serialized.length > MAX_FRAME_SIZE) {
+
+                frames.add(encodeFrame(clear, keys));
+                clear = false;
+                keys.clear();
+                frameSize = 0;
+            }
+            keys.add(serialized);
+            frameSize += 4 + serialized.length;
+        }
+        if (clear || !keys.isEmpty()) {
+
+            frames.add(encodeFrame(clear, keys));
+        }
+        return frames;
+    }
+
+    /**
+     * Frame holding the clear flag, the number of keys and every key as its length and its serialized bytes
+     */
+    private static byte[] encodeFrame(boolean clear, List<byte[]> keys) {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeBoolean(clear);
+            out.writeInt(keys.size());
+            for (byte[] serialized : keys) {
+
+                out.writeInt(serialized.length);
+                out.write(serialized);
+            }
+        } catch (IOException e) {
+            // Not thrown by a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private InvalidationBatch<K> decode(DataInputStream in) throws IOException {
+
+        boolean clear = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0) {
+
+            throw new IOException("Malformed invalidation frame!");
+        }
+        List<K> keys = new ArrayList<K>(Math.min(count, 1024));
+        long frameSize = 0;
+        for (int i = 0; i < count; ++i) {
+
+            int length = in.readInt();
+            frameSize += 4 + length;
+            if (length < 0 || length > MAX_KEY_SIZE || frameSize > MAX_FRAME_SIZE) {
+
+                throw new IOException("Malformed invalidation frame!");
+            }
+            byte[] serialized = new byte[length];
+            in.readFully(serialized);
+            keys.add(mKeySerializer.deserialize(ByteBuffer.wrap(serialized)));
+        }
+        return new InvalidationBatch<K>(clear, keys);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+
+        try {
+            closeable.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Connection to a peer, opened on demand
+     */
+    private final class Peer {
+
+        private final InetSocketAddress mAddress;
+        private Socket mSocket;
+        private OutputStream mOut;
+
+        Peer(InetSocketAddress address) {
+
+            mAddress = address;
+        }
+
+        /**
+         * Sends a frame, connecting first if not connected. A connection which fails is closed and opened again by
+         * the next frame
+         */
+        synchronized void send(byte[] frame) throws IOException {
+
+            if (mClosed) {
+
+                return;
+            }
+            try {
+                if (mSocket == null) {
+
+                    Socket socket = new Socket();
+                    try {
+                        socket.setTcpNoDelay(true);
+                        socket.connect(mAddress, CONNECT_TIMEOUT);
+                    } catch (IOException e) {
+                        closeQuietly(socket);
+                        throw e;
+                    }
+                    mSocket = socket;
+                    mOut = socket.getOutputStream();
+                }
+                mOut.write(frame);
+                mOut.flush();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        synchronized void close() {
+
+            if (mSocket != null) {
+
+                closeQuietly(mSocket);
+                mSocket = null;
+                mOut = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package assignment.cache;
+
+/**
+ * <p>Implemented by the caches which count the entries they evict themselves, expired or for their size.
+ */
+interface StatsAware {
+
+    /**
+     * Sets the recorder counting the evictions, must be set before the cache is used
+     *
+     * @param recorder @see StatsRecorder
+     */
+    void setStatsRecorder(StatsRecorder recorder);
+}
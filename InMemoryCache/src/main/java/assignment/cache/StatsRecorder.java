@@ -0,0 +1,104 @@
+package assignment.cache;
+
+/**
+ * <p>Records the statistics of a {@link CacheManager} and its cache, created only if statistics are enabled so
+ * that a cache without statistics neither counts nor reads the clock.
+ *
+ * <p>Counters are {@link StripedCounter}s, so that the threads reading the cache do not contend on them.
+ */
+final class StatsRecorder {
+
+    private final StripedCounter mHits = new StripedCounter();
+    private final StripedCounter mMisses = new StripedCounter();
+    private final StripedCounter mLoadSuccesses = new StripedCounter();
+    private final StripedCounter mLoadFailures = new StripedCounter();
+    private final StripedCounter mTotalLoadTime = new StripedCounter();
+    private final StripedCounter mEvictions = new StripedCounter();
+    private final StripedCounter mPurges = new StripedCounter();
+    private final StripedCounter mTotalPurgeTime = new StripedCounter();
+    private final LatencyHistogram mLoadLatencies = new LatencyHistogram();
+    private final LatencyHistogram mPurgeLatencies = new LatencyHistogram();
+    // Lookups of a TieredCache by the tier serving them
+    private final StripedCounter mFirstTierHits = new StripedCounter();
+    private final StripedCounter mSecondTierHits = new StripedCounter();
+    private final StripedCounter mTierMisses = new StripedCounter();
+
+    void recordHits(int count) {
+
+        mHits.add(count);
+    }
+
+    void recordMisses(int count) {
+
+        mMisses.add(count);
+    }
+
+    /**
+     * @param nanos Time taken by the load
+     */
+    void recordLoadSuccess(long nanos) {
+
+        mLoadSuccesses.increment();
+        mTotalLoadTime.add(nanos);
+        mLoadLatencies.record(nanos);
+    }
+
+    /**
+     * @param nanos Time taken by the load until it failed
+     */
+    void recordLoadFailure(long nanos) {
+
+        mLoadFailures.increment();
+        mTotalLoadTime.add(nanos);
+        mLoadLatencies.record(nanos);
+    }
+
+    void recordEvictions(int count) {
+
+        mEvictions.add(count);
+    }
+
+    /**
+     * @param nanos Time taken by the purge
+     */
+    void recordPurge(long nanos) {
+
+        mPurges.increment();
+        mTotalPurgeTime.add(nanos);
+        mPurgeLatencies.record(nanos);
+    }
+
+    void recordFirstTierHit() {
+
+        mFirstTierHits.increment();
+    }
+
+    void recordSecondTierHit() {
+
+        mSecondTierHits.increment();
+    }
+
+    void recordTierMiss() {
+
+        mTierMisses.increment();
+    }
+
+    long getFirstTierHitCount() {
+        return mFirstTierHits.sum();
+    }
+
+    long getSecondTierHitCount() {
+        return mSecondTierHits.sum();
+    }
+
+    long getTierMissCount() {
+        return mTierMisses.sum();
+    }
+
+    CacheStats snapshot() {
+
+        return new CacheStats(mHits.sum(), mMisses.sum(), mLoadSuccesses.sum(), mLoadFailures.sum(),
+                mTotalLoadTime.sum(), mEvictions.sum(), mPurges.sum(), mTotalPurgeTime.sum(),
+                mLoadLatencies.snapshot(), mPurgeLatencies.snapshot());
+    }
+}
@@ -0,0 +1,51 @@
+package assignment.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Counter striped by thread, so that threads updating it concurrently mostly update different cells instead of
+ * contending on a single atomic variable. Reading the count sums up the cells.
+ *
+ * <p>Each cell is padded to its own cache line to avoid false sharing between the cells.
+ */
+final class StripedCounter {
+
+    // Longs per cell, 64 bytes
+    private static final int PADDING = 8;
+    private static final int MAXIMUM_CELLS = 64;
+
+    private final AtomicLongArray mCells;
+    private final int mCellMask;
+
+    StripedCounter() {
+
+        int cellCount = Integer.highestOneBit(Math.min(MAXIMUM_CELLS, 2 * Runtime.getRuntime().availableProcessors()));
+        mCells = new AtomicLongArray(cellCount * PADDING);
+        mCellMask = cellCount - 1;
+    }
+
+    void increment() {
+
+        add(1);
+    }
+
+    void add(long delta) {
+
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        mCells.getAndAdd(((hash ^ (hash >>> 16)) & mCellMask) * PADDING, delta);
+    }
+
+    /**
+     * @return Sum of the cells, not an atomic snapshot if updated concurrently
+     */
+    long sum() {
+
+        long sum = 0;
+        for (int i = 0; i <= mCellMask; ++i) {
+
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,160 @@
+package assignment.cache;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Source of the current time used by the caches for creation times, expiry checks and purging.
+ *
+ * <p>Time is read in milli seconds since the epoch, the unit of the cache expiration times. Following tickers are
+ * available:
+ *
+ * <ul>
+ *     <li>{@link #systemTicker()} : Reads {@code System.currentTimeMillis()}. This is the default
+ *     <li>{@link #nanoTicker()} : Derived from {@code System.nanoTime()}, so it never goes backwards when the wall
+ *     clock is adjusted
+ *     <li>{@link #cachedTicker(long, TimeUnit)} : Time cached in a volatile field and advanced by a daemon thread
+ *     at the given granularity, so reading the time costs a single volatile read
+ * </ul>
+ *
+ * <p>Expiry checks of a cached ticker are as coarse as its granularity. Tests can extend this class to control
+ * the time instead of sleeping.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * Ticker ticker = Ticker.cachedTicker(10, TimeUnit.MILLISECONDS);
+ * CacheManager<Long,String> cm = CacheBuilder.newBuilder()
+ *         .ticker(ticker)
+ *         .build();
+ * }</pre>
+ */
+public abstract class Ticker {
+
+    private static final Ticker SYSTEM_TICKER = new Ticker() {
+        @Override
+        public long read() {
+
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return Ticker reading the wall clock, shared by all the caches which are not configured otherwise
+     */
+    public static Ticker systemTicker() {
+
+        return SYSTEM_TICKER;
+    }
+
+    /**
+     * @return Monotonic ticker reading the high resolution time source, starting at the current wall clock time
+     */
+    public static Ticker nanoTicker() {
+
+        return new NanoTicker();
+    }
+
+    /**
+     * Creates a ticker caching the time, {@link #shutdown()} must be called once all its caches are shut down
+     *
+     * @param granularity Period at which the cached time is advanced
+     * @param unit Time unit
+     * @return New Ticker instance
+     * @throws IllegalArgumentException If granularity is not positive
+     */
+    public static Ticker cachedTicker(long granularity, TimeUnit unit) {
+
+        if (granularity <= 0) {
+
+            throw new IllegalArgumentException("Granularity must be positive!");
+        }
+        return new CachedTicker(unit.toNanos(granularity));
+    }
+
+    /**
+     * @return Current time in milli seconds
+     */
+    public abstract long read();
+
+    /**
+     * Stops the threads of the ticker, if any
+     */
+    public void shutdown() {
+    }
+
+    /**
+     * Decides the expiry of a cache object as per this ticker, falling back to the cache object itself if it
+     * does not know its expiration time
+     *
+     * @return {@code true} if the value has expired, else {@code false}
+     */
+    boolean isExpired(CacheObject<?> co) {
+
+        if (co instanceof Timestamped) {
+
+            return read() > ((Timestamped) co).getTimeOfExpiry();
+        }
+        return co.isExpired();
+    }
+
+    /**
+     * Ticker adding the elapsed high resolution time to the wall clock time at its creation
+     */
+    private static final class NanoTicker extends Ticker {
+
+        private final long mOriginMillis = System.currentTimeMillis();
+        private final long mOriginNanos = System.nanoTime();
+
+        @Override
+        public long read() {
+
+            return mOriginMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mOriginNanos);
+        }
+    }
+
+    /**
+     * Ticker whose time is advanced by a daemon thread
+     */
+    private static final class CachedTicker extends Ticker {
+
+        private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        private final Ticker mSource = new NanoTicker();
+        private final ScheduledThreadPoolExecutor mExecutor;
+        private volatile long mTime = mSource.read();
+
+        CachedTicker(long granularityInNanoSec) {
+
+            mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+
+                    Thread t = new Thread(r, "cache-ticker-" + sThreadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            mExecutor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+
+                    mTime = mSource.read();
+                }
+            }, granularityInNanoSec, granularityInNanoSec, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public long read() {
+
+            return mTime;
+        }
+
+        @Override
+        public void shutdown() {
+
+            mExecutor.shutdownNow();
+        }
+    }
+}
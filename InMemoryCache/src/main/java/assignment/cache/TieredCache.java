@@ -0,0 +1,358 @@
+package assignment.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Two tier cache implementation, a small size bounded {@link InMemoryCache} holding the hot entries in front of
+ * a larger second tier holding the cold ones, such as an {@link OffHeapCache} or a {@link MappedFileCache}.
+ *
+ * <p>Tiers are exclusive, a key lives in at most one of them:
+ *
+ * <ul>
+ *     <li>Writes go to the first tier and drop the key from the second tier
+ *     <li>Entries evicted from the first tier for its maximum size are demoted to the second tier
+ *     <li>Reads missing the first tier look up the second tier and promote the entry found there
+ * </ul>
+ *
+ * <p>An entry keeps its expiration time across the tiers, so expired entries are dropped instead of demoted.
+ * Moves of a key between the tiers and writes of the key are serialized by a striped lock, while the reads
+ * hitting the first tier take no lock. Hits of each tier and misses are counted if statistics are recorded.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+class TieredCache<K, V> implements FlatCache<K, V>, StatsAware, Closeable {
+
+    private static final int LOCK_COUNT = 64;
+
+    private final InMemoryCache<K, V> mFirstTier;
+    private final Cache<K, CacheObject<V>> mSecondTier;
+    private final ReentrantLock[] mLocks = new ReentrantLock[LOCK_COUNT];
+    // Time source of the expiry checks while moving entries between the tiers
+    private final Ticker mTicker;
+    // Counts the hits of each tier, the misses and the expired entries dropped by the first tier, null if
+    // statistics are not recorded
+    private StatsRecorder mStats;
+
+    /**
+     * @param firstTier Size bounded in memory cache, its evicted entries are demoted
+     * @param secondTier Cache holding the demoted entries
+     * @param ticker Time source of the expiry checks @see Ticker
+     */
+    public TieredCache(InMemoryCache<K, V> firstTier, Cache<K, CacheObject<V>> secondTier, Ticker ticker) {
+
+        mFirstTier = firstTier;
+        mSecondTier = secondTier;
+        mTicker = ticker;
+        for (int i = 0; i < LOCK_COUNT; ++i) {
+
+            mLocks[i] = new ReentrantLock();
+        }
+
+        // Called holding the maintenance lock of the first tier. The key lock may be held by a writer of the first
+        // tier, which never waits for the maintenance lock, so waiting for the key lock here can not deadlock
+        mFirstTier.setEvictionListener(new EvictionListener<K, CacheObject<V>>() {
+            @Override
+            public void onEviction(K key, CacheObject<V> value, boolean expired) {
+
+                if (expired || mTicker.isExpired(value)) {
+
+                    if (mStats != null) {
+
+                        mStats.recordEvictions(1);
+                    }
+                    return;
+                }
+
+                ReentrantLock lock = lockFor(key);
+                lock.lock();
+                try {
+                    // Key written again after the eviction, demoted value is stale
+                    if (!mFirstTier.containsKey(key)) {
+
+                        mSecondTier.put(key, value);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // Value too large for the second tier is dropped
+                    if (mStats != null) {
+
+                        mStats.recordEvictions(1);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Evictions of the first tier are demotions, so only its expired entries and the evictions of the second tier
+     * are counted
+     */
+    @Override
+    public void setStatsRecorder(StatsRecorder recorder) {
+
+        mStats = recorder;
+        if (mSecondTier instanceof StatsAware) {
+
+            ((StatsAware) mSecondTier).setStatsRecorder(recorder);
+        }
+    }
+
+    @Override
+    public void clear() {
+
+        // First tier is cleared first as its maintenance might be demoting entries
+        mFirstTier.clear();
+        mSecondTier.clear();
+    }
+
+    /**
+     * Closes the second tier, if it holds resources such as files
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (mSecondTier instanceof Closeable) {
+
+            ((Closeable) mSecondTier).close();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+
+        return mFirstTier.containsKey(key) || mSecondTier.containsKey(key);
+    }
+
+    /**
+     * Key of an entry found in the second tier is of the key type, so it is cast unchecked when promoted
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public CacheObject<V> get(Object key) {
+
+        // Expired entry of the first tier is no hit, it is counted as a miss like any other expired entry
+        CacheObject<V> co = mFirstTier.get(key);
+        if (co != null && !mTicker.isExpired(co)) {
+
+            if (mStats != null) {
+
+                mStats.recordFirstTierHit();
+            }
+            return co;
+        }
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            // Another reader might have promoted the entry meanwhile
+            co = mFirstTier.get(key);
+            if (co != null && !mTicker.isExpired(co)) {
+
+                if (mStats != null) {
+
+                    mStats.recordFirstTierHit();
+                }
+                return co;
+            }
+
+            co = mSecondTier.remove(key);
+            if (co == null || mTicker.isExpired(co)) {
+
+                if (mStats != null) {
+
+                    mStats.recordTierMiss();
+                }
+                return null;
+            }
+            mFirstTier.put((K) key, co);
+            if (mStats != null) {
+
+                mStats.recordSecondTierHit();
+            }
+            // Entry of the first tier is returned, so that it can be conditionally replaced or removed later
+            CacheObject<V> promoted = mFirstTier.get(key);
+            return (promoted != null) ? promoted : co;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keys found in either tier are of the key type, so they are cast unchecked
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, CacheObject<V>> getAll(Iterable<?> keys) {
+
+        Map<K, CacheObject<V>> result = new LinkedHashMap<K, CacheObject<V>>();
+        for (Object key : keys) {
+
+            CacheObject<V> co = get(key);
+            if (co != null) {
+
+                result.put((K) key, co);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return mFirstTier.isEmpty() && mSecondTier.isEmpty();
+    }
+
+    @Override
+    public CacheObject<V> put(K key, CacheObject<V> value) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheObject<V> oldValue = mFirstTier.put(key, value);
+            CacheObject<V> demotedValue = mSecondTier.remove(key);
+            return (oldValue != null) ? oldValue : demotedValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheObject<V> putValue(K key, V value, long creationTime, long expirationTime) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheObject<V> oldValue = mFirstTier.putValue(key, value, creationTime, expirationTime);
+            CacheObject<V> demotedValue = mSecondTier.remove(key);
+            return (oldValue != null) ? oldValue : demotedValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheObject<V> putIfAbsent(K key, CacheObject<V> value) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheObject<V> demotedValue = mSecondTier.get(key);
+            return (demotedValue != null) ? demotedValue : mFirstTier.putIfAbsent(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheObject<V> putValueIfAbsent(K key, V value, long creationTime, long expirationTime) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheObject<V> demotedValue = mSecondTier.get(key);
+            return (demotedValue != null) ? demotedValue
+                    : mFirstTier.putValueIfAbsent(key, value, creationTime, expirationTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends CacheObject<V>> entries) {
+
+        for (Map.Entry<? extends K, ? extends CacheObject<V>> entry : entries.entrySet()) {
+
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void putAllValues(Map<? extends K, ? extends V> entries, long creationTime, long expirationTime) {
+
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+
+            putValue(entry.getKey(), entry.getValue(), creationTime, expirationTime);
+        }
+    }
+
+    @Override
+    public CacheObject<V> remove(Object key) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            CacheObject<V> oldValue = mFirstTier.remove(key);
+            CacheObject<V> demotedValue = mSecondTier.remove(key);
+            return (oldValue != null) ? oldValue : demotedValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return mFirstTier.remove(key, value) || mSecondTier.remove(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Iterable<?> keys) {
+
+        for (Object key : keys) {
+
+            remove(key);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, CacheObject<V> oldValue, CacheObject<V> newValue) {
+
+        ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return mFirstTier.replace(key, oldValue, newValue) || mSecondTier.replace(key, oldValue, newValue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+
+        return mFirstTier.size() + mSecondTier.size();
+    }
+
+    @Override
+    public void purge() {
+
+        mFirstTier.purge();
+        mSecondTier.purge();
+    }
+
+    int getFirstTierSize() {
+        return mFirstTier.size();
+    }
+
+    int getSecondTierSize() {
+        return mSecondTier.size();
+    }
+
+    private ReentrantLock lockFor(Object key) {
+
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return mLocks[h & (LOCK_COUNT - 1)];
+    }
+}
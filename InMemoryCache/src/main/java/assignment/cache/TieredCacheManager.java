@@ -0,0 +1,49 @@
+package assignment.cache;
+
+/**
+ * <p>Two tier cache manager implementation, keeps the hot entries in memory in front of a larger second tier.
+ * Hit counters of each tier tell whether the size of the first tier pays off, see {@link TieredCache}. They are
+ * counted only if statistics are recorded, see {@link CacheBuilder#recordStats()}.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public class TieredCacheManager<K, V> extends InMemoryCacheManager<K, V> {
+
+    private final TieredCache<K, V> mTieredCache;
+
+    TieredCacheManager(CacheBuilder<K, V> cacheBuilder, TieredCache<K, V> cacheImpl) {
+
+        super(cacheBuilder, cacheImpl);
+        mTieredCache = cacheImpl;
+    }
+
+    /**
+     * @return Number of lookups served by the in memory first tier
+     */
+    public long getFirstTierHitCount() {
+        return (mStats != null) ? mStats.getFirstTierHitCount() : 0;
+    }
+
+    /**
+     * @return Number of lookups served by the second tier, each of which promoted the entry to the first tier
+     */
+    public long getSecondTierHitCount() {
+        return (mStats != null) ? mStats.getSecondTierHitCount() : 0;
+    }
+
+    /**
+     * @return Number of lookups missing both the tiers
+     */
+    public long getMissCount() {
+        return (mStats != null) ? mStats.getTierMissCount() : 0;
+    }
+
+    public int getFirstTierSize() {
+        return mTieredCache.getFirstTierSize();
+    }
+
+    public int getSecondTierSize() {
+        return mTieredCache.getSecondTierSize();
+    }
+}
@@ -9,9 +9,9 @@ package assignment.cache;
  * @author Deepak Telkar
  * Created by dtelkar on 7/25/14.
  */
-public class TimedCacheObject<V> implements CacheObject<V> {
+public class TimedCacheObject<V> implements CacheObject<V>, Timestamped {
 
-    private final long mTimeOfCreation = System.currentTimeMillis();
+    private final long mTimeOfCreation;
 
     private final long mMilliSecondsToLive;
 
@@ -19,7 +19,20 @@ public class TimedCacheObject<V> implements CacheObject<V> {
 
     public TimedCacheObject(V value, long milliSecondsToLive) {
 
+        this(value, System.currentTimeMillis(), milliSecondsToLive);
+    }
+
+    /**
+     * Constructor for a value created earlier, such as one read back from outside the java heap
+     *
+     * @param value Value to be stored in cache
+     * @param timeOfCreation Creation time in milli seconds
+     * @param milliSecondsToLive Time to live counted from the creation time
+     */
+    public TimedCacheObject(V value, long timeOfCreation, long milliSecondsToLive) {
+
         mValue = value;
+        mTimeOfCreation = timeOfCreation;
         mMilliSecondsToLive = milliSecondsToLive;
     }
 
@@ -29,6 +42,28 @@ public class TimedCacheObject<V> implements CacheObject<V> {
         return mValue;
     }
 
+    /**
+     * Getter method for the time at which this value was created
+     *
+     * @return Creation time in milli seconds
+     */
+    @Override
+    public long getTimeOfCreation() {
+
+        return mTimeOfCreation;
+    }
+
+    /**
+     * Getter method for the time at which this value expires
+     *
+     * @return Expiration time in milli seconds
+     */
+    @Override
+    public long getTimeOfExpiry() {
+
+        return mTimeOfCreation + mMilliSecondsToLive;
+    }
+
     /**
      * Method to decide if the cache value has expired
      *
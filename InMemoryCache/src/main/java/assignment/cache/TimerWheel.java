@@ -0,0 +1,202 @@
+package assignment.cache;
+
+/**
+ * <p>Hierarchical timing wheel used as the expiration index of {@link InMemoryCache}.
+ *
+ * <p>Each level of the wheel is an array of buckets, where every bucket is a circular doubly linked list
+ * of {@link CacheNode}s expiring within the bucket's time span. Lower levels have finer granularity; nodes
+ * which expire far in the future are placed in a coarse level and cascade down to finer levels as the wheel
+ * advances. Advancing the wheel only visits the buckets whose time has elapsed, so the cost of a purge is
+ * proportional to the number of expired (and cascaded) entries rather than the size of the cache.
+ *
+ * NOTE: This class is not thread-safe, callers are required to hold the maintenance lock of the cache
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class TimerWheel<K, V> {
+
+    // Number of buckets on each level, must be a power of two
+    private static final int[] BUCKETS = { 64, 64, 64, 16, 1 };
+
+    // Time span in milli seconds of a single bucket on each level; ~0.25s, ~16s, ~17m, ~18h, ~12d
+    private static final long[] SPANS = {
+            1L << 8,
+            1L << 14,
+            1L << 20,
+            1L << 26,
+            1L << 30,
+            1L << 30
+    };
+
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    private final InMemoryCache<K, V> mCache;
+    private final CacheNode<K, V>[][] mWheel;
+
+    // Time in milli seconds the wheel was last advanced to
+    private long mTime;
+
+    TimerWheel(InMemoryCache<K, V> cache, long time) {
+
+        mCache = cache;
+        mTime = time;
+        mWheel = newLevels(BUCKETS.length);
+        for (int i = 0; i < mWheel.length; ++i) {
+
+            mWheel[i] = newBuckets(BUCKETS[i]);
+            for (int j = 0; j < mWheel[i].length; ++j) {
+
+                mWheel[i][j] = new CacheNode<K, V>();
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> CacheNode<K, V>[][] newLevels(int length) {
+
+        return new CacheNode[length][];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> CacheNode<K, V>[] newBuckets(int length) {
+
+        return new CacheNode[length];
+    }
+
+    /**
+     * Advances the wheel to the given time, evicting the expired nodes and cascading the rest to finer levels
+     *
+     * @param currentTime Current time in milli seconds
+     */
+    void advance(long currentTime) {
+
+        long previousTime = mTime;
+        mTime = currentTime;
+
+        for (int i = 0; i < SHIFT.length; ++i) {
+
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = currentTime >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0L) {
+
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks);
+        }
+    }
+
+    /**
+     * Adds a node to the bucket covering its expiration time, a node which has already expired is evicted
+     *
+     * @param node Node which is not scheduled yet
+     */
+    void schedule(CacheNode<K, V> node) {
+
+        if (node.mExpirationTime <= mTime) {
+
+            mCache.evictExpired(node);
+            return;
+        }
+
+        CacheNode<K, V> sentinel = findBucket(node.mExpirationTime);
+        node.mPrevInTime = sentinel.mPrevInTime;
+        node.mNextInTime = sentinel;
+        sentinel.mPrevInTime.mNextInTime = node;
+        sentinel.mPrevInTime = node;
+    }
+
+    /**
+     * Removes a node from its bucket, if scheduled
+     *
+     * @param node Node to be removed
+     */
+    void deschedule(CacheNode<K, V> node) {
+
+        if (node.isScheduled()) {
+
+            node.mNextInTime.mPrevInTime = node.mPrevInTime;
+            node.mPrevInTime.mNextInTime = node.mNextInTime;
+            node.mPrevInTime = null;
+            node.mNextInTime = null;
+        }
+    }
+
+    /**
+     * Unlinks all the scheduled nodes
+     */
+    void clear() {
+
+        for (CacheNode<K, V>[] level : mWheel) {
+
+            for (CacheNode<K, V> sentinel : level) {
+
+                CacheNode<K, V> node = sentinel.mNextInTime;
+                while (node != sentinel) {
+
+                    CacheNode<K, V> next = node.mNextInTime;
+                    node.mPrevInTime = null;
+                    node.mNextInTime = null;
+                    node = next;
+                }
+                sentinel.mPrevInTime = sentinel;
+                sentinel.mNextInTime = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Expires the buckets of a level which have elapsed since the previous advance
+     */
+    private void expire(int level, long previousTicks, long delta) {
+
+        CacheNode<K, V>[] buckets = mWheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1L + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; ++i) {
+
+            CacheNode<K, V> sentinel = buckets[i & mask];
+            CacheNode<K, V> node = sentinel.mNextInTime;
+            sentinel.mPrevInTime = sentinel;
+            sentinel.mNextInTime = sentinel;
+
+            while (node != sentinel) {
+
+                CacheNode<K, V> next = node.mNextInTime;
+                node.mPrevInTime = null;
+                node.mNextInTime = null;
+
+                // Evicts the node if expired, otherwise cascades it to a finer level
+                schedule(node);
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket of the finest level whose range covers the given expiration time
+     */
+    private CacheNode<K, V> findBucket(long expirationTime) {
+
+        long duration = expirationTime - mTime;
+        int last = mWheel.length - 1;
+        for (int i = 0; i < last; ++i) {
+
+            if (duration < SPANS[i + 1]) {
+
+                long ticks = expirationTime >>> SHIFT[i];
+                return mWheel[i][(int) (ticks & (mWheel[i].length - 1))];
+            }
+        }
+        return mWheel[last][0];
+    }
+}
@@ -0,0 +1,18 @@
+package assignment.cache;
+
+/**
+ * <p>Cache object carrying its creation and expiration time, such as a {@link TimedCacheObject} or a
+ * {@link CacheNode}. Cache objects not implementing this interface never expire.
+ */
+interface Timestamped {
+
+    /**
+     * @return Creation time in milli seconds
+     */
+    long getTimeOfCreation();
+
+    /**
+     * @return Expiration time in milli seconds, {@code Long.MAX_VALUE} if never
+     */
+    long getTimeOfExpiry();
+}
@@ -0,0 +1,204 @@
+package assignment.cache;
+
+/**
+ * <p>Window TinyLFU eviction policy, keeps a high hit ratio for skewed workloads and is resistant to scans.
+ *
+ * <p>Cache is divided into following regions, each ordered by access:
+ *
+ * <ul>
+ *     <li>Window : Small (1%) LRU region admitting every new entry, so that bursts of new keys are not rejected
+ *     <li>Probation : Segment of the main region holding the entries admitted from the window
+ *     <li>Protected : Segment (80%) of the main region holding the entries read again while on probation
+ * </ul>
+ *
+ * <p>Sizes of the regions are total weights of their entries, which are their numbers unless the cache is weighed.
+ * Entries overflowing the window become candidates for the main region, kept apart until they are admitted. While
+ * the cache is over its maximum size, the oldest candidate is only admitted if its frequency, as estimated by a
+ * {@link FrequencySketch}, is higher than the frequency of the least recently used entry on probation; otherwise
+ * the candidate itself is evicted. Candidates left once the cache fits again are admitted with the next new entry.
+ * A one-off scan therefore only churns the window instead of flushing the hot entries.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class WTinyLfuPolicy<K, V> implements EvictionPolicy<K, V> {
+
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final byte CANDIDATE = 3;
+
+    private static final double WINDOW_PERCENTAGE = 0.01;
+    private static final double PROTECTED_PERCENTAGE = 0.8;
+
+    private final AccessOrderDeque<K, V> mWindow = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> mProbation = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> mProtected = new AccessOrderDeque<K, V>();
+    // Entries overflowing the window which have not been admitted to probation yet
+    private final AccessOrderDeque<K, V> mCandidates = new AccessOrderDeque<K, V>();
+    private final FrequencySketch mSketch;
+
+    private final long mMaximumWindowSize;
+    private final long mMaximumProtectedSize;
+
+    WTinyLfuPolicy(long maximumSize) {
+
+        this(maximumSize, maximumSize);
+    }
+
+    /**
+     * @param maximumSize Maximum total weight of the entries
+     * @param expectedEntries Expected number of entries, used for sizing the frequency sketch
+     */
+    WTinyLfuPolicy(long maximumSize, long expectedEntries) {
+
+        mSketch = new FrequencySketch(expectedEntries);
+        mMaximumWindowSize = Math.max(1L, (long) (maximumSize * WINDOW_PERCENTAGE));
+        mMaximumProtectedSize = (long) ((maximumSize - mMaximumWindowSize) * PROTECTED_PERCENTAGE);
+    }
+
+    @Override
+    public void onAdd(CacheNode<K, V> node) {
+
+        // Evictions are over once new entries are replayed, candidates left were not needed to make room
+        CacheNode<K, V> candidate;
+        while ((candidate = mCandidates.peekFirst()) != null) {
+
+            admit(candidate);
+        }
+
+        mSketch.increment(node.mKey);
+        node.mQueueType = WINDOW;
+        mWindow.addLast(node);
+    }
+
+    @Override
+    public void onAccess(CacheNode<K, V> node) {
+
+        if (!node.isInAccessOrder()) {
+
+            return;
+        }
+
+        mSketch.increment(node.mKey);
+        switch (node.mQueueType) {
+
+            case WINDOW: {
+
+                mWindow.moveToLast(node);
+                break;
+            }
+            case PROBATION:
+            case CANDIDATE: {
+
+                // Read again while on probation, promote and demote the least recently used protected entries, as
+                // many as a heavy node needs
+                regionOf(node).remove(node);
+                node.mQueueType = PROTECTED;
+                mProtected.addLast(node);
+                while (mProtected.weight() > mMaximumProtectedSize) {
+
+                    CacheNode<K, V> demoted = mProtected.peekFirst();
+                    mProtected.remove(demoted);
+                    demoted.mQueueType = PROBATION;
+                    mProbation.addLast(demoted);
+                }
+                break;
+            }
+            default: {
+
+                mProtected.moveToLast(node);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onRemove(CacheNode<K, V> node) {
+
+        if (node.isInAccessOrder()) {
+
+            regionOf(node).remove(node);
+        }
+    }
+
+    @Override
+    public CacheNode<K, V> victim() {
+
+        // Entries overflowing the window become candidates for the main region
+        while (mWindow.weight() > mMaximumWindowSize) {
+
+            CacheNode<K, V> node = mWindow.peekFirst();
+            mWindow.remove(node);
+            node.mQueueType = CANDIDATE;
+            mCandidates.addLast(node);
+        }
+
+        CacheNode<K, V> victim = (mProbation.peekFirst() != null) ? mProbation.peekFirst() : mProtected.peekFirst();
+        CacheNode<K, V> candidate = mCandidates.peekFirst();
+        if (candidate == null) {
+
+            return (victim != null) ? victim : mWindow.peekFirst();
+        }
+        if (victim == null) {
+
+            return candidate;
+        }
+
+        // Oldest candidate competes with the least recent entry of the main region, the less frequent is evicted
+        if (mSketch.frequency(candidate.mKey) > mSketch.frequency(victim.mKey)) {
+
+            admit(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public long weightedSize() {
+
+        return mWindow.weight() + mCandidates.weight() + mProbation.weight() + mProtected.weight();
+    }
+
+    @Override
+    public void clear() {
+
+        mWindow.clear();
+        mCandidates.clear();
+        mProbation.clear();
+        mProtected.clear();
+    }
+
+    /**
+     * Moves a candidate to probation
+     */
+    private void admit(CacheNode<K, V> candidate) {
+
+        mCandidates.remove(candidate);
+        candidate.mQueueType = PROBATION;
+        mProbation.addLast(candidate);
+    }
+
+    private AccessOrderDeque<K, V> regionOf(CacheNode<K, V> node) {
+
+        switch (node.mQueueType) {
+
+            case WINDOW: {
+
+                return mWindow;
+            }
+            case PROBATION: {
+
+                return mProbation;
+            }
+            case CANDIDATE: {
+
+                return mCandidates;
+            }
+            default: {
+
+                return mProtected;
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package assignment.cache;
+
+/**
+ * <p>Computes the weight of cache entries, such as their approximate size in bytes, so that the cache can be bounded
+ * by the total weight of its entries instead of their number; see {@link CacheBuilder#maximumWeight(long)}.
+ *
+ * <p>Weight of an entry is computed once when it is written, by the writing thread, and does not change while the
+ * entry is cached. Implementations must therefore be cheap and thread-safe.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<Long,byte[]> cm = CacheBuilder.newBuilder()
+ *         .maximumWeight(256 * 1024 * 1024)
+ *         .weigher(new Weigher<Long, byte[]>() {
+ *             public int weigh(Long key, byte[] value) {
+ *                 return value.length;
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * @param key Key of the entry
+     * @param value Value of the entry
+     * @return Weight of the entry, must not be negative
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,260 @@
+package assignment.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Writes the values put into a cache to its {@link CacheWriter} in the background, so a put does not wait for the
+ * backing store.
+ *
+ * <p>Pending writes are kept per key; writing a key again before it is flushed only replaces its value, so a hot key
+ * costs one store write per flush rather than one per put. A flusher thread hands them to
+ * {@link CacheWriter#writeAll(Map)} in batches of up to the batch size, as soon as a batch is full or the oldest
+ * pending write has waited for the flush delay. A failed batch is queued again, except for the keys written since,
+ * and retried after the flush delay.
+ *
+ * <p>Number of pending keys is bounded by the buffer size. Once the buffer is full, puts of new keys block until the
+ * flusher has made room, which slows the writers down to the pace of the store instead of running out of memory.
+ *
+ * @param <K> Key type to be stored in cache
+ * @param <V> Value type to be stored in cache
+ */
+final class WriteBehindQueue<K, V> implements Runnable {
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final CacheWriter<K, V> mWriter;
+    private final long mFlushDelay;
+    private final int mBatchSize;
+    private final int mBufferSize;
+    private final ReentrantLock mLock = new ReentrantLock();
+    // Signalled once the buffer has room for new keys
+    private final Condition mNotFull = mLock.newCondition();
+    // Signalled once a flush might be due
+    private final Condition mFlushDue = mLock.newCondition();
+    // Latest value of each pending key, in the order the keys were queued
+    private final LinkedHashMap<K, PendingWrite<V>> mPending = new LinkedHashMap<K, PendingWrite<V>>();
+    private final Thread mFlusher;
+    private boolean mClosed;
+
+    /**
+     * @param writer Writer of the batches
+     * @param flushDelay Time in milli seconds a pending write waits at most for its batch to fill up
+     * @param batchSize Maximum number of keys written by one call of the writer
+     * @param bufferSize Maximum number of pending keys before the puts of new keys block
+     */
+    WriteBehindQueue(CacheWriter<K, V> writer, long flushDelay, int batchSize, int bufferSize) {
+
+        mWriter = writer;
+        mFlushDelay = TimeUnit.MILLISECONDS.toNanos(flushDelay);
+        mBatchSize = batchSize;
+        mBufferSize = bufferSize;
+        mFlusher = new Thread(this, "cache-write-behind-" + sThreadCount.incrementAndGet());
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    /**
+     * Queues the write of a value, replacing the pending value of the key if any. Blocks while the buffer is full
+     *
+     * @throws IllegalStateException If the queue is closed
+     */
+    void offer(K key, V value) {
+
+        mLock.lock();
+        try {
+            PendingWrite<V> pending;
+            while ((pending = mPending.get(key)) == null && mPending.size() >= mBufferSize && !mClosed) {
+
+                mNotFull.awaitUninterruptibly();
+            }
+            if (mClosed) {
+
+                throw new IllegalStateException("Write behind queue is closed!");
+            }
+
+            if (pending != null) {
+
+                pending.mValue = value;
+                return;
+            }
+            mPending.put(key, new PendingWrite<V>(value, System.nanoTime()));
+            if (mPending.size() == 1 || mPending.size() == mBatchSize) {
+
+                mFlushDue.signal();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of pending keys
+     */
+    int size() {
+
+        mLock.lock();
+        try {
+            return mPending.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the pending writes and stops the flusher. Writes which fail while closing are dropped
+     */
+    void close() {
+
+        mLock.lock();
+        try {
+            mClosed = true;
+            mFlushDue.signal();
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+
+        try {
+            mFlusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flushes batches until closed
+     */
+    @Override
+    public void run() {
+
+        Map<K, V> batch;
+        while ((batch = awaitBatch()) != null) {
+
+            try {
+                mWriter.writeAll(batch);
+            } catch (Exception e) {
+                e.printStackTrace();
+                if (retry(batch)) {
+
+                    pause();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a batch is full, the oldest pending write is due or the queue is closed
+     *
+     * @return Next batch, {@code null} once closed and flushed
+     */
+    private Map<K, V> awaitBatch() {
+
+        mLock.lock();
+        try {
+            while (true) {
+
+                if (mPending.isEmpty()) {
+
+                    if (mClosed) {
+
+                        return null;
+                    }
+                    mFlushDue.awaitUninterruptibly();
+                    continue;
+                }
+
+                long delay = mPending.values().iterator().next().mQueueTime + mFlushDelay - System.nanoTime();
+                if (mClosed || delay <= 0 || mPending.size() >= mBatchSize) {
+
+                    return pollBatch();
+                }
+                try {
+                    mFlushDue.awaitNanos(delay);
+                } catch (InterruptedException ignored) {}
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private Map<K, V> pollBatch() {
+
+        Map<K, V> batch = new LinkedHashMap<K, V>();
+        Iterator<Map.Entry<K, PendingWrite<V>>> it = mPending.entrySet().iterator();
+        while (batch.size() < mBatchSize && it.hasNext()) {
+
+            Map.Entry<K, PendingWrite<V>> entry = it.next();
+            batch.put(entry.getKey(), entry.getValue().mValue);
+            it.remove();
+        }
+        mNotFull.signalAll();
+        return batch;
+    }
+
+    /**
+     * Queues the keys of a failed batch again, unless they were written since. Retried keys may take the buffer
+     * beyond its size for a while, as the writers which filled it are not to be blocked by a failure
+     *
+     * @return {@code true} if queued, {@code false} if the queue is closed and the batch is dropped
+     */
+    private boolean retry(Map<K, V> batch) {
+
+        mLock.lock();
+        try {
+            if (mClosed) {
+
+                return false;
+            }
+            long now = System.nanoTime();
+            for (Map.Entry<K, V> entry : batch.entrySet()) {
+
+                if (!mPending.containsKey(entry.getKey())) {
+
+                    mPending.put(entry.getKey(), new PendingWrite<V>(entry.getValue(), now));
+                }
+            }
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Backs off for the flush delay after a failure, so a store which is down is not retried in a busy loop
+     */
+    private void pause() {
+
+        mLock.lock();
+        try {
+            long delay = mFlushDelay;
+            while (delay > 0 && !mClosed) {
+
+                delay = mFlushDue.awaitNanos(delay);
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Latest value of a pending key and the time its oldest unflushed write was queued
+     */
+    private static final class PendingWrite<V> {
+
+        V mValue;
+        final long mQueueTime;
+
+        PendingWrite(V value, long queueTime) {
+
+            mValue = value;
+            mQueueTime = queueTime;
+        }
+    }
+}
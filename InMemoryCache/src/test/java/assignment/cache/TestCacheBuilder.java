@@ -4,12 +4,19 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by dtelkar on 7/26/14.
@@ -27,6 +34,7 @@ public class TestCacheBuilder {
         Assert.assertEquals(builder.getInitialCapacity(), 100);
         Assert.assertEquals(builder.getMilliSecondsToLive(), 10000);
         Assert.assertEquals(builder.getPurgeFrequencyInMilliSec(), 5000);
+        Assert.assertSame(builder.getMaintenanceScheduler(), MaintenanceScheduler.sharedScheduler());
 
         cm.shutdown();
     }
@@ -53,6 +61,14 @@ public class TestCacheBuilder {
 
     }
 
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void lruWithoutMaximumSizeTest() {
+
+        CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .build();
+    }
+
     @Test(enabled = true)
     public void basicGetPutTests() {
 
@@ -128,11 +144,97 @@ public class TestCacheBuilder {
     }
 
     @Test(enabled = true)
-    public void purgeTest() {
+    public void bulkTests() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().build();
+
+        Map<Long, String> entries = new HashMap<Long, String>();
+        for (long i = 0; i < 100; ++i) {
+
+            entries.put(i, "value" + i);
+        }
+        cm.putAll(entries);
+        Assert.assertEquals(cm.cacheSize(), 100);
+
+        // Missing keys are left out, order of the keys is kept
+        Map<Long, String> values = cm.getAll(Arrays.asList(5L, 1L, 500L, 3L));
+        Assert.assertEquals(new ArrayList<Long>(values.keySet()), Arrays.asList(5L, 1L, 3L));
+        Assert.assertEquals(values.get(5L), "value5");
+
+        // Keys of an iterable which can be traversed only once are all looked up
+        final Iterator<Long> keys = Arrays.asList(5L, 500L, 3L).iterator();
+        values = cm.getAll(new Iterable<Long>() {
+            @Override
+            public Iterator<Long> iterator() {
+
+                return keys;
+            }
+        });
+        Assert.assertEquals(new ArrayList<Long>(values.keySet()), Arrays.asList(5L, 3L));
+
+        cm.removeAll(Arrays.asList(1L, 2L, 3L, 500L));
+        Assert.assertEquals(cm.cacheSize(), 97);
+        Assert.assertFalse(cm.containsKey(2L));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void bulkLoadingTest() {
+
+        final List<List<Long>> batches = new ArrayList<List<Long>>();
 
         CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        throw new UnsupportedOperationException("Keys must be loaded in batches");
+                    }
+
+                    @Override
+                    public Map<Long, String> loadAll(Iterable<? extends Long> keys) throws Exception {
+
+                        List<Long> batch = new ArrayList<Long>();
+                        Map<Long, String> values = new HashMap<Long, String>();
+                        for (Long key : keys) {
+
+                            batch.add(key);
+                            // Odd keys have no value
+                            if (key % 2 == 0) {
+
+                                values.put(key, "loaded" + key);
+                            }
+                        }
+                        batches.add(batch);
+                        return values;
+                    }
+                })
+                .build();
+
+        cm.put(1L, "value1");
+        cm.put(2L, "value2");
+
+        Map<Long, String> values = cm.getAll(Arrays.asList(1L, 2L, 3L, 4L, 6L));
+
+        // Single round trip for the missing keys only
+        Assert.assertEquals(batches.size(), 1);
+        Assert.assertEquals(batches.get(0), Arrays.asList(3L, 4L, 6L));
+        Assert.assertEquals(new ArrayList<Long>(values.keySet()), Arrays.asList(1L, 2L, 4L, 6L));
+        Assert.assertEquals(values.get(2L), "value2");
+        Assert.assertEquals(values.get(4L), "loaded4");
+        Assert.assertEquals(cm.get(6L), "loaded6");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void purgeTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
                 .timeToLive(2, TimeUnit.SECONDS)
-                .purgeFrequency(1, TimeUnit.SECONDS)
+                .ticker(ticker)
                 .build();
 
         // Insert elements
@@ -144,19 +246,420 @@ public class TestCacheBuilder {
             cm.put(key, UUID.randomUUID().toString());
         }
 
-        // Wait for some time and check if cache is purged
+        // Move the time past the time to live and check if cache is purged
+        ticker.advance(4, TimeUnit.SECONDS);
+        cm.mCache.purge();
+
+        // Cache should be empty by now
+        Assert.assertTrue(cm.isCacheEmpty());
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void lruEvictionTest() {
+
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(100);
+        CacheManager<Long, String> cm = builder.build();
+
+        Assert.assertEquals(builder.getMaximumSize(), 100);
+
+        for (long i = 0; i < 100; ++i) {
+
+            cm.put(i, UUID.randomUUID().toString());
+        }
+
+        // Key 0 becomes the most recently used
+        Assert.assertNotNull(cm.get(0L));
+
+        for (long i = 100; i < 150; ++i) {
+
+            cm.put(i, UUID.randomUUID().toString());
+        }
+
+        Assert.assertEquals(cm.cacheSize(), 100);
+        Assert.assertTrue(cm.containsKey(0L));
+        for (long i = 1; i <= 50; ++i) {
+
+            Assert.assertFalse(cm.containsKey(i));
+        }
+        for (long i = 51; i < 150; ++i) {
+
+            Assert.assertTrue(cm.containsKey(i));
+        }
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadingTest() throws InterruptedException {
+
+        final int maxThreads = 20;
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        final CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        loadCount.incrementAndGet();
+                        // Slow backend
+                        Thread.sleep(200);
+                        return "value" + key;
+                    }
+                })
+                .build();
+
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+        final AtomicInteger loadedCount = new AtomicInteger();
+
+        for (int i = 0; i < maxThreads; ++i) {
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        startGate.await();
+                    } catch (InterruptedException ignored) {}
+                    try {
+                        if ("value1".equals(cm.get(1L))) {
+
+                            loadedCount.incrementAndGet();
+                        }
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+
+        startGate.countDown();
+        endGate.await();
+
+        // Value loaded once and shared by all the readers
+        Assert.assertEquals(loadCount.get(), 1);
+        Assert.assertEquals(loadedCount.get(), maxThreads);
+        Assert.assertTrue(cm.containsKey(1L));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadingRaceTest() throws InterruptedException {
+
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        loading.countDown();
+                        release.await();
+                        return "loaded" + key;
+                    }
+                })
+                .build();
+
+        // Value put while the load is in flight is not overwritten by the stale loaded value
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+
+                cm.get(1L);
+            }
+        };
+        reader.start();
+        loading.await();
+        cm.put(1L, "new");
+        release.countDown();
+        reader.join();
+        Assert.assertEquals(cm.get(1L), "new");
+
+        final CountDownLatch bulkLoading = new CountDownLatch(1);
+        final CountDownLatch bulkRelease = new CountDownLatch(1);
+        final CacheManager<Long, String> bulkCm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "loaded" + key;
+                    }
+
+                    @Override
+                    public Map<Long, String> loadAll(Iterable<? extends Long> keys) throws Exception {
+
+                        bulkLoading.countDown();
+                        bulkRelease.await();
+                        Map<Long, String> values = new HashMap<Long, String>();
+                        for (Long key : keys) {
+
+                            values.put(key, "loaded" + key);
+                        }
+                        return values;
+                    }
+                })
+                .build();
+        Thread bulkReader = new Thread() {
+
+            @Override
+            public void run() {
+
+                bulkCm.getAll(Arrays.asList(2L, 3L));
+            }
+        };
+        bulkReader.start();
+        bulkLoading.await();
+        bulkCm.put(2L, "new");
+        bulkRelease.countDown();
+        bulkReader.join();
+        Assert.assertEquals(bulkCm.get(2L), "new");
+        Assert.assertEquals(bulkCm.get(3L), "loaded3");
+
+        cm.shutdown();
+        bulkCm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadingFailureTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        if (key < 0) {
+
+                            throw new IllegalArgumentException("Negative key");
+                        }
+                        return (key == 0) ? null : "value" + key;
+                    }
+                })
+                .build();
+
         try {
-            Thread.sleep(4000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            cm.get(-1L);
+            Assert.fail("Loader failure must be propagated");
+        } catch (CacheLoaderException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
         }
 
-        // Cache should be empty by now
+        // Null values are not cached
+        Assert.assertNull(cm.get(0L));
+        Assert.assertTrue(cm.isCacheEmpty());
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void recursiveLoadTest() {
+
+        final AtomicReference<CacheManager<Long, String>> self = new AtomicReference<CacheManager<Long, String>>();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        // Reads the key it is loading
+                        return self.get().get(key);
+                    }
+                })
+                .build();
+        self.set(cm);
+
+        try {
+            cm.get(1L);
+            Assert.fail("Recursive load must fail instead of waiting for itself");
+        } catch (CacheLoaderException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            cm.getAll(Arrays.asList(2L, 3L));
+            Assert.fail("Recursive load must fail instead of waiting for itself");
+        } catch (CacheLoaderException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertTrue(cm.isCacheEmpty());
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void refreshAheadTest() throws InterruptedException {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+        ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(2, TimeUnit.SECONDS)
+                .refreshAfterWrite(500, TimeUnit.MILLISECONDS)
+                .refreshExecutor(refreshExecutor)
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "value" + loadCount.incrementAndGet();
+                    }
+
+                    @Override
+                    public String reload(Long key, String oldValue) throws Exception {
+
+                        // Slow backend
+                        Thread.sleep(200);
+                        return load(key);
+                    }
+                })
+                .build();
+
+        Assert.assertEquals(cm.get(1L), "value1");
+
+        Thread.sleep(700);
+
+        // Reads past the refresh duration get the old value while a single refresh is in flight
+        Assert.assertEquals(cm.get(1L), "value1");
+        Assert.assertEquals(cm.get(1L), "value1");
+
+        refreshExecutor.shutdown();
+        refreshExecutor.awaitTermination(1, TimeUnit.SECONDS);
+
+        Assert.assertEquals(cm.get(1L), "value2");
+        Assert.assertEquals(loadCount.get(), 2);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void refreshWithoutLoaderTest() {
+
+        CacheBuilder.newBuilder()
+                .refreshAfterWrite(1, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Test(enabled = true)
+    public void lazyExpiryTest() {
+
+        // Purge would not run during the test
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.SECONDS)
+                .purgeFrequency(1, TimeUnit.HOURS)
+                .ticker(ticker)
+                .build();
+
+        cm.put(1L, "one");
+        cm.put(2L, "two");
+        Assert.assertEquals(cm.get(1L), "one");
+
+        ticker.advance(1500, TimeUnit.MILLISECONDS);
+
+        // Expired values must not be returned even though they are not purged yet
+        Assert.assertEquals(cm.cacheSize(), 2);
+        Assert.assertNull(cm.get(1L));
+        Assert.assertFalse(cm.containsKey(2L));
+
+        // Reads remove the stale entries
         Assert.assertTrue(cm.isCacheEmpty());
 
         cm.shutdown();
     }
 
+    @Test(enabled = true)
+    public void callerThreadMaintenanceTest() throws InterruptedException {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.SECONDS)
+                .purgeFrequency(1, TimeUnit.SECONDS)
+                .maintenanceScheduler(MaintenanceScheduler.callerThread())
+                .build();
+
+        for (long i = 0; i < 10; ++i) {
+
+            cm.put(i, UUID.randomUUID().toString());
+        }
+
+        Thread.sleep(1500);
+
+        // No thread purges the cache
+        Assert.assertEquals(cm.cacheSize(), 10);
+
+        // Purge is due, next operation runs it
+        cm.put(100L, UUID.randomUUID().toString());
+        Assert.assertEquals(cm.cacheSize(), 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void dedicatedSchedulerTest() throws InterruptedException {
+
+        MaintenanceScheduler scheduler = MaintenanceScheduler.newScheduler(1);
+
+        // Multiple caches multiplexed on a single thread
+        CacheManager<Long, String> cm1 = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.SECONDS)
+                .purgeFrequency(500, TimeUnit.MILLISECONDS)
+                .maintenanceScheduler(scheduler)
+                .build();
+        CacheManager<Long, String> cm2 = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.SECONDS)
+                .purgeFrequency(500, TimeUnit.MILLISECONDS)
+                .maintenanceScheduler(scheduler)
+                .build();
+
+        cm1.put(1L, "one");
+        cm2.put(2L, "two");
+
+        // Deregistered cache is not purged anymore
+        cm2.shutdown();
+
+        Thread.sleep(2500);
+
+        Assert.assertTrue(cm1.isCacheEmpty());
+        Assert.assertEquals(cm2.cacheSize(), 1);
+
+        cm1.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void cancelWaitsForRunTest() throws InterruptedException {
+
+        MaintenanceScheduler scheduler = MaintenanceScheduler.newScheduler(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger finished = new AtomicInteger();
+
+        MaintenanceScheduler.Registration registration = scheduler.register(new Runnable() {
+            @Override
+            public void run() {
+
+                started.countDown();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ignored) {}
+                finished.incrementAndGet();
+            }
+        }, 1);
+
+        // Cancel returns only once the run in flight is over, and nothing runs after it
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        registration.cancel();
+        int runs = finished.get();
+        Assert.assertTrue(runs >= 1);
+        Thread.sleep(50);
+        Assert.assertEquals(finished.get(), runs);
+
+        scheduler.shutdown();
+    }
+
     @Test(enabled = true)
     public void loadTest() throws InterruptedException {
 
@@ -0,0 +1,169 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestCacheStats {
+
+    @Test(enabled = true)
+    public void hitMissLoadTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .recordStats()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        if (key < 0) {
+
+                            throw new Exception("No value for " + key);
+                        }
+                        return "loaded" + key;
+                    }
+                })
+                .build();
+
+        cm.put(1L, "one");
+        Assert.assertEquals(cm.get(1L), "one");
+        Assert.assertEquals(cm.get(2L), "loaded2");
+        Assert.assertEquals(cm.get(2L), "loaded2");
+        try {
+            cm.get(-1L);
+            Assert.fail("Failed load must be reported");
+        } catch (CacheLoaderException expected) {
+        }
+        cm.getAll(Arrays.asList(1L, 3L, 4L));
+
+        CacheStats stats = cm.stats();
+        System.out.println(stats);
+
+        Assert.assertEquals(stats.getHitCount(), 3);
+        Assert.assertEquals(stats.getMissCount(), 4);
+        Assert.assertEquals(stats.getRequestCount(), 7);
+        Assert.assertEquals(stats.getHitRate(), 3.0 / 7, 1e-9);
+        // Single load of 2, failed load of -1 and a batch load of 3 and 4
+        Assert.assertEquals(stats.getLoadSuccessCount(), 2);
+        Assert.assertEquals(stats.getLoadFailureCount(), 1);
+        Assert.assertTrue(stats.getTotalLoadTime() > 0);
+        Assert.assertTrue(stats.getLoadLatencyPercentile(100) >= stats.getLoadLatencyPercentile(50));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void evictionAndPurgeTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .recordStats()
+                .maximumSize(100)
+                .timeToLive(1, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .maintenanceScheduler(MaintenanceScheduler.callerThread())
+                .purgeFrequency(1, TimeUnit.MILLISECONDS)
+                .build();
+
+        for (long i = 0; i < 150; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.stats().getEvictionCount(), 50);
+
+        // Purge runs on a caller thread once due and drops the expired entries
+        long purgeCount = cm.stats().getPurgeCount();
+        ticker.advance(2, TimeUnit.MINUTES);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cm.stats().getPurgeCount() == purgeCount && System.currentTimeMillis() < deadline) {
+
+            cm.containsKey(-1L);
+        }
+
+        CacheStats stats = cm.stats();
+        System.out.println(stats);
+
+        Assert.assertTrue(stats.getPurgeCount() > purgeCount);
+        Assert.assertEquals(stats.getEvictionCount(), 150);
+        Assert.assertTrue(stats.getPurgeLatencyPercentile(99) > 0);
+        Assert.assertEquals(cm.cacheSize(), 0);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void disabledStatsTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().build();
+
+        cm.put(1L, "one");
+        cm.get(1L);
+        cm.get(2L);
+
+        CacheStats stats = cm.stats();
+        Assert.assertEquals(stats.getRequestCount(), 0);
+        Assert.assertEquals(stats.getLoadSuccessCount(), 0);
+        Assert.assertEquals(stats.getHitRate(), 1.0);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void concurrentStatsTest() throws InterruptedException {
+
+        final int maxThreads = 8;
+        final int lookupsPerThread = 100000;
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().recordStats().build();
+        for (long i = 0; i < 1000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        runLookups(cm, maxThreads, lookupsPerThread);
+
+        // Striped counters lose no lookup made concurrently
+        CacheStats stats = cm.stats();
+        Assert.assertEquals(stats.getRequestCount(), (long) maxThreads * lookupsPerThread);
+        Assert.assertEquals(stats.getHitCount(), (long) maxThreads * lookupsPerThread / 2);
+
+        cm.shutdown();
+    }
+
+    /**
+     * Looks up the keys 0 to 1999 from the given threads, half of them hit
+     */
+    private static void runLookups(final CacheManager<Long, String> cm, int maxThreads, final int lookupsPerThread)
+            throws InterruptedException {
+
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+
+        for (int i = 0; i < maxThreads; ++i) {
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        startGate.await();
+                    } catch (InterruptedException ignored) {}
+                    try {
+                        for (int j = 0; j < lookupsPerThread; ++j) {
+
+                            cm.get((long) (j % 2000));
+                        }
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+
+        startGate.countDown();
+        endGate.await();
+    }
+}
@@ -0,0 +1,311 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestCacheWriter {
+
+    /**
+     * In memory stand-in of a backing store recording the batches written to it
+     */
+    static class InMemoryStore extends CacheWriter<Long, String> {
+
+        final Map<Long, String> mValues = new ConcurrentHashMap<Long, String>();
+        final List<Map<Long, String>> mBatches = new ArrayList<Map<Long, String>>();
+        final AtomicInteger mWriteCount = new AtomicInteger();
+
+        @Override
+        public void write(Long key, String value) throws Exception {
+
+            writeAll(Collections.singletonMap(key, value));
+        }
+
+        @Override
+        public void writeAll(Map<Long, String> entries) throws Exception {
+
+            beforeWrite(entries);
+            synchronized (this) {
+
+                mBatches.add(new LinkedHashMap<Long, String>(entries));
+                notifyAll();
+            }
+            mValues.putAll(entries);
+            mWriteCount.addAndGet(entries.size());
+        }
+
+        void beforeWrite(Map<Long, String> entries) throws Exception {
+        }
+
+        /**
+         * Waits until the given number of keys is written
+         */
+        synchronized void await(int count) throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (mWriteCount.get() < count && System.currentTimeMillis() < deadline) {
+
+                wait(10);
+            }
+        }
+
+        synchronized List<Map<Long, String>> batches() {
+
+            return new ArrayList<Map<Long, String>>(mBatches);
+        }
+    }
+
+    @Test(enabled = true)
+    public void writeThroughTest() {
+
+        InMemoryStore store = new InMemoryStore() {
+            @Override
+            void beforeWrite(Map<Long, String> entries) {
+
+                if (entries.containsKey(-1L)) {
+
+                    throw new IllegalStateException("Store is unavailable");
+                }
+            }
+        };
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().cacheWriter(store).build();
+
+        cm.put(1L, "one");
+        Assert.assertEquals(store.mValues.get(1L), "one");
+        cm.put(2L, "two", 1, TimeUnit.MINUTES);
+        Assert.assertEquals(store.mValues.get(2L), "two");
+
+        Map<Long, String> entries = new HashMap<Long, String>();
+        for (long i = 10; i < 20; ++i) {
+
+            entries.put(i, "value" + i);
+        }
+        cm.putAll(entries);
+        Assert.assertEquals(store.batches().size(), 3);
+        Assert.assertEquals(store.batches().get(2), entries);
+        Assert.assertEquals(cm.cacheSize(), 12);
+
+        // Failed store write is not cached
+        try {
+            cm.put(-1L, "failed");
+            Assert.fail("Failure of the writer must be thrown");
+        } catch (CacheWriterException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertNull(cm.get(-1L));
+        entries.put(-1L, "failed");
+        try {
+            cm.putAll(entries);
+            Assert.fail("Failure of the writer must be thrown");
+        } catch (CacheWriterException expected) {
+        }
+        Assert.assertNull(cm.get(-1L));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void coalescingTest() throws Exception {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryStore store = new InMemoryStore() {
+            @Override
+            void beforeWrite(Map<Long, String> entries) throws Exception {
+
+                entered.countDown();
+                release.await();
+            }
+        };
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheWriter(store)
+                .writeBehind(1, TimeUnit.MILLISECONDS)
+                .build();
+
+        // First write occupies the blocked store, the following ones queue behind it
+        cm.put(-1L, "first");
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (int round = 0; round < 100; ++round) {
+
+            for (long i = 0; i < 10; ++i) {
+
+                cm.put(i, "value" + i + "-" + round);
+            }
+        }
+        Assert.assertEquals(cm.get(5L), "value5-99");
+        Assert.assertTrue(store.mValues.isEmpty());
+
+        release.countDown();
+        cm.shutdown();
+        Assert.assertEquals(store.mWriteCount.get(), 11);
+        for (long i = 0; i < 10; ++i) {
+
+            Assert.assertEquals(store.mValues.get(i), "value" + i + "-99");
+        }
+    }
+
+    @Test(enabled = true)
+    public void batchThresholdsTest() throws InterruptedException {
+
+        InMemoryStore store = new InMemoryStore();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheWriter(store)
+                .writeBehind(1, TimeUnit.HOURS)
+                .writeBehindBatchSize(100)
+                .build();
+
+        // Full batches are flushed right away, the rest waits for the flush delay or the shutdown
+        for (long i = 0; i < 250; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        store.await(200);
+        Assert.assertEquals(store.mWriteCount.get(), 200);
+        cm.shutdown();
+        List<Map<Long, String>> batches = store.batches();
+        Assert.assertEquals(batches.size(), 3);
+        Assert.assertEquals(batches.get(0).size(), 100);
+        Assert.assertEquals(batches.get(1).size(), 100);
+        Assert.assertEquals(batches.get(2).size(), 50);
+        Assert.assertEquals(batches.get(0).keySet().iterator().next().longValue(), 0L);
+
+        InMemoryStore timedStore = new InMemoryStore();
+        CacheManager<Long, String> timed = CacheBuilder.newBuilder()
+                .cacheWriter(timedStore)
+                .writeBehind(50, TimeUnit.MILLISECONDS)
+                .writeBehindBatchSize(1000)
+                .build();
+        for (long i = 0; i < 10; ++i) {
+
+            timed.put(i, "value" + i);
+        }
+        timedStore.await(10);
+        Assert.assertEquals(timedStore.mWriteCount.get(), 10);
+        Assert.assertEquals(timedStore.batches().size(), 1);
+        timed.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void backpressureTest() throws InterruptedException {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        InMemoryStore store = new InMemoryStore() {
+            @Override
+            void beforeWrite(Map<Long, String> entries) throws Exception {
+
+                release.await();
+            }
+        };
+        final CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheWriter(store)
+                .writeBehind(1, TimeUnit.MILLISECONDS)
+                .writeBehindBatchSize(10)
+                .writeBehindBufferSize(100)
+                .build();
+
+        final AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+
+                for (long i = 0; i < 1000; ++i) {
+
+                    cm.put(i, "value" + i);
+                    written.incrementAndGet();
+                }
+            }
+        };
+        writer.start();
+
+        // At most one batch is with the blocked store, the buffer holds the next hundred keys
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(writer.getState(), Thread.State.WAITING);
+        Assert.assertTrue(written.get() >= 100 && written.get() <= 110, "Written: " + written.get());
+
+        release.countDown();
+        writer.join(5000);
+        Assert.assertEquals(written.get(), 1000);
+        cm.shutdown();
+        Assert.assertEquals(store.mValues.size(), 1000);
+    }
+
+    @Test(enabled = true)
+    public void retryTest() throws InterruptedException {
+
+        final AtomicInteger failures = new AtomicInteger(2);
+        InMemoryStore store = new InMemoryStore() {
+            @Override
+            void beforeWrite(Map<Long, String> entries) {
+
+                if (failures.getAndDecrement() > 0) {
+
+                    throw new IllegalStateException("Store is unavailable");
+                }
+            }
+        };
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheWriter(store)
+                .writeBehind(10, TimeUnit.MILLISECONDS)
+                .build();
+
+        for (long i = 0; i < 10; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        store.await(10);
+        Assert.assertEquals(store.mWriteCount.get(), 10);
+        Assert.assertEquals(store.mValues.get(9L), "value9");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadedValuesTest() {
+
+        InMemoryStore store = new InMemoryStore();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "loaded" + key;
+                    }
+                })
+                .cacheWriter(store)
+                .build();
+
+        // Values coming from the store are not written back
+        Assert.assertEquals(cm.get(1L), "loaded1");
+        Assert.assertEquals(cm.getAll(Arrays.asList(2L, 3L)).size(), 2);
+        Assert.assertEquals(cm.cacheSize(), 3);
+        Assert.assertEquals(store.mWriteCount.get(), 0);
+        cm.shutdown();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void writeBehindWithoutWriterTest() {
+
+        CacheBuilder.newBuilder().writeBehind(1, TimeUnit.SECONDS).build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void cacheWriterLongKeyTest() {
+
+        CacheBuilder.newBuilder().cacheWriter(new InMemoryStore()).buildLongKeyCacheManager();
+    }
+}
@@ -0,0 +1,199 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class TestExpireAfterAccess {
+
+    @Test(enabled = true)
+    public void slidingExpiryTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        cm.put(1L, "read");
+        cm.put(2L, "unread");
+        cm.put(3L, "own lifetime", 1, TimeUnit.MINUTES);
+
+        // Reads are applied by the next maintenance
+        ticker.advance(6, TimeUnit.SECONDS);
+        Assert.assertEquals(cm.get(1L), "read");
+        Assert.assertEquals(cm.get(3L), "own lifetime");
+        cm.mCache.purge();
+
+        ticker.advance(6, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 2);
+        Assert.assertNull(cm.get(2L));
+        Assert.assertEquals(cm.get(1L), "read");
+        cm.mCache.purge();
+
+        // Idle for longer than the time to live, entries with their own lifetime slide by it
+        ticker.advance(11, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        Assert.assertNull(cm.get(1L));
+        ticker.advance(40, TimeUnit.SECONDS);
+        Assert.assertEquals(cm.get(3L), "own lifetime");
+        cm.mCache.purge();
+        ticker.advance(61, TimeUnit.SECONDS);
+        Assert.assertNull(cm.get(3L));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void readsWithoutPurgeTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .timeToLive(10, TimeUnit.SECONDS)
+                .purgeFrequency(1, TimeUnit.HOURS)
+                .ticker(ticker)
+                .build();
+
+        // Every read slides the expiration time, whether or not the read buffer is drained in between
+        cm.put(1L, "read");
+        cm.put(2L, "read once");
+        for (int round = 0; round < 5; ++round) {
+
+            ticker.advance(6, TimeUnit.SECONDS);
+            Assert.assertEquals(cm.get(1L), "read");
+        }
+        Assert.assertNull(cm.get(2L));
+
+        // Read time is kept by the node, so a late drain does not revive an idle entry
+        ticker.advance(11, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 0);
+        Assert.assertNull(cm.get(1L));
+
+        // Purge keeps the entries read since their expiration time was last moved
+        cm.put(3L, "purged");
+        ticker.advance(6, TimeUnit.SECONDS);
+        Assert.assertEquals(cm.get(3L), "purged");
+        ticker.advance(6, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        ticker.advance(5, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 0);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void sizeBoundedTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .maximumSize(100)
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        for (long i = 0; i < 200; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.cacheSize(), 100);
+
+        for (int round = 0; round < 3; ++round) {
+
+            ticker.advance(5, TimeUnit.SECONDS);
+            for (long i = 150; i < 200; ++i) {
+
+                Assert.assertEquals(cm.get(i), "value" + i);
+            }
+            cm.mCache.purge();
+        }
+        Assert.assertEquals(cm.cacheSize(), 50);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void concurrentReadersTest() throws InterruptedException {
+
+        final int maxThreads = 8;
+        final TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        final InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .timeToLive(1, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+        for (long i = 0; i < 16; ++i) {
+
+            cm.put(i, "hot" + i);
+        }
+        cm.put(-1L, "cold");
+
+        // Hot keys keep being read while the time moves on; recorded reads are only applied by maintenance
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+        for (int i = 0; i < maxThreads; ++i) {
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        while (!stopped.get()) {
+
+                            for (long key = 0; key < 16; ++key) {
+
+                                cm.mCache.get(key);
+                            }
+                        }
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+        for (int step = 0; step < 20; ++step) {
+
+            Thread.sleep(5);
+            ticker.advance(100, TimeUnit.MILLISECONDS);
+            cm.mCache.purge();
+        }
+        stopped.set(true);
+        endGate.await();
+
+        Assert.assertNull(cm.get(-1L));
+        Assert.assertEquals(cm.cacheSize(), 16);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void expireAfterAccessOffHeapTest() {
+
+        CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .cacheType(CacheBuilder.CacheType.OFF_HEAP)
+                .build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void expireAfterAccessTieredTest() {
+
+        CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .maximumSize(10)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestExpiry {
+
+    @Test(enabled = true)
+    public void perEntryTimeToLiveTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+
+        cm.put(1L, "default");
+        cm.put(2L, "minute", 1, TimeUnit.MINUTES);
+        cm.put(3L, "hour", 1, TimeUnit.HOURS);
+        cm.put(4L, "forever", Long.MAX_VALUE, TimeUnit.DAYS);
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        Assert.assertNull(cm.get(1L));
+        Assert.assertEquals(cm.get(2L), "minute");
+
+        // Overwriting a key takes the lifetime of the new write
+        Assert.assertEquals(cm.put(2L, "minute again", 5, TimeUnit.SECONDS), "minute");
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 2);
+        Assert.assertNull(cm.get(2L));
+        Assert.assertEquals(cm.get(3L), "hour");
+
+        ticker.advance(365, TimeUnit.DAYS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        Assert.assertEquals(cm.get(4L), "forever");
+
+        try {
+            cm.put(5L, "never stored", 0, TimeUnit.SECONDS);
+            Assert.fail("Time to live must be positive");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void expiryTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .expiry(new Expiry<Long, String>() {
+                    @Override
+                    public long timeToLive(Long key, String value) {
+
+                        // Odd keys live a second, even keys a minute
+                        return (key % 2 == 1) ? 1000 : TimeUnit.MINUTES.toMillis(1);
+                    }
+                })
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "loaded" + key;
+                    }
+                })
+                .ticker(ticker)
+                .build();
+
+        Map<Long, String> entries = new HashMap<Long, String>();
+        for (long i = 0; i < 100; ++i) {
+
+            entries.put(i, "value" + i);
+        }
+        cm.putAll(entries);
+        cm.put(100L, "value100");
+        Assert.assertEquals(cm.get(101L), "loaded101");
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 51);
+        Assert.assertEquals(cm.get(2L), "value2");
+        Assert.assertEquals(cm.get(100L), "value100");
+        Assert.assertEquals(cm.get(1L), "loaded1");
+
+        // Explicit time to live takes precedence over the expiry
+        cm.put(3L, "explicit", 1, TimeUnit.HOURS);
+        ticker.advance(2, TimeUnit.MINUTES);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        Assert.assertEquals(cm.get(3L), "explicit");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void expiryWithEvictionAndSecondTierTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        Expiry<Long, String> expiry = new Expiry<Long, String>() {
+            @Override
+            public long timeToLive(Long key, String value) {
+
+                return (key < 10) ? 1000 : Long.MAX_VALUE;
+            }
+        };
+
+        // Size bounded caches never expire values on their own, expiry adds lifetimes to them
+        InMemoryCacheManager<Long, String> lru = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(100)
+                .expiry(expiry)
+                .ticker(ticker)
+                .build();
+        CacheManager<Long, String> offHeap = CacheBuilder.newBuilder()
+                .cacheType(CacheBuilder.CacheType.OFF_HEAP)
+                .offHeapCapacity(1024 * 1024)
+                .expiry(expiry)
+                .ticker(ticker)
+                .build();
+
+        for (long i = 0; i < 20; ++i) {
+
+            lru.put(i, "value" + i);
+            offHeap.put(i, "value" + i);
+        }
+        offHeap.put(20L, "value20", 1, TimeUnit.SECONDS);
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        lru.mCache.purge();
+        Assert.assertEquals(lru.cacheSize(), 10);
+        Assert.assertNull(offHeap.get(5L));
+        Assert.assertNull(offHeap.get(20L));
+        Assert.assertEquals(offHeap.get(15L), "value15");
+
+        lru.shutdown();
+        offHeap.shutdown();
+    }
+}
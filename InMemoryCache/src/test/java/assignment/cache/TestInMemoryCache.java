@@ -0,0 +1,214 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class TestInMemoryCache {
+
+    @Test(enabled = true)
+    public void purgeOnlyExpiredTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCache<Long, String> cache = new InMemoryCache<Long, String>(100, Long.MAX_VALUE, null, ticker);
+
+        // Mix of short, long and very long lived values spread across the levels of the timer wheel
+        for (long i = 0; i < 300; ++i) {
+
+            long ttl = (i % 3 == 0) ? 100 : (i % 3 == 1) ? TimeUnit.MINUTES.toMillis(5) : TimeUnit.DAYS.toMillis(30);
+            cache.put(i, new TimedCacheObject<String>("value" + i, ticker.read(), ttl));
+        }
+
+        // Overwritten and removed values must not be purged on behalf of their old nodes
+        cache.put(0L, new TimedCacheObject<String>("new", ticker.read(), TimeUnit.MINUTES.toMillis(5)));
+        cache.remove(3L);
+
+        ticker.advance(600, TimeUnit.MILLISECONDS);
+        cache.purge();
+
+        Assert.assertEquals(cache.size(), 201);
+        Assert.assertEquals(cache.get(0L).getCache(), "new");
+        Assert.assertNull(cache.get(3L));
+        Assert.assertNull(cache.get(6L));
+        Assert.assertNotNull(cache.get(1L));
+        Assert.assertNotNull(cache.get(2L));
+    }
+
+    @Test(enabled = true)
+    public void tinyLfuHitRatioTest() {
+
+        final int maximumSize = 500;
+
+        double lruHitRatio = hitRatio(new InMemoryCache<Long, String>(maximumSize, maximumSize,
+                new LruPolicy<Long, String>()), maximumSize);
+        double tinyLfuHitRatio = hitRatio(new InMemoryCache<Long, String>(maximumSize, maximumSize,
+                new WTinyLfuPolicy<Long, String>(maximumSize)), maximumSize);
+
+        System.out.println("Skewed workload with scans, LRU hit ratio: " + lruHitRatio
+                + ", TinyLFU hit ratio: " + tinyLfuHitRatio);
+
+        Assert.assertTrue(tinyLfuHitRatio > lruHitRatio);
+    }
+
+    @Test(enabled = true)
+    public void tinyLfuAdmissionTest() {
+
+        // Window of a single entry
+        WTinyLfuPolicy<Long, String> policy = new WTinyLfuPolicy<Long, String>(10, 1000);
+        List<Long> evicted = new ArrayList<Long>();
+
+        // Keys 0 to 9 read twice, then 10 read once pushes them out of the window
+        for (long i = 0; i < 10; ++i) {
+
+            CacheNode<Long, String> node = newNode(i);
+            policy.onAdd(node);
+            policy.onAccess(node);
+        }
+        policy.onAdd(newNode(10));
+        evictExcess(policy, 10, evicted);
+        Assert.assertEquals(evicted, Arrays.asList(0L));
+
+        // Key 21 is frequent, though never cached
+        for (int i = 0; i < 5; ++i) {
+
+            CacheNode<Long, String> node = newNode(21);
+            policy.onAdd(node);
+            policy.onRemove(node);
+        }
+
+        // Candidates 10 and 21 overflow the window together and each competes once, oldest first: 10 is rejected,
+        // 21 is admitted in place of the least recent entry on probation
+        evicted.clear();
+        policy.onAdd(newNode(21));
+        policy.onAdd(newNode(22));
+        evictExcess(policy, 10, evicted);
+        Assert.assertEquals(evicted, Arrays.asList(10L, 1L));
+    }
+
+    private static CacheNode<Long, String> newNode(long key) {
+
+        return new CacheNode<Long, String>(key, "value" + key, 0, Long.MAX_VALUE, 1);
+    }
+
+    /**
+     * Evicts the victims of the policy like a cache bounded to the given size
+     */
+    private static void evictExcess(EvictionPolicy<Long, String> policy, long maximumSize, List<Long> evicted) {
+
+        while (policy.weightedSize() > maximumSize) {
+
+            CacheNode<Long, String> victim = policy.victim();
+            policy.onRemove(victim);
+            evicted.add(victim.mKey);
+        }
+    }
+
+    @Test(enabled = true)
+    public void boundedConcurrentTest() throws InterruptedException {
+
+        final int maxThreads = 8;
+        final int keySpace = 20000;
+
+        InMemoryCache<Long, String> bounded = new InMemoryCache<Long, String>(keySpace,
+                keySpace / 2, new LruPolicy<Long, String>());
+        runMixedLoad(bounded, maxThreads, 50000, keySpace);
+
+        bounded.purge();
+        Assert.assertTrue(bounded.size() <= keySpace / 2);
+    }
+
+    /**
+     * Runs 90% reads and 10% writes on random keys from the given threads
+     */
+    private static void runMixedLoad(final InMemoryCache<Long, String> cache, int maxThreads,
+                                     final int operationsPerThread, final int keySpace) throws InterruptedException {
+
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+        final CacheObject<String> value = new LruCacheObject<String>("value");
+
+        for (int i = 0; i < maxThreads; ++i) {
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        startGate.await();
+                    } catch (InterruptedException ignored) {}
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int j = 0; j < operationsPerThread; ++j) {
+
+                            long key = random.nextInt(keySpace);
+                            if (random.nextInt(10) == 0) {
+
+                                cache.put(key, value);
+                            } else {
+
+                                cache.get(key);
+                            }
+                        }
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+
+        startGate.countDown();
+        endGate.await();
+    }
+
+    /**
+     * Runs a skewed workload interleaved with scans of never repeated keys
+     *
+     * @return Hit ratio of the skewed part of the workload
+     */
+    private static double hitRatio(InMemoryCache<Long, String> cache, int maximumSize) {
+
+        final int keySpace = 20 * maximumSize;
+        final CacheObject<String> value = new LruCacheObject<String>("value");
+        Random random = new Random(42);
+
+        long scanKey = -1;
+        int hits = 0;
+        int requests = 0;
+        for (int round = 0; round < 100; ++round) {
+
+            for (int i = 0; i < 5000; ++i) {
+
+                long key = (long) (keySpace * Math.pow(random.nextDouble(), 4));
+                ++requests;
+                if (cache.get(key) != null) {
+
+                    ++hits;
+                } else {
+
+                    cache.put(key, value);
+                }
+            }
+            for (int i = 0; i < 2 * maximumSize; ++i) {
+
+                if (cache.get(scanKey) == null) {
+
+                    cache.put(scanKey, value);
+                }
+                --scanKey;
+            }
+        }
+
+        cache.purge();
+        Assert.assertTrue(cache.size() <= maximumSize);
+        return (double) hits / requests;
+    }
+}
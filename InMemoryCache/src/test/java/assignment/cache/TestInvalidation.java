@@ -0,0 +1,341 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestInvalidation {
+
+    /**
+     * In process bus recording the batches published to it
+     */
+    static class RecordingBus implements InvalidationBus<Long> {
+
+        final InvalidationBus<Long> mBus = new LocalInvalidationBus<Long>();
+        final List<InvalidationBatch<Long>> mBatches =
+                Collections.synchronizedList(new ArrayList<InvalidationBatch<Long>>());
+
+        @Override
+        public void subscribe(InvalidationListener<Long> listener) {
+
+            mBus.subscribe(listener);
+        }
+
+        @Override
+        public void unsubscribe(InvalidationListener<Long> listener) {
+
+            mBus.unsubscribe(listener);
+        }
+
+        @Override
+        public void publish(InvalidationListener<Long> publisher, InvalidationBatch<Long> batch) {
+
+            mBatches.add(batch);
+            mBus.publish(publisher, batch);
+        }
+    }
+
+    private static CacheManager<Long, String> buildCacheManager(InvalidationBus<Long> bus) {
+
+        return CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.HOURS)
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "value" + key;
+                    }
+                })
+                .invalidationBus(bus)
+                .invalidationDelay(10, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Waits until the cache no longer holds the key
+     */
+    private static void awaitInvalidated(CacheManager<Long, String> cm, Long key) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cm.containsKey(key) && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(5);
+        }
+        Assert.assertFalse(cm.containsKey(key), "Key " + key + " is not invalidated");
+    }
+
+    /**
+     * Loads the same entries into the cache, as loaded values are not published
+     */
+    private static void fill(CacheManager<Long, String> cm) {
+
+        for (long i = 0; i < 10; ++i) {
+
+            Assert.assertEquals(cm.get(i), "value" + i);
+        }
+        Assert.assertEquals(cm.cacheSize(), 10);
+    }
+
+    @Test(enabled = true)
+    public void localBusTest() throws InterruptedException {
+
+        InvalidationBus<Long> bus = new LocalInvalidationBus<Long>();
+        CacheManager<Long, String> first = buildCacheManager(bus);
+        CacheManager<Long, String> second = buildCacheManager(bus);
+        fill(first);
+        fill(second);
+        verifyPropagation(first, second);
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void socketBusTest() throws IOException, InterruptedException {
+
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        SocketInvalidationBus<Long> firstBus =
+                new SocketInvalidationBus<Long>(loopback, new TestMappedFileCache.LongSerializer());
+        SocketInvalidationBus<Long> secondBus =
+                new SocketInvalidationBus<Long>(loopback, new TestMappedFileCache.LongSerializer());
+        firstBus.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), secondBus.getPort()));
+        secondBus.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), firstBus.getPort()));
+
+        CacheManager<Long, String> first = buildCacheManager(firstBus);
+        CacheManager<Long, String> second = buildCacheManager(secondBus);
+        fill(first);
+        fill(second);
+        verifyPropagation(first, second);
+
+        // A peer which went away is skipped without failing the publisher
+        second.shutdown();
+        secondBus.close();
+        first.put(1L, "alone");
+        Assert.assertEquals(first.get(1L), "alone");
+
+        first.shutdown();
+        firstBus.close();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalArgumentException.class)
+    public void socketBusJavaSerializerTest() throws IOException {
+
+        new SocketInvalidationBus<Long>(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new JavaSerializer<Long>());
+    }
+
+    @Test(enabled = true)
+    public void socketBusValidationTest() throws IOException {
+
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+        // Connection sending a key larger than allowed is closed before the key is read
+        SocketInvalidationBus<Long> bus = new SocketInvalidationBus<Long>(loopback,
+                new TestMappedFileCache.LongSerializer());
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), bus.getPort());
+        try {
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeBoolean(false);
+            out.writeInt(1);
+            out.writeInt(SocketInvalidationBus.MAX_KEY_SIZE + 1);
+            out.flush();
+            Assert.assertEquals(socket.getInputStream().read(), -1);
+        } finally {
+            socket.close();
+            bus.close();
+        }
+    }
+
+    @Test(enabled = true)
+    public void socketBusOversizeKeyTest() throws IOException, InterruptedException {
+
+        // Negative keys serialize larger than a key may be sent
+        Serializer<Long> serializer = new Serializer<Long>() {
+            @Override
+            public byte[] serialize(Long value) {
+
+                return (value < 0) ? new byte[SocketInvalidationBus.MAX_KEY_SIZE + 1]
+                        : ByteBuffer.allocate(8).putLong(value).array();
+            }
+
+            @Override
+            public Long deserialize(ByteBuffer buffer) {
+
+                return buffer.getLong(buffer.position());
+            }
+        };
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        SocketInvalidationBus<Long> firstBus = new SocketInvalidationBus<Long>(loopback, serializer);
+        SocketInvalidationBus<Long> secondBus = new SocketInvalidationBus<Long>(loopback, serializer);
+        firstBus.addPeer(new InetSocketAddress(InetAddress.getLoopbackAddress(), secondBus.getPort()));
+
+        CacheManager<Long, String> first = buildCacheManager(firstBus);
+        CacheManager<Long, String> second = buildCacheManager(secondBus);
+        fill(second);
+
+        // Oversize key is left out of the batch, the other key still reaches the peer
+        Map<Long, String> entries = new HashMap<Long, String>();
+        entries.put(-1L, "oversize");
+        entries.put(1L, "one");
+        first.putAll(entries);
+        awaitInvalidated(second, 1L);
+        Assert.assertTrue(second.containsKey(2L));
+
+        first.shutdown();
+        second.shutdown();
+        firstBus.close();
+        secondBus.close();
+    }
+
+    /**
+     * Invalidations of either cache reach the other one, never the publisher itself
+     */
+    private static void verifyPropagation(CacheManager<Long, String> first, CacheManager<Long, String> second)
+            throws InterruptedException {
+
+        first.put(1L, "new");
+        awaitInvalidated(second, 1L);
+        Assert.assertEquals(first.get(1L), "new");
+
+        second.remove(2L);
+        awaitInvalidated(first, 2L);
+
+        Map<Long, String> entries = new HashMap<Long, String>();
+        entries.put(3L, "three");
+        entries.put(4L, "four");
+        second.putAll(entries);
+        awaitInvalidated(first, 3L);
+        awaitInvalidated(first, 4L);
+        Assert.assertEquals(second.get(3L), "three");
+
+        first.removeAll(Arrays.asList(5L, 6L));
+        awaitInvalidated(second, 5L);
+        awaitInvalidated(second, 6L);
+
+        first.clearCache();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!second.isCacheEmpty() && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(second.isCacheEmpty());
+    }
+
+    @Test(enabled = true)
+    public void coalescingTest() {
+
+        // Window longer than the test, the batches are published by shutdown
+        RecordingBus bus = new RecordingBus();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .invalidationBus(bus)
+                .invalidationDelay(1, TimeUnit.MINUTES)
+                .invalidationBatchSize(100)
+                .build();
+        for (int round = 0; round < 20; ++round) {
+
+            for (long i = 0; i < 250; ++i) {
+
+                cm.put(i, "value" + round);
+            }
+        }
+        cm.remove(0L);
+        cm.shutdown();
+
+        // Every key once, split by the batch size
+        Assert.assertEquals(bus.mBatches.size(), 3);
+        List<Long> keys = new ArrayList<Long>();
+        for (InvalidationBatch<Long> batch : bus.mBatches) {
+
+            Assert.assertFalse(batch.isClear());
+            keys.addAll(batch.getKeys());
+        }
+        Assert.assertEquals(bus.mBatches.get(2).getKeys().size(), 50);
+        Assert.assertEquals(keys.size(), 250);
+        Assert.assertEquals(keys.get(0), Long.valueOf(0));
+        Assert.assertEquals(keys.get(249), Long.valueOf(249));
+
+        // Clear replaces the keys invalidated before it
+        bus.mBatches.clear();
+        cm = CacheBuilder.newBuilder().invalidationBus(bus).invalidationDelay(1, TimeUnit.MINUTES).build();
+        cm.put(1L, "one");
+        cm.put(2L, "two");
+        cm.clearCache();
+        cm.put(3L, "three");
+        cm.shutdown();
+        Assert.assertEquals(bus.mBatches.size(), 1);
+        Assert.assertTrue(bus.mBatches.get(0).isClear());
+        Assert.assertEquals(bus.mBatches.get(0).getKeys(), Collections.singletonList(3L));
+    }
+
+    @Test(enabled = true)
+    public void windowTest() throws InterruptedException {
+
+        RecordingBus bus = new RecordingBus();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .invalidationBus(bus)
+                .invalidationDelay(200, TimeUnit.MILLISECONDS)
+                .build();
+
+        // Nothing is published before the window of the first invalidation has elapsed
+        long start = System.nanoTime();
+        cm.put(1L, "one");
+        cm.put(2L, "two");
+        Thread.sleep(50);
+        if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150)) {
+
+            Assert.assertTrue(bus.mBatches.isEmpty());
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bus.mBatches.isEmpty() && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(bus.mBatches.size(), 1);
+        Assert.assertEquals(bus.mBatches.get(0).getKeys(), Arrays.asList(1L, 2L));
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadedValuesTest() {
+
+        RecordingBus bus = new RecordingBus();
+        TestCacheWriter.InMemoryStore store = new TestCacheWriter.InMemoryStore();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        return "loaded" + key;
+                    }
+                })
+                .cacheWriter(store)
+                .invalidationBus(bus)
+                .build();
+
+        // Values coming from the store are neither written back nor published
+        Assert.assertEquals(cm.get(1L), "loaded1");
+        Assert.assertEquals(cm.getAll(Arrays.asList(2L, 3L)).size(), 2);
+        cm.shutdown();
+        Assert.assertTrue(bus.mBatches.isEmpty());
+        Assert.assertEquals(store.mWriteCount.get(), 0);
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void invalidationBusLongKeyTest() {
+
+        CacheBuilder.newBuilder().invalidationBus(new LocalInvalidationBus<Long>()).buildLongKeyCacheManager();
+    }
+}
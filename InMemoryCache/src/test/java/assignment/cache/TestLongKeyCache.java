@@ -0,0 +1,227 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestLongKeyCache {
+
+    @Test(enabled = true)
+    public void basicLongKeyTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .initialCapacity(16)
+                .timeToLive(100, TimeUnit.MILLISECONDS)
+                .ticker(ticker);
+        LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+
+        Assert.assertNull(cm.get(1L));
+        Assert.assertNull(cm.put(1L, "one"));
+        Assert.assertEquals(cm.put(1L, "uno"), "one");
+        Assert.assertEquals(cm.get(1L), "uno");
+
+        // Grows beyond the initial capacity
+        for (long i = 2; i <= 10000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.cacheSize(), 10000);
+        Assert.assertEquals(cm.get(9999L), "value9999");
+        Assert.assertEquals(cm.get((Object) 9999L), "value9999");
+
+        Assert.assertEquals(cm.remove(5000L), "value5000");
+        Assert.assertFalse(cm.containsKey(5000L));
+        Assert.assertEquals(cm.cacheSize(), 9999);
+
+        // Expired values are never returned, purging drops them
+        ticker.advance(150, TimeUnit.MILLISECONDS);
+        Assert.assertNull(cm.get(1L));
+        Assert.assertNull(cm.put(2L, "two"));
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        Assert.assertEquals(cm.get(2L), "two");
+
+        // Value expiring right now is still live, for reads and purging alike
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(cm.get(2L), "two");
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void loadingLongKeyTest() {
+
+        final AtomicInteger loads = new AtomicInteger();
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        loads.incrementAndGet();
+                        return "loaded" + key;
+                    }
+                });
+        LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+
+        Assert.assertEquals(cm.get(7L), "loaded7");
+        Assert.assertEquals(cm.get(7L), "loaded7");
+        Assert.assertEquals(loads.get(), 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void refreshLongKeyTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        final AtomicInteger loads = new AtomicInteger();
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.HOURS)
+                .expiry(new Expiry<Long, String>() {
+                    @Override
+                    public long timeToLive(Long key, String value) {
+
+                        return TimeUnit.MINUTES.toMillis(key == 2L ? 10 : 60);
+                    }
+                })
+                .refreshAfterWrite(30, TimeUnit.SECONDS)
+                .refreshExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+
+                        command.run();
+                    }
+                })
+                .cacheLoader(new CacheLoader<Long, String>() {
+                    @Override
+                    public String load(Long key) throws Exception {
+
+                        loads.incrementAndGet();
+                        return "loaded" + key;
+                    }
+                })
+                .ticker(ticker);
+        LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+
+        // Value with its own time to live is refreshed as of its creation, not reloaded right away
+        cm.put(1L, "value", 1, TimeUnit.MINUTES);
+        Assert.assertEquals(cm.get(1L), "value");
+        Assert.assertEquals(loads.get(), 0);
+        ticker.advance(31, TimeUnit.SECONDS);
+        Assert.assertEquals(cm.get(1L), "value");
+        Assert.assertEquals(loads.get(), 1);
+        Assert.assertEquals(cm.get(1L), "loaded1");
+
+        // Refreshed value gets the time to live of the expiry
+        cm.put(2L, "value");
+        ticker.advance(31, TimeUnit.SECONDS);
+        Assert.assertEquals(cm.get(2L), "value");
+        Timestamped refreshed = (Timestamped) cm.mCache.get(2L);
+        Assert.assertEquals(refreshed.getTimeOfExpiry() - refreshed.getTimeOfCreation(),
+                TimeUnit.MINUTES.toMillis(10));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void concurrentLongKeyTest() throws Exception {
+
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder().timeToLive(1, TimeUnit.MINUTES);
+        final LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+        final int keyCount = 1000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < 8; ++t) {
+
+            final boolean writer = (t % 2 == 0);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+
+                    for (int i = 0; i < 200000; ++i) {
+
+                        long key = i % keyCount;
+                        if (writer) {
+
+                            if (i % 3 == 0) {
+
+                                cm.remove(key);
+                            } else {
+
+                                cm.put(key, "value" + key);
+                            }
+                        } else {
+
+                            // Readers never see the value of another key, even while tables are rebuilt
+                            String value = cm.get(key);
+                            if (value != null && !value.equals("value" + key)) {
+
+                                throw new AssertionError("Key " + key + " has value " + value);
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+
+            future.get();
+        }
+        executor.shutdown();
+
+        Assert.assertTrue(cm.cacheSize() <= keyCount);
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void lookupAllocationTest() {
+
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder().timeToLive(1, TimeUnit.MINUTES);
+        LongKeyCacheManager<String> cm = builder.buildLongKeyCacheManager();
+        for (long i = 0; i < 1000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+
+        int lookups = 1000000;
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        int hits = 0;
+        for (int i = 0; i < lookups; ++i) {
+
+            if (cm.get(i % 2000) != null) {
+
+                ++hits;
+            }
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("Bytes allocated by " + lookups + " lookups : " + allocated);
+
+        Assert.assertEquals(hits, lookups / 2);
+        // Even a single boxed key per lookup would allocate 16 MB
+        Assert.assertTrue(allocated < 1024 * 1024, "Allocated " + allocated);
+
+        cm.shutdown();
+    }
+}
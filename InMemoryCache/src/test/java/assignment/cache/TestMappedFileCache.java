@@ -0,0 +1,125 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class TestMappedFileCache {
+
+    @Test(enabled = true)
+    public void basicMappedFileTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheType(CacheBuilder.CacheType.MAPPED_FILE)
+                .segmentFileSize(64 * 1024)
+                .build();
+
+        Assert.assertNull(cm.get(1L));
+        Assert.assertNull(cm.put(1L, "one"));
+        Assert.assertEquals(cm.get(1L), "one");
+        Assert.assertEquals(cm.put(1L, "uno"), "one");
+        Assert.assertEquals(cm.get(1L), "uno");
+
+        // Spans several segment files
+        for (long i = 2; i <= 5000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.cacheSize(), 5000);
+        Assert.assertEquals(cm.get(4321L), "value4321");
+
+        Assert.assertEquals(cm.remove(4321L), "value4321");
+        Assert.assertFalse(cm.containsKey(4321L));
+
+        cm.clearCache();
+        Assert.assertTrue(cm.isCacheEmpty());
+        cm.put(7L, "seven");
+        Assert.assertEquals(cm.get(7L), "seven");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void compactionTest() throws IOException {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        File directory = newDirectory();
+        MappedFileCache<Long, Long> cache = new MappedFileCache<Long, Long>(directory, 4096, 100,
+                new LongSerializer(), new LongSerializer(), ticker);
+
+        // Every round overwrites all the keys, leaving the older segments full of garbage
+        for (long round = 0; round < 50; ++round) {
+
+            for (long i = 0; i < 100; ++i) {
+
+                cache.put(i, new LruCacheObject<Long>(round * 1000 + i));
+            }
+        }
+        // Short lived entries become garbage once purged
+        for (long i = 100; i < 200; ++i) {
+
+            cache.put(i, new TimedCacheObject<Long>(i, ticker.read(), 50));
+        }
+        // Expires at the time of the purge, so it is still live as per the ticker
+        cache.put(200L, new TimedCacheObject<Long>(200L, ticker.read(), 100));
+        int filesBefore = directory.listFiles().length;
+
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        cache.purge();
+
+        int filesAfter = directory.listFiles().length;
+        Assert.assertTrue(filesAfter < filesBefore / 4, filesBefore + " -> " + filesAfter);
+        Assert.assertEquals(cache.size(), 101);
+        Assert.assertFalse(ticker.isExpired(cache.get(200L)));
+        for (long i = 0; i < 100; ++i) {
+
+            Assert.assertEquals(cache.get(i).getCache(), Long.valueOf(49000 + i));
+        }
+        Assert.assertNull(cache.get(150L));
+
+        // Remaining time to live survives compaction
+        cache.put(300L, new TimedCacheObject<Long>(300L, 60000));
+        TimedCacheObject<Long> co = (TimedCacheObject<Long>) cache.get(300L);
+        Assert.assertTrue(co.getTimeOfExpiry() - System.currentTimeMillis() > 50000);
+        Assert.assertTrue(cache.replace(300L, co, new TimedCacheObject<Long>(301L, 60000)));
+        Assert.assertFalse(cache.remove(300L, co));
+        Assert.assertEquals(cache.get(300L).getCache(), Long.valueOf(301L));
+
+        cache.clear();
+        Assert.assertEquals(directory.listFiles().length, 1);
+
+        // Closing deletes the files rather than leaving them till exit
+        cache.close();
+        Assert.assertEquals(directory.listFiles().length, 0);
+    }
+
+    private static File newDirectory() throws IOException {
+
+        File directory = File.createTempFile("cache", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    /**
+     * Reads the value straight out of the mapped file without copying
+     */
+    static final class LongSerializer implements Serializer<Long> {
+
+        @Override
+        public byte[] serialize(Long value) {
+
+            return ByteBuffer.allocate(8).putLong(value).array();
+        }
+
+        @Override
+        public Long deserialize(ByteBuffer buffer) {
+
+            return buffer.getLong(buffer.position());
+        }
+    }
+}
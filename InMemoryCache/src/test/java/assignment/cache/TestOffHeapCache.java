@@ -0,0 +1,142 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestOffHeapCache {
+
+    @Test(enabled = true)
+    public void basicOffHeapTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheType(CacheBuilder.CacheType.OFF_HEAP)
+                .offHeapCapacity(1024 * 1024)
+                .build();
+
+        Assert.assertNull(cm.get(1L));
+        Assert.assertNull(cm.put(1L, "one"));
+        Assert.assertEquals(cm.get(1L), "one");
+        Assert.assertTrue(cm.containsKey(1L));
+
+        // Overwrite with a value of another size class
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+
+            large.append('x');
+        }
+        Assert.assertEquals(cm.put(1L, large.toString()), "one");
+        Assert.assertEquals(cm.get(1L), large.toString());
+
+        for (long i = 2; i <= 1000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.cacheSize(), 1000);
+        Assert.assertEquals(cm.get(777L), "value777");
+
+        Assert.assertEquals(cm.remove(777L), "value777");
+        Assert.assertFalse(cm.containsKey(777L));
+        Assert.assertEquals(cm.cacheSize(), 999);
+
+        cm.clearCache();
+        Assert.assertTrue(cm.isCacheEmpty());
+        Assert.assertNull(cm.get(5L));
+
+        // Memory is reused after clearing
+        cm.put(5L, "five");
+        Assert.assertEquals(cm.get(5L), "five");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void offHeapPurgeTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        OffHeapCache<Long, String> cache = new OffHeapCache<Long, String>(1024 * 1024, 100,
+                new JavaSerializer<Long>(), new JavaSerializer<String>(), ticker);
+
+        for (long i = 0; i < 100; ++i) {
+
+            cache.put(i, new TimedCacheObject<String>("short" + i, ticker.read(), 50));
+        }
+        for (long i = 100; i < 200; ++i) {
+
+            cache.put(i, new TimedCacheObject<String>("long" + i, ticker.read(), 60000));
+        }
+        // Expires at the time of the purge, so it is still live as per the ticker
+        cache.put(200L, new TimedCacheObject<String>("edge", ticker.read(), 100));
+        Assert.assertEquals(cache.size(), 201);
+
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        cache.purge();
+
+        Assert.assertEquals(cache.size(), 101);
+        Assert.assertFalse(ticker.isExpired(cache.get(200L)));
+        Assert.assertNull(cache.get(10L));
+        Assert.assertEquals(cache.get(150L).getCache(), "long150");
+
+        // Remaining time to live survives the round trip through direct memory
+        TimedCacheObject<String> co = (TimedCacheObject<String>) cache.get(150L);
+        Assert.assertTrue(co.getTimeOfExpiry() - System.currentTimeMillis() > 50000);
+
+        // Conditional operations match the stored entry
+        Assert.assertTrue(cache.replace(150L, co, new TimedCacheObject<String>("new150", 60000)));
+        Assert.assertFalse(cache.replace(150L, co, new TimedCacheObject<String>("newer150", 60000)));
+        Assert.assertFalse(cache.remove(150L, co));
+        Assert.assertEquals(cache.get(150L).getCache(), "new150");
+    }
+
+    @Test(enabled = true)
+    public void offHeapEvictionTest() {
+
+        // 16 segments of 64 KB each, carved into 4 KB slabs
+        OffHeapCache<Long, String> cache = new OffHeapCache<Long, String>(1024 * 1024, 100,
+                new JavaSerializer<Long>(), new JavaSerializer<String>(), Ticker.systemTicker());
+
+        int count = 100000;
+        for (long i = 0; i < count; ++i) {
+
+            cache.put(i, new LruCacheObject<String>("value" + i));
+        }
+
+        // Full segments reclaim their oldest slabs, so only the recent entries are kept
+        int size = cache.size();
+        Assert.assertTrue(size > 0 && size < count, "Size " + size);
+        Assert.assertEquals(cache.get(count - 1L).getCache(), "value" + (count - 1));
+        Assert.assertNull(cache.get(0L));
+
+        // Reclaimed slabs are reused for another size class
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+
+            large.append('y');
+        }
+        for (long i = 0; i < 1000; ++i) {
+
+            cache.put(i, new LruCacheObject<String>(large.toString()));
+        }
+        Assert.assertEquals(cache.get(999L).getCache(), large.toString());
+
+        // Entries larger than a slab are rejected, leaving the stored entry in place
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+
+            huge.append('z');
+        }
+        CacheObject<String> hugeValue = new LruCacheObject<String>(huge.toString());
+        try {
+            cache.put(999L, hugeValue);
+            Assert.fail("Record larger than a slab must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            cache.replace(999L, cache.get(999L), hugeValue);
+            Assert.fail("Record larger than a slab must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        Assert.assertEquals(cache.get(999L).getCache(), large.toString());
+    }
+}
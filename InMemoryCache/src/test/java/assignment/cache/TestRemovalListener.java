@@ -0,0 +1,202 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TestRemovalListener {
+
+    /**
+     * Records the delivered batches
+     */
+    static final class RecordingListener implements RemovalListener<Long, String> {
+
+        final List<List<RemovalNotification<Long, String>>> mBatches =
+                new ArrayList<List<RemovalNotification<Long, String>>>();
+        final List<Thread> mThreads = new ArrayList<Thread>();
+
+        @Override
+        public synchronized void onRemoval(List<RemovalNotification<Long, String>> notifications) {
+
+            mBatches.add(notifications);
+            mThreads.add(Thread.currentThread());
+            notifyAll();
+        }
+
+        /**
+         * Waits until the given number of notifications is delivered
+         *
+         * @return Delivered notifications in order
+         */
+        synchronized List<RemovalNotification<Long, String>> await(int count) throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (notifications().size() < count && System.currentTimeMillis() < deadline) {
+
+                wait(10);
+            }
+            return notifications();
+        }
+
+        synchronized List<RemovalNotification<Long, String>> notifications() {
+
+            List<RemovalNotification<Long, String>> all = new ArrayList<RemovalNotification<Long, String>>();
+            for (List<RemovalNotification<Long, String>> batch : mBatches) {
+
+                all.addAll(batch);
+            }
+            return all;
+        }
+    }
+
+    @Test(enabled = true)
+    public void removalCauseTest() throws InterruptedException {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        RecordingListener listener = new RecordingListener();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .removalListener(listener)
+                .removalExecutor(executor)
+                .build();
+
+        cm.put(1L, "one");
+        cm.put(1L, "uno");
+        cm.put(2L, "two");
+        cm.remove(2L);
+        cm.put(3L, "three", 1, TimeUnit.SECONDS);
+        cm.put(4L, "four", 1, TimeUnit.SECONDS);
+        cm.put(5L, "five");
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        // Purged, then found expired by a read
+        cm.mCache.purge();
+        Assert.assertNull(cm.get(4L));
+        cm.clearCache();
+
+        List<RemovalNotification<Long, String>> notifications = listener.await(6);
+        Assert.assertEquals(notifications.size(), 6, notifications.toString());
+        assertNotification(notifications.get(0), 1L, "one", RemovalCause.REPLACED);
+        assertNotification(notifications.get(1), 2L, "two", RemovalCause.EXPLICIT);
+        Assert.assertEquals(notifications.get(2).getCause(), RemovalCause.EXPIRED);
+        Assert.assertEquals(notifications.get(3).getCause(), RemovalCause.EXPIRED);
+        Assert.assertTrue(notifications.get(3).getCause().wasEvicted());
+        Assert.assertEquals(notifications.get(4).getCause(), RemovalCause.CLEARED);
+        Assert.assertEquals(notifications.get(5).getCause(), RemovalCause.CLEARED);
+
+        cm.shutdown();
+        executor.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void sizeEvictionTest() throws InterruptedException {
+
+        RecordingListener listener = new RecordingListener();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(100)
+                .removalListener(listener)
+                .build();
+
+        for (long i = 0; i < 150; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+
+        List<RemovalNotification<Long, String>> notifications = listener.await(50);
+        Assert.assertEquals(notifications.size(), 50);
+        for (int i = 0; i < 50; ++i) {
+
+            assertNotification(notifications.get(i), (long) i, "value" + i, RemovalCause.SIZE);
+        }
+        Assert.assertTrue(listener.mThreads.get(0).getName().startsWith("cache-removal-"));
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void asynchronousBatchTest() throws InterruptedException {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener recorder = new RecordingListener();
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .removalListener(new RemovalListener<Long, String>() {
+                    @Override
+                    public void onRemoval(List<RemovalNotification<Long, String>> notifications) {
+
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {}
+                        if (notifications.get(0).getKey() == 0L) {
+
+                            throw new IllegalStateException("Failure of the listener must not stop the delivery!");
+                        }
+                        recorder.onRemoval(notifications);
+                    }
+                })
+                .build();
+
+        // First removal occupies the blocked listener, the purge queues behind it
+        cm.put(0L, "first");
+        cm.remove(0L);
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (long i = 1; i <= 5000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        ticker.advance(2, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        cm.mCache.purge();
+        long purgeTime = System.nanoTime() - start;
+        Assert.assertEquals(cm.cacheSize(), 0);
+        Assert.assertTrue(recorder.notifications().isEmpty());
+
+        release.countDown();
+        List<RemovalNotification<Long, String>> notifications = recorder.await(5000);
+        System.out.println("Purge of 5000 entries with a blocked listener took: "
+                + TimeUnit.NANOSECONDS.toMillis(purgeTime) + "ms, delivered in " + recorder.mBatches.size()
+                + " batches");
+
+        Assert.assertEquals(notifications.size(), 5000);
+        Assert.assertTrue(recorder.mBatches.size() <= 5000 / RemovalNotifier.MAXIMUM_BATCH_SIZE + 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void removalListenerOffHeapTest() {
+
+        CacheBuilder.newBuilder()
+                .cacheType(CacheBuilder.CacheType.OFF_HEAP)
+                .removalListener(new RecordingListener())
+                .build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void removalListenerLongKeyTest() {
+
+        CacheBuilder.newBuilder().removalListener(new RecordingListener()).buildLongKeyCacheManager();
+    }
+
+    private static void assertNotification(RemovalNotification<Long, String> notification, long key, String value,
+                                           RemovalCause cause) {
+
+        Assert.assertEquals(notification.getKey().longValue(), key);
+        Assert.assertEquals(notification.getValue(), value);
+        Assert.assertEquals(notification.getCause(), cause);
+    }
+}
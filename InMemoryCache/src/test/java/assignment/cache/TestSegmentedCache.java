@@ -0,0 +1,160 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TestSegmentedCache {
+
+    @Test(enabled = true)
+    public void operationsTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .segments(6)
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+        Assert.assertEquals(((SegmentedCache<Long, String>) cm.mCache).segmentCount(), 8);
+
+        Map<Long, String> entries = new HashMap<Long, String>();
+        List<Long> keys = new ArrayList<Long>();
+        for (long i = 0; i < 1000; ++i) {
+
+            entries.put(i, "value" + i);
+            keys.add(i);
+        }
+        cm.putAll(entries);
+        Assert.assertEquals(cm.cacheSize(), 1000);
+        Assert.assertEquals(cm.getAll(keys), entries);
+
+        Assert.assertEquals(cm.put(1L, "one", 1, TimeUnit.MINUTES), "value1");
+        Assert.assertEquals(cm.remove(2L), "value2");
+        Assert.assertTrue(cm.containsKey(3L));
+        cm.removeAll(keys.subList(500, 1000));
+        Assert.assertEquals(cm.cacheSize(), 499);
+
+        // Every segment expires its own entries
+        ticker.advance(11, TimeUnit.SECONDS);
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 1);
+        Assert.assertEquals(cm.get(1L), "one");
+
+        cm.clearCache();
+        Assert.assertTrue(cm.isCacheEmpty());
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void boundedTest() {
+
+        CacheBuilder.CacheAlgorithm[] algorithms = {CacheBuilder.CacheAlgorithm.LRU,
+                CacheBuilder.CacheAlgorithm.TINY_LFU};
+        for (CacheBuilder.CacheAlgorithm algorithm : algorithms) {
+
+            CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                    .cacheAlgorithm(algorithm)
+                    .maximumSize(1000)
+                    .segments(4)
+                    .build();
+            for (long i = 0; i < 10000; ++i) {
+
+                cm.put(i, "value" + i);
+            }
+
+            // Each segment holds at most its share of the maximum size
+            Assert.assertTrue(cm.cacheSize() <= 1000, algorithm + " size: " + cm.cacheSize());
+            Assert.assertTrue(cm.cacheSize() >= 900, algorithm + " size: " + cm.cacheSize());
+            cm.shutdown();
+        }
+    }
+
+    @Test(enabled = true)
+    public void incrementalPurgeTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        InMemoryCacheManager<Long, String> cm = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .segments(8)
+                .segmentsPerPurge(2)
+                .timeToLive(1, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+        for (long i = 0; i < 8000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        ticker.advance(2, TimeUnit.SECONDS);
+
+        // Each purge reclaims the next two segments only
+        int previous = cm.cacheSize();
+        for (int round = 0; round < 3; ++round) {
+
+            cm.mCache.purge();
+            int size = cm.cacheSize();
+            Assert.assertTrue(size < previous && size > 0, "Size " + size + " after " + previous);
+            previous = size;
+        }
+        cm.mCache.purge();
+        Assert.assertEquals(cm.cacheSize(), 0);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void removalListenerAndSnapshotTest() throws InterruptedException {
+
+        File file = new File(System.getProperty("java.io.tmpdir"), "cache-snapshot-" + System.nanoTime() + ".bin");
+        file.deleteOnExit();
+        TestRemovalListener.RecordingListener listener = new TestRemovalListener.RecordingListener();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .segments(4)
+                .removalListener(listener)
+                .snapshotFile(file)
+                .build();
+        for (long i = 0; i < 100; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        for (long i = 0; i < 10; ++i) {
+
+            cm.remove(i);
+        }
+        Assert.assertEquals(listener.await(10).size(), 10);
+        cm.shutdown();
+
+        CacheManager<Long, String> restarted = CacheBuilder.newBuilder().segments(4).snapshotFile(file).build();
+        Assert.assertEquals(restarted.cacheSize(), 90);
+        Assert.assertEquals(restarted.get(50L), "value50");
+        restarted.shutdown();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void segmentsOffHeapTest() {
+
+        CacheBuilder.newBuilder().cacheType(CacheBuilder.CacheType.OFF_HEAP).segments(4).build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void segmentsTieredTest() {
+
+        CacheBuilder.newBuilder()
+                .maximumSize(100)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .segments(4)
+                .build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void segmentsLongKeyTest() {
+
+        CacheBuilder.newBuilder().segments(4).buildLongKeyCacheManager();
+    }
+}
@@ -0,0 +1,199 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+public class TestSnapshot {
+
+    @Test(enabled = true)
+    public void warmStartTest() throws IOException {
+
+        File file = newSnapshotFile();
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .snapshotFile(file)
+                .build();
+
+        cm.put(1L, "default");
+        cm.put(2L, "short", 2, TimeUnit.SECONDS);
+        cm.put(3L, "long", 1, TimeUnit.MINUTES);
+        cm.put(4L, "expired", 1, TimeUnit.SECONDS);
+        ticker.advance(1, TimeUnit.SECONDS);
+        cm.shutdown();
+        Assert.assertTrue(file.exists());
+
+        // Short lived entry expires while the process is down
+        ticker.advance(2, TimeUnit.SECONDS);
+        InMemoryCacheManager<Long, String> restarted = (InMemoryCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .snapshotFile(file)
+                .build();
+        Assert.assertEquals(restarted.cacheSize(), 2);
+        Assert.assertEquals(restarted.get(1L), "default");
+        Assert.assertEquals(restarted.get(3L), "long");
+        Assert.assertNull(restarted.get(2L));
+        Assert.assertNull(restarted.get(4L));
+
+        // Remaining time to live is kept
+        ticker.advance(7, TimeUnit.SECONDS);
+        restarted.mCache.purge();
+        Assert.assertEquals(restarted.cacheSize(), 1);
+        Assert.assertNull(restarted.get(1L));
+        ticker.advance(49, TimeUnit.SECONDS);
+        Assert.assertEquals(restarted.get(3L), "long");
+        ticker.advance(2, TimeUnit.SECONDS);
+        Assert.assertNull(restarted.get(3L));
+
+        Assert.assertEquals(restarted.writeSnapshot(), 0);
+        restarted.shutdown();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test(enabled = true)
+    public void expireAfterAccessTest() {
+
+        File file = newSnapshotFile();
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.EXPIRE_AFTER_ACCESS)
+                .timeToLive(10, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .snapshotFile(file);
+        CacheManager<Long, String> cm = builder.build();
+        cm.put(1L, "value");
+        ticker.advance(8, TimeUnit.SECONDS);
+        cm.shutdown();
+
+        // Loaded entry slides by its whole time to live, not by the remaining one
+        CacheManager<Long, String> restarted = builder.build();
+        Assert.assertEquals(restarted.get(1L), "value");
+        ticker.advance(6, TimeUnit.SECONDS);
+        Assert.assertEquals(restarted.get(1L), "value");
+        ticker.advance(11, TimeUnit.SECONDS);
+        Assert.assertNull(restarted.get(1L));
+
+        restarted.shutdown();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test(enabled = true)
+    public void parallelLoadTest() {
+
+        // Several batches, stored by the loader threads in parallel
+        final int count = 20000;
+        File file = newSnapshotFile();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.HOURS)
+                .snapshotFile(file)
+                .build();
+        for (long i = 0; i < count; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        Assert.assertEquals(cm.writeSnapshot(), count);
+        cm.shutdown();
+
+        CacheManager<Long, String> restarted = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.HOURS)
+                .snapshotFile(file)
+                .build();
+        Assert.assertEquals(restarted.cacheSize(), count);
+        for (long i = 0; i < count; ++i) {
+
+            Assert.assertEquals(restarted.get(i), "value" + i);
+        }
+
+        restarted.shutdown();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test(enabled = true)
+    public void damagedSnapshotTest() throws IOException {
+
+        File file = newSnapshotFile();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().snapshotFile(file).build();
+        for (long i = 0; i < 5000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+        cm.shutdown();
+
+        // Truncated snapshot warms up the cache with the complete records before the end of the file
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() / 2);
+        } finally {
+            raf.close();
+        }
+        CacheManager<Long, String> truncated = CacheBuilder.newBuilder().build();
+        CacheSnapshot<Long, String> snapshot = new CacheSnapshot<Long, String>(new JavaSerializer<Long>(),
+                new JavaSerializer<String>(), Ticker.systemTicker());
+        try {
+            snapshot.load((InMemoryCache<Long, String>) ((InMemoryCacheManager<Long, String>) truncated).mCache,
+                    file, 4);
+            Assert.fail("Truncated snapshot must be reported");
+        } catch (IOException expected) {
+        }
+        Assert.assertTrue(truncated.cacheSize() > 0);
+        Assert.assertTrue(truncated.cacheSize() < 5000);
+        truncated.shutdown();
+
+        // Build reports the damaged snapshot and starts with whatever was loaded
+        CacheManager<Long, String> restarted = CacheBuilder.newBuilder().snapshotFile(file).build();
+        Assert.assertEquals(restarted.cacheSize(), truncated.cacheSize());
+        restarted.shutdown();
+
+        RandomAccessFile corrupt = new RandomAccessFile(file, "rw");
+        try {
+            corrupt.writeInt(0);
+        } finally {
+            corrupt.close();
+        }
+        try {
+            snapshot.load((InMemoryCache<Long, String>) ((InMemoryCacheManager<Long, String>) truncated).mCache,
+                    file, 4);
+            Assert.fail("File which is not a snapshot must be reported");
+        } catch (IOException expected) {
+        }
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void snapshotOffHeapTest() {
+
+        CacheBuilder.newBuilder().cacheType(CacheBuilder.CacheType.OFF_HEAP).snapshotFile(newSnapshotFile()).build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void snapshotLongKeyTest() {
+
+        CacheBuilder.newBuilder().snapshotFile(newSnapshotFile()).buildLongKeyCacheManager();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void writeSnapshotWithoutFileTest() {
+
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder().build();
+        try {
+            cm.writeSnapshot();
+        } finally {
+            cm.shutdown();
+        }
+    }
+
+    private static File newSnapshotFile() {
+
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "cache-snapshot-" + System.nanoTime() + ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,84 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestTicker {
+
+    /**
+     * Ticker advanced by the tests, so that expiry can be tested without sleeping
+     */
+    static final class ManualTicker extends Ticker {
+
+        private final AtomicLong mTime = new AtomicLong(System.currentTimeMillis());
+
+        @Override
+        public long read() {
+
+            return mTime.get();
+        }
+
+        void advance(long duration, TimeUnit unit) {
+
+            mTime.addAndGet(unit.toMillis(duration));
+        }
+    }
+
+    @Test(enabled = true)
+    public void manualTickerExpiryTest() {
+
+        ManualTicker ticker = new ManualTicker();
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .timeToLive(1, TimeUnit.HOURS)
+                .ticker(ticker)
+                .build();
+
+        cm.put(1L, "one");
+        ticker.advance(59, TimeUnit.MINUTES);
+        Assert.assertEquals(cm.get(1L), "one");
+        cm.put(2L, "two");
+
+        // Expired as per the ticker although no real time has passed
+        ticker.advance(2, TimeUnit.MINUTES);
+        Assert.assertNull(cm.get(1L));
+        Assert.assertEquals(cm.get(2L), "two");
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void nanoTickerTest() {
+
+        Ticker ticker = Ticker.nanoTicker();
+        long start = ticker.read();
+
+        Assert.assertTrue(Math.abs(start - System.currentTimeMillis()) < 1000);
+        long previous = start;
+        for (int i = 0; i < 100000; ++i) {
+
+            long time = ticker.read();
+            Assert.assertTrue(time >= previous);
+            previous = time;
+        }
+    }
+
+    @Test(enabled = true)
+    public void cachedTickerTest() {
+
+        Ticker ticker = Ticker.cachedTicker(5, TimeUnit.MILLISECONDS);
+        long start = ticker.read();
+
+        // Time only moves once the ticker thread advances it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ticker.read() == start && System.currentTimeMillis() < deadline) {
+
+            Thread.yield();
+        }
+        Assert.assertTrue(ticker.read() > start);
+
+        ticker.shutdown();
+    }
+}
@@ -0,0 +1,148 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestTieredCache {
+
+    @Test(enabled = true)
+    public void demotionAndPromotionTest() {
+
+        TieredCacheManager<Long, String> cm = (TieredCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(100)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .offHeapCapacity(4 * 1024 * 1024)
+                .recordStats()
+                .build();
+
+        for (long i = 0; i < 1000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+
+        // Evicted entries are demoted instead of lost
+        Assert.assertEquals(cm.cacheSize(), 1000);
+        Assert.assertTrue(cm.getFirstTierSize() <= 100, "First tier size " + cm.getFirstTierSize());
+
+        // Cold entry is served by the second tier and promoted
+        Assert.assertEquals(cm.get(0L), "value0");
+        Assert.assertEquals(cm.getSecondTierHitCount(), 1);
+        Assert.assertEquals(cm.get(0L), "value0");
+        Assert.assertEquals(cm.getFirstTierHitCount(), 1);
+
+        Assert.assertNull(cm.get(5000L));
+        Assert.assertEquals(cm.getMissCount(), 1);
+
+        // Writes and removes reach the entries of either tier
+        Assert.assertEquals(cm.put(1L, "one"), "value1");
+        Assert.assertEquals(cm.get(1L), "one");
+        Assert.assertEquals(cm.remove(2L), "value2");
+        Assert.assertNull(cm.get(2L));
+        Assert.assertEquals(cm.cacheSize(), 999);
+
+        cm.clearCache();
+        Assert.assertTrue(cm.isCacheEmpty());
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void oversizeDemotionTest() {
+
+        TieredCacheManager<Long, String> cm = (TieredCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(10)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .offHeapCapacity(4 * 1024 * 1024)
+                .recordStats()
+                .build();
+
+        // Value larger than an off heap slab can not be demoted, so its eviction drops it
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+
+            huge.append('z');
+        }
+        cm.put(0L, huge.toString());
+        for (long i = 1; i <= 100; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+
+        Assert.assertEquals(cm.cacheSize(), 100);
+        Assert.assertNull(cm.get(0L));
+        Assert.assertEquals(cm.get(1L), "value1");
+        Assert.assertEquals(cm.stats().getEvictionCount(), 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void hotSetTest() {
+
+        TieredCacheManager<Long, String> cm = (TieredCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.TINY_LFU)
+                .maximumSize(100)
+                .secondTier(CacheBuilder.CacheType.MAPPED_FILE)
+                .segmentFileSize(1024 * 1024)
+                .recordStats()
+                .build();
+
+        for (long i = 0; i < 2000; ++i) {
+
+            cm.put(i, "value" + i);
+        }
+
+        // Small hot set ends up in the first tier
+        for (int round = 0; round < 20; ++round) {
+
+            for (long i = 0; i < 50; ++i) {
+
+                Assert.assertEquals(cm.get(i), "value" + i);
+            }
+        }
+        System.out.println("First tier hits : " + cm.getFirstTierHitCount()
+                + ", second tier hits : " + cm.getSecondTierHitCount());
+        Assert.assertTrue(cm.getFirstTierHitCount() > 4 * cm.getSecondTierHitCount());
+        Assert.assertEquals(cm.cacheSize(), 2000);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void expiredFirstTierTest() {
+
+        TestTicker.ManualTicker ticker = new TestTicker.ManualTicker();
+        TieredCacheManager<Long, String> cm = (TieredCacheManager<Long, String>) CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.LRU)
+                .maximumSize(100)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .offHeapCapacity(4 * 1024 * 1024)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+
+        cm.put(1L, "one", 1, TimeUnit.MINUTES);
+        Assert.assertEquals(cm.get(1L), "one");
+        Assert.assertEquals(cm.getFirstTierHitCount(), 1);
+
+        // Expired entry of the first tier is a miss, not a hit
+        ticker.advance(2, TimeUnit.MINUTES);
+        Assert.assertNull(cm.get(1L));
+        Assert.assertEquals(cm.getFirstTierHitCount(), 1);
+        Assert.assertEquals(cm.getMissCount(), 1);
+
+        cm.shutdown();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void unboundedFirstTierTest() {
+
+        CacheBuilder.newBuilder()
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .build();
+    }
+}
@@ -0,0 +1,215 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class TestWeigher {
+
+    private static final Weigher<Long, String> LENGTH_WEIGHER = new Weigher<Long, String>() {
+        @Override
+        public int weigh(Long key, String value) {
+
+            return value.length();
+        }
+    };
+
+    @Test(enabled = true)
+    public void maximumWeightTest() {
+
+        for (CacheBuilder.CacheAlgorithm algorithm : new CacheBuilder.CacheAlgorithm[] {
+                CacheBuilder.CacheAlgorithm.LRU, CacheBuilder.CacheAlgorithm.TINY_LFU }) {
+
+            CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                    .cacheAlgorithm(algorithm)
+                    .maximumWeight(1000)
+                    .weigher(LENGTH_WEIGHER)
+                    .build();
+
+            // 200 values of weight 10 fit 100 at a time
+            for (long i = 0; i < 200; ++i) {
+
+                cm.put(i, "value-" + (1000 + i));
+            }
+            InMemoryCache<Long, String> cache =
+                    (InMemoryCache<Long, String>) ((InMemoryCacheManager<Long, String>) cm).mCache;
+            Assert.assertTrue(cache.weightedSize() <= 1000, algorithm + " weight: " + cache.weightedSize());
+            Assert.assertTrue(cm.cacheSize() <= 100, algorithm + " size: " + cm.cacheSize());
+
+            // A heavy value displaces many light ones, unless TinyLFU rejects it as less frequent than them
+            cm.put(-1L, new String(new char[500]));
+            Assert.assertTrue(cache.weightedSize() <= 1000);
+            if (algorithm == CacheBuilder.CacheAlgorithm.LRU || cm.containsKey(-1L)) {
+
+                Assert.assertTrue(cm.cacheSize() <= 51, algorithm + " size: " + cm.cacheSize());
+            }
+
+            cm.shutdown();
+        }
+    }
+
+    @Test(enabled = true)
+    public void overwriteWeightTest() {
+
+        InMemoryCache<Long, String> cache = new InMemoryCache<Long, String>(16, 100, new LruPolicy<Long, String>(),
+                LENGTH_WEIGHER, Ticker.systemTicker());
+
+        cache.putValue(1L, "12345", 0, Long.MAX_VALUE);
+        cache.putValue(2L, "12345", 0, Long.MAX_VALUE);
+        Assert.assertEquals(cache.weightedSize(), 10);
+
+        // Replaced weight is released and the new one accounted
+        cache.putValue(1L, "1234567890", 0, Long.MAX_VALUE);
+        Assert.assertEquals(cache.weightedSize(), 15);
+        Assert.assertTrue(cache.replace(2L, cache.get(2L), new LruCacheObject<String>("1")));
+        Assert.assertEquals(cache.weightedSize(), 11);
+
+        cache.remove(1L);
+        Assert.assertEquals(cache.weightedSize(), 1);
+
+        // Zero weight entries are never evicted on behalf of the bound
+        cache.putValue(3L, "", 0, Long.MAX_VALUE);
+        Assert.assertEquals(cache.weightedSize(), 1);
+        Assert.assertEquals(cache.size(), 2);
+
+        try {
+            new InMemoryCache<Long, String>(16, 100, new LruPolicy<Long, String>(), new Weigher<Long, String>() {
+                @Override
+                public int weigh(Long key, String value) {
+
+                    return -1;
+                }
+            }, Ticker.systemTicker()).putValue(1L, "value", 0, Long.MAX_VALUE);
+            Assert.fail("Negative weight must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(enabled = true)
+    public void heavyPromotionTest() {
+
+        // Window of 10 and protected segment of 792
+        WTinyLfuPolicy<Long, String> policy = new WTinyLfuPolicy<Long, String>(1000, 100);
+        List<CacheNode<Long, String>> nodes = new ArrayList<CacheNode<Long, String>>();
+        for (long i = 0; i < 10; ++i) {
+
+            nodes.add(new CacheNode<Long, String>(i, "light", 0, Long.MAX_VALUE, 70));
+        }
+        CacheNode<Long, String> heavy = new CacheNode<Long, String>(-1L, "heavy", 0, Long.MAX_VALUE, 500);
+        nodes.add(heavy);
+
+        // Every node overflows the window to probation and is promoted by a second read
+        for (CacheNode<Long, String> node : nodes) {
+
+            policy.onAdd(node);
+            policy.victim();
+            policy.onAccess(node);
+        }
+
+        // Heavy promotion demotes as many protected nodes as needed to fit the protected segment
+        long protectedWeight = 0;
+        for (CacheNode<Long, String> node : nodes) {
+
+            if (node.mQueueType == heavy.mQueueType) {
+
+                protectedWeight += node.mWeight;
+            }
+        }
+        Assert.assertEquals(protectedWeight, 4 * 70 + 500);
+        Assert.assertEquals(policy.weightedSize(), 10 * 70 + 500);
+    }
+
+    @Test(enabled = true)
+    public void concurrentOverwriteTest() throws InterruptedException {
+
+        final int maxThreads = 8;
+        final int writesPerThread = 100000;
+        final int keyCount = 64;
+        final InMemoryCache<Long, String> cache = new InMemoryCache<Long, String>(keyCount, Long.MAX_VALUE / 2,
+                new WTinyLfuPolicy<Long, String>(Long.MAX_VALUE / 2, keyCount), LENGTH_WEIGHER,
+                Ticker.systemTicker());
+        final String[] values = { "", "1", "12345", "1234567890", new String(new char[100]) };
+
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+        for (int i = 0; i < maxThreads; ++i) {
+
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        startGate.await();
+                    } catch (InterruptedException ignored) {}
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        for (int j = 0; j < writesPerThread; ++j) {
+
+                            long key = random.nextInt(keyCount);
+                            if (random.nextInt(10) == 0) {
+
+                                cache.remove(key);
+                            } else {
+
+                                cache.putValue(key, values[random.nextInt(values.length)], 0, Long.MAX_VALUE);
+                            }
+                        }
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            };
+            t.start();
+        }
+        startGate.countDown();
+        endGate.await();
+
+        // Accounted weight matches the values finally mapped, whichever overwrite won each race
+        long expectedWeight = 0;
+        for (long key = 0; key < keyCount; ++key) {
+
+            CacheObject<String> value = cache.get(key);
+            if (value != null) {
+
+                expectedWeight += value.getCache().length();
+            }
+        }
+        Assert.assertEquals(cache.weightedSize(), expectedWeight);
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void maximumSizeAndWeightTest() {
+
+        CacheBuilder.newBuilder().maximumSize(10).maximumWeight(10).weigher(LENGTH_WEIGHER).build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void maximumWeightWithoutWeigherTest() {
+
+        CacheBuilder.newBuilder().maximumWeight(10).build();
+    }
+
+    @Test(enabled = true, expectedExceptions = IllegalStateException.class)
+    public void weigherWithoutMaximumWeightTest() {
+
+        CacheBuilder.newBuilder().weigher(LENGTH_WEIGHER).build();
+    }
+
+    @Test(enabled = true)
+    public void tieredMaximumWeightTest() {
+
+        // Maximum weight bounds the first tier of a tiered cache
+        CacheManager<Long, String> cm = CacheBuilder.newBuilder()
+                .maximumWeight(100)
+                .weigher(LENGTH_WEIGHER)
+                .secondTier(CacheBuilder.CacheType.OFF_HEAP)
+                .build();
+        Assert.assertTrue(cm instanceof TieredCacheManager);
+        cm.shutdown();
+    }
+}
@@ -0,0 +1,49 @@
+package assignment.cache;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs {@link CacheBenchmark} for each of the given thread counts, followed by {@link PurgeBenchmark}.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * java -cp target/benchmarks.jar assignment.cache.BenchmarkRunner 1 4 16
+ * }</pre>
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] DEFAULT_THREAD_COUNTS = { 1, 4, 16 };
+
+    /**
+     * @param args Thread counts, 1, 4 and 16 if none are given
+     */
+    public static void main(String[] args) throws RunnerException {
+
+        int[] threadCounts = DEFAULT_THREAD_COUNTS;
+        if (args.length > 0) {
+
+            threadCounts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+
+                threadCounts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int threadCount : threadCounts) {
+
+            Options options = new OptionsBuilder()
+                    .include(CacheBenchmark.class.getName() + "\\.")
+                    .threads(threadCount)
+                    .build();
+            new Runner(options).run();
+        }
+
+        new Runner(new OptionsBuilder().include(PurgeBenchmark.class.getName() + "\\.").build()).run();
+    }
+
+    private BenchmarkRunner() {
+    }
+}
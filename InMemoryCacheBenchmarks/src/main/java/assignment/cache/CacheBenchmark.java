@@ -0,0 +1,221 @@
+package assignment.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmark of the get, put and remove paths of the CacheManagers created by {@link CacheBuilder}, compared
+ * with a plain ConcurrentHashMap as the baseline.
+ *
+ * <p>Cache is populated with {@code cacheSize} keys before measuring. Accessed keys are drawn from a key space
+ * sized so that the given share of them is present, {@code hitRatio}. Keys are generated and boxed upfront, so
+ * only the cache is measured. Thread count is given to JMH, see {@link BenchmarkRunner}.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * java -jar target/benchmarks.jar CacheBenchmark -t 4 -p cacheSize=100000 -p hitRatio=0.9
+ * java -jar target/benchmarks.jar CacheBenchmark.get -t 8 -p implementation=TIMED_CACHE -p recordStats=false,true
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    // Number of generated keys, must be a power of two
+    private static final int KEY_COUNT = 1 << 20;
+    private static final int KEY_MASK = KEY_COUNT - 1;
+    private static final String VALUE = "value";
+
+    // Parameters are named without the member prefix, as they are given on the JMH command line by name
+
+    // BASELINE for the ConcurrentHashMap, else the CacheBuilder.CacheAlgorithm of an in memory cache
+    @Param({"BASELINE", "TIMED_CACHE", "EXPIRE_AFTER_ACCESS", "LRU", "TINY_LFU"})
+    public String implementation;
+
+    @Param({"1000", "100000"})
+    public int cacheSize;
+
+    @Param({"1.0", "0.9", "0.5"})
+    public double hitRatio;
+
+    // Whether the cache managers record stats, to measure the overhead of recording them
+    @Param({"false"})
+    public boolean recordStats;
+
+    private Target mTarget;
+    private Long[] mKeys;
+
+    /**
+     * Per thread position in the generated keys
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private int mIndex = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+
+        int next() {
+
+            mIndex = (mIndex + 1) & KEY_MASK;
+            return mIndex;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+
+        mTarget = "BASELINE".equals(implementation) ? new MapTarget(cacheSize)
+                : new CacheManagerTarget(CacheBuilder.CacheAlgorithm.valueOf(implementation), cacheSize,
+                recordStats);
+
+        long keySpace = Math.max(1, (long) (cacheSize / hitRatio));
+        Random random = new Random(42);
+        mKeys = new Long[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; ++i) {
+
+            mKeys[i] = (long) (random.nextDouble() * keySpace);
+        }
+        for (long i = 0; i < cacheSize; ++i) {
+
+            mTarget.put(i, VALUE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        mTarget.shutdown();
+    }
+
+    @Benchmark
+    public String get(ThreadState thread) {
+
+        return mTarget.get(mKeys[thread.next()]);
+    }
+
+    @Benchmark
+    public String put(ThreadState thread) {
+
+        return mTarget.put(mKeys[thread.next()], VALUE);
+    }
+
+    /**
+     * Removes a key and puts it back, so that the cache does not drain while measuring
+     */
+    @Benchmark
+    public String remove(ThreadState thread) {
+
+        Long key = mKeys[thread.next()];
+        String value = mTarget.remove(key);
+        mTarget.put(key, VALUE);
+        return value;
+    }
+
+    /**
+     * Implementation being measured, each fork measures a single one so the calls stay monomorphic
+     */
+    abstract static class Target {
+
+        abstract String get(Long key);
+
+        abstract String put(Long key, String value);
+
+        abstract String remove(Long key);
+
+        void shutdown() {
+        }
+    }
+
+    private static final class MapTarget extends Target {
+
+        private final ConcurrentHashMap<Long, String> mMap;
+
+        MapTarget(int cacheSize) {
+
+            mMap = new ConcurrentHashMap<Long, String>(cacheSize);
+        }
+
+        @Override
+        String get(Long key) {
+
+            return mMap.get(key);
+        }
+
+        @Override
+        String put(Long key, String value) {
+
+            return mMap.put(key, value);
+        }
+
+        @Override
+        String remove(Long key) {
+
+            return mMap.remove(key);
+        }
+    }
+
+    private static final class CacheManagerTarget extends Target {
+
+        private final CacheManager<Long, String> mCacheManager;
+
+        CacheManagerTarget(CacheBuilder.CacheAlgorithm algorithm, int cacheSize, boolean recordStats) {
+
+            CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                    .cacheAlgorithm(algorithm)
+                    .initialCapacity(cacheSize)
+                    .timeToLive(1, TimeUnit.HOURS);
+            // Expiring caches are unbounded, so that the reads of expire after access compare with timed cache
+            if (algorithm == CacheBuilder.CacheAlgorithm.LRU || algorithm == CacheBuilder.CacheAlgorithm.TINY_LFU) {
+
+                builder.maximumSize(cacheSize);
+            }
+            if (recordStats) {
+
+                builder.recordStats();
+            }
+            mCacheManager = builder.build();
+        }
+
+        @Override
+        String get(Long key) {
+
+            return mCacheManager.get(key);
+        }
+
+        @Override
+        String put(Long key, String value) {
+
+            return mCacheManager.put(key, value);
+        }
+
+        @Override
+        String remove(Long key) {
+
+            return mCacheManager.remove(key);
+        }
+
+        @Override
+        void shutdown() {
+
+            mCacheManager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package assignment.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmark of a single purge of an {@link InMemoryCache} holding {@code cacheSize} live entries and
+ * {@code expiredCount} expired ones. The expired count stays fixed while the cache grows, so the timer wheel should
+ * keep the purge cost flat. Baseline is a ConcurrentHashMap of timed cache objects purged by scanning all of them. A {@link SegmentedCache} is measured purging all its segments in parallel, and purging a single
+ * segment per purge, which bounds the pause of each purge instead.
+ *
+ * <p>Every iteration populates the cache anew, so the purge is measured in the single shot mode. Buffered writes
+ * are replayed into the cache before the time is moved forward, so only the expiry itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class PurgeBenchmark {
+
+    private static final long LIVE_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final long EXPIRING_TTL = 100;
+    private static final int SEGMENT_COUNT = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 4;
+
+    // Parameters are named without the member prefix, as they are given on the JMH command line by name
+
+    // BASELINE for the scanned ConcurrentHashMap, TIMER_WHEEL for the InMemoryCache, SEGMENTED for the segmented
+    // cache and SEGMENT_PER_PURGE for the segmented cache purging one segment at a time
+    @Param({"BASELINE", "TIMER_WHEEL", "SEGMENTED", "SEGMENT_PER_PURGE"})
+    public String implementation;
+
+    // Live entries, the purge should not visit them
+    @Param({"10000", "100000", "1000000"})
+    public int cacheSize;
+
+    // Expired entries on top of the live ones, held constant so that the purge cost can be compared across sizes
+    @Param({"10000"})
+    public int expiredCount;
+
+    private final ManualTicker mTicker = new ManualTicker();
+    private FlatCache<Long, String> mCache;
+    private ConcurrentHashMap<Long, CacheObject<String>> mMap;
+    // Owner of the segmented cache, null otherwise
+    private CacheManager<Long, String> mCacheManager;
+
+    /**
+     * Ticker moved forward by the benchmark
+     */
+    private static final class ManualTicker extends Ticker {
+
+        private volatile long mTime = System.currentTimeMillis();
+
+        @Override
+        public long read() {
+
+            return mTime;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+
+        int entryCount = cacheSize + expiredCount;
+        if ("BASELINE".equals(implementation)) {
+
+            mMap = new ConcurrentHashMap<Long, CacheObject<String>>(entryCount);
+            for (long i = 0; i < entryCount; ++i) {
+
+                long ttl = (i < expiredCount) ? EXPIRING_TTL : LIVE_TTL;
+                mMap.put(i, new TimedCacheObject<String>("value", mTicker.read(), ttl));
+            }
+        } else {
+
+            if ("TIMER_WHEEL".equals(implementation)) {
+
+                mCache = new InMemoryCache<Long, String>(entryCount, Long.MAX_VALUE, null, mTicker);
+            } else {
+
+                CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                        .initialCapacity(entryCount)
+                        .segments(SEGMENT_COUNT)
+                        .purgeFrequency(1, TimeUnit.HOURS)
+                        .ticker(mTicker);
+                if ("SEGMENT_PER_PURGE".equals(implementation)) {
+
+                    builder.segmentsPerPurge(1);
+                }
+                mCacheManager = builder.build();
+                mCache = (FlatCache<Long, String>) ((InMemoryCacheManager<Long, String>) mCacheManager).mCache;
+            }
+            for (long i = 0; i < entryCount; ++i) {
+
+                long ttl = (i < expiredCount) ? EXPIRING_TTL : LIVE_TTL;
+                mCache.putValue(i, "value", mTicker.read(), mTicker.read() + ttl);
+            }
+            // Every segment replays its writes, also when purging one segment at a time
+            int purges = "SEGMENT_PER_PURGE".equals(implementation) ? SEGMENT_COUNT : 1;
+            for (int i = 0; i < purges; ++i) {
+
+                mCache.purge();
+            }
+        }
+
+        mTicker.mTime += TimeUnit.SECONDS.toMillis(1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+
+        if (mCacheManager != null) {
+
+            mCacheManager.shutdown();
+            mCacheManager = null;
+        }
+    }
+
+    @Benchmark
+    public int purge() {
+
+        if (mMap != null) {
+
+            for (Map.Entry<Long, CacheObject<String>> entry : mMap.entrySet()) {
+
+                if (mTicker.isExpired(entry.getValue())) {
+
+                    mMap.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            return mMap.size();
+        }
+
+        mCache.purge();
+        return mCache.size();
+    }
+}
@@ -0,0 +1,98 @@
+package assignment.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmark of the memory allocated by a put of a timed value. {@code FLATTENED} puts through
+ * {@link InMemoryCacheManager#put(Object, Object)}, which stores the value and its times in the cache node.
+ * {@code WRAPPED} puts a {@link TimedCacheObject} into the {@link InMemoryCache}, as every put did before the values
+ * were flattened into the nodes.
+ *
+ * <p>Puts cycle through {@code keyCount} keys generated and boxed upfront, so only the write path allocates. The
+ * bytes allocated per put are reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * java -jar target/benchmarks.jar PutAllocationBenchmark -prof gc
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutAllocationBenchmark {
+
+    private static final String VALUE = "value";
+    private static final long TTL = TimeUnit.MINUTES.toMillis(5);
+
+    // Parameters are named without the member prefix, as they are given on the JMH command line by name
+
+    // FLATTENED for the put of the CacheManager, WRAPPED for a TimedCacheObject put into the InMemoryCache
+    @Param({"FLATTENED", "WRAPPED"})
+    public String implementation;
+
+    @Param({"1000"})
+    public int keyCount;
+
+    private CacheManager<Long, String> mCacheManager;
+    private InMemoryCache<Long, String> mCache;
+    private Long[] mKeys;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+
+        if ("FLATTENED".equals(implementation)) {
+
+            mCacheManager = CacheBuilder.newBuilder()
+                    .initialCapacity(keyCount)
+                    .timeToLive(TTL, TimeUnit.MILLISECONDS)
+                    .build();
+        } else {
+
+            mCache = new InMemoryCache<Long, String>(keyCount);
+        }
+
+        mKeys = new Long[keyCount];
+        for (int i = 0; i < keyCount; ++i) {
+
+            mKeys[i] = (long) i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        if (mCacheManager != null) {
+
+            mCacheManager.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Object put() {
+
+        int index = (mIndex + 1) % keyCount;
+        mIndex = index;
+        if (mCacheManager != null) {
+
+            return mCacheManager.put(mKeys[index], VALUE);
+        }
+        return mCache.put(mKeys[index], new TimedCacheObject<String>(VALUE, TTL));
+    }
+}
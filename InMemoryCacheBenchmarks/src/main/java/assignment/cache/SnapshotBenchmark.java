@@ -0,0 +1,97 @@
+package assignment.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>JMH benchmark of writing a {@link CacheSnapshot} of {@code entryCount} entries and of loading it into an empty
+ * {@link InMemoryCache} with {@code loaderThreads} loader threads. Keys and values use the default
+ * {@link JavaSerializer}, like a cache built without serializers.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * java -jar target/benchmarks.jar SnapshotBenchmark -p loaderThreads=1,8
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    // Parameters are named without the member prefix, as they are given on the JMH command line by name
+
+    @Param({"200000"})
+    public int entryCount;
+
+    @Param({"1", "4"})
+    public int loaderThreads;
+
+    private CacheSnapshot<Long, String> mSnapshot;
+    private InMemoryCache<Long, String> mSource;
+    private InMemoryCache<Long, String> mTarget;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        Ticker ticker = Ticker.systemTicker();
+        mSnapshot = new CacheSnapshot<Long, String>(new JavaSerializer<Long>(), new JavaSerializer<String>(), ticker);
+        mSource = new InMemoryCache<Long, String>(entryCount);
+        long now = ticker.read();
+        for (long i = 0; i < entryCount; ++i) {
+
+            mSource.putValue(i, "value" + i, now, now + TimeUnit.HOURS.toMillis(1));
+        }
+
+        mFile = File.createTempFile("cache-snapshot", ".bin");
+        mSnapshot.write(mSource.nodes(), mFile);
+    }
+
+    /**
+     * Every load fills an empty cache
+     */
+    @Setup(Level.Invocation)
+    public void newTarget() {
+
+        mTarget = new InMemoryCache<Long, String>(entryCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        if (!mFile.delete()) {
+
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+
+        return mSnapshot.write(mSource.nodes(), mFile);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+
+        return mSnapshot.load(mTarget, mFile, loaderThreads);
+    }
+}
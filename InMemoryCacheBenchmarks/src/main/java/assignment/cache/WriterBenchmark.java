@@ -0,0 +1,115 @@
+package assignment.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>JMH benchmark of the put latency of a cache writing to a slow store, either writing through or writing behind.
+ *
+ * <p>Store takes {@code storeLatencyMicros} per call, a batch written behind costs a single call. Puts cycle through
+ * {@code keyCount} keys generated and boxed upfront, so repeated writes of a key are coalesced by write behind.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * java -jar target/benchmarks.jar WriterBenchmark -p storeLatencyMicros=1000
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriterBenchmark {
+
+    private static final String VALUE = "value";
+
+    // Parameters are named without the member prefix, as they are given on the JMH command line by name
+
+    // WRITE_THROUGH or WRITE_BEHIND
+    @Param({"WRITE_THROUGH", "WRITE_BEHIND"})
+    public String writeMode;
+
+    @Param({"100", "1000"})
+    public long storeLatencyMicros;
+
+    @Param({"10000"})
+    public int keyCount;
+
+    private CacheManager<Long, String> mCacheManager;
+    private Long[] mKeys;
+    private int mIndex;
+
+    /**
+     * Store taking a fixed time per call
+     */
+    private static final class SlowStore extends CacheWriter<Long, String> {
+
+        private final long mLatencyNanos;
+
+        SlowStore(long latencyMicros) {
+
+            mLatencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        }
+
+        @Override
+        public void write(Long key, String value) {
+
+            LockSupport.parkNanos(mLatencyNanos);
+        }
+
+        @Override
+        public void writeAll(Map<Long, String> entries) {
+
+            LockSupport.parkNanos(mLatencyNanos);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+
+        CacheBuilder<Long, String> builder = CacheBuilder.newBuilder()
+                .initialCapacity(keyCount)
+                .timeToLive(1, TimeUnit.HOURS)
+                .cacheWriter(new SlowStore(storeLatencyMicros));
+        if ("WRITE_BEHIND".equals(writeMode)) {
+
+            builder.writeBehind(10, TimeUnit.MILLISECONDS);
+        }
+        mCacheManager = builder.build();
+
+        mKeys = new Long[keyCount];
+        for (int i = 0; i < keyCount; ++i) {
+
+            mKeys[i] = (long) i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        mCacheManager.shutdown();
+    }
+
+    @Benchmark
+    public String put() {
+
+        int index = (mIndex + 1) % keyCount;
+        mIndex = index;
+        return mCacheManager.put(mKeys[index], VALUE);
+    }
+}
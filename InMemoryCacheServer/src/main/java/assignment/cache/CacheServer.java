@@ -0,0 +1,257 @@
+package assignment.cache;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Exposes a {@link CacheManager} over TCP using the memcached text protocol, so that services which don't run on
+ * the JVM can share one cache. Supported commands are {@code get} and {@code gets} with one or more keys,
+ * {@code set}, {@code delete} and {@code quit}.
+ *
+ * <p>A single selector thread accepts the connections, reads and parses the requests and writes the responses
+ * without ever blocking, see {@link MemcachedConnection}. Requests are served by the selector thread itself, so
+ * the CacheManager should not use a {@link CacheLoader} which blocks. A connection whose responses are not read
+ * by its client is not read from until they are written.
+ *
+ * <p>Keys are strings as per the protocol. Values are stored as byte arrays prefixed by a header of
+ * {@value MemcachedConnection#HEADER_SIZE} bytes: the flags of the value as an int and the unique number of the write
+ * returned by {@code gets} as a long. An expiration time of 0 uses the time to live of the CacheManager, others are
+ * stored with {@link CacheManager#put(Object, Object, long, java.util.concurrent.TimeUnit)}.
+ *
+ * <p>Usage example : <pre> {@code
+ *
+ * CacheManager<String,byte[]> cm = CacheBuilder.newBuilder().build();
+ * CacheServer server = new CacheServer(cm, new InetSocketAddress(11211));
+ * server.start();
+ * ...
+ * server.shutdown();
+ * }</pre>
+ */
+public final class CacheServer implements Runnable {
+
+    public static final int DEFAULT_PORT = 11211;
+    public static final int DEFAULT_MAXIMUM_ITEM_SIZE = 1024 * 1024;
+
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final CacheManager<String, byte[]> mCacheManager;
+    private final InetSocketAddress mAddress;
+    private final int mMaximumItemSize;
+    // Source of the unique numbers of the writes, shared by the connections
+    private final AtomicLong mUniqueSequence = new AtomicLong();
+
+    private Selector mSelector;
+    private ServerSocketChannel mServerChannel;
+    private Thread mSelectorThread;
+    private volatile boolean mRunning;
+
+    public CacheServer(CacheManager<String, byte[]> cacheManager, InetSocketAddress address) {
+
+        this(cacheManager, address, DEFAULT_MAXIMUM_ITEM_SIZE);
+    }
+
+    /**
+     * @param cacheManager CacheManager being served, not shut down by the server
+     * @param address Address to listen on, port 0 picks a free port @see #getPort()
+     * @param maximumItemSize Maximum number of bytes of a value
+     */
+    public CacheServer(CacheManager<String, byte[]> cacheManager, InetSocketAddress address, int maximumItemSize) {
+
+        mCacheManager = cacheManager;
+        mAddress = address;
+        mMaximumItemSize = maximumItemSize;
+    }
+
+    /**
+     * Binds the server socket and starts the selector thread
+     *
+     * @throws IOException If the address can not be bound
+     * @throws IllegalStateException If the server is already started
+     */
+    public synchronized void start() throws IOException {
+
+        if (mSelectorThread != null) {
+
+            throw new IllegalStateException("Cache server is already started!");
+        }
+        mSelector = Selector.open();
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.configureBlocking(false);
+        mServerChannel.socket().setReuseAddress(true);
+        mServerChannel.socket().bind(mAddress);
+        mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+
+        mRunning = true;
+        mSelectorThread = new Thread(this, "cache-server-" + sThreadCount.incrementAndGet());
+        mSelectorThread.start();
+    }
+
+    /**
+     * @return Port the server listens on
+     * @throws IllegalStateException If the server is not started
+     */
+    public synchronized int getPort() {
+
+        if (mServerChannel == null) {
+
+            throw new IllegalStateException("Cache server is not started!");
+        }
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the selector thread and closes all the connections. The CacheManager is left running
+     */
+    public synchronized void shutdown() {
+
+        if (mSelectorThread == null) {
+
+            return;
+        }
+        mRunning = false;
+        mSelector.wakeup();
+        try {
+            mSelectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Selector loop
+     */
+    @Override
+    public void run() {
+
+        try {
+            while (mRunning) {
+
+                mSelector.select();
+                Iterator<SelectionKey> it = mSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+
+                        accept();
+                    } else {
+
+                        handle(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel;
+        while ((channel = mServerChannel.accept()) != null) {
+
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(mSelector, SelectionKey.OP_READ,
+                    new MemcachedConnection(channel, mCacheManager, mUniqueSequence, mMaximumItemSize));
+        }
+    }
+
+    /**
+     * Reads the requests of a connection and writes its responses. While responses are pending, the connection is
+     * only watched for writing, which pushes back on a client which pipelines without reading
+     */
+    private void handle(SelectionKey key) {
+
+        MemcachedConnection connection = (MemcachedConnection) key.attachment();
+        try {
+            if (key.isReadable() && !connection.read()) {
+
+                close(connection);
+                return;
+            }
+            if (connection.flush()) {
+
+                if (connection.isClosing()) {
+
+                    close(connection);
+                } else {
+
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else {
+
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            // Connection reset by the client
+            close(connection);
+        }
+    }
+
+    private void close(MemcachedConnection connection) {
+
+        try {
+            connection.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeAll() {
+
+        for (SelectionKey key : mSelector.keys()) {
+
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs a standalone server on a size bounded cache
+     *
+     * @param args Port, {@value #DEFAULT_PORT} if not given, and the maximum total bytes of the values, 64 MB if not
+     * given
+     */
+    public static void main(String[] args) throws IOException {
+
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long maximumWeight = (args.length > 1) ? Long.parseLong(args[1]) : 64 * 1024 * 1024;
+
+        CacheManager<String, byte[]> cacheManager = CacheBuilder.newBuilder()
+                .cacheAlgorithm(CacheBuilder.CacheAlgorithm.TINY_LFU)
+                .maximumWeight(maximumWeight)
+                .weigher(new Weigher<String, byte[]>() {
+                    @Override
+                    public int weigh(String key, byte[] value) {
+
+                        return key.length() + value.length;
+                    }
+                })
+                .build();
+        new CacheServer(cacheManager, new InetSocketAddress(port)).start();
+        System.out.println("Cache server listening on port " + port);
+    }
+}
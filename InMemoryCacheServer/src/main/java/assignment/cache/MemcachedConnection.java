@@ -0,0 +1,575 @@
+package assignment.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Client connection of a {@link CacheServer}, parsing the memcached text protocol requests and writing their
+ * responses. Used by the selector thread only.
+ *
+ * <p>Requests are parsed straight out of a direct read buffer, as many complete ones as were read, so a client may
+ * pipeline any number of them in one write. A request whose line or data block is incomplete is parsed again once
+ * more bytes arrive; the read buffer grows to hold a large data block and shrinks back afterwards.
+ *
+ * <p>Responses are queued as a list of buffers and written by a single gathering write. Text is written into a
+ * direct buffer, values are queued as views of the stored arrays, so a value is never copied on its way out.
+ *
+ * <p>Each value is stored with a header holding its flags and the unique number of its write, returned by
+ * {@code gets}; see {@link CacheServer}.
+ */
+final class MemcachedConnection {
+
+    // Flags and unique number stored in front of the data of each value
+    static final int HEADER_SIZE = 12;
+    static final int MAXIMUM_KEY_LENGTH = 250;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int MAXIMUM_LINE_LENGTH = 2048;
+    // Expiration times beyond 30 days are absolute unix times, as per the protocol
+    private static final long MAXIMUM_RELATIVE_EXPIRATION = TimeUnit.DAYS.toSeconds(30);
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] CRLF = bytes("\r\n");
+    private static final byte[] VALUE = bytes("VALUE ");
+    private static final byte[] END = bytes("END\r\n");
+    private static final byte[] STORED = bytes("STORED\r\n");
+    private static final byte[] DELETED = bytes("DELETED\r\n");
+    private static final byte[] NOT_FOUND = bytes("NOT_FOUND\r\n");
+    private static final byte[] ERROR = bytes("ERROR\r\n");
+    private static final byte[] BAD_FORMAT = bytes("CLIENT_ERROR bad command line format\r\n");
+    private static final byte[] BAD_DATA_CHUNK = bytes("CLIENT_ERROR bad data chunk\r\n");
+    private static final byte[] LINE_TOO_LONG = bytes("CLIENT_ERROR line too long\r\n");
+    private static final byte[] TOO_LARGE = bytes("SERVER_ERROR object too large for cache\r\n");
+    private static final String NOREPLY = "noreply";
+
+    private final SocketChannel mChannel;
+    private final CacheManager<String, byte[]> mCacheManager;
+    private final AtomicLong mUniqueSequence;
+    private final int mMaximumItemSize;
+
+    // Bytes read and not yet parsed, in write mode between reads
+    private ByteBuffer mIn = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    // Responses waiting to be written
+    private final ArrayDeque<ByteBuffer> mOut = new ArrayDeque<ByteBuffer>();
+    // Text of the responses, the part from mTextStart on is not queued yet
+    private ByteBuffer mText = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private int mTextStart;
+    // Start and end positions of the tokens of the current line
+    private int[] mTokens = new int[16];
+    private int mTokenCount;
+    // Bytes of a rejected data block which are still to be discarded
+    private long mSkip;
+    // Rest of the line of a malformed data block is still to be discarded
+    private boolean mSkipLine;
+    private boolean mClosing;
+
+    MemcachedConnection(SocketChannel channel, CacheManager<String, byte[]> cacheManager, AtomicLong uniqueSequence,
+                        int maximumItemSize) {
+
+        mChannel = channel;
+        mCacheManager = cacheManager;
+        mUniqueSequence = uniqueSequence;
+        mMaximumItemSize = maximumItemSize;
+    }
+
+    SocketChannel channel() {
+        return mChannel;
+    }
+
+    /**
+     * @return {@code true} if the connection is to be closed once its responses are written
+     */
+    boolean isClosing() {
+        return mClosing;
+    }
+
+    /**
+     * Reads the available bytes and handles the complete requests among them
+     *
+     * @return {@code false} if the client closed the connection or asked to
+     * @throws IOException If reading fails
+     */
+    boolean read() throws IOException {
+
+        if (mChannel.read(mIn) < 0) {
+
+            return false;
+        }
+        mIn.flip();
+        boolean open = process();
+        mIn.compact();
+
+        // Buffer grown for a large data block is not kept once it is consumed
+        if (mIn.capacity() > READ_BUFFER_SIZE && mIn.position() == 0) {
+
+            mIn = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+        return open;
+    }
+
+    /**
+     * Writes as much of the queued responses as the socket accepts
+     *
+     * @return {@code true} if all of them are written
+     * @throws IOException If writing fails
+     */
+    boolean flush() throws IOException {
+
+        queueText();
+        while (!mOut.isEmpty()) {
+
+            long written = mChannel.write(mOut.toArray(new ByteBuffer[mOut.size()]));
+            while (!mOut.isEmpty() && !mOut.peekFirst().hasRemaining()) {
+
+                mOut.pollFirst();
+            }
+            if (written == 0) {
+
+                break;
+            }
+        }
+        if (!mOut.isEmpty()) {
+
+            return false;
+        }
+        // Nothing refers to the text buffer any more
+        mText.clear();
+        mTextStart = 0;
+        return true;
+    }
+
+    /**
+     * Handles the complete requests in the read buffer, which is in read mode
+     *
+     * @return {@code false} if the client asked to close the connection
+     */
+    private boolean process() {
+
+        while (!mClosing) {
+
+            if (mSkip > 0) {
+
+                int skipped = (int) Math.min(mSkip, mIn.remaining());
+                mIn.position(mIn.position() + skipped);
+                mSkip -= skipped;
+                if (mSkip > 0) {
+
+                    return true;
+                }
+            }
+            if (mSkipLine) {
+
+                int skipEnd = findLineEnd();
+                mIn.position((skipEnd < 0) ? mIn.limit() : skipEnd + 1);
+                if (skipEnd < 0) {
+
+                    return true;
+                }
+                mSkipLine = false;
+            }
+
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+
+                if (mIn.remaining() > MAXIMUM_LINE_LENGTH) {
+
+                    writeText(LINE_TOO_LONG);
+                    mClosing = true;
+                }
+                return true;
+            }
+            tokenize(mIn.position(), lineEnd);
+            if (mTokenCount == 0) {
+
+                mIn.position(lineEnd + 1);
+                writeText(ERROR);
+                continue;
+            }
+
+            try {
+                if (tokenEquals(0, "get") || tokenEquals(0, "gets")) {
+
+                    mIn.position(lineEnd + 1);
+                    get(tokenEquals(0, "gets"));
+                } else if (tokenEquals(0, "set")) {
+
+                    if (!set(lineEnd + 1)) {
+
+                        // Data block is incomplete, the line is parsed again once more bytes are read
+                        return true;
+                    }
+                } else if (tokenEquals(0, "delete")) {
+
+                    mIn.position(lineEnd + 1);
+                    delete();
+                } else if (tokenEquals(0, "quit")) {
+
+                    return false;
+                } else {
+
+                    mIn.position(lineEnd + 1);
+                    writeText(ERROR);
+                }
+            } catch (RuntimeException e) {
+                writeText(bytes("SERVER_ERROR " + e.getClass().getSimpleName() + "\r\n"));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code get <key>*} and {@code gets <key>*}, responds with a {@code VALUE} line and the data of every key
+     * present, followed by {@code END}
+     */
+    private void get(boolean withUnique) {
+
+        if (mTokenCount < 2) {
+
+            writeText(ERROR);
+            return;
+        }
+        for (int i = 1; i < mTokenCount; ++i) {
+
+            if (tokenLength(i) > MAXIMUM_KEY_LENGTH) {
+
+                writeText(BAD_FORMAT);
+                return;
+            }
+        }
+
+        if (mTokenCount == 2) {
+
+            writeValue(1, mCacheManager.get(tokenString(1)), withUnique);
+        } else {
+
+            // Multi-get looks up all the keys in one go
+            List<String> keys = new ArrayList<String>(mTokenCount - 1);
+            for (int i = 1; i < mTokenCount; ++i) {
+
+                keys.add(tokenString(i));
+            }
+            Map<String, byte[]> values = mCacheManager.getAll(keys);
+            for (int i = 1; i < mTokenCount; ++i) {
+
+                writeValue(i, values.get(keys.get(i - 1)), withUnique);
+            }
+        }
+        writeText(END);
+    }
+
+    /**
+     * {@code set <key> <flags> <exptime> <bytes> [noreply]} followed by the data block
+     *
+     * @param dataStart Position of the data block
+     * @return {@code false} if the data block is not completely read yet, in which case nothing is consumed
+     */
+    private boolean set(int dataStart) {
+
+        boolean noReply = mTokenCount == 6 && tokenEquals(5, NOREPLY);
+        long flags = (mTokenCount == 5 || noReply) ? parseNumber(2) : -1;
+        long expirationTime = (flags >= 0) ? parseNumber(3) : 0;
+        long length = (flags >= 0) ? parseNumber(4) : -1;
+        if (flags < 0 || flags > 0xFFFFFFFFL || expirationTime == Long.MIN_VALUE || length < 0
+                || tokenLength(1) > MAXIMUM_KEY_LENGTH) {
+
+            mIn.position(dataStart);
+            writeText(BAD_FORMAT);
+            return true;
+        }
+        if (length > mMaximumItemSize) {
+
+            mIn.position(dataStart);
+            mSkip = length + CRLF.length;
+            writeText(TOO_LARGE);
+            return true;
+        }
+
+        int dataEnd = dataStart + (int) length;
+        if (mIn.limit() < dataEnd + CRLF.length) {
+
+            ensureCapacity(dataEnd + CRLF.length - mIn.position());
+            return false;
+        }
+        if (mIn.get(dataEnd) != '\r' || mIn.get(dataEnd + 1) != '\n') {
+
+            mIn.position(dataEnd);
+            mSkipLine = true;
+            writeText(BAD_DATA_CHUNK);
+            return true;
+        }
+
+        String key = tokenString(1);
+        byte[] value = new byte[HEADER_SIZE + (int) length];
+        ByteBuffer header = ByteBuffer.wrap(value);
+        header.putInt((int) flags);
+        header.putLong(mUniqueSequence.incrementAndGet());
+        ByteBuffer data = mIn.duplicate();
+        data.position(dataStart).limit(dataEnd);
+        data.get(value, HEADER_SIZE, (int) length);
+        mIn.position(dataEnd + CRLF.length);
+
+        long timeToLive = expirationTime;
+        if (expirationTime > MAXIMUM_RELATIVE_EXPIRATION) {
+
+            timeToLive = expirationTime - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        }
+        if (expirationTime == 0) {
+
+            mCacheManager.put(key, value);
+        } else if (timeToLive > 0) {
+
+            mCacheManager.put(key, value, timeToLive, TimeUnit.SECONDS);
+        } else {
+
+            // Already expired, the write only invalidates the previous value
+            mCacheManager.remove(key);
+        }
+
+        if (!noReply) {
+
+            writeText(STORED);
+        }
+        return true;
+    }
+
+    /**
+     * {@code delete <key> [0] [noreply]}
+     */
+    private void delete() {
+
+        boolean noReply = mTokenCount > 2 && tokenEquals(mTokenCount - 1, NOREPLY);
+        int argumentCount = mTokenCount - (noReply ? 1 : 0);
+        if (argumentCount < 2 || argumentCount > 3 || (argumentCount == 3 && !tokenEquals(2, "0"))
+                || tokenLength(1) > MAXIMUM_KEY_LENGTH) {
+
+            writeText(BAD_FORMAT);
+            return;
+        }
+
+        boolean deleted = mCacheManager.remove(tokenString(1)) != null;
+        if (!noReply) {
+
+            writeText(deleted ? DELETED : NOT_FOUND);
+        }
+    }
+
+    /**
+     * Writes {@code VALUE <key> <flags> <bytes> [<unique>]} and the data of a value, if present. Key is copied from
+     * the request line, data is queued without copying
+     */
+    private void writeValue(int keyToken, byte[] value, boolean withUnique) {
+
+        if (value == null) {
+
+            return;
+        }
+        ByteBuffer header = ByteBuffer.wrap(value, 0, HEADER_SIZE);
+        long flags = header.getInt() & 0xFFFFFFFFL;
+        long unique = header.getLong();
+
+        int keyStart = mTokens[2 * keyToken];
+        int keyLength = tokenLength(keyToken);
+        ensureText(VALUE.length + keyLength + 3 * 21 + CRLF.length);
+        mText.put(VALUE);
+        for (int i = 0; i < keyLength; ++i) {
+
+            mText.put(mIn.get(keyStart + i));
+        }
+        mText.put((byte) ' ');
+        putNumber(flags);
+        mText.put((byte) ' ');
+        putNumber(value.length - HEADER_SIZE);
+        if (withUnique) {
+
+            mText.put((byte) ' ');
+            putNumber(unique);
+        }
+        mText.put(CRLF);
+
+        queueText();
+        mOut.addLast(ByteBuffer.wrap(value, HEADER_SIZE, value.length - HEADER_SIZE));
+        writeText(CRLF);
+    }
+
+    private void writeText(byte[] text) {
+
+        ensureText(text.length);
+        mText.put(text);
+    }
+
+    private void putNumber(long number) {
+
+        if (number >= 10) {
+
+            putNumber(number / 10);
+        }
+        mText.put((byte) ('0' + number % 10));
+    }
+
+    /**
+     * Makes room for the given number of text bytes. A full text buffer is queued and replaced, as the queued part
+     * may not be written yet
+     */
+    private void ensureText(int length) {
+
+        if (mText.remaining() < length) {
+
+            queueText();
+            mText = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, length));
+            mTextStart = 0;
+        }
+    }
+
+    /**
+     * Queues the text written since the last call
+     */
+    private void queueText() {
+
+        if (mText.position() > mTextStart) {
+
+            ByteBuffer text = mText.duplicate();
+            text.position(mTextStart).limit(mText.position());
+            mOut.addLast(text.slice());
+            mTextStart = mText.position();
+        }
+    }
+
+    /**
+     * Grows the read buffer, which is in read mode, to hold at least the given number of unparsed bytes
+     */
+    private void ensureCapacity(int length) {
+
+        if (length > mIn.capacity()) {
+
+            ByteBuffer in = ByteBuffer.allocateDirect(length);
+            in.put(mIn);
+            in.flip();
+            mIn = in;
+        }
+    }
+
+    /**
+     * @return Position of the {@code '\n'} ending the next line, {@code -1} if not read yet
+     */
+    private int findLineEnd() {
+
+        for (int i = mIn.position(); i < mIn.limit(); ++i) {
+
+            if (mIn.get(i) == '\n') {
+
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the line ending at the given position into tokens separated by spaces
+     */
+    private void tokenize(int start, int lineEnd) {
+
+        int end = (lineEnd > start && mIn.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+        mTokenCount = 0;
+        int i = start;
+        while (i < end) {
+
+            while (i < end && mIn.get(i) == ' ') {
+
+                ++i;
+            }
+            if (i == end) {
+
+                break;
+            }
+            int tokenStart = i;
+            while (i < end && mIn.get(i) != ' ') {
+
+                ++i;
+            }
+            if (2 * mTokenCount + 1 >= mTokens.length) {
+
+                int[] tokens = new int[2 * mTokens.length];
+                System.arraycopy(mTokens, 0, tokens, 0, mTokens.length);
+                mTokens = tokens;
+            }
+            mTokens[2 * mTokenCount] = tokenStart;
+            mTokens[2 * mTokenCount + 1] = i;
+            ++mTokenCount;
+        }
+    }
+
+    private int tokenLength(int token) {
+
+        return mTokens[2 * token + 1] - mTokens[2 * token];
+    }
+
+    private String tokenString(int token) {
+
+        byte[] bytes = new byte[tokenLength(token)];
+        for (int i = 0; i < bytes.length; ++i) {
+
+            bytes[i] = mIn.get(mTokens[2 * token] + i);
+        }
+        return new String(bytes, ISO_8859_1);
+    }
+
+    private boolean tokenEquals(int token, String text) {
+
+        int start = mTokens[2 * token];
+        if (tokenLength(token) != text.length()) {
+
+            return false;
+        }
+        for (int i = 0; i < text.length(); ++i) {
+
+            if (mIn.get(start + i) != text.charAt(i)) {
+
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Decimal value of a token, {@code Long.MIN_VALUE} if it is not a number
+     */
+    private long parseNumber(int token) {
+
+        int start = mTokens[2 * token];
+        int end = mTokens[2 * token + 1];
+        boolean negative = mIn.get(start) == '-';
+        if (negative) {
+
+            ++start;
+        }
+        if (start == end || end - start > 18) {
+
+            return Long.MIN_VALUE;
+        }
+        long number = 0;
+        for (int i = start; i < end; ++i) {
+
+            byte digit = mIn.get(i);
+            if (digit < '0' || digit > '9') {
+
+                return Long.MIN_VALUE;
+            }
+            number = 10 * number + (digit - '0');
+        }
+        return negative ? -number : number;
+    }
+
+    private static byte[] bytes(String text) {
+
+        return text.getBytes(ISO_8859_1);
+    }
+}
@@ -0,0 +1,322 @@
+package assignment.cache;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestCacheServer {
+
+    private CacheManager<String, byte[]> mCacheManager;
+    private CacheServer mServer;
+
+    /**
+     * Minimal blocking client of the memcached text protocol
+     */
+    static final class Client {
+
+        private final Socket mSocket;
+        private final OutputStream mOut;
+        private final InputStream mIn;
+
+        Client(int port) throws IOException {
+
+            mSocket = new Socket(InetAddress.getLoopbackAddress(), port);
+            mSocket.setSoTimeout(5000);
+            mOut = mSocket.getOutputStream();
+            mIn = new BufferedInputStream(mSocket.getInputStream());
+        }
+
+        void send(String request) throws IOException {
+
+            send(request.getBytes("ISO-8859-1"));
+        }
+
+        void send(byte[] request) throws IOException {
+
+            mOut.write(request);
+            mOut.flush();
+        }
+
+        String readLine() throws IOException {
+
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = mIn.read()) != '\n') {
+
+                if (b < 0) {
+
+                    return null;
+                }
+                line.write(b);
+            }
+            String text = line.toString("ISO-8859-1");
+            Assert.assertTrue(text.endsWith("\r"), "Line must end with CRLF: " + text);
+            return text.substring(0, text.length() - 1);
+        }
+
+        byte[] readData(int length) throws IOException {
+
+            byte[] data = new byte[length];
+            int read = 0;
+            while (read < length) {
+
+                int n = mIn.read(data, read, length - read);
+                Assert.assertTrue(n > 0);
+                read += n;
+            }
+            Assert.assertEquals(readLine(), "");
+            return data;
+        }
+
+        String set(String key, int flags, int expirationTime, String value) throws IOException {
+
+            send("set " + key + " " + flags + " " + expirationTime + " " + value.length() + "\r\n" + value + "\r\n");
+            return readLine();
+        }
+
+        /**
+         * @return Value of the key, {@code null} if missing
+         */
+        String get(String key) throws IOException {
+
+            send("get " + key + "\r\n");
+            String line = readLine();
+            if (line.equals("END")) {
+
+                return null;
+            }
+            String[] tokens = line.split(" ");
+            String value = new String(readData(Integer.parseInt(tokens[3])), "ISO-8859-1");
+            Assert.assertEquals(readLine(), "END");
+            return value;
+        }
+
+        void close() throws IOException {
+
+            mSocket.close();
+        }
+    }
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+
+        mCacheManager = CacheBuilder.newBuilder().timeToLive(1, TimeUnit.HOURS).build();
+        mServer = new CacheServer(mCacheManager, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        mServer.start();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+
+        mServer.shutdown();
+        mCacheManager.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void commandsTest() throws IOException {
+
+        Client client = new Client(mServer.getPort());
+
+        Assert.assertEquals(client.set("greeting", 42, 0, "hello world"), "STORED");
+        Assert.assertEquals(client.get("greeting"), "hello world");
+        Assert.assertNull(client.get("missing"));
+
+        // Multi-get returns the present keys in the requested order
+        Assert.assertEquals(client.set("other", 0, 0, ""), "STORED");
+        client.send("gets greeting missing other\r\n");
+        String[] first = client.readLine().split(" ");
+        Assert.assertEquals(Arrays.asList(first).subList(0, 4), Arrays.asList("VALUE", "greeting", "42", "11"));
+        Assert.assertEquals(new String(client.readData(11), "ISO-8859-1"), "hello world");
+        String[] second = client.readLine().split(" ");
+        Assert.assertEquals(second[1], "other");
+        Assert.assertEquals(client.readData(0).length, 0);
+        Assert.assertEquals(client.readLine(), "END");
+        Assert.assertTrue(Long.parseLong(second[4]) > Long.parseLong(first[4]), "Unique of a later write is larger");
+
+        client.send("delete greeting\r\n");
+        Assert.assertEquals(client.readLine(), "DELETED");
+        client.send("delete greeting\r\n");
+        Assert.assertEquals(client.readLine(), "NOT_FOUND");
+
+        // Replies are skipped with noreply, the next response belongs to the next request
+        client.send("set quiet 0 0 1 noreply\r\nq\r\ndelete quiet noreply\r\nget quiet\r\n");
+        Assert.assertEquals(client.readLine(), "END");
+
+        client.send("flush_all\r\n");
+        Assert.assertEquals(client.readLine(), "ERROR");
+        client.send("set bad 0 0 3\r\nabcd\r\n");
+        Assert.assertEquals(client.readLine(), "CLIENT_ERROR bad data chunk");
+        client.send("set bad x 0 3\r\n");
+        Assert.assertEquals(client.readLine(), "CLIENT_ERROR bad command line format");
+
+        // Values written through the protocol carry their header in the CacheManager
+        Assert.assertEquals(client.set("shared", 7, 0, "abc"), "STORED");
+        Assert.assertEquals(mCacheManager.get("shared").length, MemcachedConnection.HEADER_SIZE + 3);
+
+        client.send("quit\r\n");
+        Assert.assertNull(client.readLine());
+        client.close();
+    }
+
+    @Test(enabled = true)
+    public void expirationTest() throws IOException, InterruptedException {
+
+        Client client = new Client(mServer.getPort());
+
+        Assert.assertEquals(client.set("short", 0, 1, "gone soon"), "STORED");
+        Assert.assertEquals(client.set("long", 0, 60, "still here"), "STORED");
+        long absolute = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+        Assert.assertEquals(client.set("absolute", 0, (int) absolute, "still here"), "STORED");
+        Assert.assertEquals(client.set("expired", 0, -1, "never"), "STORED");
+        Assert.assertNull(client.get("expired"));
+
+        Thread.sleep(1100);
+        Assert.assertNull(client.get("short"));
+        Assert.assertEquals(client.get("long"), "still here");
+        Assert.assertEquals(client.get("absolute"), "still here");
+
+        client.close();
+    }
+
+    @Test(enabled = true)
+    public void pipeliningTest() throws IOException {
+
+        final int count = 1000;
+        Client client = new Client(mServer.getPort());
+
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+
+            requests.append("set key").append(i).append(" 0 0 ").append(String.valueOf(i).length())
+                    .append("\r\n").append(i).append("\r\n");
+        }
+        for (int i = 0; i < count; ++i) {
+
+            requests.append("get key").append(i).append("\r\n");
+        }
+        client.send(requests.toString());
+
+        for (int i = 0; i < count; ++i) {
+
+            Assert.assertEquals(client.readLine(), "STORED");
+        }
+        for (int i = 0; i < count; ++i) {
+
+            Assert.assertEquals(client.readLine(), "VALUE key" + i + " 0 " + String.valueOf(i).length());
+            Assert.assertEquals(new String(client.readData(String.valueOf(i).length()), "ISO-8859-1"),
+                    String.valueOf(i));
+            Assert.assertEquals(client.readLine(), "END");
+        }
+
+        // Requests split across any number of packets
+        byte[] request = "set split 0 0 5\r\nsplit\r\nget split\r\n".getBytes("ISO-8859-1");
+        for (byte b : request) {
+
+            client.send(new byte[] {b});
+        }
+        Assert.assertEquals(client.readLine(), "STORED");
+        Assert.assertEquals(client.readLine(), "VALUE split 0 5");
+        client.readData(5);
+        Assert.assertEquals(client.readLine(), "END");
+
+        client.close();
+    }
+
+    @Test(enabled = true)
+    public void largeValueTest() throws IOException {
+
+        Client client = new Client(mServer.getPort());
+
+        byte[] value = new byte[512 * 1024];
+        for (int i = 0; i < value.length; ++i) {
+
+            value[i] = (byte) i;
+        }
+        client.send("set large 3 0 " + value.length + "\r\n");
+        client.send(value);
+        client.send("\r\n");
+        Assert.assertEquals(client.readLine(), "STORED");
+
+        client.send("get large large\r\n");
+        for (int i = 0; i < 2; ++i) {
+
+            Assert.assertEquals(client.readLine(), "VALUE large 3 " + value.length);
+            Assert.assertTrue(Arrays.equals(client.readData(value.length), value));
+        }
+        Assert.assertEquals(client.readLine(), "END");
+
+        // Too large value is discarded, the connection stays usable
+        int tooLarge = CacheServer.DEFAULT_MAXIMUM_ITEM_SIZE + 1;
+        client.send("set huge 0 0 " + tooLarge + "\r\n");
+        client.send(new byte[tooLarge]);
+        client.send("\r\n");
+        Assert.assertEquals(client.readLine(), "SERVER_ERROR object too large for cache");
+        Assert.assertNull(client.get("huge"));
+
+        // Data block longer than an int is discarded whole, the commands it holds are not run
+        Assert.assertEquals(client.set("kept", 0, 0, "value"), "STORED");
+        client.send("set smuggled 0 0 " + (1L << 32) + "\r\n\r\ndelete kept\r\n");
+        Assert.assertEquals(client.readLine(), "SERVER_ERROR object too large for cache");
+        Client other = new Client(mServer.getPort());
+        Assert.assertEquals(other.get("kept"), "value");
+
+        other.close();
+        client.close();
+    }
+
+    @Test(enabled = true)
+    public void concurrentClientsTest() throws InterruptedException {
+
+        final int maxThreads = 8;
+        final int requestsPerThread = 2000;
+        final CountDownLatch endGate = new CountDownLatch(maxThreads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < maxThreads; ++t) {
+
+            final int thread = t;
+            new Thread() {
+                @Override
+                public void run() {
+
+                    try {
+                        Client client = new Client(mServer.getPort());
+                        for (int i = 0; i < requestsPerThread; ++i) {
+
+                            String key = "thread" + thread + "-" + (i % 100);
+                            Assert.assertEquals(client.set(key, 0, 0, "value" + i), "STORED");
+                            Assert.assertEquals(client.get(key), "value" + i);
+                        }
+                        client.close();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        endGate.countDown();
+                    }
+                }
+            }.start();
+        }
+        Assert.assertTrue(endGate.await(60, TimeUnit.SECONDS));
+        long time = System.nanoTime() - start;
+
+        System.out.println(maxThreads + " clients doing " + requestsPerThread + " set and get round trips each took: "
+                + TimeUnit.NANOSECONDS.toMillis(time) + "ms");
+        Assert.assertNull(failure.get(), String.valueOf(failure.get()));
+        Assert.assertEquals(mCacheManager.cacheSize(), maxThreads * 100);
+    }
+}